@@ -0,0 +1,148 @@
+package org.ncanfield.cribl.interview.logreader.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests to one endpoint at a fixed rate and measures how they did.
+ * <p/>
+ * Requests are sent on schedule whether or not earlier ones have answered, and each one's latency is counted from when
+ * it was due to be sent rather than when it was, so a server that falls behind shows up in the latencies instead of
+ * slowing the test down with it.
+ */
+final class LoadDriver {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    /**
+     * Sends rps requests a second for the given time and waits for them all to answer
+     *
+     * @param baseUrl the app's URL, like http://localhost:8080
+     * @param endpoint the endpoint to call, like /logs
+     * @param query the query string, with {n} replaced by the request number mod 100
+     * @param rps the requests to send per second
+     * @param seconds how long to send them for
+     * @return the {@link Result} of the run
+     * @throws InterruptedException if interrupted while sending or waiting for answers
+     */
+    Result run(String baseUrl, String endpoint, String query, int rps, int seconds) throws InterruptedException {
+        int total = rps * seconds;
+        long interval = TimeUnit.SECONDS.toNanos(1) / rps;
+        long[] latencies = new long[total];
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch answered = new CountDownLatch(total);
+        HttpRequest[] requests = new HttpRequest[100];
+        for (int n = 0; n < requests.length; n++) {
+            requests[n] = HttpRequest.newBuilder(URI.create(baseUrl + endpoint + "?" + query.replace("{n}", Integer.toString(n))))
+                    .timeout(REQUEST_TIMEOUT)
+                    .GET()
+                    .build();
+        }
+
+        Runtime.getRuntime().gc();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+        long[] gcBefore = gcTotals();
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long due = start + i * interval;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int index = i;
+            client.sendAsync(requests[i % requests.length], HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        latencies[index] = System.nanoTime() - due;
+                        if (e != null || response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                        answered.countDown();
+                    });
+        }
+        boolean finished = answered.await(REQUEST_TIMEOUT.toSeconds() + 5, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        long[] gcAfter = gcTotals();
+
+        // Anything still outstanding is counted as a failure at the timeout
+        int completed = total - (int) answered.getCount();
+        long[] sorted = Arrays.copyOf(latencies, total);
+        for (int i = 0; i < total; i++) {
+            if (sorted[i] == 0) {
+                sorted[i] = REQUEST_TIMEOUT.toNanos();
+            }
+        }
+        Arrays.sort(sorted);
+        return new Result(
+                endpoint,
+                total,
+                completed,
+                failures.get() + (finished ? 0 : total - completed),
+                completed / (elapsed / 1e9),
+                percentile(sorted, 0.50),
+                percentile(sorted, 0.99),
+                sorted[total - 1] / 1e6,
+                peakHeapBytes(),
+                gcAfter[0] - gcBefore[0],
+                gcAfter[1] - gcBefore[1]);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(collector.getCollectionCount(), 0);
+            millis += Math.max(collector.getCollectionTime(), 0);
+        }
+        return new long[]{count, millis};
+    }
+
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * How one endpoint did over a run
+     *
+     * @param endpoint the endpoint called
+     * @param sent the requests sent
+     * @param completed the requests that got an answer
+     * @param failed the requests that failed, timed out or got anything but a 200
+     * @param throughput the answers per second
+     * @param p50Ms the median latency in milliseconds
+     * @param p99Ms the 99th percentile latency in milliseconds
+     * @param maxMs the highest latency in milliseconds
+     * @param peakHeapBytes the most heap in use at once, summed over the heap pools
+     * @param gcCount the garbage collections during the run
+     * @param gcMillis the time spent in garbage collection during the run
+     */
+    record Result(String endpoint, int sent, int completed, int failed, double throughput, double p50Ms, double p99Ms,
+                  double maxMs, long peakHeapBytes, long gcCount, long gcMillis) {
+    }
+}
@@ -0,0 +1,113 @@
+package org.ncanfield.cribl.interview.logreader.loadtest;
+
+import org.ncanfield.cribl.interview.logreader.CriblInterviewLogsApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Runs the app in this JVM against stub peers and reports how /logs and /aggregate hold up at a fixed request rate.
+ * <p/>
+ * For each peer count the app is started with LOG_SERVERS set to itself plus that many {@link StubPeer}s, reading a
+ * generated log directory. Each endpoint gets a warm-up, then is measured by a {@link LoadDriver}. The app, the stub
+ * peers and the driver share the JVM, so the heap and GC figures cover all three. Run it with ./gradlew loadTest, see
+ * {@link LoadTestSettings} for the -PloadTest.* options.
+ */
+public final class LoadTest {
+    private static final List<String> ENDPOINTS = List.of("/logs", "/aggregate");
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        Path logDir = Files.createTempDirectory("log-reader-load");
+        try {
+            System.out.printf("Generating %d files of %d lines in %s%n", settings.files(), settings.fileLines(), logDir);
+            LogTreeGenerator.generate(logDir, settings.files(), settings.fileLines());
+
+            List<Row> rows = new ArrayList<>();
+            LoadDriver driver = new LoadDriver();
+            for (int peerCount : settings.peerCounts()) {
+                rows.addAll(runWithPeers(driver, settings, logDir, peerCount));
+            }
+            printReport(settings, rows);
+        } finally {
+            deleteTree(logDir);
+        }
+    }
+
+    private static List<Row> runWithPeers(LoadDriver driver, LoadTestSettings settings, Path logDir, int peerCount)
+            throws IOException, InterruptedException {
+        List<StubPeer> peers = new ArrayList<>();
+        List<String> servers = new ArrayList<>(List.of("self"));
+        try {
+            for (int i = 0; i < peerCount; i++) {
+                StubPeer peer = StubPeer.start("stub" + i, settings);
+                peers.add(peer);
+                servers.add(peer.url());
+            }
+            try (ConfigurableApplicationContext app = startApp(settings, logDir, String.join(",", servers))) {
+                String baseUrl = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+                List<Row> rows = new ArrayList<>();
+                for (String endpoint : ENDPOINTS) {
+                    System.out.printf("%d peers, %s: warming up for %ds, measuring for %ds at %d rps%n",
+                            peerCount, endpoint, settings.warmupSeconds(), settings.durationSeconds(), settings.rps());
+                    if (settings.warmupSeconds() > 0) {
+                        driver.run(baseUrl, endpoint, settings.query(), settings.rps(), settings.warmupSeconds());
+                    }
+                    rows.add(new Row(peerCount, driver.run(baseUrl, endpoint, settings.query(), settings.rps(), settings.durationSeconds())));
+                }
+                return rows;
+            }
+        } finally {
+            peers.forEach(StubPeer::close);
+        }
+    }
+
+    private static ConfigurableApplicationContext startApp(LoadTestSettings settings, Path logDir, String servers) {
+        return new SpringApplicationBuilder(CriblInterviewLogsApplication.class)
+                .properties(
+                        "server.port=0",
+                        "log-reader.logDir=" + logDir,
+                        "log-reader.logServers=" + servers,
+                        "spring.main.web-application-type=" + settings.stack(),
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=ERROR")
+                .run();
+    }
+
+    private static void printReport(LoadTestSettings settings, List<Row> rows) {
+        System.out.println();
+        System.out.printf("Stack %s, %d rps, %ds per run, peers answer in %d-%dms with %.1f%% errors and %d lines%n",
+                settings.stack(), settings.rps(), settings.durationSeconds(), settings.peerLatencyMs(),
+                settings.peerLatencyMs() + settings.peerJitterMs(), settings.peerErrorRate() * 100, settings.peerLines());
+        System.out.printf("%-6s %-11s %7s %7s %9s %9s %9s %9s %10s %6s %8s%n",
+                "peers", "endpoint", "sent", "failed", "req/s", "p50 ms", "p99 ms", "max ms", "peak heap", "GCs", "GC ms");
+        for (Row row : rows) {
+            LoadDriver.Result result = row.result();
+            System.out.printf("%-6d %-11s %7d %7d %9.1f %9.1f %9.1f %9.1f %8dMB %6d %8d%n",
+                    row.peers(), result.endpoint(), result.sent(), result.failed(), result.throughput(), result.p50Ms(),
+                    result.p99Ms(), result.maxMs(), result.peakHeapBytes() / (1024 * 1024), result.gcCount(),
+                    result.gcMillis());
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private record Row(int peers, LoadDriver.Result result) {
+    }
+}
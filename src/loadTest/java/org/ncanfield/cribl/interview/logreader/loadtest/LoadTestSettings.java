@@ -0,0 +1,55 @@
+package org.ncanfield.cribl.interview.logreader.loadtest;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The settings of a load test run, read from loadTest.* system properties. The loadTest Gradle task passes on any
+ * -PloadTest.* project properties.
+ *
+ * @param peerCounts the numbers of stub peers to run the test with, one run each
+ * @param peerLatencyMs the time each stub peer takes to answer
+ * @param peerJitterMs the most time added at random to each stub peer answer
+ * @param peerErrorRate the fraction of calls a stub peer fails with a 500
+ * @param peerLines the number of lines in each stub peer response
+ * @param files the number of log files to generate for the app to read
+ * @param fileLines the number of lines in each generated file
+ * @param rps the requests per second to send to each endpoint
+ * @param warmupSeconds how long to send requests before measuring
+ * @param durationSeconds how long to measure each endpoint for
+ * @param query the query string for each request, with {n} replaced by the request number mod 100
+ * @param stack the web stack to run the app on, servlet or reactive
+ */
+record LoadTestSettings(List<Integer> peerCounts,
+                        int peerLatencyMs,
+                        int peerJitterMs,
+                        double peerErrorRate,
+                        int peerLines,
+                        int files,
+                        int fileLines,
+                        int rps,
+                        int warmupSeconds,
+                        int durationSeconds,
+                        String query,
+                        String stack) {
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Arrays.stream(property("peers", "1,4,16").split(",")).map(String::trim).map(Integer::parseInt).toList(),
+                Integer.parseInt(property("peerLatencyMs", "20")),
+                Integer.parseInt(property("peerJitterMs", "10")),
+                Double.parseDouble(property("peerErrorRate", "0.01")),
+                Integer.parseInt(property("peerLines", "100")),
+                Integer.parseInt(property("files", "20")),
+                Integer.parseInt(property("fileLines", "50000")),
+                Integer.parseInt(property("rps", "100")),
+                Integer.parseInt(property("warmupSeconds", "5")),
+                Integer.parseInt(property("durationSeconds", "20")),
+                property("query", "logLines=100&searchTerm=user{n}"),
+                property("stack", "servlet"));
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty("loadTest." + name, defaultValue);
+    }
+}
@@ -0,0 +1,57 @@
+package org.ncanfield.cribl.interview.logreader.loadtest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Random;
+
+/**
+ * Writes a synthetic log directory for the app to read. The same settings always write the same files.
+ */
+final class LogTreeGenerator {
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "INFO", "DEBUG", "DEBUG", "WARN", "ERROR"};
+    private static final String[] COMPONENTS = {"http", "db", "cache", "auth", "scheduler"};
+    private static final String[] MESSAGES = {
+            "request completed", "query executed", "cache miss", "token refreshed", "job started", "connection reset",
+            "slow response", "retrying after timeout"
+    };
+
+    private LogTreeGenerator() {
+    }
+
+    /**
+     * Writes files log files spread over a few subdirectories of root, each fileLines lines long. Every line mentions
+     * one of a hundred users, user0 to user99, so a search for a user matches about one line in a hundred.
+     *
+     * @param root the directory to write into
+     * @param files the number of files to write
+     * @param fileLines the number of lines in each file
+     * @throws IOException if a file cannot be written
+     */
+    static void generate(Path root, int files, int fileLines) throws IOException {
+        Random random = new Random(files * 31L + fileLines);
+        long start = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+        for (int file = 0; file < files; file++) {
+            Path dir = root.resolve("service" + file % 4);
+            Files.createDirectories(dir);
+            try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve("app" + file + ".log"))) {
+                for (int line = 0; line < fileLines; line++) {
+                    writer.write(Instant.ofEpochMilli(start + line * 250L).toString());
+                    writer.write(' ');
+                    writer.write(LEVELS[random.nextInt(LEVELS.length)]);
+                    writer.write(" [");
+                    writer.write(COMPONENTS[random.nextInt(COMPONENTS.length)]);
+                    writer.write("] ");
+                    writer.write(MESSAGES[random.nextInt(MESSAGES.length)]);
+                    writer.write(" user=user");
+                    writer.write(Integer.toString(random.nextInt(100)));
+                    writer.write(" duration=");
+                    writer.write(Integer.toString(random.nextInt(2000)));
+                    writer.write("ms\n");
+                }
+            }
+        }
+    }
+}
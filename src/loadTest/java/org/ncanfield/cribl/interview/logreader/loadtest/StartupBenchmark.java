@@ -0,0 +1,159 @@
+package org.ncanfield.cribl.interview.logreader.loadtest;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Starts the app in each startup mode and measures the time from launching the process to its first /logs response,
+ * and its resident memory at that point.
+ * <p/>
+ * The modes are the plain JVM, Spring AOT, AOT with the AppCDS archive, that with lazy initialization too, and the
+ * native image if one has been built with -Pnative nativeCompile. Each mode is started startup.runs times, 5 by default,
+ * and the medians are reported. Run it with ./gradlew startupBenchmark, which builds the extracted jar and archive
+ * first. RSS is read from /proc, so it's only reported on Linux.
+ */
+public final class StartupBenchmark {
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(120);
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(200))
+            .build();
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String java = System.getProperty("startup.java");
+        String jar = System.getProperty("startup.jar");
+        String cdsArchive = System.getProperty("startup.cdsArchive");
+        Path nativeImage = Path.of(System.getProperty("startup.nativeImage"));
+        int runs = Integer.parseInt(System.getProperty("startup.runs", "5"));
+
+        List<Mode> modes = new ArrayList<>(List.of(
+                new Mode("jvm", List.of(java, "-jar", jar)),
+                new Mode("aot", List.of(java, "-Dspring.aot.enabled=true", "-jar", jar)),
+                new Mode("aot+cds", List.of(java, "-XX:SharedArchiveFile=" + cdsArchive, "-Dspring.aot.enabled=true", "-jar", jar)),
+                new Mode("aot+cds+lazy", List.of(java, "-XX:SharedArchiveFile=" + cdsArchive, "-Dspring.aot.enabled=true",
+                        "-Dspring.main.lazy-initialization=true", "-jar", jar))));
+        if (Files.isExecutable(nativeImage)) {
+            modes.add(new Mode("native", List.of(nativeImage.toString())));
+        }
+
+        Path logDir = Files.createTempDirectory("log-reader-startup");
+        try {
+            LogTreeGenerator.generate(logDir, 4, 1000);
+            List<String> rows = new ArrayList<>();
+            for (Mode mode : modes) {
+                long[] millis = new long[runs];
+                long[] rssKb = new long[runs];
+                for (int run = 0; run < runs; run++) {
+                    Measurement measurement = measure(mode, logDir);
+                    millis[run] = measurement.millis();
+                    rssKb[run] = measurement.rssKb();
+                    System.out.printf("%s run %d: %dms, %s%n", mode.name(), run + 1, measurement.millis(), rss(measurement.rssKb()));
+                }
+                rows.add(String.format("%-14s %12d %10s", mode.name(), median(millis), rss(median(rssKb))));
+            }
+            System.out.println();
+            System.out.printf("Median of %d runs%n", runs);
+            System.out.printf("%-14s %12s %10s%n", "mode", "first /logs", "RSS");
+            rows.forEach(System.out::println);
+            if (!Files.isExecutable(nativeImage)) {
+                System.out.println("No native image at " + nativeImage + ", build one with -Pnative nativeCompile");
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(logDir)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static Measurement measure(Mode mode, Path logDir) throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> command = new ArrayList<>(mode.command());
+        command.add("--server.port=" + port);
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.environment().put("LOG_DIRECTORY", logDir.toString());
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/logs?logLines=1"))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            long deadline = start + STARTUP_TIMEOUT.toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(mode.name() + " exited with " + process.exitValue() + " before answering");
+                }
+                try {
+                    if (CLIENT.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        return new Measurement(millis, readRssKb(process.pid()));
+                    }
+                } catch (IOException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(5);
+            }
+            throw new IllegalStateException(mode.name() + " did not answer within " + STARTUP_TIMEOUT);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static long readRssKb(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", Long.toString(pid), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // No /proc, so no RSS
+        }
+        return -1;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static String rss(long kb) {
+        return kb < 0 ? "n/a" : kb / 1024 + "MB";
+    }
+
+    private record Mode(String name, List<String> command) {
+    }
+
+    private record Measurement(long millis, long rssKb) {
+    }
+}
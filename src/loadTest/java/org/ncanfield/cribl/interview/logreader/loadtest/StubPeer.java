@@ -0,0 +1,100 @@
+package org.ncanfield.cribl.interview.logreader.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A stand-in for another log reader server, answering /logs with the same canned response after a set delay. It never
+ * sends an ETag, so the aggregator gets a full response on every call.
+ */
+final class StubPeer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] body;
+    private final int latencyMs;
+    private final int jitterMs;
+    private final double errorRate;
+
+    private StubPeer(HttpServer server, byte[] body, int latencyMs, int jitterMs, double errorRate) {
+        this.server = server;
+        this.body = body;
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.errorRate = errorRate;
+        // Answers sleep through their latency, so each call in flight needs its own thread
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stub-peer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/logs", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Starts a stub peer on a free local port
+     *
+     * @param name the server name to answer with
+     * @param settings the {@link LoadTestSettings} with the latency, error rate and response size
+     * @return the running {@link StubPeer}
+     * @throws IOException if the server cannot be started
+     */
+    static StubPeer start(String name, LoadTestSettings settings) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < settings.peerLines(); i++) {
+            lines.add("2024-01-01T00:00:00Z INFO [http] request completed user=user" + i % 100 + " duration=" + i + "ms");
+        }
+        LogReadResponse response = new LogReadResponse(name, List.of(new LogFile("app.log", "app.log", lines, null)), List.of());
+        byte[] body = new ObjectMapper().writeValueAsBytes(response);
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        return new StubPeer(server, body, settings.peerLatencyMs(), settings.peerJitterMs(), settings.peerErrorRate());
+    }
+
+    /**
+     * @return the base URL of the peer, as it would be given in LOG_SERVERS
+     */
+    String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int delay = latencyMs + (jitterMs > 0 ? random.nextInt(jitterMs + 1) : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (random.nextDouble() < errorRate) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -1,13 +1,122 @@
 package org.ncanfield.cribl.interview.logreader;
 
 import org.ncanfield.cribl.interview.logreader.config.FilePathValidator;
+import org.ncanfield.cribl.interview.logreader.config.LogReaderConfig;
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.handlers.LogRoots;
+import org.ncanfield.cribl.interview.logreader.handlers.ReadSettings;
+import org.ncanfield.cribl.interview.logreader.handlers.RotationFamilies;
+import org.ncanfield.cribl.interview.logreader.handlers.SegmentCompactor;
+import org.ncanfield.cribl.interview.logreader.handlers.SegmentStore;
+import org.ncanfield.cribl.interview.logreader.handlers.ScanScheduler;
+import org.ncanfield.cribl.interview.logreader.handlers.StandingQueries;
+import org.ncanfield.cribl.interview.logreader.models.LogQuery;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.utils.FileHandleCache;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 @Configuration
+@ImportRuntimeHints(CriblInterviewLogsRuntimeHints.class)
 public class CriblInterviewLogsModule {
+    private static final Logger LOGGER = Logger.getLogger("CriblInterviewLogsModule");
+    private static final int DEFAULT_MAX_OPEN_FILES = 64;
+    private static final int DEFAULT_MAX_SCANS_PER_DEVICE = 2;
+
     @Bean
     public static FilePathValidator configurationPropertiesValidator() {
         return new FilePathValidator();
     }
+
+    @Bean
+    public ScanScheduler scanScheduler(LogReaderConfig config) {
+        return new ScanScheduler(
+                config.maxConcurrentScans() != null ? config.maxConcurrentScans() : -1,
+                config.maxScansPerDevice() != null ? config.maxScansPerDevice() : DEFAULT_MAX_SCANS_PER_DEVICE);
+    }
+
+    @Bean(destroyMethod = "close")
+    public FileHandleCache fileHandleCache(LogReaderConfig config) {
+        return new FileHandleCache(config.maxOpenFiles() != null ? config.maxOpenFiles() : DEFAULT_MAX_OPEN_FILES);
+    }
+
+    @Bean
+    public ReadSettings readSettings(LogReaderConfig config, FileHandleCache fileHandleCache) {
+        Pattern rotationPattern = Pattern.compile(
+                config.rotationPattern() != null ? config.rotationPattern() : RotationFamilies.DEFAULT_PATTERN);
+        SegmentStore segments = config.segmentDir() != null && !config.segmentDir().isBlank() ?
+                new SegmentStore(Path.of(config.logDir()), Path.of(config.segmentDir())) :
+                null;
+        LogRoots roots = new LogRoots(Path.of(config.logDir()), LogRoots.parse(config.logRoots()));
+        roots.getMounts().forEach((name, root) ->
+                LOGGER.info("Mounted log root " + name + " at " + root + " on " + roots.deviceOf(root.resolve("."))));
+        return new ReadSettings(
+                rotationPattern,
+                segments,
+                config.maxLineLength() != null ? config.maxLineLength() : ReadSettings.DEFAULT_MAX_LINE_LENGTH,
+                fileHandleCache,
+                config.parallelScanThreshold() != null ?
+                        config.parallelScanThreshold() :
+                        ReadSettings.DEFAULT_PARALLEL_SCAN_THRESHOLD,
+                roots);
+    }
+
+    // Nothing else uses the compactor, so it has to be started even with lazy initialization
+    @Lazy(false)
+    @Bean(destroyMethod = "close")
+    @Conditional(SegmentsEnabled.class)
+    public SegmentCompactor segmentCompactor(ReadSettings readSettings, LogReaderConfig config) {
+        SegmentCompactor compactor = new SegmentCompactor(
+                readSettings.segments(), readSettings.rotationPattern(), readSettings.maxLineLength());
+        compactor.start(Duration.ofSeconds(config.compactionInterval() != null ? config.compactionInterval() : 300));
+        return compactor;
+    }
+
+    // Configured queries should count lines from startup, not from the first request to /queries
+    @Lazy(false)
+    @Bean(destroyMethod = "close")
+    public StandingQueries standingQueries(LogReaderConfig config, ReadSettings readSettings) throws LogReaderException, IOException {
+        StandingQueries standingQueries = new StandingQueries(Path.of(config.logDir()), readSettings.maxLineLength());
+        if (config.standingQueries() == null) {
+            return standingQueries;
+        }
+        for (String definition : config.standingQueries()) {
+            if (definition.isBlank()) {
+                continue;
+            }
+            // FilePathValidator has already checked these are name=searchTerm
+            int split = definition.indexOf('=');
+            String searchTerm = definition.substring(split + 1);
+            standingQueries.register(
+                    definition.substring(0, split),
+                    new LogQuery(searchTerm, null, null),
+                    new LogReadRequest(StandingQueries.DEFAULT_MATCHES, searchTerm, ReadMode.LINES));
+        }
+        return standingQueries;
+    }
+
+    /**
+     * Matches when a segment directory is configured, the same test readSettings uses to create the SegmentStore.
+     * A blank directory is how segments are turned off, which @ConditionalOnProperty would still count as set.
+     */
+    static class SegmentsEnabled implements Condition {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            String segmentDir = context.getEnvironment().getProperty("log-reader.segmentDir");
+            return segmentDir != null && !segmentDir.isBlank();
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package org.ncanfield.cribl.interview.logreader;
+
+import org.ncanfield.cribl.interview.logreader.models.LogAggregateResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchAggregateResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchRequest;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogLineEvent;
+import org.ncanfield.cribl.interview.logreader.models.LogLines;
+import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+import org.ncanfield.cribl.interview.logreader.models.StandingQueryResponse;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * Registers the reflection a native image needs beyond what Spring AOT finds by itself.
+ * <p/>
+ * AOT covers the controllers' return types, but the models are also written and read with plain ObjectMappers, like
+ * peer responses in {@link org.ncanfield.cribl.interview.logreader.utils.HttpUtils}, and come back wrapped in types
+ * it doesn't look inside. Registering them for binding covers every record they hold. Lines are declared as plain
+ * lists but are really {@link LogLines}, so its serializer has to be registered by hand.
+ */
+public class CriblInterviewLogsRuntimeHints implements RuntimeHintsRegistrar {
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(
+                hints.reflection(),
+                LogReadResponse.class,
+                LogAggregateResponse.class,
+                LogBatchRequest.class,
+                LogBatchResponse.class,
+                LogBatchAggregateResponse.class,
+                LogLineEvent.class,
+                StandingQueryResponse.class);
+        hints.reflection().registerType(LogLines.class);
+        hints.reflection().registerType(LogLines.Serializer.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+    }
+}
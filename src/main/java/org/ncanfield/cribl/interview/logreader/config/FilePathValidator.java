@@ -1,10 +1,19 @@
 package org.ncanfield.cribl.interview.logreader.config;
 
+import org.ncanfield.cribl.interview.logreader.handlers.LogRoots;
+import org.ncanfield.cribl.interview.logreader.handlers.StandingQueries;
 import org.springframework.validation.Errors;
 import org.springframework.validation.ValidationUtils;
 import org.springframework.validation.Validator;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class FilePathValidator implements Validator {
     @Override
@@ -30,5 +39,85 @@ public class FilePathValidator implements Validator {
             }
         }
 
+        if (logReaderConfig.segmentDir() != null && !logReaderConfig.segmentDir().isBlank()) {
+            File segmentDir = new File(logReaderConfig.segmentDir());
+            if (!segmentDir.isAbsolute()) {
+                errors.rejectValue("segmentDir", "file.absolutePathRequired", "The segmentDir must be an absolute path");
+            } else if (logReaderConfig.logDir() != null &&
+                    segmentDir.toPath().normalize().startsWith(new File(logReaderConfig.logDir()).toPath().normalize())) {
+                errors.rejectValue("segmentDir", "file.outsideLogDirRequired", "The segmentDir must not be inside the logDir");
+            }
+        }
+
+        if (logReaderConfig.rotationPattern() != null) {
+            try {
+                Pattern rotationPattern = Pattern.compile(logReaderConfig.rotationPattern());
+                if (!rotationPattern.pattern().contains("(?<base>")) {
+                    errors.rejectValue("rotationPattern", "config.invalidPattern", "The rotationPattern must have a named group called base");
+                }
+            } catch (PatternSyntaxException e) {
+                errors.rejectValue("rotationPattern", "config.invalidPattern", "The rotationPattern must be a valid regular expression");
+            }
+        }
+
+        if (logReaderConfig.standingQueries() != null) {
+            for (String definition : logReaderConfig.standingQueries()) {
+                int split = definition.indexOf('=');
+                if (!definition.isBlank() && (split < 0 ||
+                        !StandingQueries.NAME_PATTERN.matcher(definition.substring(0, split)).matches() ||
+                        split == definition.length() - 1)) {
+                    errors.rejectValue("standingQueries", "config.invalidQuery",
+                            "Each of the standingQueries must be a name and a search term, like errors=ERROR");
+                    break;
+                }
+            }
+        }
+
+        if (logReaderConfig.logRoots() != null) {
+            validateLogRoots(logReaderConfig, errors);
+        }
+    }
+
+    private static void validateLogRoots(LogReaderConfig logReaderConfig, Errors errors) {
+        Set<String> names = new HashSet<>();
+        List<Path> roots = new ArrayList<>();
+        if (logReaderConfig.logDir() != null) {
+            roots.add(Path.of(logReaderConfig.logDir()).normalize());
+        }
+        for (String definition : logReaderConfig.logRoots()) {
+            if (definition.isBlank()) {
+                continue;
+            }
+            int split = definition.indexOf('=');
+            if (split < 0 || !LogRoots.NAME_PATTERN.matcher(definition.substring(0, split).trim()).matches()) {
+                errors.rejectValue("logRoots", "config.invalidRoot",
+                        "Each of the logRoots must be a name and an absolute path, like archive=/mnt/disk2/logs");
+                return;
+            }
+            if (!names.add(definition.substring(0, split).trim())) {
+                errors.rejectValue("logRoots", "config.duplicateRoot", "Each of the logRoots must have a different name");
+                return;
+            }
+            File root = new File(definition.substring(split + 1).trim());
+            if (!root.isAbsolute()) {
+                errors.rejectValue("logRoots", "file.absolutePathRequired", "Each of the logRoots must be an absolute path");
+                return;
+            } else if (!root.isDirectory()) {
+                errors.rejectValue("logRoots", "file.directoryRequired", "Each of the logRoots must be an existing directory");
+                return;
+            } else if (!root.canRead()) {
+                errors.rejectValue("logRoots", "file.cannotRead", "Each of the logRoots must be readable by this process");
+                return;
+            }
+            Path rootPath = root.toPath().normalize();
+            for (Path other : roots) {
+                if (rootPath.startsWith(other) || other.startsWith(rootPath)) {
+                    errors.rejectValue("logRoots", "file.separateRootRequired",
+                            "The logRoots must not be inside the logDir, each other, or contain them");
+                    return;
+                }
+            }
+            roots.add(rootPath);
+        }
     }
 }
@@ -7,5 +7,20 @@ import java.util.List;
 
 @Validated
 @ConfigurationProperties(prefix="log-reader")
-public record LogReaderConfig (String logDir, String friendlyName, Integer defaultLineLimit, List<String> logServers) {
-}
\ No newline at end of file
+public record LogReaderConfig (String logDir,
+                               String friendlyName,
+                               Integer defaultLineLimit,
+                               List<String> logServers,
+                               Integer maxConcurrentScans,
+                               Long maxScanBytes,
+                               Long maxResponseBytes,
+                               String rotationPattern,
+                               String segmentDir,
+                               Integer compactionInterval,
+                               Integer maxLineLength,
+                               Integer maxOpenFiles,
+                               Long parallelScanThreshold,
+                               List<String> standingQueries,
+                               List<String> logRoots,
+                               Integer maxScansPerDevice) {
+}
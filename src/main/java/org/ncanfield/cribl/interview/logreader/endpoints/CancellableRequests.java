@@ -0,0 +1,57 @@
+package org.ncanfield.cribl.interview.logreader.endpoints;
+
+import org.ncanfield.cribl.interview.logreader.utils.CancellationToken;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs endpoint work as a servlet async request tied to a {@link CancellationToken}.
+ * <p/>
+ * The token is cancelled when the request times out, which is set by REQUEST_TIMEOUT, and when the request completes
+ * for any reason, including the container noticing the client went away. Anything still running for the request at
+ * that point has nobody left to answer and stops.
+ */
+final class CancellableRequests {
+    static final String TIMED_OUT = "The request timed out before it finished";
+    static final String ENDED = "The request ended before the work finished";
+
+    private CancellableRequests() {
+    }
+
+    /**
+     * Builds the {@link WebAsyncTask} for a request
+     *
+     * @param work the work to do, given the request's token
+     * @param timedOut the response to send instead if the request times out
+     * @return the task for Spring to run
+     * @param <T> the response type
+     */
+    static <T> WebAsyncTask<T> run(Function<CancellationToken, T> work, Supplier<T> timedOut) {
+        CancellationToken token = new CancellationToken();
+        WebAsyncTask<T> task = new WebAsyncTask<>(() -> work.apply(token));
+        task.onTimeout(() -> {
+            token.cancel(TIMED_OUT);
+            return timedOut.get();
+        });
+        task.onCompletion(() -> token.cancel(ENDED));
+        return task;
+    }
+
+    /**
+     * Builds the {@link WebAsyncTask} for a request that writes its own response, which never times out. Sending a large
+     * file can rightly take longer than REQUEST_TIMEOUT, but the token is still cancelled when the request ends.
+     *
+     * @param work the work to do, given the request's token
+     * @return the task for Spring to run
+     * @param <T> the response type
+     */
+    static <T> WebAsyncTask<T> runUntimed(Function<CancellationToken, T> work) {
+        CancellationToken token = new CancellationToken();
+        // The servlet spec treats a timeout of 0 as none at all
+        WebAsyncTask<T> task = new WebAsyncTask<>(0, () -> work.apply(token));
+        task.onCompletion(() -> token.cancel(ENDED));
+        return task;
+    }
+}
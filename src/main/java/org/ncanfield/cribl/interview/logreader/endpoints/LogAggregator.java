@@ -3,56 +3,242 @@ package org.ncanfield.cribl.interview.logreader.endpoints;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.ncanfield.cribl.interview.logreader.config.LogReaderConfig;
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.models.FieldFilter;
 import org.ncanfield.cribl.interview.logreader.models.LogAggregateResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchAggregateResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchRequest;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogPattern;
+import org.ncanfield.cribl.interview.logreader.models.LogReadParams;
 import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.utils.CancellationToken;
 import org.ncanfield.cribl.interview.logreader.utils.HttpUtils;
+import org.ncanfield.cribl.interview.logreader.utils.LogPatternMiner;
+import org.ncanfield.cribl.interview.logreader.utils.SingleFlight;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
+// The reactive stack has its own endpoints, see ReactiveLogAggregator
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RestController
 public class LogAggregator {
+    static final String CANCELLED = "The request to this server was cancelled";
+
     @Autowired
     private LogReaderConfig config;
 
     @Autowired
     private LogReader logReader;
 
+    // Identical concurrent requests share a single fan-out to the servers
+    private final SingleFlight<AggregateKey, LogAggregateResponse> inFlightAggregations = new SingleFlight<>();
+
+    /**
+     * Serves /aggregate as an async request, so the calls to every server are cancelled as soon as the request times
+     * out or the client goes away, see {@link CancellableRequests}.
+     */
     @GetMapping("/aggregate")
-    public LogAggregateResponse aggregateLogs(@RequestParam(required = false) String fileName,
-                                              @RequestParam(required = false) Integer logLines,
-                                              @RequestParam(required = false) String searchTerm) {
+    public WebAsyncTask<LogAggregateResponse> aggregateLogsAsync(@RequestParam(required = false) String fileName,
+                                                                 @RequestParam(required = false) Integer logLines,
+                                                                 @RequestParam(required = false) String searchTerm,
+                                                                 @RequestParam(required = false) String mode,
+                                                                 @RequestParam(required = false) boolean followRotations,
+                                                                 @RequestParam(required = false) String filter,
+                                                                 @RequestParam(required = false) Integer before,
+                                                                 @RequestParam(required = false) Integer after,
+                                                                 @RequestParam(required = false) List<String> cursor) {
+        LogReadParams params = new LogReadParams(fileName, logLines, searchTerm, mode, followRotations, filter, before, after, cursor);
+        return CancellableRequests.run(
+                cancellation -> aggregateLogs(params, cancellation),
+                () -> new LogAggregateResponse(null, List.of(CancellableRequests.TIMED_OUT)));
+    }
+
+    /**
+     * Aggregates logs from every configured server, carrying on from the cursors of earlier reads if there are any and
+     * cancelling the calls still running if cancellation is cancelled. Every cursor is sent to every server, and each
+     * server's files pick out the ones issued for them.
+     *
+     * @param params the {@link LogReadParams} the request was sent with, passed on to every server
+     * @param cancellation the {@link CancellationToken} of the request
+     * @return a {@link LogAggregateResponse} with each server's response
+     */
+    public LogAggregateResponse aggregateLogs(LogReadParams params, CancellationToken cancellation) {
         List<String> errors = new ArrayList<>();
         // Other parameters may be valid on individual machines, this is just stopping definite invalid ones
-        if (logLines != null &&logLines < 1) {
+        if (params.logLines() != null && params.logLines() < 1) {
             errors.add("Requested log lines must be > 0");
             return new LogAggregateResponse(null, errors);
         }
+        ReadMode readMode = ReadMode.fromParam(params.mode());
+        if (readMode == null) {
+            errors.add("Requested mode is not supported");
+            return new LogAggregateResponse(null, errors);
+        }
+        FieldFilter fieldFilter;
+        try {
+            // Each server evaluates the filter itself, this just catches ones that can't work anywhere
+            fieldFilter = FieldFilter.parse(params.filter());
+        } catch (LogReaderException e) {
+            errors.add("Requested filter is not valid: " + e.getMessage());
+            return new LogAggregateResponse(null, errors);
+        }
+        ReadValidation.checkContext(params.before(), "before", errors);
+        ReadValidation.checkContext(params.after(), "after", errors);
+        ReadValidation.checkCursors(params.cursors(), params.followRotations(), errors);
+        if (!errors.isEmpty()) {
+            return new LogAggregateResponse(null, errors);
+        }
+
+        AggregateKey key = new AggregateKey(
+                params.fileName() != null ? Path.of(params.fileName()).normalize().toString() : null,
+                params.logLines(),
+                params.searchTerm(),
+                readMode,
+                params.followRotations(),
+                fieldFilter,
+                params.before(),
+                params.after(),
+                params.cursors() != null ? List.copyOf(params.cursors()) : List.of());
+        return inFlightAggregations.execute(key, cancellation, shared -> fanOut(params, readMode, shared));
+    }
+
+    /**
+     * Calls every configured server's /logs, see {@link #callServers}
+     *
+     * @return a {@link LogAggregateResponse} with each server's response
+     */
+    private LogAggregateResponse fanOut(LogReadParams params, ReadMode readMode, CancellationToken cancellation) {
+        List<LogReadResponse> serverLogs = callServers(
+                server -> {
+                    if ("self".equalsIgnoreCase(server)) {
+                        return CompletableFuture.supplyAsync(() -> logReader.readLogs(params, cancellation));
+                    }
+                    final String fullUrl = HttpUtils.makeUrl(server, "/logs", params);
+                    return HttpUtils.buildFuture(fullUrl);
+                },
+                server -> new LogReadResponse(server, null, List.of(CANCELLED)),
+                cancellation);
+        return new LogAggregateResponse(
+                serverLogs,
+                readMode == ReadMode.PATTERNS ? mergePatterns(serverLogs) : null,
+                new ArrayList<>());
+    }
+
+    /**
+     * Serves /aggregate/batch as an async request, so the calls to every server are cancelled as soon as the request
+     * times out or the client goes away, see {@link CancellableRequests}.
+     */
+    @PostMapping("/aggregate/batch")
+    public WebAsyncTask<LogBatchAggregateResponse> aggregateBatchAsync(@RequestBody LogBatchRequest batch) {
+        return CancellableRequests.run(
+                cancellation -> aggregateBatch(batch, cancellation),
+                () -> new LogBatchAggregateResponse(null, List.of(CancellableRequests.TIMED_OUT)));
+    }
+
+    /**
+     * Sends a batch to every configured server's /logs/batch, so each server reads its files once for all the queries
+     *
+     * @param batch the {@link LogBatchRequest} to send
+     * @param cancellation the {@link CancellationToken} of the request
+     * @return a {@link LogBatchAggregateResponse} with each server's response
+     */
+    public LogBatchAggregateResponse aggregateBatch(LogBatchRequest batch, CancellationToken cancellation) {
+        List<String> errors = new ArrayList<>();
+        // Only the queries are checked, the file may be valid on some servers and not others
+        ReadValidation.checkQueries(batch, null, errors);
+        if (!errors.isEmpty()) {
+            return new LogBatchAggregateResponse(null, errors);
+        }
+        List<LogBatchResponse> serverLogs = callServers(
+                server -> "self".equalsIgnoreCase(server) ?
+                        CompletableFuture.supplyAsync(() -> logReader.readBatch(batch, cancellation)) :
+                        HttpUtils.buildBatchFuture(server + "/logs/batch", batch),
+                server -> new LogBatchResponse(server, null, List.of(CANCELLED)),
+                cancellation);
+        return new LogBatchAggregateResponse(serverLogs, new ArrayList<>());
+    }
 
-        List<CompletableFuture<LogReadResponse>> futures = new ArrayList<>();
+    /**
+     * Calls every configured server and waits for all of them to respond. If cancellation is cancelled first, the
+     * calls still running are cancelled and their servers are reported as cancelled.
+     *
+     * @param call starts the call to a server
+     * @param cancelled the response to give for a server whose call was cancelled
+     * @param cancellation the {@link CancellationToken} of the request
+     * @return each server's response, in the configured order
+     */
+    private <T> List<T> callServers(Function<String, CompletableFuture<T>> call, Function<String, T> cancelled,
+                                    CancellationToken cancellation) {
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        List<CompletableFuture<T>> results = new ArrayList<>();
         for (String server : config.logServers()) {
-            if ("self".equalsIgnoreCase(server)) {
-                futures.add(CompletableFuture.supplyAsync(() -> logReader.readLogs(fileName, logLines, searchTerm)));
-            } else {
-                final String fullUrl = HttpUtils.makeUrl(server, fileName, logLines, searchTerm);
-                futures.add(HttpUtils.buildFuture(fullUrl));
-            }
+            CompletableFuture<T> future = call.apply(server);
+            futures.add(future);
+            results.add(future.exceptionally(ex -> {
+                if (future.isCancelled()) {
+                    return cancelled.apply(server);
+                }
+                throw ex instanceof CompletionException completionException ? completionException : new CompletionException(ex);
+            }));
         }
+        cancellation.onCancel(() -> futures.forEach(future -> future.cancel(true)));
 
         // Wait for them to all complete
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
 
-        return new LogAggregateResponse(futures.stream().map(CompletableFuture::join).toList(), errors);
+        return results.stream().map(CompletableFuture::join).toList();
     }
 
+    /**
+     * Merges the patterns each server found into a single summary across all servers and files
+     *
+     * @param serverLogs the responses from each server
+     * @return the merged list of {@link LogPattern}, most common first
+     */
+    static List<LogPattern> mergePatterns(List<LogReadResponse> serverLogs) {
+        LogPatternMiner patternMiner = new LogPatternMiner();
+        for (LogReadResponse serverLog : serverLogs) {
+            if (serverLog.logFiles() == null) {
+                continue;
+            }
+            for (LogFile logFile : serverLog.logFiles()) {
+                if (logFile.patterns() == null) {
+                    continue;
+                }
+                for (LogPattern pattern : logFile.patterns()) {
+                    patternMiner.add(pattern.template(), pattern.count(), pattern.sample());
+                }
+            }
+        }
+        return patternMiner.getPatterns();
+    }
+
+
+    /**
+     * The normalized query used to find identical in-flight aggregations
+     */
+    private record AggregateKey(String fileName, Integer logLines, String searchTerm, ReadMode mode, boolean followRotations,
+                                FieldFilter filter, Integer before, Integer after, List<String> cursors) {
+    }
 }
@@ -1,70 +1,410 @@
 package org.ncanfield.cribl.interview.logreader.endpoints;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.ncanfield.cribl.interview.logreader.config.LogReaderConfig;
 import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.handlers.BatchReadHandler;
+import org.ncanfield.cribl.interview.logreader.handlers.LogETag;
 import org.ncanfield.cribl.interview.logreader.handlers.LogReadRequestHandler;
+import org.ncanfield.cribl.interview.logreader.handlers.RawLogHandler;
+import org.ncanfield.cribl.interview.logreader.handlers.ReadSettings;
+import org.ncanfield.cribl.interview.logreader.handlers.ScanBudget;
+import org.ncanfield.cribl.interview.logreader.handlers.ScanScheduler;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchRequest;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchResponse;
 import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogReadParams;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
 import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+import org.ncanfield.cribl.interview.logreader.profiling.RequestEvent;
+import org.ncanfield.cribl.interview.logreader.utils.CancellationToken;
+import org.ncanfield.cribl.interview.logreader.utils.FileHandleCache;
+import org.ncanfield.cribl.interview.logreader.utils.SingleFlight;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
+// The reactive stack has its own endpoints, see ReactiveLogReader
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RestController
 public class LogReader {
+    // Request attributes Tomcat uses to send a file directly from the kernel
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Set on a /logs/raw tail that was cut short, holding the reason
+    static final String PARTIAL_HEADER = "X-Partial-Results";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     @Autowired
     private LogReaderConfig config;
 
+    @Autowired
+    private ScanScheduler scanScheduler;
+
+    @Autowired
+    private ReadSettings readSettings;
+
+    // Identical concurrent requests share a single read of the files
+    private final SingleFlight<ReadKey, LogReadResponse> inFlightReads = new SingleFlight<>();
+
+    public LogReadResponse readLogs(String fileName, Integer logLines, String searchTerm) {
+        return readLogs(LogReadParams.of(fileName, logLines, searchTerm), new CancellationToken());
+    }
+
+    /**
+     * Reads logs for a request, carrying on from the cursors of earlier reads if there are any and stopping early if
+     * cancellation is cancelled
+     *
+     * @param params the {@link LogReadParams} the request was sent with
+     * @param cancellation the {@link CancellationToken} of the request
+     * @return the {@link LogReadResponse}, flagged as partial if it was cancelled
+     */
+    public LogReadResponse readLogs(LogReadParams params, CancellationToken cancellation) {
+        ReadValidation.ValidatedRead read = ReadValidation.validate(config, params);
+        if (!read.errors().isEmpty()) {
+            return new LogReadResponse(
+                    config.friendlyName(),
+                    null,
+                    read.errors());
+        }
+        return read(read, cancellation);
+    }
+
+    /**
+     * Serves /logs as an async request, so the read stops as soon as the request times out or the client goes away,
+     * see {@link CancellableRequests}.
+     */
     @GetMapping("/logs")
-    public LogReadResponse readLogs(@RequestParam(required = false) String fileName,
-                                    @RequestParam(required = false) Integer logLines,
-                                    @RequestParam(required = false) String searchTerm) {
-        Path filePath;
+    public WebAsyncTask<ResponseEntity<LogReadResponse>> readLogsAsync(@RequestParam(required = false) String fileName,
+                                                                       @RequestParam(required = false) Integer logLines,
+                                                                       @RequestParam(required = false) String searchTerm,
+                                                                       @RequestParam(required = false) String mode,
+                                                                       @RequestParam(required = false) boolean followRotations,
+                                                                       @RequestParam(required = false) String filter,
+                                                                       @RequestParam(required = false) Integer before,
+                                                                       @RequestParam(required = false) Integer after,
+                                                                       @RequestParam(required = false) List<String> cursor,
+                                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        LogReadParams params = new LogReadParams(fileName, logLines, searchTerm, mode, followRotations, filter, before, after, cursor);
+        return CancellableRequests.run(
+                cancellation -> readLogsIfModified(params, ifNoneMatch, cancellation),
+                () -> ResponseEntity.ok(new LogReadResponse(config.friendlyName(), null, List.of(CancellableRequests.TIMED_OUT))));
+    }
+
+    /**
+     * Reads logs with a strong ETag on every complete response so that unchanged logs can be answered with a 304 Not
+     * Modified rather than being read and sent again. The tag covers the query, including any cursors, and the size
+     * and modification time of every file it could read, see {@link LogETag}. So an unchanged file read from the same
+     * cursor is still answered with a 304.
+     *
+     * @param params the {@link LogReadParams} the request was sent with
+     * @param ifNoneMatch the If-None-Match header, or null
+     * @param cancellation the {@link CancellationToken} of the request
+     */
+    public ResponseEntity<LogReadResponse> readLogsIfModified(LogReadParams params, String ifNoneMatch, CancellationToken cancellation) {
+        ReadValidation.ValidatedRead read = ReadValidation.validate(config, params);
+        if (!read.errors().isEmpty()) {
+            return ResponseEntity.ok(new LogReadResponse(config.friendlyName(), null, read.errors()));
+        }
+
+        String etag = LogETag.compute(read.logFile(), read.request(), getReadSettings(), getServerState());
+        if (LogETag.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        LogReadResponse response = read(read, cancellation);
+        // Errors like interrupted or unreadable files may go away on their own, so those responses aren't tagged
+        if (!isComplete(response)) {
+            return ResponseEntity.ok(response);
+        }
+        return ResponseEntity.ok().eTag(etag).body(response);
+    }
+
+    /**
+     * Serves /logs/batch as an async request, so the read stops as soon as the request times out or the client goes
+     * away, see {@link CancellableRequests}.
+     */
+    @PostMapping("/logs/batch")
+    public WebAsyncTask<LogBatchResponse> readBatchAsync(@RequestBody LogBatchRequest batch) {
+        return CancellableRequests.run(
+                cancellation -> readBatch(batch, cancellation),
+                () -> new LogBatchResponse(config.friendlyName(), null, List.of(CancellableRequests.TIMED_OUT)));
+    }
+
+    /**
+     * Answers every query of a batch from a single read of each file, see {@link BatchReadHandler}
+     *
+     * @param batch the {@link LogBatchRequest} to read
+     * @param cancellation the {@link CancellationToken} of the request
+     * @return the {@link LogBatchResponse}, with a result per query, flagged as partial if it was cancelled
+     */
+    public LogBatchResponse readBatch(LogBatchRequest batch, CancellationToken cancellation) {
+        ReadValidation.ValidatedBatch read = ReadValidation.validateBatch(config, batch);
+        if (!read.errors().isEmpty()) {
+            return new LogBatchResponse(config.friendlyName(), null, read.errors());
+        }
+        ScanBudget budget = newBudget(cancellation);
+        List<List<LogFile>> logFiles = BatchReadHandler.readLogs(
+                read.logFile(),
+                read.requests(),
+                batch.followRotations(),
+                getReadSettings(),
+                budget,
+                config.logDir().length());
+        return new LogBatchResponse(config.friendlyName(), BatchReadHandler.toResults(batch.queries(), logFiles), budgetErrors(budget));
+    }
+
+    /**
+     * Serves /logs/raw as an async request, so finding a tail stops as soon as the client goes away, see
+     * {@link CancellableRequests}. The file is written to the response directly, so there's nothing to return.
+     */
+    @GetMapping("/logs/raw")
+    public WebAsyncTask<ResponseEntity<Void>> readRawLogsAsync(@RequestParam(required = false) String fileName,
+                                                               @RequestParam(required = false) Integer tailLines,
+                                                               @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                                                               HttpServletRequest request,
+                                                               HttpServletResponse response) {
+        return CancellableRequests.runUntimed(cancellation -> {
+            try {
+                readRawLogs(fileName, tailLines, range, request, response, cancellation);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Streams the raw bytes of a single log file, or a range of it, without splitting it into lines.
+     * <p/>
+     * The file is validated the same way as {@link #readLogs}. A single HTTP byte range may be requested with the Range
+     * header, or the last tailLines lines with that parameter. Finding the tail is a scan like any other, so it waits
+     * for a permit from the {@link ScanScheduler} and stops at the scan limit, in which case the response is flagged
+     * with a {@value #PARTIAL_HEADER} header. Where the server supports it the file is sent with sendfile, otherwise
+     * it's copied with {@link java.nio.channels.FileChannel#transferTo}. If the client accepts gzip the response is
+     * compressed on the fly, which isn't done for Range requests.
+     *
+     * @param cancellation cancelled when the request ends, which stops a tail scan that's waiting or running
+     */
+    public void readRawLogs(String fileName,
+                            Integer tailLines,
+                            String range,
+                            HttpServletRequest request,
+                            HttpServletResponse response,
+                            CancellationToken cancellation) throws IOException {
         List<String> errorMessages = new ArrayList<>();
-        List<LogFile> logFiles = null;
-        if (fileName != null) {
-            filePath = Path.of(config.logDir() + "/" + fileName).normalize();
-            if (!filePath.startsWith(config.logDir())) {
-                errorMessages.add("Provided file path is invalid");
-                //Don't even go further for this one.
-                return new LogReadResponse(
-                        config.friendlyName(),
-                        null,
-                        errorMessages);
+        Path filePath = fileName == null ? null : ReadValidation.resolvePath(config, fileName, errorMessages);
+        if (fileName == null) {
+            errorMessages.add("A fileName is required for raw logs");
+        } else if (filePath != null) {
+            File logFile = filePath.toFile();
+            ReadValidation.checkReadable(logFile, errorMessages);
+            if (errorMessages.isEmpty() && !logFile.isFile()) {
+                errorMessages.add("Raw logs can only be read from a single file");
+            } else if (errorMessages.isEmpty() && !LogReadRequestHandler.isReadableFile(filePath)) {
+                errorMessages.add("The specified file is not a text file");
             }
-        } else {
-            filePath = Path.of(config.logDir());
         }
-
-        if (logLines != null && logLines < 1) {
-            errorMessages.add("Requested log lines must be > 0");
+        if (tailLines != null && tailLines < 1) {
+            errorMessages.add("Requested tail lines must be > 0");
         }
+        if (tailLines != null && range != null) {
+            errorMessages.add("Only one of tailLines or a Range may be requested");
+        }
+        if (!errorMessages.isEmpty()) {
+            writeErrors(response, HttpStatus.BAD_REQUEST, errorMessages);
+            return;
+        }
+
+        ReadSettings settings = getReadSettings();
+        try (FileHandleCache.Handle handle = settings.open(filePath)) {
+            long fileSize = handle.size();
+            RawLogHandler.ByteRange byteRange;
+            try {
+                byteRange = RawLogHandler.parseRange(range, fileSize);
+            } catch (LogReaderException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize);
+                writeErrors(response, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, List.of(e.getMessage()));
+                return;
+            }
 
-        File logFile = filePath.toFile();
+            boolean gzip = byteRange == null && RawLogHandler.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+            if (byteRange != null) {
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE,
+                        String.format("bytes %d-%d/%d", byteRange.start(), byteRange.end() - 1, fileSize));
+            } else if (tailLines != null) {
+                ScanBudget budget = newBudget(cancellation);
+                RawLogHandler.Tail tail;
+                try {
+                    tail = findTail(handle, tailLines, settings.deviceOf(filePath), budget);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    writeErrors(response, HttpStatus.SERVICE_UNAVAILABLE, List.of("Interrupted while waiting to read the file"));
+                    return;
+                }
+                if (tail == null) {
+                    writeErrors(response, HttpStatus.SERVICE_UNAVAILABLE, List.of(ScanBudget.REQUEST_CANCELLED));
+                    return;
+                }
+                if (!tail.complete()) {
+                    response.setHeader(PARTIAL_HEADER, budgetErrors(budget).get(0));
+                }
+                byteRange = new RawLogHandler.ByteRange(tail.offset(), fileSize);
+            } else {
+                byteRange = new RawLogHandler.ByteRange(0, fileSize);
+            }
+
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            if (gzip) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                try (GZIPOutputStream gzipStream = new GZIPOutputStream(response.getOutputStream(), 64 * 1024)) {
+                    RawLogHandler.transfer(handle.channel(), byteRange.start(), byteRange.end(), Channels.newChannel(gzipStream));
+                }
+                return;
+            }
 
-        // We validate the dir on startup, this should only happen if an invalid path is passed in the API
-        if (!logFile.exists()){
-            errorMessages.add("The log files specified do not exist");
-        } else if (!logFile.canRead()) {
-            errorMessages.add("The log files specified cannot be read");
+            response.setContentLengthLong(byteRange.length());
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+                // Let the container hand the file straight to the socket once the request completes
+                request.setAttribute(SENDFILE_FILENAME, filePath.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, byteRange.start());
+                request.setAttribute(SENDFILE_END, byteRange.end());
+            } else {
+                RawLogHandler.transfer(handle.channel(), byteRange.start(), byteRange.end(), Channels.newChannel(response.getOutputStream()));
+            }
         }
+    }
+
+    /**
+     * Finds the tail of a file while holding a scan permit for its device
+     *
+     * @return the {@link RawLogHandler.Tail}, or null if the request was cancelled while waiting for a permit
+     */
+    private static RawLogHandler.Tail findTail(FileHandleCache.Handle handle, int tailLines, Object device, ScanBudget budget)
+            throws IOException, InterruptedException {
+        if (!budget.acquireScan(device)) {
+            return null;
+        }
+        try {
+            return RawLogHandler.findTail(handle, handle.charset(), tailLines, budget);
+        } finally {
+            budget.releaseScan(device);
+        }
+    }
+
+    /**
+     * Reads a validated request, sharing the read with any identical request already in flight. The shared read is
+     * only cancelled once every request waiting on it has been.
+     */
+    private LogReadResponse read(ReadValidation.ValidatedRead read, CancellationToken cancellation) {
+        return inFlightReads.execute(
+                new ReadKey(read.filePath(), read.request()),
+                cancellation,
+                shared -> readWithinBudget(read.logFile(), read.request(), shared));
+    }
 
-        if (errorMessages.isEmpty()) {
-            logFiles = LogReadRequestHandler.readLogs(
-                    logFile,
-                    logLines != null ? logLines : config.defaultLineLimit(),
-                    searchTerm,
-                    config.logDir().length());
+    private static boolean isComplete(LogReadResponse response) {
+        if (!response.errors().isEmpty()) {
+            return false;
         }
+        return response.logFiles() == null || response.logFiles().stream().allMatch(logFile -> logFile.error() == null);
+    }
+
+    private ReadSettings getReadSettings() {
+        return readSettings != null ? readSettings : ReadSettings.defaults();
+    }
 
-        return new LogReadResponse(
+    /**
+     * @return the server settings that change what a /logs response holds, for the ETag
+     */
+    private String getServerState() {
+        return String.join("|",
                 config.friendlyName(),
-                logFiles,
-                errorMessages);
+                config.logDir(),
+                String.valueOf(config.maxScanBytes()),
+                String.valueOf(config.maxResponseBytes()));
+    }
+
+    private void writeErrors(HttpServletResponse response, HttpStatus status, List<String> errorMessages) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        MAPPER.writeValue(response.getOutputStream(), new LogReadResponse(config.friendlyName(), null, errorMessages));
+    }
+
+    /**
+     * Reads the logs for a validated request, limited by the configured scan budget
+     *
+     * @param logFile the file/directory to read
+     * @param request the {@link LogReadRequest} to read with
+     * @param cancellation the {@link CancellationToken} to stop reading on
+     * @return the {@link LogReadResponse}, flagged as partial if the budget ran out or the read was cancelled
+     */
+    private LogReadResponse readWithinBudget(File logFile, LogReadRequest request, CancellationToken cancellation) {
+        ScanBudget budget = newBudget(cancellation);
+        RequestEvent event = new RequestEvent();
+        event.begin();
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                logFile,
+                request,
+                getReadSettings(),
+                budget,
+                config.logDir().length());
+        event.finish(getReadSettings(), config.logDir().length(), logFile, request, logFiles, budget);
+        return new LogReadResponse(config.friendlyName(), logFiles, budgetErrors(budget));
+    }
+
+    private ScanBudget newBudget(CancellationToken cancellation) {
+        return new ScanBudget(
+                scanScheduler,
+                config.maxScanBytes() != null ? config.maxScanBytes() : -1,
+                config.maxResponseBytes() != null ? config.maxResponseBytes() : -1,
+                cancellation);
+    }
+
+    /**
+     * @return an error for the whole request if the budget ran out or the read was cancelled
+     */
+    private static List<String> budgetErrors(ScanBudget budget) {
+        List<String> errorMessages = new ArrayList<>();
+        if (budget.isExhausted()) {
+            errorMessages.add(ScanBudget.REQUEST_BUDGET_EXHAUSTED);
+        } else if (budget.isCancelled()) {
+            errorMessages.add(ScanBudget.REQUEST_CANCELLED);
+        }
+        return errorMessages;
+    }
+
+    /**
+     * The normalized query used to find identical in-flight reads
+     */
+    private record ReadKey(Path filePath, LogReadRequest request) {
     }
 }
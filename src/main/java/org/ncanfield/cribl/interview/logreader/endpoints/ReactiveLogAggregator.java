@@ -0,0 +1,204 @@
+package org.ncanfield.cribl.interview.logreader.endpoints;
+
+import org.ncanfield.cribl.interview.logreader.config.LogReaderConfig;
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.models.FieldFilter;
+import org.ncanfield.cribl.interview.logreader.models.LogAggregateResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchAggregateResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchRequest;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogLineEvent;
+import org.ncanfield.cribl.interview.logreader.models.LogReadParams;
+import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.utils.HttpUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The /aggregate endpoints for the reactive stack, used when WEB_STACK is reactive. Every server is called at once
+ * with a non-blocking {@link WebClient}, so no thread waits on a slow server.
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RestController
+public class ReactiveLogAggregator {
+    private static final Logger LOGGER = Logger.getLogger("ReactiveLogAggregator");
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Autowired
+    private LogReaderConfig config;
+
+    @Autowired
+    private ReactiveLogReader logReader;
+
+    private final WebClient webClient;
+
+    public ReactiveLogAggregator(WebClient.Builder webClientBuilder) {
+        this.webClient = webClientBuilder.build();
+    }
+
+    /**
+     * Aggregates logs from every configured server the same way as {@link LogAggregator}, in the configured order
+     */
+    @GetMapping("/aggregate")
+    public Mono<LogAggregateResponse> aggregateLogs(@RequestParam(required = false) String fileName,
+                                                    @RequestParam(required = false) Integer logLines,
+                                                    @RequestParam(required = false) String searchTerm,
+                                                    @RequestParam(required = false) String mode,
+                                                    @RequestParam(required = false) boolean followRotations,
+                                                    @RequestParam(required = false) String filter,
+                                                    @RequestParam(required = false) Integer before,
+                                                    @RequestParam(required = false) Integer after,
+                                                    @RequestParam(required = false) List<String> cursor) {
+        LogReadParams params = new LogReadParams(fileName, logLines, searchTerm, mode, followRotations, filter, before, after, cursor);
+        List<String> errors = validate(params);
+        ReadValidation.checkCursors(cursor, followRotations, errors);
+        if (!errors.isEmpty()) {
+            return Mono.just(new LogAggregateResponse(null, errors));
+        }
+        ReadMode readMode = ReadMode.fromParam(mode);
+
+        List<Mono<LogReadResponse>> responses = new ArrayList<>();
+        for (String server : config.logServers()) {
+            if ("self".equalsIgnoreCase(server)) {
+                responses.add(logReader.readLogs(params));
+            } else {
+                String fullUrl = HttpUtils.makeUrl(server, "/logs", params);
+                responses.add(webClient.get()
+                        // Already encoded by makeUrl, so it mustn't be expanded as a template and encoded again
+                        .uri(URI.create(fullUrl))
+                        .retrieve()
+                        .bodyToMono(LogReadResponse.class)
+                        .timeout(TIMEOUT)
+                        .onErrorResume(e -> {
+                            LOGGER.info("Exception calling " + fullUrl + ": " + e.getMessage());
+                            return Mono.just(new LogReadResponse(fullUrl, null, List.of(HttpUtils.FETCH_ERROR)));
+                        }));
+            }
+        }
+        // Every server is subscribed to straight away, responses are just kept in the configured order
+        return Flux.mergeSequential(responses)
+                .collectList()
+                .map(serverLogs -> new LogAggregateResponse(
+                        serverLogs,
+                        readMode == ReadMode.PATTERNS ? LogAggregator.mergePatterns(serverLogs) : null,
+                        new ArrayList<>()));
+    }
+
+    /**
+     * Streams lines from every configured server as newline delimited JSON, in whatever order they arrive. Each
+     * {@link LogLineEvent} is tagged with the server it came from, and a server that fails gets a single event with
+     * its error.
+     */
+    @GetMapping(value = "/aggregate/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<LogLineEvent> streamLogs(@RequestParam(required = false) String fileName,
+                                         @RequestParam(required = false) Integer logLines,
+                                         @RequestParam(required = false) String searchTerm,
+                                         @RequestParam(required = false) boolean followRotations,
+                                         @RequestParam(required = false) String filter,
+                                         @RequestParam(required = false) Integer before,
+                                         @RequestParam(required = false) Integer after) {
+        LogReadParams params = LogReadParams.of(fileName, logLines, searchTerm)
+                .withFollowRotations(followRotations)
+                .withFilter(filter)
+                .withContext(before, after);
+        List<String> errors = validate(params);
+        if (!errors.isEmpty()) {
+            return Flux.fromIterable(errors).map(error -> new LogLineEvent(null, null, null, error));
+        }
+
+        List<Flux<LogLineEvent>> streams = new ArrayList<>();
+        for (String server : config.logServers()) {
+            if ("self".equalsIgnoreCase(server)) {
+                streams.add(logReader.streamLogs(params));
+            } else {
+                String fullUrl = HttpUtils.makeUrl(server, "/logs/stream", params);
+                streams.add(webClient.get()
+                        .uri(URI.create(fullUrl))
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .retrieve()
+                        .bodyToFlux(LogLineEvent.class)
+                        .timeout(TIMEOUT)
+                        .onErrorResume(e -> {
+                            LOGGER.info("Exception calling " + fullUrl + ": " + e.getMessage());
+                            return Mono.just(new LogLineEvent(fullUrl, null, null, HttpUtils.FETCH_ERROR));
+                        }));
+            }
+        }
+        return Flux.merge(streams);
+    }
+
+    /**
+     * Sends a batch to every configured server the same way as {@link LogAggregator#aggregateBatch}, in the configured
+     * order
+     */
+    @PostMapping("/aggregate/batch")
+    public Mono<LogBatchAggregateResponse> aggregateBatch(@RequestBody LogBatchRequest batch) {
+        List<String> errors = new ArrayList<>();
+        ReadValidation.checkQueries(batch, null, errors);
+        if (!errors.isEmpty()) {
+            return Mono.just(new LogBatchAggregateResponse(null, errors));
+        }
+
+        List<Mono<LogBatchResponse>> responses = new ArrayList<>();
+        for (String server : config.logServers()) {
+            if ("self".equalsIgnoreCase(server)) {
+                responses.add(logReader.readBatch(batch));
+            } else {
+                String fullUrl = server + "/logs/batch";
+                responses.add(webClient.post()
+                        .uri(fullUrl)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(batch)
+                        .retrieve()
+                        .bodyToMono(LogBatchResponse.class)
+                        .timeout(TIMEOUT)
+                        .onErrorResume(e -> {
+                            LOGGER.info("Exception calling " + fullUrl + ": " + e.getMessage());
+                            return Mono.just(new LogBatchResponse(fullUrl, null, List.of(HttpUtils.FETCH_ERROR)));
+                        }));
+            }
+        }
+        return Flux.mergeSequential(responses)
+                .collectList()
+                .map(serverLogs -> new LogBatchAggregateResponse(serverLogs, new ArrayList<>()));
+    }
+
+    /**
+     * Catches parameters that can't be valid on any server, the same way as {@link LogAggregator}
+     */
+    private static List<String> validate(LogReadParams params) {
+        List<String> errors = new ArrayList<>();
+        if (params.logLines() != null && params.logLines() < 1) {
+            errors.add("Requested log lines must be > 0");
+        } else if (ReadMode.fromParam(params.mode()) == null) {
+            errors.add("Requested mode is not supported");
+        } else {
+            try {
+                FieldFilter.parse(params.filter());
+            } catch (LogReaderException e) {
+                errors.add("Requested filter is not valid: " + e.getMessage());
+            }
+        }
+        if (errors.isEmpty()) {
+            ReadValidation.checkContext(params.before(), "before", errors);
+            ReadValidation.checkContext(params.after(), "after", errors);
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,190 @@
+package org.ncanfield.cribl.interview.logreader.endpoints;
+
+import org.ncanfield.cribl.interview.logreader.config.LogReaderConfig;
+import org.ncanfield.cribl.interview.logreader.handlers.BatchReadHandler;
+import org.ncanfield.cribl.interview.logreader.handlers.ReactiveLogReadHandler;
+import org.ncanfield.cribl.interview.logreader.handlers.ReadSettings;
+import org.ncanfield.cribl.interview.logreader.handlers.ScanBudget;
+import org.ncanfield.cribl.interview.logreader.handlers.ScanScheduler;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchRequest;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogLineEvent;
+import org.ncanfield.cribl.interview.logreader.models.LogReadParams;
+import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+import org.ncanfield.cribl.interview.logreader.profiling.RequestEvent;
+import org.ncanfield.cribl.interview.logreader.utils.CancellationToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The /logs endpoints for the reactive stack, used when WEB_STACK is reactive. Files are read as back-pressured streams
+ * by {@link ReactiveLogReadHandler}, so a slow client doesn't hold a thread while it catches up.
+ * <p/>
+ * /logs/raw, ETags and sharing identical in-flight reads are only on the servlet stack, see {@link LogReader}.
+ */
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RestController
+public class ReactiveLogReader {
+    static final String ENDED = "The request ended before the read finished";
+
+    @Autowired
+    private LogReaderConfig config;
+
+    @Autowired
+    private ScanScheduler scanScheduler;
+
+    @Autowired
+    private ReadSettings readSettings;
+
+    /**
+     * Reads logs the same way as {@link LogReader#readLogs}, returning the response once every file has been read
+     */
+    @GetMapping("/logs")
+    public Mono<LogReadResponse> readLogs(@RequestParam(required = false) String fileName,
+                                          @RequestParam(required = false) Integer logLines,
+                                          @RequestParam(required = false) String searchTerm,
+                                          @RequestParam(required = false) String mode,
+                                          @RequestParam(required = false) boolean followRotations,
+                                          @RequestParam(required = false) String filter,
+                                          @RequestParam(required = false) Integer before,
+                                          @RequestParam(required = false) Integer after,
+                                          @RequestParam(required = false) List<String> cursor) {
+        return readLogs(new LogReadParams(fileName, logLines, searchTerm, mode, followRotations, filter, before, after, cursor));
+    }
+
+    /**
+     * Reads logs for the parameters of a /logs request, which aggregators on this server call directly
+     *
+     * @param params the {@link LogReadParams} the request was sent with
+     * @return the {@link LogReadResponse}
+     */
+    public Mono<LogReadResponse> readLogs(LogReadParams params) {
+        return validate(params).flatMap(read -> {
+            if (!read.errors().isEmpty()) {
+                return Mono.just(new LogReadResponse(config.friendlyName(), null, read.errors()));
+            }
+            CancellationToken cancellation = new CancellationToken();
+            ScanBudget budget = newBudget(cancellation);
+            RequestEvent event = new RequestEvent();
+            event.begin();
+            return ReactiveLogReadHandler.readLogs(read.logFile(), read.request(), getReadSettings(), budget, config.logDir().length())
+                    .map(logFiles -> {
+                        event.finish(getReadSettings(), config.logDir().length(), read.logFile(), read.request(), logFiles, budget);
+                        List<String> errorMessages = new ArrayList<>();
+                        if (budget.isExhausted()) {
+                            errorMessages.add(ScanBudget.REQUEST_BUDGET_EXHAUSTED);
+                        }
+                        return new LogReadResponse(config.friendlyName(), logFiles, errorMessages);
+                    })
+                    .doOnCancel(() -> cancellation.cancel(ENDED));
+        });
+    }
+
+    /**
+     * Streams the selected lines as newline delimited JSON, one {@link LogLineEvent} per line, as they're read. Lines
+     * are only read as fast as the client takes them, and the read stops as soon as the client goes away.
+     * <p/>
+     * Patterns mode isn't streamed, as patterns can't be known until every line has been read.
+     */
+    @GetMapping(value = "/logs/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<LogLineEvent> streamLogs(@RequestParam(required = false) String fileName,
+                                         @RequestParam(required = false) Integer logLines,
+                                         @RequestParam(required = false) String searchTerm,
+                                         @RequestParam(required = false) boolean followRotations,
+                                         @RequestParam(required = false) String filter,
+                                         @RequestParam(required = false) Integer before,
+                                         @RequestParam(required = false) Integer after) {
+        return streamLogs(LogReadParams.of(fileName, logLines, searchTerm)
+                .withFollowRotations(followRotations)
+                .withFilter(filter)
+                .withContext(before, after));
+    }
+
+    /**
+     * Streams the lines for the parameters of a /logs/stream request, which aggregators on this server call directly.
+     * Any mode or cursors in params are ignored.
+     *
+     * @param params the {@link LogReadParams} the request was sent with
+     * @return the {@link LogLineEvent}s
+     */
+    public Flux<LogLineEvent> streamLogs(LogReadParams params) {
+        return validate(params.withMode(null).withCursors(null)).flatMapMany(read -> {
+            if (!read.errors().isEmpty()) {
+                return Flux.fromIterable(read.errors())
+                        .map(error -> new LogLineEvent(config.friendlyName(), null, null, error));
+            }
+            CancellationToken cancellation = new CancellationToken();
+            ScanBudget budget = newBudget(cancellation);
+            Flux<LogLineEvent> lines = ReactiveLogReadHandler.streamLogs(
+                    config.friendlyName(), read.logFile(), read.request(), getReadSettings(), budget, config.logDir().length());
+            return lines
+                    .concatWith(Mono.fromSupplier(() -> budget.isExhausted() ?
+                            new LogLineEvent(config.friendlyName(), null, null, ScanBudget.REQUEST_BUDGET_EXHAUSTED) :
+                            null))
+                    .doOnCancel(() -> cancellation.cancel(ENDED));
+        });
+    }
+
+    /**
+     * Answers a batch the same way as {@link LogReader#readBatch}. A batch reads each file once for every query, so
+     * it's read on the bounded elastic scheduler as a whole rather than as a stream.
+     */
+    @PostMapping("/logs/batch")
+    public Mono<LogBatchResponse> readBatch(@RequestBody LogBatchRequest batch) {
+        // Checking the file touches the filesystem, so it's kept off the event loop along with the read
+        return Mono.fromCallable(() -> ReadValidation.validateBatch(config, batch))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(read -> {
+                    if (!read.errors().isEmpty()) {
+                        return Mono.just(new LogBatchResponse(config.friendlyName(), null, read.errors()));
+                    }
+                    CancellationToken cancellation = new CancellationToken();
+                    ScanBudget budget = newBudget(cancellation);
+                    return Mono.fromCallable(() -> BatchReadHandler.readLogs(
+                                    read.logFile(), read.requests(), batch.followRotations(), getReadSettings(), budget,
+                                    config.logDir().length()))
+                            .map(logFiles -> {
+                                List<String> errorMessages = new ArrayList<>();
+                                if (budget.isExhausted()) {
+                                    errorMessages.add(ScanBudget.REQUEST_BUDGET_EXHAUSTED);
+                                }
+                                return new LogBatchResponse(
+                                        config.friendlyName(), BatchReadHandler.toResults(batch.queries(), logFiles), errorMessages);
+                            })
+                            .doOnCancel(() -> cancellation.cancel(ENDED));
+                });
+    }
+
+    /**
+     * Validates a read once it's subscribed to. Checking the file touches the filesystem, so it's done on the bounded
+     * elastic scheduler rather than the event loop.
+     */
+    private Mono<ReadValidation.ValidatedRead> validate(LogReadParams params) {
+        return Mono.fromCallable(() -> ReadValidation.validate(config, params))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private ScanBudget newBudget(CancellationToken cancellation) {
+        return new ScanBudget(
+                scanScheduler,
+                config.maxScanBytes() != null ? config.maxScanBytes() : -1,
+                config.maxResponseBytes() != null ? config.maxResponseBytes() : -1,
+                cancellation);
+    }
+
+    private ReadSettings getReadSettings() {
+        return readSettings != null ? readSettings : ReadSettings.defaults();
+    }
+}
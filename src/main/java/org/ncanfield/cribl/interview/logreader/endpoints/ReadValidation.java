@@ -0,0 +1,301 @@
+package org.ncanfield.cribl.interview.logreader.endpoints;
+
+import org.ncanfield.cribl.interview.logreader.config.LogReaderConfig;
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.handlers.LogRoots;
+import org.ncanfield.cribl.interview.logreader.handlers.StandingQueries;
+import org.ncanfield.cribl.interview.logreader.models.FieldFilter;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchRequest;
+import org.ncanfield.cribl.interview.logreader.models.LogCursor;
+import org.ncanfield.cribl.interview.logreader.models.LogQuery;
+import org.ncanfield.cribl.interview.logreader.models.LogReadParams;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.utils.AhoCorasick;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the parameters of a /logs, /logs/batch or /queries request, shared by the blocking and reactive endpoints
+ */
+final class ReadValidation {
+    // Context lines newer than a match are held in memory until it's found, so this bounds that per file being read
+    static final int MAX_CONTEXT_LINES = 1000;
+    static final int MAX_BATCH_QUERIES = AhoCorasick.MAX_PATTERNS;
+    // The batch's search terms are built into a table of 1KB per byte, so this bounds it at 4MB
+    static final int MAX_BATCH_SEARCH_BYTES = 4096;
+    // Every file read looks through all of the cursors for its own
+    static final int MAX_CURSORS = 1000;
+
+    private ReadValidation() {
+    }
+
+    /**
+     * Checks the parameters of a /logs request and builds the {@link LogReadRequest} for it
+     *
+     * @param config the server's {@link LogReaderConfig}
+     * @param params the {@link LogReadParams} the request was sent with
+     * @return the {@link ValidatedRead}, with any errors found
+     */
+    static ValidatedRead validate(LogReaderConfig config, LogReadParams params) {
+        List<String> errorMessages = new ArrayList<>();
+        Path filePath = resolvePath(config, params.fileName(), errorMessages);
+        if (filePath == null) {
+            //Don't even go further for this one.
+            return new ValidatedRead(null, null, null, errorMessages);
+        }
+
+        if (params.logLines() != null && params.logLines() < 1) {
+            errorMessages.add("Requested log lines must be > 0");
+        }
+
+        ReadMode readMode = ReadMode.fromParam(params.mode());
+        if (readMode == null) {
+            errorMessages.add("Requested mode is not supported");
+        }
+
+        if (readMode == ReadMode.SAMPLE && params.followRotations()) {
+            errorMessages.add("Sample mode can't be used with followRotations");
+        }
+        if (readMode == ReadMode.SAMPLE && params.cursors() != null && !params.cursors().isEmpty()) {
+            errorMessages.add("Cursors can't be used in sample mode");
+        }
+
+        checkContext(params.before(), "before", errorMessages);
+        checkContext(params.after(), "after", errorMessages);
+
+        FieldFilter fieldFilter = null;
+        try {
+            fieldFilter = FieldFilter.parse(params.filter());
+        } catch (LogReaderException e) {
+            errorMessages.add("Requested filter is not valid: " + e.getMessage());
+        }
+
+        List<LogCursor> logCursors = checkCursors(params.cursors(), params.followRotations(), errorMessages);
+
+        File logFile = filePath.toFile();
+        checkReadable(logFile, errorMessages);
+
+        LogReadRequest request = new LogReadRequest(
+                params.logLines() != null ? params.logLines() : config.defaultLineLimit(),
+                params.searchTerm(),
+                readMode,
+                params.followRotations(),
+                fieldFilter,
+                params.before() != null ? params.before() : 0,
+                params.after() != null ? params.after() : 0,
+                logCursors);
+        return new ValidatedRead(logFile, filePath, request, errorMessages);
+    }
+
+    /**
+     * Checks a /logs/batch request and builds the {@link LogReadRequest} for each of its queries
+     *
+     * @param config the server's {@link LogReaderConfig}
+     * @param batch the {@link LogBatchRequest}
+     * @return the {@link ValidatedBatch}, with any errors found
+     */
+    static ValidatedBatch validateBatch(LogReaderConfig config, LogBatchRequest batch) {
+        List<String> errorMessages = new ArrayList<>();
+        List<LogReadRequest> requests = checkQueries(batch, config.defaultLineLimit(), errorMessages);
+        if (!errorMessages.isEmpty()) {
+            return new ValidatedBatch(null, null, null, errorMessages);
+        }
+        Path filePath = resolvePath(config, batch.fileName(), errorMessages);
+        if (filePath == null) {
+            return new ValidatedBatch(null, null, null, errorMessages);
+        }
+        File logFile = filePath.toFile();
+        checkReadable(logFile, errorMessages);
+        return new ValidatedBatch(logFile, filePath, requests, errorMessages);
+    }
+
+    /**
+     * Checks the queries of a batch, adding an error naming the query for each problem found
+     *
+     * @param batch the {@link LogBatchRequest}
+     * @param defaultLineLimit the line limit for queries that don't give one
+     * @param errorMessages the list to add errors to
+     * @return a {@link LogReadRequest} per query, only meaningful if no errors were added
+     */
+    static List<LogReadRequest> checkQueries(LogBatchRequest batch, Integer defaultLineLimit, List<String> errorMessages) {
+        List<LogReadRequest> requests = new ArrayList<>();
+        if (batch == null || batch.queries() == null || batch.queries().isEmpty()) {
+            errorMessages.add("A batch needs at least one query");
+            return requests;
+        }
+        if (batch.queries().size() > MAX_BATCH_QUERIES) {
+            errorMessages.add(String.format("A batch may have at most %d queries", MAX_BATCH_QUERIES));
+            return requests;
+        }
+
+        int searchBytes = 0;
+        for (int i = 0; i < batch.queries().size(); i++) {
+            LogQuery query = batch.queries().get(i);
+            // Queries are numbered from 1 in errors
+            String prefix = String.format("Query %d: ", i + 1);
+            if (query == null) {
+                errorMessages.add(prefix + "Query is missing");
+                continue;
+            }
+            if (query.logLines() != null && query.logLines() < 1) {
+                errorMessages.add(prefix + "Requested log lines must be > 0");
+            }
+            FieldFilter fieldFilter = null;
+            try {
+                fieldFilter = FieldFilter.parse(query.filter());
+            } catch (LogReaderException e) {
+                errorMessages.add(prefix + "Requested filter is not valid: " + e.getMessage());
+            }
+            if (query.searchTerm() != null) {
+                searchBytes += query.searchTerm().getBytes(StandardCharsets.UTF_8).length;
+            }
+            requests.add(new LogReadRequest(
+                    query.logLines() != null ? query.logLines() : defaultLineLimit,
+                    query.searchTerm(),
+                    ReadMode.LINES)
+                    .withFollowRotations(batch.followRotations())
+                    .withFilter(fieldFilter));
+        }
+        if (searchBytes > MAX_BATCH_SEARCH_BYTES) {
+            errorMessages.add(String.format("The search terms of a batch may be at most %d bytes together", MAX_BATCH_SEARCH_BYTES));
+        }
+        return requests;
+    }
+
+    /**
+     * Checks a standing query and builds the {@link LogReadRequest} for it
+     *
+     * @param name the name the query is registered under
+     * @param query the {@link LogQuery}, its line limit is the number of latest matches to keep
+     * @param errorMessages the list to add errors to
+     * @return the {@link LogReadRequest}, only meaningful if no errors were added
+     */
+    static LogReadRequest checkStandingQuery(String name, LogQuery query, List<String> errorMessages) {
+        if (name == null || !StandingQueries.NAME_PATTERN.matcher(name).matches()) {
+            errorMessages.add("Standing query names may only use letters, digits, '.', '_' and '-', up to 64 of them");
+        }
+        if (query == null) {
+            errorMessages.add("Query is missing");
+            return null;
+        }
+        if (query.logLines() != null && (query.logLines() < 1 || query.logLines() > StandingQueries.MAX_MATCHES)) {
+            errorMessages.add(String.format("Requested log lines must be between 1 and %d", StandingQueries.MAX_MATCHES));
+        }
+        FieldFilter fieldFilter = null;
+        try {
+            fieldFilter = FieldFilter.parse(query.filter());
+        } catch (LogReaderException e) {
+            errorMessages.add("Requested filter is not valid: " + e.getMessage());
+        }
+        return new LogReadRequest(
+                query.logLines() != null ? query.logLines() : StandingQueries.DEFAULT_MATCHES,
+                query.searchTerm(),
+                ReadMode.LINES)
+                .withFilter(fieldFilter);
+    }
+
+    /**
+     * Resolves fileName against the log directory and the roots mounted into it, rejecting anything that would end up
+     * outside of them
+     *
+     * @param config the server's {@link LogReaderConfig}
+     * @param fileName the requested file name, or null for the whole log directory
+     * @param errorMessages the list to add an error to if the path is invalid
+     * @return the normalized path, or null if it is invalid
+     */
+    static Path resolvePath(LogReaderConfig config, String fileName, List<String> errorMessages) {
+        if (fileName == null) {
+            return Path.of(config.logDir());
+        }
+        Map<String, Path> mounts = LogRoots.parse(config.logRoots());
+        // The first name of the path may be a root mounted into the log directory
+        Path filePath = mounts.isEmpty() ?
+                Path.of(config.logDir() + "/" + fileName).normalize() :
+                new LogRoots(Path.of(config.logDir()), mounts).resolve(fileName);
+        if (filePath == null || (mounts.isEmpty() && !filePath.startsWith(config.logDir()))) {
+            errorMessages.add("Provided file path is invalid");
+            return null;
+        }
+        return filePath;
+    }
+
+    /**
+     * Checks a number of context lines is in range, adding an error if not
+     *
+     * @param lines the requested number of lines, or null if none were requested
+     * @param name the name of the parameter, for the error
+     * @param errorMessages the list to add an error to
+     */
+    static void checkContext(Integer lines, String name, List<String> errorMessages) {
+        if (lines != null && (lines < 0 || lines > MAX_CONTEXT_LINES)) {
+            errorMessages.add(String.format("Requested %s lines must be between 0 and %d", name, MAX_CONTEXT_LINES));
+        }
+    }
+
+    /**
+     * Decodes the cursors of a request, adding an error if any can't be used
+     *
+     * @param cursors the encoded cursors, or null
+     * @param followRotations whether the request reads rotated files as one log, which cursors can't be used with
+     * @param errorMessages the list to add an error to
+     * @return the decoded {@link LogCursor}s, only meaningful if no error was added
+     */
+    static List<LogCursor> checkCursors(List<String> cursors, boolean followRotations, List<String> errorMessages) {
+        List<LogCursor> decoded = new ArrayList<>();
+        if (cursors == null || cursors.isEmpty()) {
+            return decoded;
+        }
+        if (followRotations) {
+            errorMessages.add("Cursors can't be used with followRotations");
+            return decoded;
+        }
+        if (cursors.size() > MAX_CURSORS) {
+            errorMessages.add(String.format("A request may have at most %d cursors", MAX_CURSORS));
+            return decoded;
+        }
+        for (String cursor : cursors) {
+            try {
+                decoded.add(LogCursor.decode(cursor));
+            } catch (LogReaderException e) {
+                errorMessages.add("Requested cursor is not valid");
+                break;
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Checks that logFile exists and can be read, adding an error if not
+     *
+     * @param logFile the file or directory to check
+     * @param errorMessages the list to add an error to
+     */
+    static void checkReadable(File logFile, List<String> errorMessages) {
+        // We validate the dir on startup, this should only happen if an invalid path is passed in the API
+        if (!logFile.exists()){
+            errorMessages.add("The log files specified do not exist");
+        } else if (!logFile.canRead()) {
+            errorMessages.add("The log files specified cannot be read");
+        }
+    }
+
+    /**
+     * A /logs request after its parameters have been checked. The file, path and request are null if the path itself
+     * was invalid.
+     */
+    record ValidatedRead(File logFile, Path filePath, LogReadRequest request, List<String> errors) {
+    }
+
+    /**
+     * A /logs/batch request after it's been checked, with a {@link LogReadRequest} per query. The file, path and
+     * requests are null if the queries or path were invalid.
+     */
+    record ValidatedBatch(File logFile, Path filePath, List<LogReadRequest> requests, List<String> errors) {
+    }
+}
@@ -0,0 +1,98 @@
+package org.ncanfield.cribl.interview.logreader.endpoints;
+
+import org.ncanfield.cribl.interview.logreader.config.LogReaderConfig;
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.handlers.StandingQueries;
+import org.ncanfield.cribl.interview.logreader.models.LogQuery;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.StandingQueryResponse;
+import org.ncanfield.cribl.interview.logreader.models.StandingQueryResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The /queries endpoints, to register standing queries and read what they've matched. The results are kept up to
+ * date in memory by {@link StandingQueries}, so reading them never touches the files and these are served the same
+ * way on both web stacks.
+ */
+@RestController
+public class StandingQueryReader {
+    private static final Logger LOGGER = Logger.getLogger("StandingQueryReader");
+
+    @Autowired
+    private LogReaderConfig config;
+
+    @Autowired
+    private StandingQueries standingQueries;
+
+    /**
+     * @return the latest results of every standing query
+     */
+    @GetMapping("/queries")
+    public StandingQueryResponse readQueries() {
+        return new StandingQueryResponse(config.friendlyName(), standingQueries.getAll(), List.of());
+    }
+
+    /**
+     * @param name the name of the standing query
+     * @return the latest results of the query
+     */
+    @GetMapping("/queries/{name}")
+    public StandingQueryResponse readQuery(@PathVariable String name) {
+        StandingQueryResult result = standingQueries.get(name);
+        if (result == null) {
+            return notFound(name);
+        }
+        return new StandingQueryResponse(config.friendlyName(), List.of(result), List.of());
+    }
+
+    /**
+     * Registers a standing query, replacing any with the same name. It only matches lines appended from now on.
+     *
+     * @param name the name to register the query under
+     * @param query the {@link LogQuery}, its logLines is the number of latest matches to keep
+     * @return the new query, or the errors that stopped it being registered
+     */
+    @PutMapping("/queries/{name}")
+    public StandingQueryResponse registerQuery(@PathVariable String name, @RequestBody(required = false) LogQuery query) {
+        List<String> errorMessages = new ArrayList<>();
+        LogReadRequest request = ReadValidation.checkStandingQuery(name, query, errorMessages);
+        if (!errorMessages.isEmpty()) {
+            return new StandingQueryResponse(config.friendlyName(), null, errorMessages);
+        }
+        try {
+            return new StandingQueryResponse(config.friendlyName(), List.of(standingQueries.register(name, query, request)), List.of());
+        } catch (LogReaderException e) {
+            return new StandingQueryResponse(config.friendlyName(), null, List.of(e.getMessage()));
+        } catch (IOException e) {
+            LOGGER.warning("Could not watch the log directory: " + e.getMessage());
+            return new StandingQueryResponse(config.friendlyName(), null, List.of("The log directory could not be watched"));
+        }
+    }
+
+    /**
+     * @param name the name of the standing query to remove
+     * @return an empty response, or an error if there was no such query
+     */
+    @DeleteMapping("/queries/{name}")
+    public StandingQueryResponse removeQuery(@PathVariable String name) {
+        if (!standingQueries.remove(name)) {
+            return notFound(name);
+        }
+        return new StandingQueryResponse(config.friendlyName(), List.of(), List.of());
+    }
+
+    private StandingQueryResponse notFound(String name) {
+        return new StandingQueryResponse(config.friendlyName(), null, List.of(String.format("There is no standing query named %s", name)));
+    }
+}
@@ -0,0 +1,204 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogLines;
+import org.ncanfield.cribl.interview.logreader.models.LogQuery;
+import org.ncanfield.cribl.interview.logreader.models.LogQueryResult;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.utils.AhoCorasick;
+import org.ncanfield.cribl.interview.logreader.utils.LogFormat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Answers several queries over the same files with a single read of each file, rather than one read per query.
+ * <p/>
+ * Each line is checked for every query's search term at once with an {@link AhoCorasick} automaton, then against
+ * each query's filter, so a line is read and searched once however many queries there are. A file is read until every
+ * query has its line limit, or to the top if any query has no limit. Each query gets the same lines it would from
+ * /logs, apart from the file's {@link LogFormat} always being detected from its newest line.
+ */
+public class BatchReadHandler {
+    private static final Logger LOGGER = Logger.getLogger("BatchReadHandler");
+    // The batch does its own matching, so the scan returns every line
+    private static final LogReadRequest ALL_LINES = new LogReadRequest(-1, null, ReadMode.LINES);
+
+    private BatchReadHandler() {
+    }
+
+    /**
+     * Reads logFile once for all the queries. If logFile is a directory, it will recursively search it.
+     * <p/>
+     * Files are only scanned once the budget's scheduler allows it, and scanning stops once the budget is exhausted or
+     * the request is cancelled, returning whatever was read up to that point. Files on different devices are read at
+     * the same time, those on the same device one after another. Lines are charged to the budget once for
+     * each query that returns them.
+     *
+     * @param logFile the file/directory to search
+     * @param queries a {@link LogReadRequest} per query, only the line limit, search term and filter are used
+     * @param followRotations whether each set of rotated files is read as one log
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} for this request
+     * @param basePathSize the length of the log directory's path, which is cut off the front of file paths
+     * @return for each query in order, a {@link LogFile} for each file checked
+     */
+    public static List<List<LogFile>> readLogs(File logFile, List<LogReadRequest> queries, boolean followRotations,
+                                               ReadSettings settings, ScanBudget budget, int basePathSize) {
+        List<List<LogFile>> results = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            results.add(new ArrayList<>());
+        }
+        if (queries.isEmpty()) {
+            return results;
+        }
+
+        QuerySet querySet = new QuerySet(queries);
+        List<List<LogFile>> reads = ReadTargets.readByDevice(ReadTargets.find(logFile, followRotations, settings, budget, basePathSize),
+                settings, budget, target -> target.error() != null ?
+                        repeat(target.error(), queries.size()) :
+                        readFile(target, querySet, settings, budget, basePathSize));
+        for (List<LogFile> logFiles : reads) {
+            for (int i = 0; i < queries.size(); i++) {
+                results.get(i).add(logFiles.get(i));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Pairs each query with what it found
+     *
+     * @param queries the queries as they were asked
+     * @param logFiles the {@link LogFile}s for each query, from {@link #readLogs}
+     * @return a {@link LogQueryResult} per query, in order
+     */
+    public static List<LogQueryResult> toResults(List<LogQuery> queries, List<List<LogFile>> logFiles) {
+        List<LogQueryResult> results = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            results.add(new LogQueryResult(queries.get(i), logFiles.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Reads one file, or set of rotated files, for every query, newest line first
+     *
+     * @return a {@link LogFile} per query, in order
+     */
+    private static List<LogFile> readFile(ReadTargets.Target target, QuerySet querySet, ReadSettings settings, ScanBudget budget,
+                                          int basePathSize) {
+        String fileName = target.filePath().getFileName().toString();
+        String filePath = settings.relativePath(target.filePath(), basePathSize);
+        Object device = settings.deviceOf(target.filePath());
+        List<LogReadRequest> queries = querySet.queries;
+        boolean scanPermitted = false;
+        try {
+            if (!budget.acquireScan(device)) {
+                return repeat(new LogFile(fileName, filePath, null, ScanBudget.FILE_CANCELLED), queries.size());
+            }
+            scanPermitted = true;
+            LogLines[] logLines = new LogLines[queries.size()];
+            int[] counts = new int[queries.size()];
+            boolean[] done = new boolean[queries.size()];
+            for (int i = 0; i < queries.size(); i++) {
+                logLines[i] = new LogLines();
+            }
+            int open = queries.size();
+            LogFormat format = null;
+            String error = null;
+
+            try (LineScan scan = LineScan.open(target.filePath(), target.members(), ALL_LINES, settings, budget)) {
+                while (open > 0 && scan.nextLine()) {
+                    byte[] lineBuffer = scan.getLineBuffer();
+                    int lineStart = scan.getLineStart();
+                    int lineEnd = lineStart + scan.getLineLength();
+                    long found = querySet.matcher != null ? querySet.matcher.search(lineBuffer, lineStart, lineEnd) : 0;
+                    for (int i = 0; i < queries.size(); i++) {
+                        LogReadRequest query = queries.get(i);
+                        if (done[i] || (querySet.terms[i] >= 0 && (found & (1L << querySet.terms[i])) == 0)) {
+                            continue;
+                        }
+                        if (query.filter() != null) {
+                            if (format == null) {
+                                format = LogFormat.detect(lineBuffer, lineStart, lineEnd);
+                            }
+                            if (!query.filter().matches(format, lineBuffer, lineStart, lineEnd)) {
+                                continue;
+                            }
+                        }
+                        if (budget.tryChargeReturned(scan.getLineBytes())) {
+                            logLines[i].add(lineBuffer, lineStart, scan.getLineLength(), scan.getCharset());
+                        }
+                        if (query.maxLines() != null && query.maxLines() > 0 && ++counts[i] >= query.maxLines()) {
+                            done[i] = true;
+                            open--;
+                        }
+                    }
+                }
+                // Only flag the file if the budget or a cancellation actually cut it short
+                if (budget.isStopped() && scan.hasMoreData()) {
+                    error = budget.isExhausted() ? ScanBudget.FILE_BUDGET_EXHAUSTED : ScanBudget.FILE_CANCELLED;
+                }
+            }
+
+            List<LogFile> logFiles = new ArrayList<>();
+            for (LogLines lines : logLines) {
+                logFiles.add(new LogFile(fileName, filePath, lines, error));
+            }
+            return logFiles;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return repeat(new LogFile(fileName, filePath, null, "Interrupted while waiting to read the file"), queries.size());
+        } catch (Exception e) {
+            LOGGER.info("Exception reading file: " + e.getMessage());
+            return repeat(new LogFile(fileName, filePath, null, "Encountered an exception reading the file"), queries.size());
+        } finally {
+            if (scanPermitted) {
+                budget.releaseScan(device);
+            }
+        }
+    }
+
+    private static List<LogFile> repeat(LogFile logFile, int times) {
+        List<LogFile> logFiles = new ArrayList<>();
+        for (int i = 0; i < times; i++) {
+            logFiles.add(logFile);
+        }
+        return logFiles;
+    }
+
+    /**
+     * The queries of a batch, with their distinct search terms built into one automaton
+     */
+    private static final class QuerySet {
+        private final List<LogReadRequest> queries;
+        // The automaton's pattern number for each query's search term, or -1 if it has none
+        private final int[] terms;
+        private final AhoCorasick matcher;
+
+        private QuerySet(List<LogReadRequest> queries) {
+            this.queries = queries;
+            this.terms = new int[queries.size()];
+            List<String> distinct = new ArrayList<>();
+            for (int i = 0; i < queries.size(); i++) {
+                String searchTerm = queries.get(i).searchTerm();
+                if (searchTerm == null) {
+                    terms[i] = -1;
+                    continue;
+                }
+                if (!distinct.contains(searchTerm)) {
+                    distinct.add(searchTerm);
+                }
+                terms[i] = distinct.indexOf(searchTerm);
+            }
+            this.matcher = distinct.isEmpty() ?
+                    null :
+                    new AhoCorasick(distinct.stream().map(term -> term.getBytes(StandardCharsets.UTF_8)).toList());
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Steps through the lines a request returns from a {@link LineScan}: each selected line plus the context lines around
+ * it, newest first, in a single pass.
+ * <p/>
+ * Lines newer than a match ("after" it in the file) have already gone past by the time the match is found, so the last
+ * few unselected lines are copied into a small ring buffer and returned ahead of the match. Lines older than a match
+ * ("before" it) are simply the next ones read. Context that overlaps a neighbouring match's is only returned once, and
+ * groups of lines that aren't next to each other in the file are split by a {@link #SEPARATOR} line, the same way grep
+ * does. Memory is bounded by the after context, whatever the size of the file. Without any context, only the matches
+ * are returned.
+ * <p/>
+ * The line limit counts matches only. Once it's reached the before context of the last match is still returned.
+ */
+class ContextScan implements SelectedLines {
+    static final String SEPARATOR = "--";
+    private static final byte[] SEPARATOR_BYTES = SEPARATOR.getBytes(StandardCharsets.UTF_8);
+
+    private final LineScan scan;
+    private final int maxMatches;
+    private final int before;
+    private final ContextRing afterLines;
+    private final boolean withContext;
+
+    private int matches;
+    private int beforeLeft;
+    // Counts non-blank lines from the newest, to tell if a group follows straight on from the last line returned
+    private long lineIndex = -1;
+    private long lastReturned = -1;
+
+    // What's queued to return: a separator, then lines from the ring, then the line the scan is on
+    private boolean separatorQueued;
+    private int ringQueued;
+    private int ringReturned;
+    private boolean currentQueued;
+
+    // The line last returned
+    private byte[] lineBuffer;
+    private int lineStart;
+    private int lineLength;
+    private long lineBytes;
+
+    /**
+     * @param scan the scan to read lines from
+     * @param maxMatches the most matches to return, or 0 or less for no limit
+     * @param before how many lines older than each match to return
+     * @param after how many lines newer than each match to return
+     */
+    ContextScan(LineScan scan, int maxMatches, int before, int after) {
+        this.scan = scan;
+        this.maxMatches = maxMatches;
+        this.before = Math.max(before, 0);
+        this.afterLines = new ContextRing(Math.max(after, 0));
+        this.withContext = before > 0 || after > 0;
+    }
+
+    /**
+     * Moves to the next line to return
+     *
+     * @return true if there's a line, false once the scan runs out, the line limit and its context are reached or the
+     * budget stops the request
+     * @throws IOException if there's an exception reading the file
+     * @throws LogReaderException if there's an issue parsing the file
+     */
+    @Override
+    public boolean next() throws IOException, LogReaderException {
+        while (true) {
+            if (separatorQueued) {
+                separatorQueued = false;
+                setLine(SEPARATOR_BYTES, 0, SEPARATOR_BYTES.length, SEPARATOR_BYTES.length + 1L);
+                return true;
+            }
+            if (ringReturned < ringQueued) {
+                int slot = ringReturned++;
+                setLine(afterLines.buffer(slot), 0, afterLines.length(slot), afterLines.lineBytes(slot));
+                return true;
+            }
+            if (ringQueued > 0) {
+                afterLines.clear();
+                ringQueued = 0;
+                ringReturned = 0;
+            }
+            if (currentQueued) {
+                currentQueued = false;
+                lastReturned = lineIndex;
+                setLine(scan.getLineBuffer(), scan.getLineStart(), scan.getLineLength(), scan.getLineBytes());
+                return true;
+            }
+            boolean limitReached = maxMatches > 0 && matches >= maxMatches;
+            if ((limitReached && beforeLeft == 0) || !scan.nextLine()) {
+                return false;
+            }
+            lineIndex++;
+
+            if (!limitReached && scan.isMatch()) {
+                matches++;
+                beforeLeft = before;
+                long groupStart = lineIndex - afterLines.size();
+                separatorQueued = withContext && lastReturned >= 0 && groupStart > lastReturned + 1;
+                ringQueued = afterLines.size();
+                currentQueued = true;
+            } else if (beforeLeft > 0) {
+                beforeLeft--;
+                currentQueued = true;
+            } else {
+                afterLines.add(scan.getLineBuffer(), scan.getLineStart(), scan.getLineLength(), scan.getLineBytes());
+            }
+        }
+    }
+
+    @Override
+    public boolean hasMoreData() {
+        return scan.hasMoreData();
+    }
+
+    @Override
+    public long getRangeStart() {
+        return scan.getRangeStart();
+    }
+
+    @Override
+    public long getRangeEnd() {
+        return scan.getRangeEnd();
+    }
+
+    @Override
+    public long getPosition() {
+        return scan.getPosition();
+    }
+
+    @Override
+    public byte[] getLineBuffer() {
+        return lineBuffer;
+    }
+
+    @Override
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    @Override
+    public Charset getCharset() {
+        return scan.getCharset();
+    }
+
+    @Override
+    public long getLineBytes() {
+        return lineBytes;
+    }
+
+    @Override
+    public String getLine() {
+        return new String(lineBuffer, lineStart, lineLength, scan.getCharset());
+    }
+
+    @Override
+    public void close() throws IOException {
+        scan.close();
+    }
+
+    private void setLine(byte[] buffer, int start, int length, long bytes) {
+        lineBuffer = buffer;
+        lineStart = start;
+        lineLength = length;
+        lineBytes = bytes;
+    }
+
+    /**
+     * The last few lines read, in the order they were read. Once full, each new line replaces the oldest one read,
+     * reusing its array.
+     */
+    private static final class ContextRing {
+        private final byte[][] buffers;
+        private final int[] lengths;
+        private final long[] lineBytes;
+        private int first;
+        private int size;
+
+        private ContextRing(int capacity) {
+            buffers = new byte[capacity][];
+            lengths = new int[capacity];
+            lineBytes = new long[capacity];
+        }
+
+        private void add(byte[] bytes, int start, int length, long bytesInFile) {
+            if (buffers.length == 0) {
+                return;
+            }
+            int slot;
+            if (size < buffers.length) {
+                slot = (first + size++) % buffers.length;
+            } else {
+                slot = first;
+                first = (first + 1) % buffers.length;
+            }
+            if (buffers[slot] == null || buffers[slot].length < length) {
+                buffers[slot] = new byte[Math.max(length, 128)];
+            }
+            System.arraycopy(bytes, start, buffers[slot], 0, length);
+            lengths[slot] = length;
+            lineBytes[slot] = bytesInFile;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private byte[] buffer(int index) {
+            return buffers[(first + index) % buffers.length];
+        }
+
+        private int length(int index) {
+            return lengths[(first + index) % buffers.length];
+        }
+
+        private long lineBytes(int index) {
+            return lineBytes[(first + index) % buffers.length];
+        }
+
+        private void clear() {
+            first = 0;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.models.LogCursor;
+import org.ncanfield.cribl.interview.logreader.utils.FileHandleCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Matches the {@link LogCursor}s a request carries to the files it reads, and issues the cursors each read leaves
+ * behind.
+ * <p/>
+ * A request can carry cursors for several files, like every file of a directory or the same file on every server of
+ * an aggregate, and each file picks out the one issued for it. Files with no cursor of their own are read as usual,
+ * unless the request is paging back through older lines, where only the files being paged are read. Sets of rotated
+ * files and files read from their segments aren't read straight from one file, so they're never given cursors.
+ */
+final class FileCursors {
+    static final String STALE_CURSOR = "The file has been rotated or truncated since the cursor was issued";
+
+    private FileCursors() {
+    }
+
+    /**
+     * Finds how a file should be read for the cursors of a request
+     *
+     * @param filePath the path of the file, or of the live file for a set of rotated files
+     * @param relativePath the path of the file within the log directory
+     * @param members the files to read newest first, either just filePath or every file in its rotation set
+     * @param cursors the {@link LogCursor}s of the request
+     * @return the {@link Match} for the file
+     * @throws IOException if the file's attributes cannot be read
+     */
+    static Match match(Path filePath, String relativePath, List<Path> members, List<LogCursor> cursors) throws IOException {
+        if (members.size() != 1 || !members.get(0).equals(filePath)) {
+            return new Match(0, 0, false, null, false, false);
+        }
+        BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        long pathKey = hash(relativePath);
+        long fileId = hash(FileHandleCache.identity(attributes).toString());
+
+        boolean pathMatched = false;
+        boolean paging = false;
+        for (LogCursor cursor : cursors) {
+            paging |= cursor.isOlder();
+            if (cursor.pathKey() != pathKey) {
+                continue;
+            }
+            pathMatched = true;
+            if (cursor.fileId() == fileId) {
+                long end = cursor.isOlder() ? cursor.end() : cursor.start();
+                // A truncated file keeps its identity, but the offsets no longer line up
+                boolean truncated = end > attributes.size();
+                return new Match(pathKey, fileId, true, truncated ? null : cursor, truncated, false);
+            }
+        }
+        // Another server's cursor for the same path is fine as long as this server's own is there too
+        return new Match(pathKey, fileId, true, null, pathMatched, !pathMatched && paging);
+    }
+
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has to ship SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * How to read one file for the cursors of a request
+     *
+     * @param pathKey the hash of the file's path, for its new cursors
+     * @param fileId the hash of the file's identity, for its new cursors
+     * @param resumable whether the file can be given cursors at all
+     * @param cursor the cursor to carry on from, or null to read the whole file
+     * @param stale whether the file's cursor no longer fits it, as it's been rotated away or truncated
+     * @param skip whether the file shouldn't be read at all, as the request is paging other files
+     */
+    record Match(long pathKey, long fileId, boolean resumable, LogCursor cursor, boolean stale, boolean skip) {
+
+        /**
+         * @param scan the lines read from the file, once they've all been read
+         * @return the encoded cursor for the lines older than the read got back to, or null if there are none
+         */
+        String olderCursor(SelectedLines scan) {
+            if (!resumable || scan.getPosition() < 0 || !scan.hasMoreData()) {
+                return null;
+            }
+            return new LogCursor(pathKey, fileId, scan.getRangeStart(), scan.getPosition()).encode();
+        }
+
+        /**
+         * @param scan the lines read from the file
+         * @return the encoded cursor for lines written after the read, or null if the read wasn't up to the end of the
+         * file
+         */
+        String newerCursor(SelectedLines scan) {
+            if (!resumable || scan.getRangeEnd() < 0 || (cursor != null && cursor.isOlder())) {
+                return null;
+            }
+            return new LogCursor(pathKey, fileId, scan.getRangeEnd(), -1).encode();
+        }
+
+        /**
+         * @return the encoded cursor to read the file from its start, for a file whose cursor is stale
+         */
+        String restartCursor() {
+            return new LogCursor(pathKey, fileId, 0, -1).encode();
+        }
+    }
+}
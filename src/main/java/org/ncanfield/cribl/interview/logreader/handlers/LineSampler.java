@@ -0,0 +1,332 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogLines;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.LogSample;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.utils.FileHandleCache;
+import org.ncanfield.cribl.interview.logreader.utils.Latin1LineReader;
+import org.ncanfield.cribl.interview.logreader.utils.LogCharset;
+import org.ncanfield.cribl.interview.logreader.utils.LogFormat;
+import org.ncanfield.cribl.interview.logreader.utils.Utf8Bytes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Picks a random sample of a file's lines for {@link ReadMode#SAMPLE}, along with estimates of how many lines the
+ * file has and how many of them match, in time that depends on the size of the sample rather than of the file.
+ * <p/>
+ * Files up to {@link #SCAN_THRESHOLD} are read through once, keeping a uniform sample of their matching lines by
+ * reservoir sampling, so their counts are exact. Larger files are probed at random offsets instead: each probe skips
+ * forward to the start of the next line and reads just that line, until the sample is full and at least
+ * {@link #MIN_PROBES} lines have been looked at, or the probes run out. The line count is estimated from the average
+ * length of the lines probed, so it's only as good as they are typical of the file. A line is picked in proportion to
+ * the length of the one before it, which only skews the sample where line lengths run in streaks.
+ * <p/>
+ * Lines are found by their \n bytes, so ISO-8859-1 files are sampled the same as UTF-8, but UTF-16 files can't be.
+ */
+final class LineSampler {
+    private static final Logger LOGGER = Logger.getLogger("LineSampler");
+    static final String UNSUPPORTED_CHARSET = "UTF-16 files cannot be sampled, read them with another mode";
+    static final long SCAN_THRESHOLD = 4L * 1024 * 1024;
+    static final int DEFAULT_SAMPLE_SIZE = 100;
+    // A search that rarely matches stops after this many probes for each line asked for
+    static final int MAX_PROBES_PER_LINE = 64;
+    // Stopping as soon as the sample is full would leave the match rate resting on a handful of lines
+    static final int MIN_PROBES = 1000;
+    private static final int READ_SIZE = 4096;
+    // Most lines are much shorter than a block, so probes read in small pieces
+    private static final int PROBE_READ_SIZE = 1024;
+
+    private LineSampler() {
+    }
+
+    /**
+     * Samples the lines of filePath that match the request, newest first
+     *
+     * @param filePath the path of the file to sample
+     * @param relativePath the path of the file within the log directory
+     * @param request the {@link LogReadRequest}, its line limit is the size of the sample
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} for this request
+     * @return a {@link LogFile} with the sampled lines and the {@link LogSample} estimates, or an error
+     */
+    static LogFile sample(Path filePath, String relativePath, LogReadRequest request, ReadSettings settings, ScanBudget budget) {
+        String fileName = filePath.getFileName().toString();
+        Object device = settings.deviceOf(filePath);
+        boolean scanPermitted = false;
+        try {
+            if (!budget.acquireScan(device)) {
+                return new LogFile(fileName, relativePath, null, ScanBudget.FILE_CANCELLED);
+            }
+            scanPermitted = true;
+            int sampleSize = request.maxLines() != null && request.maxLines() > 0 ? request.maxLines() : DEFAULT_SAMPLE_SIZE;
+            Sampler sampler = new Sampler(request, settings.maxLineLength(), sampleSize, ThreadLocalRandom.current());
+            try (FileHandleCache.Handle handle = settings.open(filePath)) {
+                LogCharset charset = handle.charset();
+                if (charset.isUtf16()) {
+                    return new LogFile(fileName, relativePath, null, UNSUPPORTED_CHARSET);
+                }
+                sampler.latin1 = !charset.isUtf8();
+                long size = handle.size();
+                if (size <= SCAN_THRESHOLD) {
+                    sampler.scan(handle, size, budget);
+                } else {
+                    sampler.probe(handle, size, budget);
+                }
+                String error = null;
+                if (budget.isStopped()) {
+                    error = budget.isExhausted() ? ScanBudget.FILE_BUDGET_EXHAUSTED : ScanBudget.FILE_CANCELLED;
+                }
+                return new LogFile(fileName, relativePath, sampler.lines(budget), null, error, null, null, sampler.estimate(size));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new LogFile(fileName, relativePath, null, "Interrupted while waiting to read the file");
+        } catch (Exception e) {
+            LOGGER.info("Exception sampling file: " + e.getMessage());
+            return new LogFile(fileName, relativePath, null, "Encountered an exception reading the file");
+        } finally {
+            if (scanPermitted) {
+                budget.releaseScan(device);
+            }
+        }
+    }
+
+    /**
+     * The sample of one file as it's taken
+     */
+    private static final class Sampler {
+        private final byte[] searchBytes;
+        private final LogReadRequest request;
+        private final int maxLineLength;
+        private final int sampleSize;
+        private final Random random;
+        private final List<SampledLine> sample = new ArrayList<>();
+        private LogFormat format;
+        private byte[] lineBuffer = new byte[READ_SIZE];
+        // Whether the file is ISO-8859-1, so lines past ASCII are re-encoded as UTF-8 before they're checked
+        private boolean latin1;
+        private byte[] encoded = new byte[0];
+        // Lines looked at and matched, blank lines aside, and the bytes of every line looked at
+        private long looked;
+        private long matched;
+        private long lookedBytes;
+        private boolean exact;
+
+        private Sampler(LogReadRequest request, int maxLineLength, int sampleSize, Random random) {
+            this.searchBytes = request.searchTerm() != null ? request.searchTerm().getBytes(StandardCharsets.UTF_8) : null;
+            this.request = request;
+            this.maxLineLength = maxLineLength > 0 ? maxLineLength : Integer.MAX_VALUE - 8;
+            this.sampleSize = sampleSize;
+            this.random = random;
+        }
+
+        /**
+         * Reads the whole file, keeping each matching line in the sample with equal chance
+         */
+        private void scan(FileHandleCache.Handle handle, long size, ScanBudget budget) throws IOException {
+            exact = true;
+            ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE * 16);
+            long position = 0;
+            long lineOffset = 0;
+            int lineLength = 0;
+            int read;
+            while (position < size && (read = handle.read(buffer.clear(), position)) > 0) {
+                if (!budget.chargeScanned(read)) {
+                    exact = false;
+                    return;
+                }
+                byte[] bytes = buffer.array();
+                int lineStart = 0;
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] == '\n') {
+                        lineLength = append(bytes, lineStart, i, lineLength);
+                        looked(lineOffset, lineLength, position + i + 1 - lineOffset);
+                        lineLength = 0;
+                        lineStart = i + 1;
+                        lineOffset = position + lineStart;
+                    }
+                }
+                lineLength = append(bytes, lineStart, read, lineLength);
+                position += read;
+            }
+            if (lineOffset < position) {
+                looked(lineOffset, lineLength, position - lineOffset);
+            }
+        }
+
+        /**
+         * Reads single lines from random offsets until the sample is full and there have been enough probes for a fair
+         * match rate, or the probes run out
+         */
+        private void probe(FileHandleCache.Handle handle, long size, ScanBudget budget) throws IOException {
+            long maxProbes = Math.max(MIN_PROBES, (long) sampleSize * MAX_PROBES_PER_LINE);
+            Set<Long> seen = new HashSet<>();
+            ByteBuffer buffer = ByteBuffer.allocate(PROBE_READ_SIZE);
+            for (long probes = 0; probes < maxProbes && (sample.size() < sampleSize || probes < MIN_PROBES) && !budget.isStopped(); probes++) {
+                long lineOffset = nextLineStart(handle, random.nextLong(size), size, buffer, budget);
+                if (lineOffset < 0 || !seen.add(lineOffset)) {
+                    continue;
+                }
+                // Read the line itself, up to the max line length
+                long position = lineOffset;
+                int lineLength = 0;
+                boolean ended = false;
+                while (!ended && position < size && lineLength < maxLineLength) {
+                    int read = handle.read(buffer.clear(), position);
+                    if (read <= 0 || !budget.chargeScanned(read)) {
+                        break;
+                    }
+                    int newline = indexOf(buffer.array(), 0, read, (byte) '\n');
+                    ended = newline >= 0;
+                    lineLength = append(buffer.array(), 0, ended ? newline : read, lineLength);
+                    position += ended ? newline + 1 : read;
+                }
+                // Lines cut off at the max length count as that long, so they don't skew the estimate much further
+                looked(lineOffset, lineLength, position - lineOffset);
+            }
+        }
+
+        /**
+         * @return the offset of the first line starting after offset, wrapping round to the first line of the file if
+         * there's none, or -1 if the budget ran out
+         */
+        private long nextLineStart(FileHandleCache.Handle handle, long offset, long size, ByteBuffer buffer, ScanBudget budget) throws IOException {
+            if (offset == 0) {
+                return 0;
+            }
+            // Start from the byte before, so an offset at the very start of a line picks that line
+            long position = offset - 1;
+            while (position < size) {
+                int read = handle.read(buffer.clear(), position);
+                if (read <= 0 || !budget.chargeScanned(read)) {
+                    return -1;
+                }
+                int newline = indexOf(buffer.array(), 0, read, (byte) '\n');
+                if (newline >= 0) {
+                    long lineStart = position + newline + 1;
+                    return lineStart < size ? lineStart : 0;
+                }
+                position += read;
+            }
+            return 0;
+        }
+
+        /**
+         * Counts a line that's been looked at, and adds it to the sample if it matches. While the sample isn't full
+         * every match goes in, after that the nth match replaces a random one with a chance of sampleSize in n, which
+         * leaves every match with the same chance of being in the sample.
+         */
+        private void looked(long lineOffset, int lineLength, long lineBytes) {
+            lookedBytes += lineBytes;
+            byte[] line = lineBuffer;
+            int end = lineLength > 0 && lineBuffer[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+            if (latin1 && !Utf8Bytes.isAscii(lineBuffer, 0, end)) {
+                if (encoded.length < end * 2) {
+                    encoded = new byte[end * 2];
+                }
+                end = Latin1LineReader.toUtf8(lineBuffer, 0, end, encoded);
+                line = encoded;
+            }
+            if (Utf8Bytes.isBlank(line, 0, end, StandardCharsets.UTF_8)) {
+                return;
+            }
+            looked++;
+            if (!matches(line, end)) {
+                return;
+            }
+            matched++;
+            if (sample.size() < sampleSize) {
+                sample.add(new SampledLine(lineOffset, Arrays.copyOf(line, end)));
+            } else {
+                long slot = random.nextLong(matched);
+                if (slot < sampleSize) {
+                    sample.set((int) slot, new SampledLine(lineOffset, Arrays.copyOf(line, end)));
+                }
+            }
+        }
+
+        private boolean matches(byte[] line, int end) {
+            if (searchBytes != null && Utf8Bytes.indexOf(line, 0, end, searchBytes) < 0) {
+                return false;
+            }
+            if (request.filter() != null) {
+                if (format == null) {
+                    format = LogFormat.detect(line, 0, end);
+                }
+                return request.filter().matches(format, line, 0, end);
+            }
+            return true;
+        }
+
+        private int append(byte[] bytes, int start, int end, int lineLength) {
+            int length = Math.min(end - start, maxLineLength - lineLength);
+            if (length <= 0) {
+                return lineLength;
+            }
+            if (lineLength + length > lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, Math.min(Math.max(lineBuffer.length * 2, lineLength + length), maxLineLength));
+            }
+            System.arraycopy(bytes, start, lineBuffer, lineLength, length);
+            return lineLength + length;
+        }
+
+        private static int indexOf(byte[] bytes, int start, int end, byte value) {
+            for (int i = start; i < end; i++) {
+                if (bytes[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the sampled lines newest first, as far as the budget allows
+         */
+        private LogLines lines(ScanBudget budget) {
+            LogLines lines = new LogLines();
+            sample.sort(Comparator.comparingLong(SampledLine::offset).reversed());
+            for (SampledLine line : sample) {
+                if (budget.tryChargeReturned(line.bytes().length)) {
+                    lines.add(line.bytes(), 0, line.bytes().length, StandardCharsets.UTF_8);
+                }
+            }
+            return lines;
+        }
+
+        /**
+         * @param size the size of the file
+         * @return the estimates for the whole file
+         */
+        private LogSample estimate(long size) {
+            if (exact) {
+                return new LogSample(looked, looked, rate(matched, looked), matched, true);
+            }
+            // Lines per byte looked at, scaled up to the whole file
+            long estimatedLines = lookedBytes > 0 ? Math.round((double) looked * size / lookedBytes) : 0;
+            double matchRate = rate(matched, looked);
+            return new LogSample(looked, estimatedLines, matchRate, Math.round(matchRate * estimatedLines), false);
+        }
+
+        private static double rate(long count, long total) {
+            return total > 0 ? (double) count / total : 0;
+        }
+    }
+
+    private record SampledLine(long offset, byte[] bytes) {
+    }
+}
@@ -0,0 +1,314 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.models.FieldFilter;
+import org.ncanfield.cribl.interview.logreader.models.LogCursor;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.utils.FileHandleCache;
+import org.ncanfield.cribl.interview.logreader.utils.Latin1LineReader;
+import org.ncanfield.cribl.interview.logreader.utils.LogCharset;
+import org.ncanfield.cribl.interview.logreader.utils.LogFormat;
+import org.ncanfield.cribl.interview.logreader.utils.ReverseFileReader;
+import org.ncanfield.cribl.interview.logreader.utils.ReverseLineReader;
+import org.ncanfield.cribl.interview.logreader.utils.RotationChainReader;
+import org.ncanfield.cribl.interview.logreader.utils.SegmentReader;
+import org.ncanfield.cribl.interview.logreader.utils.Utf16ReverseReader;
+import org.ncanfield.cribl.interview.logreader.utils.Utf8Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Steps through the lines of a file newest first, checking which ones a request selects and charging every line read
+ * to the request's {@link ScanBudget}. Both the blocking and reactive reads go through this, by way of
+ * {@link ContextScan} or {@link ParallelScan}, so they select the same lines.
+ * <p/>
+ * A line is selected if it isn't blank, holds the search term and, if the request has a {@link FieldFilter}, its
+ * fields match. The file's {@link LogFormat} is detected from its newest line. Everything is checked on the raw bytes,
+ * so lines that aren't selected are never decoded. Files in other charsets, see {@link LogCharset}, are read as UTF-8.
+ */
+class LineScan implements Closeable {
+    private static final int BUFFER_SIZE = 4096;
+    // Files past this size are read with background read-ahead, so the disk stays busy while lines are scanned
+    private static final long READ_AHEAD_THRESHOLD = 1024 * 1024;
+    private static final int READ_AHEAD_BUFFER_SIZE = 64 * 1024;
+    private static final int READ_AHEAD_BLOCKS = 2;
+
+    private final ReverseLineReader reader;
+    private final byte[] searchBytes;
+    private final FieldFilter filter;
+    private final ScanBudget budget;
+    // The offsets of the file being read, or -1 if lines don't come straight from a single file
+    private final long rangeStart;
+    private final long rangeEnd;
+    private LogFormat format;
+    private long lineBytes;
+
+    private LineScan(ReverseLineReader reader, byte[] searchBytes, FieldFilter filter, ScanBudget budget, long rangeStart,
+                     long rangeEnd) {
+        this.reader = reader;
+        this.searchBytes = searchBytes;
+        this.filter = filter;
+        this.budget = budget;
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+    }
+
+    /**
+     * Opens a scan of a file, or of a set of rotated files as one log
+     *
+     * @param filePath the path of the file, or of the live file for a set of rotated files
+     * @param members the files to read newest first, either just filePath or every file in its rotation set
+     * @param request the {@link LogReadRequest} with the search term and filter to use
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} to charge lines to
+     * @return the new {@link LineScan}
+     * @throws IOException if the file cannot be opened
+     * @throws LogReaderException if the reader cannot be created
+     */
+    static LineScan open(Path filePath, List<Path> members, LogReadRequest request, ReadSettings settings, ScanBudget budget)
+            throws IOException, LogReaderException {
+        return open(filePath, members, request, settings, budget, null);
+    }
+
+    /**
+     * Opens a scan of a file, or of a set of rotated files as one log, carrying on from a cursor if there is one
+     *
+     * @param cursor the {@link LogCursor} for filePath to read the range of, or null to read the whole file
+     */
+    static LineScan open(Path filePath, List<Path> members, LogReadRequest request, ReadSettings settings, ScanBudget budget,
+                         LogCursor cursor) throws IOException, LogReaderException {
+        if (cursor != null) {
+            // Cursors are offsets into the file itself, so it's read directly even if it's been compacted
+            return openRange(filePath, cursor.start(), cursor.end(), request, settings, budget);
+        }
+        byte[] searchBytes = searchBytes(request);
+        // Files that have been compacted are read from their segments instead
+        List<Path> sources = settings.segments() == null ?
+                members :
+                members.stream().map(settings.segments()::resolve).toList();
+        if (members.size() == 1 && members.get(0).equals(filePath)) {
+            if (!isSegment(sources.get(0))) {
+                return openRange(filePath, 0, -1, request, settings, budget);
+            }
+            return new LineScan(new SegmentReader(sources.get(0), searchBytes), searchBytes, request.filter(), budget, -1, -1);
+        }
+        // Older rotations only get opened if the newer ones didn't have enough lines
+        // Inflating a gzipped rotation is charged as it goes, so it stops with the request
+        ReverseLineReader reader = new RotationChainReader(
+                sources,
+                member -> openReader(member, searchBytes, settings),
+                StandardCharsets.UTF_8,
+                bytes -> budget.chargeScanned(bytes) && !budget.isStopped(),
+                RotationChainReader.DEFAULT_MAX_INFLATED_BYTES);
+        return new LineScan(reader, searchBytes, request.filter(), budget, -1, -1);
+    }
+
+    /**
+     * Opens a scan of just the lines between two offsets of a file, see {@link ParallelScan}
+     *
+     * @param filePath the path of the file
+     * @param start the offset of the start of the first line in the range
+     * @param end the offset just past the newline of the last line in the range, or -1 for the current end of the file
+     * @param request the {@link LogReadRequest} with the search term and filter to use
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} to charge lines to
+     * @return the new {@link LineScan}
+     * @throws IOException if the file cannot be opened
+     * @throws LogReaderException if the reader cannot be created
+     */
+    static LineScan openRange(Path filePath, long start, long end, LogReadRequest request, ReadSettings settings, ScanBudget budget)
+            throws IOException, LogReaderException {
+        FileHandleCache.Handle handle = settings.open(filePath);
+        LogCharset charset;
+        long rangeStart;
+        long rangeEnd;
+        try {
+            charset = handle.charset();
+            rangeStart = charset.alignStart(start);
+            // Anything appended after this is left for the next read
+            rangeEnd = charset.alignEnd(rangeStart, end < 0 ? handle.size() : end);
+        } catch (IOException e) {
+            handle.close();
+            throw e;
+        }
+        ReverseLineReader reader = openReader(handle, charset, rangeStart, rangeEnd, settings);
+        return new LineScan(reader, searchBytes(request), request.filter(), budget, rangeStart, rangeEnd);
+    }
+
+    /**
+     * Moves to the next line up that isn't blank, checking the budget before every line so a stopped request ends
+     * straight away. {@link #isMatch()} then says if the line is selected, and its bytes can be found with
+     * {@link #getLineBuffer()}, {@link #getLineStart()} and {@link #getLineLength()}, which are only valid until the
+     * next call.
+     *
+     * @return true if there was a line, false if the file ran out or the budget stopped the request
+     * @throws IOException if there's an exception reading the file
+     * @throws LogReaderException if there's an issue parsing the file
+     */
+    boolean nextLine() throws IOException, LogReaderException {
+        while (reader.hasMoreData() && !budget.isStopped()) {
+            long bytesRead = reader.getBytesRead();
+            boolean hasLine = reader.nextLine();
+            lineBytes = reader.getBytesRead() - bytesRead;
+            budget.chargeScanned(lineBytes);
+            if (hasLine && !Utf8Bytes.isBlank(reader.getLineBuffer(), reader.getLineStart(),
+                    reader.getLineStart() + reader.getLineLength(), reader.getCharset())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the line the scan is on is selected: it has the search term if there is one and matches the filter if
+     * there is one
+     *
+     * @return true if the line is selected
+     */
+    boolean isMatch() {
+        byte[] lineBuffer = reader.getLineBuffer();
+        int lineStart = reader.getLineStart();
+        int lineEnd = lineStart + reader.getLineLength();
+        if (searchBytes != null && Utf8Bytes.indexOf(lineBuffer, lineStart, lineEnd, searchBytes) < 0) {
+            return false;
+        }
+        if (filter == null) {
+            return true;
+        }
+        // The format is worked out from the newest line and kept for the rest of the file
+        if (format == null) {
+            format = LogFormat.detect(lineBuffer, lineStart, lineEnd);
+        }
+        return filter.matches(format, lineBuffer, lineStart, lineEnd);
+    }
+
+    /**
+     * @return true if the file has lines left that weren't scanned
+     */
+    boolean hasMoreData() {
+        return reader.hasMoreData();
+    }
+
+    /**
+     * @return the offset the scan reads back to, or -1 if lines don't come straight from a single file
+     */
+    long getRangeStart() {
+        return rangeStart;
+    }
+
+    /**
+     * @return the offset the scan reads back from, or -1 if lines don't come straight from a single file
+     */
+    long getRangeEnd() {
+        return rangeEnd;
+    }
+
+    /**
+     * @return the offset the scan has got back to, every line from here to {@link #getRangeEnd()} has been scanned, or
+     * -1 if lines don't come straight from a single file
+     */
+    long getPosition() {
+        return rangeEnd < 0 ? -1 : rangeEnd - reader.getBytesRead();
+    }
+
+    byte[] getLineBuffer() {
+        return reader.getLineBuffer();
+    }
+
+    int getLineStart() {
+        return reader.getLineStart();
+    }
+
+    int getLineLength() {
+        return reader.getLineLength();
+    }
+
+    Charset getCharset() {
+        return reader.getCharset();
+    }
+
+    /**
+     * @return the bytes the last line took up in the file, including its newline
+     */
+    long getLineBytes() {
+        return lineBytes;
+    }
+
+    /**
+     * @return the last line decoded
+     */
+    String getLine() {
+        return new String(reader.getLineBuffer(), reader.getLineStart(), reader.getLineLength(), reader.getCharset());
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Opens a {@link ReverseLineReader} for filePath. Segments get a {@link SegmentReader} that skips blocks which can't
+     * hold the search term, and other files a reader for their charset. Files are opened through the settings'
+     * {@link FileHandleCache} if there is one.
+     *
+     * @param filePath the path of the file to read
+     * @param searchBytes the search term as UTF-8, or null
+     * @param settings the server's {@link ReadSettings}
+     * @return a new {@link ReverseLineReader}
+     * @throws IOException if the file cannot be opened
+     * @throws LogReaderException if the reader cannot be created
+     */
+    private static ReverseLineReader openReader(Path filePath, byte[] searchBytes, ReadSettings settings) throws IOException, LogReaderException {
+        if (isSegment(filePath)) {
+            return new SegmentReader(filePath, searchBytes);
+        }
+        FileHandleCache.Handle handle = settings.open(filePath);
+        LogCharset charset;
+        long start;
+        long size;
+        try {
+            charset = handle.charset();
+            start = charset.alignStart(0);
+            size = charset.alignEnd(start, handle.size());
+        } catch (IOException e) {
+            handle.close();
+            throw e;
+        }
+        return openReader(handle, charset, start, size, settings);
+    }
+
+    /**
+     * Opens a reader on bytes start to end of an open file that hands out its lines as UTF-8, whatever the file's
+     * {@link LogCharset}. UTF-8 files get a {@link ReverseFileReader}, using read-ahead for larger ranges where the I/O
+     * is worth overlapping, ISO-8859-1 files the same wrapped in a {@link Latin1LineReader}, and UTF-16 files a
+     * {@link Utf16ReverseReader}. Lines over the max line length are truncated, segments already had theirs truncated
+     * when written.
+     */
+    private static ReverseLineReader openReader(FileHandleCache.Handle handle, LogCharset charset, long start, long end,
+                                                ReadSettings settings) throws IOException, LogReaderException {
+        // The reader closes the handle from here on, even if it fails to start
+        boolean readAhead = end - start > READ_AHEAD_THRESHOLD;
+        if (charset.isUtf16()) {
+            return new Utf16ReverseReader(charset.charset(), handle, start, end, readAhead ? READ_AHEAD_BUFFER_SIZE : BUFFER_SIZE,
+                    settings.maxLineLength());
+        }
+        ReverseLineReader reader = readAhead ?
+                new ReverseFileReader(charset.charset(), handle, start, end, READ_AHEAD_BUFFER_SIZE, READ_AHEAD_BLOCKS,
+                        settings.maxLineLength()) :
+                new ReverseFileReader(charset.charset(), handle, start, end, BUFFER_SIZE, 0, settings.maxLineLength());
+        return charset.isUtf8() ? reader : new Latin1LineReader(reader);
+    }
+
+    private static boolean isSegment(Path filePath) {
+        return filePath.getFileName().toString().endsWith(SegmentStore.EXTENSION);
+    }
+
+    private static byte[] searchBytes(LogReadRequest request) {
+        return request.searchTerm() != null ? request.searchTerm().getBytes(StandardCharsets.UTF_8) : null;
+    }
+}
@@ -0,0 +1,119 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+
+/**
+ * Builds the ETags for /logs responses, so clients and aggregators can skip re-downloading logs that haven't changed.
+ * <p/>
+ * The tag is a hash of the query and the path, size and modification time of every file the query could read. Files
+ * are only ever checked with a stat, never read, so working out the tag is cheap next to reading the logs.
+ */
+public class LogETag {
+    // Half a SHA-256 is plenty to tell versions of a response apart
+    private static final int TAG_BYTES = 16;
+
+    private LogETag() {
+    }
+
+    /**
+     * Works out the ETag for reading logFile with request
+     *
+     * @param logFile the file or directory the request reads
+     * @param request the {@link LogReadRequest} being read
+     * @param settings the server's {@link ReadSettings}
+     * @param serverState anything else about this server that changes the response, like its name and limits
+     * @return the quoted strong ETag
+     */
+    public static String compute(File logFile, LogReadRequest request, ReadSettings settings, String serverState) {
+        MessageDigest digest = newDigest();
+        update(digest, serverState);
+        update(digest, request.toString());
+        update(digest, settings.rotationPattern().pattern());
+        if (logFile.isDirectory()) {
+            addDirectory(digest, logFile);
+            if (settings.roots() != null && settings.roots().isLogDir(logFile.toPath())) {
+                for (Path root : settings.roots().getMounts().values()) {
+                    addDirectory(digest, root.toFile());
+                }
+            }
+        } else if (request.followRotations()) {
+            for (Path member : RotationFamilies.familyOf(logFile, settings.rotationPattern()).members()) {
+                addFile(digest, member.toFile());
+            }
+        } else {
+            addFile(digest, logFile);
+        }
+        return "\"" + HexFormat.of().formatHex(digest.digest(), 0, TAG_BYTES) + "\"";
+    }
+
+    /**
+     * Checks an If-None-Match header against an ETag, using the weak comparison HTTP asks for
+     *
+     * @param ifNoneMatch the header value, or null
+     * @param etag the current ETag
+     * @return true if the client already has this version of the response
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addDirectory(MessageDigest digest, File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            // Unreadable directories show up as an error in the response, which doesn't change while it stays unreadable
+            update(digest, directory.getAbsolutePath() + "|unreadable");
+            return;
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addDirectory(digest, file);
+            } else if (file.isFile()) {
+                addFile(digest, file);
+            }
+        }
+    }
+
+    private static void addFile(MessageDigest digest, File file) {
+        update(digest, file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        // Keeps one value from running into the next
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has to ship SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package org.ncanfield.cribl.interview.logreader.handlers;
 
+import org.ncanfield.cribl.interview.logreader.models.FieldFilter;
 import org.ncanfield.cribl.interview.logreader.models.LogFile;
-import org.ncanfield.cribl.interview.logreader.utils.ReverseFileReader;
+import org.ncanfield.cribl.interview.logreader.models.LogLines;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.profiling.ContentProbeEvent;
+import org.ncanfield.cribl.interview.logreader.profiling.FileScanEvent;
+import org.ncanfield.cribl.interview.logreader.utils.LogFormat;
+import org.ncanfield.cribl.interview.logreader.utils.LogPatternMiner;
 
 import java.io.File;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -23,104 +28,144 @@ public class LogReadRequestHandler {
      * @return A list of {@link LogFile} for each file checked
      */
     public static List<LogFile> readLogs(File logFile, Integer maxLines, String searchTerm, Integer basePathSize) {
-        List<LogFile> logs = new ArrayList<>();
-
-        if (!logFile.exists()) {
-            logs.add(new LogFile(logFile.getName(), logFile.getAbsolutePath().substring(basePathSize + 1), null, "The specified file does not exist"));
-        } else if (logFile.isDirectory()) {
-            if (logFile.listFiles() == null) {
-                // If an unreadable dir was specifically requested, return an error
-                logs.add(new LogFile(logFile.getName(), logFile.getAbsolutePath().substring(basePathSize + 1), null, "This directory could not be accessed"));
-            } else {
-                logs.addAll(readDirectory(logFile, maxLines, searchTerm, basePathSize));
-            }
-        } else if (logFile.isFile()) {
-            if (isReadableFile(logFile.toPath())) {
-                logs.add(readFile(logFile.toPath(), maxLines, searchTerm, basePathSize));
-            } else {
-                // This should only happen if a user specifies a zip file or the like.
-                logs.add(new LogFile(logFile.getName(), logFile.getAbsolutePath().substring(basePathSize + 1), null, "The specified file is not a text file"));
-            }
-        }
-
-        return logs;
+        return readLogs(logFile, new LogReadRequest(maxLines, searchTerm, ReadMode.LINES), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize);
     }
 
     /**
-     * Recursively searches logDir and parses logs found there, or an empty list if it cannot access the directory.
-     * <p>
-     * If the directory cannot be accessed the list will be empty.
+     * Searches logFile for logs and parses any found there. If logFile is a directory, it will recursively search it.
+     * <p/>
+     * Files are only scanned once the budget's scheduler allows it, and scanning stops once the budget is exhausted or
+     * the request is cancelled, returning whatever was read up to that point. If the request follows rotations, each set of rotated files is
+     * read as a single newest-first log. Reading the log directory reads the roots mounted into it too, and files on
+     * different devices are read at the same time, see {@link ReadTargets#readByDevice}.
      *
-     * @param logDir the directory to search
-     * @param maxLines the max lines per file to return, or -1 for unlimited
-     * @param searchTerm the search term to use, or null to return any ines
-     * @return A list of {@link LogFile} for each file checked, or an empty list if the directory cannot be accessed
+     * @param logFile the file/directory to search
+     * @param request the {@link LogReadRequest} with the line limit, search term and mode to use
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} for this request
+     * @return A list of {@link LogFile} for each file checked
      */
-    private static List<LogFile> readDirectory(File logDir, Integer maxLines, String searchTerm, Integer basePathSize) {
-        List<LogFile> logs = new ArrayList<>();
-        File[] logFiles = logDir.listFiles();
-
-        if (logFiles == null) {
-            LOGGER.info("Cannot access directory" + logDir.getAbsolutePath());
-            // We can't read anything here anyways
-            return logs;
-        }
-
-        for (File logFile : logFiles) {
-            if (logFile.isDirectory()) {
-                logs.addAll(readDirectory(logFile, maxLines, searchTerm, basePathSize));
-            } else if (logFile.isFile() && isReadableFile(logFile.toPath())) {
-                //This gets skipped if the file isn't a log/text file
-                logs.add(readFile(logFile.toPath(), maxLines, searchTerm, basePathSize));
-            }
-        }
-        return logs;
+    public static List<LogFile> readLogs(File logFile, LogReadRequest request, ReadSettings settings, ScanBudget budget, Integer basePathSize) {
+        return ReadTargets.readByDevice(
+                ReadTargets.find(logFile, request.followRotations(), settings, budget, basePathSize),
+                settings,
+                budget,
+                target -> target.error() != null ?
+                        target.error() :
+                        readFile(target.filePath(), target.members(), request, settings, budget, basePathSize));
     }
 
     /**
      * Reads the file specified by filePath until it's hit the end of the file or maxLines, selecting only lines containing
      * searchTerm if provided. Returns a logfile with an error message if an exception is encountered reading the file,
      * or null if it is not a .log, .txt, or other file type of 'text/plain'
+     * <p/>
+     * In {@link ReadMode#PATTERNS} mode the selected lines are clustered into templates as they're read rather than
+     * returned, so memory stays bounded no matter how many lines are scanned. In {@link ReadMode#SAMPLE} mode a random
+     * sample of the selected lines is returned instead, see {@link LineSampler}.
+     * <p/>
+     * If the request has a {@link FieldFilter}, the file's {@link LogFormat} is detected from its newest line and only
+     * lines whose fields match are selected. This is checked on the raw bytes after the search term, so lines that
+     * don't match are never decoded.
+     * <p/>
+     * If the request has a cursor for the file only the range it covers is read, and the {@link LogFile} carries the
+     * cursors for the lines older than the read got back to and for the lines written after it, see {@link FileCursors}.
      *
-     * @param filePath the path of the file to parse
-     * @param maxLines the number of lines to return maximum, or -1 for unlimited
-     * @param searchTerm the term to search for, or null to return all lines
+     * @param filePath the path of the file to parse, or of the live file for a set of rotated files
+     * @param members the files to read newest first, either just filePath or every file in its rotation set
+     * @param request the {@link LogReadRequest} with the line limit, search term and mode to use
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} for this request, if it runs out the lines read so far are returned with an error
      * @return a {@link LogFile} object containing the lines found, an error message, or null if it's not a readable file
+     * or the request's cursors skip it
      */
-    private static LogFile readFile(Path filePath, Integer maxLines, String searchTerm, Integer basePathSize) {
-        LogFile logFile;
-        ReverseFileReader reverseFileReader = null;
+    private static LogFile readFile(Path filePath, List<Path> members, LogReadRequest request, ReadSettings settings, ScanBudget budget, Integer basePathSize) {
+        LogFile logFile = null;
+        SelectedLines scan = null;
+        boolean scanPermitted = false;
+        // Flight Recorder only fills in and writes the event if it's enabled, so this costs next to nothing otherwise
+        FileScanEvent event = new FileScanEvent();
+        event.begin();
+        long scannedBefore = budget.getScannedBytes();
+        long lines = 0;
         String fileName = filePath.getFileName().toString();
+        String relativePath = settings.relativePath(filePath, basePathSize);
+        Object device = settings.deviceOf(filePath);
         try {
             if (!isReadableFile(filePath)) {
                 //If it's a file we likely can't read, return null.
                 return null;
             }
-            List<String> logLines = new ArrayList<>();
-            boolean limitLines = maxLines > 0;
-            reverseFileReader = new ReverseFileReader(StandardCharsets.UTF_8, filePath, 4096);
-            // Keep parsing the file while it has more data and either we're not limiting lines or have kept below it
-            while (reverseFileReader.hasMoreData() &&
-                    (!limitLines || logLines.size() < maxLines)) {
-                String logLine = reverseFileReader.readLine();
-                // We want this line if it exists and we're either not searching or it contains the search term
-                if (shouldAddLine(logLine, searchTerm)) {
-                    logLines.add(logLine);
+            if (request.mode() == ReadMode.SAMPLE) {
+                return LineSampler.sample(filePath, relativePath, request, settings, budget);
+            }
+            FileCursors.Match cursors = FileCursors.match(filePath, relativePath, members, request.cursors());
+            if (cursors.skip()) {
+                return null;
+            }
+            if (cursors.stale()) {
+                return new LogFile(fileName, relativePath, null, null, FileCursors.STALE_CURSOR, null, cursors.restartCursor(), null);
+            }
+            if (!budget.acquireScan(device)) {
+                return new LogFile(fileName, relativePath, null, ScanBudget.FILE_CANCELLED);
+            }
+            scanPermitted = true;
+            LogLines logLines = new LogLines();
+            LogPatternMiner patternMiner = request.mode() == ReadMode.PATTERNS ? new LogPatternMiner() : null;
+            scan = SelectedLines.open(filePath, members, request, settings, budget, cursors.cursor());
+            // The scan stops at the line limit, and checks the budget before every line so a cancelled request stops
+            // straight away
+            while (scan.next()) {
+                if (patternMiner != null) {
+                    patternMiner.add(scan.getLine());
+                    lines++;
+                } else if (budget.tryChargeReturned(scan.getLineBytes())) {
+                    // Lines are kept as bytes and only decoded if something asks for them
+                    logLines.add(scan.getLineBuffer(), scan.getLineStart(), scan.getLineLength(), scan.getCharset());
+                    lines++;
                 }
             }
 
-            logFile = new LogFile(fileName, filePath.toString().substring(basePathSize + 1), logLines, null);
+            // Only flag the file if the budget or a cancellation actually cut it short
+            String error = null;
+            if (budget.isStopped() && scan.hasMoreData()) {
+                error = budget.isExhausted() ? ScanBudget.FILE_BUDGET_EXHAUSTED : ScanBudget.FILE_CANCELLED;
+            }
+            logFile = new LogFile(
+                    fileName,
+                    relativePath,
+                    patternMiner != null ? null : logLines,
+                    patternMiner != null ? patternMiner.getPatterns() : null,
+                    error,
+                    cursors.olderCursor(scan),
+                    cursors.newerCursor(scan),
+                    null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logFile = new LogFile(fileName, relativePath, null, "Interrupted while waiting to read the file");
         } catch (Exception e) {
             LOGGER.info("Exception reading file: " + e.getMessage());
-            logFile = new LogFile(fileName, filePath.toString().substring(basePathSize + 1), null, "Encountered an exception reading the file");
+            logFile = new LogFile(fileName, relativePath, null, "Encountered an exception reading the file");
         } finally {
-            if (reverseFileReader != null) {
+            if (scan != null) {
                 try {
-                    reverseFileReader.close();
+                    scan.close();
                 } catch (Exception e) {
                     LOGGER.info("Exception closing reverse file reader: " + e.getMessage());
                 }
             }
+            if (scanPermitted) {
+                budget.releaseScan(device);
+            }
+            event.end();
+            if (scanPermitted && event.shouldCommit()) {
+                event.path = relativePath;
+                event.mode = request.mode().name();
+                event.scannedBytes = budget.getScannedBytes() - scannedBefore;
+                event.lines = lines;
+                event.error = logFile != null ? logFile.error() : null;
+                event.commit();
+            }
         }
         return logFile;
     }
@@ -128,38 +173,33 @@ public class LogReadRequestHandler {
     /**
      * Checks if this app can read filePath.
      * <p/>
-     * For this to be true, the file name must end with .log, .txt. or be of type text/plain
+     * For this to be true, the file name must end with .log, .txt. or be of type text/plain. The content type is only
+     * probed for files without one of those extensions, since probing can mean reading the start of the file.
      *
      * @param filePath the file path to check
      * @return true if this file can be read as a log
      */
-    private static boolean isReadableFile(Path filePath) {
-        boolean isPlainText = false;
+    public static boolean isReadableFile(Path filePath) {
+        String fileName = filePath.getFileName().toString();
+        if (fileName.endsWith(".log") || fileName.endsWith(".txt")) {
+            return true;
+        }
 
+        ContentProbeEvent event = new ContentProbeEvent();
+        event.begin();
+        String contentType = null;
         try {
-            isPlainText = "text/plain".equals(Files.probeContentType(filePath));
+            contentType = Files.probeContentType(filePath);
         } catch (Exception e) {
             // If we get an exception here assuming it's not plaintext
             LOGGER.info("Exception checking file content type: " + e.getMessage());
         }
-
-        return filePath.getFileName().toString().endsWith(".log") ||
-                filePath.getFileName().toString().endsWith(".txt") ||
-                isPlainText;
-    }
-
-    /**
-     * Checks if a log line should be added to results.
-     * <p/>
-     * This is true if the logLine is not null, not blank, and either the searchTerm is null or is present in the logLine
-     *
-     * @param logLine the log line to check
-     * @param searchTerm the search term to use, or null for none
-     * @return true if the log line should be added
-     */
-    private static boolean shouldAddLine(String logLine, String searchTerm) {
-        return logLine != null &&
-                !logLine.isBlank() &&
-                (searchTerm == null || logLine.contains(searchTerm));
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = filePath.toString();
+            event.contentType = contentType;
+            event.commit();
+        }
+        return "text/plain".equals(contentType);
     }
 }
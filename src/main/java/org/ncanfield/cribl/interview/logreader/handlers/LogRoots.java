@@ -0,0 +1,151 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The directories logs are read from: the log directory, and any other roots mounted into it by name.
+ * <p/>
+ * Logs spread over several disks can be read from one server by mounting each disk's log directory as a root. A root
+ * named archive at /mnt/disk2/logs shows up as the top level directory archive of the log directory, so its files are
+ * asked for and returned as archive/app.log, and reading the whole log directory reads every root. A root shadows any
+ * directory of the same name in the log directory.
+ * <p/>
+ * Each file is mapped to the {@link FileStore} - the disk or mount - it's on, so reads can be queued per device, see
+ * {@link ScanScheduler}. The store is looked up once per directory and kept, as mounts rarely change under a running
+ * server.
+ */
+public class LogRoots {
+    private static final Logger LOGGER = Logger.getLogger("LogRoots");
+    public static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private final Path logDir;
+    private final Map<String, Path> mounts;
+    private final Map<Path, Object> devices = new ConcurrentHashMap<>();
+
+    /**
+     * @param logDir the log directory
+     * @param mounts the other roots by the name they're mounted at, in the order they're read
+     */
+    public LogRoots(Path logDir, Map<String, Path> mounts) {
+        this.logDir = logDir.toAbsolutePath().normalize();
+        Map<String, Path> normalized = new LinkedHashMap<>();
+        mounts.forEach((name, root) -> normalized.put(name, root.toAbsolutePath().normalize()));
+        this.mounts = Collections.unmodifiableMap(normalized);
+    }
+
+    /**
+     * Parses the configured roots, each a name and an absolute path like archive=/mnt/disk2/logs. Blank entries are
+     * skipped, and the config validator has already checked the rest.
+     *
+     * @param definitions the root definitions, or null
+     * @return the roots by name, in the order they were given
+     */
+    public static Map<String, Path> parse(List<String> definitions) {
+        Map<String, Path> mounts = new LinkedHashMap<>();
+        if (definitions == null) {
+            return mounts;
+        }
+        for (String definition : definitions) {
+            int split = definition.indexOf('=');
+            if (definition.isBlank() || split < 0) {
+                continue;
+            }
+            mounts.put(definition.substring(0, split).trim(), Path.of(definition.substring(split + 1).trim()));
+        }
+        return mounts;
+    }
+
+    public Path getLogDir() {
+        return logDir;
+    }
+
+    /**
+     * @return the roots mounted into the log directory by name
+     */
+    public Map<String, Path> getMounts() {
+        return mounts;
+    }
+
+    /**
+     * Resolves a path relative to the log directory, following it into a mounted root if its first name is one
+     *
+     * @param fileName the path within the log directory
+     * @return the absolute path, or null if it would end up outside of its root
+     */
+    public Path resolve(String fileName) {
+        String normalized = fileName.replace('\\', '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        int slash = normalized.indexOf('/');
+        Path mount = mounts.get(slash < 0 ? normalized : normalized.substring(0, slash));
+        Path root = mount != null ? mount : logDir;
+        Path filePath = mount != null ?
+                (slash < 0 ? mount : mount.resolve(normalized.substring(slash + 1)).normalize()) :
+                logDir.resolve(normalized).normalize();
+        return filePath.startsWith(root) ? filePath : null;
+    }
+
+    /**
+     * @param filePath an absolute path
+     * @return the path of a file in a mounted root as it's shown to clients, like archive/app.log, or null if it isn't
+     * in one
+     */
+    public String mountedPath(Path filePath) {
+        if (mounts.isEmpty()) {
+            return null;
+        }
+        Path absolute = filePath.toAbsolutePath().normalize();
+        for (Map.Entry<String, Path> mount : mounts.entrySet()) {
+            if (absolute.startsWith(mount.getValue())) {
+                Path relative = mount.getValue().relativize(absolute);
+                return relative.toString().isEmpty() ? mount.getKey() : mount.getKey() + "/" + relative;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param directory a directory
+     * @return true if it's the log directory itself, whose reads take in every mounted root
+     */
+    public boolean isLogDir(Path directory) {
+        return directory.toAbsolutePath().normalize().equals(logDir);
+    }
+
+    /**
+     * Finds the device a file is on, going by the {@link FileStore} of its directory
+     *
+     * @param filePath the file
+     * @return the {@link FileStore} of the file's directory, or null if it can't be found
+     */
+    public Object deviceOf(Path filePath) {
+        Path directory = filePath.toAbsolutePath().getParent();
+        if (directory == null) {
+            return null;
+        }
+        Object device = devices.get(directory);
+        if (device != null) {
+            return device;
+        }
+        try {
+            device = Files.getFileStore(directory);
+        } catch (IOException e) {
+            // Reads of the file will fail on their own, there's no need to queue them
+            LOGGER.info("Could not find the file store of " + directory + ": " + e.getMessage());
+            return null;
+        }
+        devices.put(directory, device);
+        return device;
+    }
+}
@@ -0,0 +1,461 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.models.LogCursor;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.utils.FileHandleCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Scans one large file on several cores at once. The file is split into byte ranges that each start at the start of a
+ * line, every range is scanned backwards and filtered on its own by a {@link LineScan} on a shared
+ * {@link ForkJoinPool}, and the matches are handed back range by range, newest range first, so they come out in exactly
+ * the order a single scan of the whole file would give.
+ * <p/>
+ * Ranges are started newest first and only a few ahead of the one being returned, so memory stays bounded by the matches
+ * of those few ranges. With a line limit each range keeps at most that many matches, and as soon as the newer ranges
+ * hold enough matches between them the older ranges are stopped, or never started. Each range also keeps at most its
+ * share of the response bytes the budget has left, so the ranges waiting to be returned never hold more than the
+ * response could. A range that fills its share stops there, and the rest of it is scanned once its matches so far have
+ * been returned.
+ * <p/>
+ * This only pays off when scanning the lines costs more than reading them, so it's only used for files over the
+ * configured threshold with a search term or filter, and without context lines, which would have to cross ranges. UTF-16
+ * files are always scanned whole, as their newlines aren't single bytes to split on. See {@link #applies}.
+ */
+class ParallelScan implements SelectedLines {
+    // Files are split into about this many ranges per core, so a slow range doesn't leave the other cores idle
+    private static final int RANGES_PER_THREAD = 4;
+    static final long MIN_RANGE_SIZE = 4 * 1024 * 1024;
+    static final long MAX_RANGE_SIZE = 64 * 1024 * 1024;
+    private static final int ALIGN_BLOCK_SIZE = 64 * 1024;
+    // The most bytes of matches a range keeps before it waits to be returned, and the least it's cut down to
+    static final long MAX_RANGE_MATCH_BYTES = 8 * 1024 * 1024;
+    private static final long MIN_RANGE_MATCH_BYTES = 4 * 1024;
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final Path filePath;
+    private final LogReadRequest request;
+    private final ReadSettings settings;
+    private final ScanBudget budget;
+    // Range boundaries in file order, range i newest first runs from boundaries[length - 2 - i] to boundaries[length - 1 - i]
+    private final long[] boundaries;
+    private final int maxLines;
+    private final Deque<ForkJoinTask<RangeMatches>> pending = new ArrayDeque<>();
+    private int nextToStart;
+    private int nextToReturn;
+    private RangeMatches current;
+    private int currentLine;
+    private int returned;
+    // The offset of the last line returned
+    private long lastOffset;
+    // Tells running ranges to stop, once the newer ranges have filled the line limit or the scan is closed
+    private volatile boolean stopped;
+
+    // The line last returned
+    private byte[] lineBuffer;
+    private int lineStart;
+    private int lineLength;
+    private long lineBytes;
+
+    private ParallelScan(Path filePath, LogReadRequest request, ReadSettings settings, ScanBudget budget, long[] boundaries) {
+        this.filePath = filePath;
+        this.request = request;
+        this.settings = settings;
+        this.budget = budget;
+        this.boundaries = boundaries;
+        this.maxLines = request.maxLines() != null ? request.maxLines() : -1;
+    }
+
+    /**
+     * Checks if a file should be scanned in parallel: it's a single file, not a set of rotated files or a file read
+     * from its segment, it's at least the settings' parallel scan threshold, and the request has a search term or filter
+     * to spend the cores on but no context lines.
+     *
+     * @param filePath the path of the file, or of the live file for a set of rotated files
+     * @param members the files to read newest first, either just filePath or every file in its rotation set
+     * @param request the {@link LogReadRequest} to read
+     * @param settings the server's {@link ReadSettings}
+     * @return true if the file should be read with a {@link ParallelScan}
+     */
+    static boolean applies(Path filePath, List<Path> members, LogReadRequest request, ReadSettings settings) {
+        return applies(filePath, members, request, settings, null);
+    }
+
+    /**
+     * Checks if a file should be scanned in parallel, see {@link #applies(Path, List, LogReadRequest, ReadSettings)}.
+     * With a cursor, it's the range the cursor covers that has to be at least the threshold.
+     *
+     * @param cursor the {@link LogCursor} the file is being read from, or null
+     */
+    static boolean applies(Path filePath, List<Path> members, LogReadRequest request, ReadSettings settings, LogCursor cursor) {
+        if (settings.parallelScanThreshold() <= 0 || members.size() != 1 || !members.get(0).equals(filePath)) {
+            return false;
+        }
+        if (request.searchTerm() == null && request.filter() == null) {
+            return false;
+        }
+        if (request.mode() != ReadMode.PATTERNS && (request.before() > 0 || request.after() > 0)) {
+            return false;
+        }
+        // Segments already skip the blocks that can't match
+        if (settings.segments() != null && settings.segments().findFresh(filePath) != null) {
+            return false;
+        }
+        try {
+            long end = cursor != null && cursor.isOlder() ? cursor.end() : Files.size(filePath);
+            long start = cursor != null ? cursor.start() : 0;
+            // Ranges are split on \n bytes, which UTF-16 newlines aren't
+            return end - start >= settings.parallelScanThreshold() && !isUtf16(filePath, settings);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isUtf16(Path filePath, ReadSettings settings) throws IOException {
+        try (FileHandleCache.Handle handle = settings.open(filePath)) {
+            return handle.charset().isUtf16();
+        }
+    }
+
+    /**
+     * Splits a file into ranges and starts scanning the newest of them
+     *
+     * @param filePath the path of the file
+     * @param request the {@link LogReadRequest} with the line limit, search term and filter to use
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} to charge lines to
+     * @return the new {@link ParallelScan}
+     * @throws IOException if the file cannot be opened
+     */
+    static ParallelScan open(Path filePath, LogReadRequest request, ReadSettings settings, ScanBudget budget) throws IOException {
+        return open(filePath, request, settings, budget, 0, -1, -1);
+    }
+
+    /**
+     * Splits the bytes from start to end of a file into ranges and starts scanning the newest of them
+     *
+     * @param start the offset of the start of a line to read back to
+     * @param end the offset just past the newline of a line to read back from, or -1 for the current end of the file
+     */
+    static ParallelScan open(Path filePath, LogReadRequest request, ReadSettings settings, ScanBudget budget, long start, long end)
+            throws IOException {
+        return open(filePath, request, settings, budget, start, end, -1);
+    }
+
+    /**
+     * Splits a file into ranges of about rangeSize bytes and starts scanning the newest of them
+     *
+     * @param rangeSize the bytes per range, or 0 or less to split the file up by the number of cores
+     */
+    static ParallelScan open(Path filePath, LogReadRequest request, ReadSettings settings, ScanBudget budget, long rangeSize)
+            throws IOException {
+        return open(filePath, request, settings, budget, 0, -1, rangeSize);
+    }
+
+    private static ParallelScan open(Path filePath, LogReadRequest request, ReadSettings settings, ScanBudget budget, long start,
+                                     long end, long rangeSize) throws IOException {
+        long[] boundaries;
+        try (FileHandleCache.Handle handle = settings.open(filePath)) {
+            // Anything appended after this is left for the next read
+            long rangeEnd = end < 0 ? handle.size() : end;
+            if (rangeSize <= 0) {
+                rangeSize = Math.min(Math.max((rangeEnd - start) / ((long) POOL.getParallelism() * RANGES_PER_THREAD), MIN_RANGE_SIZE),
+                        MAX_RANGE_SIZE);
+            }
+            boundaries = split(handle, start, rangeEnd, rangeSize);
+        }
+        ParallelScan scan = new ParallelScan(filePath, request, settings, budget, boundaries);
+        scan.startRanges();
+        return scan;
+    }
+
+    /**
+     * Finds where each range starts: the first line start at or after every rangeSize bytes. A range runs on to the next
+     * newline, so a line is never split, and ranges are only ever split on \n so a \r\n stays whole.
+     *
+     * @param handle the file
+     * @param size the bytes of the file to split
+     * @param rangeSize the bytes per range
+     * @return the offsets the ranges start at in file order, then the size
+     * @throws IOException if the file cannot be read
+     */
+    static long[] split(FileHandleCache.Handle handle, long size, long rangeSize) throws IOException {
+        return split(handle, 0, size, rangeSize);
+    }
+
+    /**
+     * Splits the bytes from start to size of a file, see {@link #split(FileHandleCache.Handle, long, long)}
+     *
+     * @param start the offset of the start of the first line
+     */
+    static long[] split(FileHandleCache.Handle handle, long start, long size, long rangeSize) throws IOException {
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(start);
+        ByteBuffer block = ByteBuffer.allocate(ALIGN_BLOCK_SIZE);
+        long target = start + rangeSize;
+        while (target < size) {
+            long boundary = nextLineStart(handle, target, size, block);
+            if (boundary >= size) {
+                break;
+            }
+            boundaries.add(boundary);
+            target = boundary + rangeSize;
+        }
+        boundaries.add(size);
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    @Override
+    public boolean next() throws IOException, LogReaderException {
+        while (!budget.isStopped() && (maxLines <= 0 || returned < maxLines)) {
+            if (current != null && currentLine < current.size) {
+                int line = currentLine++;
+                returned++;
+                lineBuffer = current.data;
+                lineStart = current.starts[line];
+                lineLength = current.lengths[line];
+                lineBytes = current.lineBytes[line];
+                lastOffset = current.offsets[line];
+                return true;
+            }
+            if (current != null && current.resumeEnd >= 0) {
+                // The range filled its share of the response before it was done, so the rest of it is scanned now
+                long start = current.start;
+                long end = current.resumeEnd;
+                long matchBytes = rangeMatchBytes();
+                current = await(POOL.submit(() -> scanRange(start, end, matchBytes)));
+                currentLine = 0;
+            } else {
+                if (nextToReturn >= rangeCount()) {
+                    return false;
+                }
+                current = await(pending.poll());
+                currentLine = 0;
+                nextToReturn++;
+            }
+            if (maxLines > 0 && returned + current.size >= maxLines) {
+                // The ranges so far fill the limit, so nothing older is needed
+                stopRanges();
+            } else {
+                startRanges();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasMoreData() {
+        return nextToReturn < rangeCount() || (current != null && (currentLine < current.size || current.cut || current.resumeEnd >= 0));
+    }
+
+    @Override
+    public long getRangeStart() {
+        return boundaries[0];
+    }
+
+    @Override
+    public long getRangeEnd() {
+        return boundaries[boundaries.length - 1];
+    }
+
+    /**
+     * Every range newer than the last line returned was scanned up to it, so reading carries on from that line
+     */
+    @Override
+    public long getPosition() {
+        if (!hasMoreData()) {
+            return getRangeStart();
+        }
+        return returned > 0 ? lastOffset : getRangeEnd();
+    }
+
+    @Override
+    public byte[] getLineBuffer() {
+        return lineBuffer;
+    }
+
+    @Override
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    @Override
+    public Charset getCharset() {
+        return StandardCharsets.UTF_8;
+    }
+
+    @Override
+    public long getLineBytes() {
+        return lineBytes;
+    }
+
+    @Override
+    public String getLine() {
+        return new String(lineBuffer, lineStart, lineLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stops every range still running, each closes its own file once it sees it's been stopped
+     */
+    @Override
+    public void close() {
+        stopRanges();
+    }
+
+    private int rangeCount() {
+        return boundaries.length - 1;
+    }
+
+    /**
+     * Starts ranges newest first until a few more are running than the pool has threads
+     */
+    private void startRanges() {
+        while (!stopped && pending.size() <= POOL.getParallelism() && nextToStart < rangeCount()) {
+            int range = nextToStart++;
+            long start = boundaries[rangeCount() - 1 - range];
+            long end = boundaries[rangeCount() - range];
+            long matchBytes = rangeMatchBytes();
+            pending.add(POOL.submit(() -> scanRange(start, end, matchBytes)));
+        }
+    }
+
+    /**
+     * @return the bytes of matches a range may keep: its share of what's left of the response budget between all the
+     * ranges that may be waiting at once
+     */
+    private long rangeMatchBytes() {
+        long remaining = budget.getRemainingReturnBytes();
+        if (remaining < 0) {
+            return MAX_RANGE_MATCH_BYTES;
+        }
+        return Math.max(Math.min(remaining / (POOL.getParallelism() + 2), MAX_RANGE_MATCH_BYTES), MIN_RANGE_MATCH_BYTES);
+    }
+
+    private void stopRanges() {
+        stopped = true;
+        for (ForkJoinTask<RangeMatches> task : pending) {
+            task.cancel(false);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Scans one range newest line first, keeping up to the line limit of its matches and at most about matchBytes of
+     * them. If it stops at matchBytes, where to carry on from is kept in the {@link RangeMatches}.
+     */
+    private RangeMatches scanRange(long start, long end, long matchBytes) throws IOException, LogReaderException {
+        RangeMatches matches = new RangeMatches(start);
+        try (LineScan scan = LineScan.openRange(filePath, start, end, request, settings, budget)) {
+            while (!stopped && (maxLines <= 0 || matches.size < maxLines) && scan.nextLine()) {
+                if (scan.isMatch()) {
+                    matches.add(scan.getLineBuffer(), scan.getLineStart(), scan.getLineLength(), scan.getLineBytes(), scan.getPosition());
+                    if (matches.dataLength >= matchBytes && scan.hasMoreData()) {
+                        // Everything older than this line is still to be scanned
+                        matches.resumeEnd = scan.getPosition();
+                        return matches;
+                    }
+                }
+            }
+            matches.cut = scan.hasMoreData();
+        }
+        return matches;
+    }
+
+    private static RangeMatches await(ForkJoinTask<RangeMatches> task) throws IOException, LogReaderException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LogReaderException("Interrupted while reading the file", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            } else if (e.getCause() instanceof LogReaderException logReader) {
+                throw logReader;
+            }
+            throw new IOException("Could not scan part of the file", e.getCause());
+        }
+    }
+
+    private static long nextLineStart(FileHandleCache.Handle handle, long position, long size, ByteBuffer block) throws IOException {
+        // A newline just before position means a line starts right at it
+        long offset = position - 1;
+        while (offset < size) {
+            block.clear();
+            block.limit((int) Math.min(block.capacity(), size - offset));
+            int read = handle.read(block, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (block.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    /**
+     * The matches of one range newest first, packed into a single array
+     */
+    private static final class RangeMatches {
+        private final long start;
+        private byte[] data = new byte[4096];
+        private int dataLength;
+        private int[] starts = new int[16];
+        private int[] lengths = new int[16];
+        private long[] lineBytes = new long[16];
+        private long[] offsets = new long[16];
+        private int size;
+        // The range was stopped before it was fully scanned
+        private boolean cut;
+        // Where the range stopped after filling its share of the response, and the rest of it is to be read from, or -1
+        private long resumeEnd = -1;
+
+        private RangeMatches(long start) {
+            this.start = start;
+        }
+
+        private void add(byte[] buffer, int start, int length, long bytesInFile, long offset) {
+            if (dataLength + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + length));
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                lineBytes = Arrays.copyOf(lineBytes, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            System.arraycopy(buffer, start, data, dataLength, length);
+            starts[size] = dataLength;
+            lengths[size] = length;
+            lineBytes[size] = bytesInFile;
+            offsets[size] = offset;
+            dataLength += length;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.utils.FileHandleCache;
+import org.ncanfield.cribl.interview.logreader.utils.LogCharset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Helpers for streaming raw byte ranges of a log file without decoding it into lines
+ */
+public class RawLogHandler {
+    private static final int SCAN_BLOCK_SIZE = 64 * 1024;
+
+    private RawLogHandler() {
+    }
+
+    /**
+     * Parses a single HTTP byte range, like bytes=0-99, bytes=100- or bytes=-100, against a file of the given size.
+     * <p/>
+     * Multiple ranges and other units aren't supported, in which case null is returned and the whole file should be sent.
+     *
+     * @param rangeHeader the Range header value, or null
+     * @param fileSize the size of the file
+     * @return the {@link ByteRange} requested, or null to send the whole file
+     * @throws LogReaderException if the range can't be satisfied for this file
+     */
+    public static ByteRange parseRange(String rangeHeader, long fileSize) throws LogReaderException {
+        if (rangeHeader == null || !rangeHeader.startsWith("bytes=") || rangeHeader.contains(",")) {
+            return null;
+        }
+        String spec = rangeHeader.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            String startValue = spec.substring(0, dash).trim();
+            String endValue = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (startValue.isEmpty()) {
+                // Suffix range, the last n bytes
+                long suffixLength = Long.parseLong(endValue);
+                if (suffixLength <= 0) {
+                    throw new LogReaderException("Requested range is not satisfiable");
+                }
+                start = Math.max(fileSize - suffixLength, 0);
+                end = fileSize;
+            } else {
+                start = Long.parseLong(startValue);
+                end = endValue.isEmpty() ? fileSize : Math.min(Long.parseLong(endValue) + 1, fileSize);
+            }
+            if (start >= fileSize || start >= end) {
+                throw new LogReaderException("Requested range is not satisfiable");
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            // Malformed ranges are ignored rather than rejected
+            return null;
+        }
+    }
+
+    /**
+     * Finds the offset the last lines lines of the file start at, by counting line endings back from the end of the
+     * file. A line ending right at the end of the file doesn't count as a line of its own.
+     * <p/>
+     * UTF-16 files are scanned a two byte unit at a time, so the offset is always the start of a character.
+     * <p/>
+     * Every block read is charged to the budget. If the budget runs out or the request is cancelled before enough lines
+     * are found, the tail starts at the earliest whole line found so far instead.
+     *
+     * @param handle the file to scan
+     * @param charset the {@link LogCharset} of the file
+     * @param lines the number of lines to find
+     * @param budget the {@link ScanBudget} of the request
+     * @return the {@link Tail} found
+     * @throws IOException if the file cannot be read
+     */
+    public static Tail findTail(FileHandleCache.Handle handle, LogCharset charset, int lines, ScanBudget budget) throws IOException {
+        long fileSize = handle.size();
+        if (lines < 1) {
+            return new Tail(fileSize, true);
+        }
+        int unit = charset.isUtf16() ? 2 : 1;
+        boolean bigEndian = StandardCharsets.UTF_16BE.equals(charset.charset());
+        long start = charset.alignStart(0);
+        // Half a UTF-16 character still being written at the end is left out of the scan
+        long position = charset.alignEnd(start, fileSize);
+        // Where the earliest line found so far starts
+        long earliest = position;
+
+        // A line ending right at the end of the file ends the last line rather than starting a new one
+        if (position > start && peek(handle, position - unit, unit, bigEndian) == '\n') {
+            position -= unit;
+        }
+        if (position > start && peek(handle, position - unit, unit, bigEndian) == '\r') {
+            position -= unit;
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK_SIZE);
+        int found = 0;
+        // The character after the one being checked, so \r\n counts as a single line ending
+        int next = -1;
+
+        while (position > start) {
+            if (budget.isStopped()) {
+                return new Tail(earliest, false);
+            }
+            // The block size is even, so blocks of UTF-16 always hold whole characters
+            int size = (int) Math.min(SCAN_BLOCK_SIZE, position - start);
+            position -= size;
+            block.clear().limit(size);
+            while (block.hasRemaining()) {
+                if (handle.read(block, position + block.position()) < 0) {
+                    throw new IOException("Could not read requested bytes");
+                }
+            }
+            budget.chargeScanned(size);
+            for (int i = size - unit; i >= 0; i -= unit) {
+                int current = unitAt(block, i, unit, bigEndian);
+                if (current == '\n' || (current == '\r' && next != '\n')) {
+                    earliest = position + i + unit;
+                    if (++found == lines) {
+                        return new Tail(earliest, true);
+                    }
+                }
+                next = current;
+            }
+        }
+        return new Tail(0, true);
+    }
+
+    /**
+     * Copies bytes start to end of the file straight to target, letting the OS do the copy where it can
+     *
+     * @param channel the file to copy from
+     * @param start the offset to start at
+     * @param end the offset to stop at, exclusive
+     * @param target the channel to write to
+     * @throws IOException if the file cannot be read or the target cannot be written to
+     */
+    public static void transfer(FileChannel channel, long start, long end, WritableByteChannel target) throws IOException {
+        long position = start;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                // The file shrank underneath us
+                break;
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * Checks whether a client takes gzipped responses, going by its Accept-Encoding header. An encoding with a q value
+     * of 0 is refused, and * stands for any encoding that isn't named.
+     *
+     * @param acceptEncoding the Accept-Encoding header, or null
+     * @return true if the response may be gzipped
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(parameter.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                return accepted;
+            }
+            if (coding.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    private static int peek(FileHandleCache.Handle handle, long offset, int unit, boolean bigEndian) throws IOException {
+        ByteBuffer single = ByteBuffer.allocate(unit);
+        return handle.read(single, offset) == unit ? unitAt(single, 0, unit, bigEndian) : -1;
+    }
+
+    /**
+     * @return the byte, or the UTF-16 code unit, at index i of buffer
+     */
+    private static int unitAt(ByteBuffer buffer, int i, int unit, boolean bigEndian) {
+        if (unit == 1) {
+            return buffer.get(i);
+        }
+        int first = buffer.get(i) & 0xFF;
+        int second = buffer.get(i + 1) & 0xFF;
+        return bigEndian ? first << 8 | second : second << 8 | first;
+    }
+
+    /**
+     * Where the tail of a file starts
+     *
+     * @param offset the offset of the first line of the tail
+     * @param complete false if the budget ran out or the request was cancelled before all the lines were found
+     */
+    public record Tail(long offset, boolean complete) {
+    }
+
+    /**
+     * A range of bytes in a file
+     *
+     * @param start the first byte, inclusive
+     * @param end the last byte, exclusive
+     */
+    public record ByteRange(long start, long end) {
+        public long length() {
+            return end - start;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.models.LogCursor;
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogLineEvent;
+import org.ncanfield.cribl.interview.logreader.models.LogLines;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.utils.LogPatternMiner;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * The reactive counterpart of {@link LogReadRequestHandler}, reading files as back-pressured {@link Flux}es of lines.
+ * <p/>
+ * Lines are only read as the subscriber asks for them. Reading is blocking file I/O, so it runs on Reactor's
+ * bounded elastic scheduler, but a thread is only held while lines are actually being read - a slow client just stops
+ * asking for more, rather than holding a thread the way a blocking request does. Cancelling the subscription closes
+ * the file and gives up its scan permit straight away.
+ */
+public class ReactiveLogReadHandler {
+    private static final Logger LOGGER = Logger.getLogger("ReactiveLogReadHandler");
+
+    private ReactiveLogReadHandler() {
+    }
+
+    /**
+     * Reads logFile the same way as {@link LogReadRequestHandler#readLogs(File, LogReadRequest, ReadSettings, ScanBudget, Integer)},
+     * one file after another on each device
+     *
+     * @param logFile the file/directory to search
+     * @param request the {@link LogReadRequest} with the line limit, search term and mode to use
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} for this request
+     * @param basePathSize the length of the log directory's path, which is cut off the front of file paths
+     * @return a {@link Mono} of the {@link LogFile} for each file checked
+     */
+    public static Mono<List<LogFile>> readLogs(File logFile, LogReadRequest request, ReadSettings settings, ScanBudget budget, int basePathSize) {
+        return findTargets(logFile, request, settings, budget, basePathSize).flatMap(targets -> {
+            // The files of each device are read one after another, the devices at the same time, and each device's
+            // files come out in order so the whole list does too. This runs where the targets were found, so looking
+            // up devices stays off the event loop too
+            Map<Object, List<ReadTargets.Target>> devices = new LinkedHashMap<>();
+            for (ReadTargets.Target target : targets) {
+                Object device = target.filePath() != null ? settings.deviceOf(target.filePath()) : null;
+                devices.computeIfAbsent(device != null ? device : target, key -> new ArrayList<>()).add(target);
+            }
+            return Flux.fromIterable(devices.values())
+                    .flatMap(deviceTargets -> Flux.fromIterable(deviceTargets)
+                            .concatMap(target -> target.error() != null ?
+                                    Mono.just(Map.entry(target, target.error())) :
+                                    readFile(target, request, settings, budget, basePathSize).map(read -> Map.entry(target, read))),
+                            Math.max(devices.size(), 1))
+                    .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                    .map(reads -> targets.stream().filter(reads::containsKey).map(reads::get).toList());
+        });
+    }
+
+    /**
+     * Streams the selected lines of logFile and their context as they're read, one file after another. Patterns
+     * aren't mined.
+     *
+     * @param serverName the name of this server, for each event
+     * @param logFile the file/directory to search
+     * @param request the {@link LogReadRequest} with the line limit, search term, filter and context to use
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} for this request
+     * @param basePathSize the length of the log directory's path, which is cut off the front of file paths
+     * @return a {@link Flux} of a {@link LogLineEvent} per line, or per file that could not be read
+     */
+    public static Flux<LogLineEvent> streamLogs(String serverName, File logFile, LogReadRequest request, ReadSettings settings,
+                                                ScanBudget budget, int basePathSize) {
+        return findTargets(logFile, request, settings, budget, basePathSize)
+                .flatMapMany(Flux::fromIterable)
+                .concatMap(target -> {
+                    if (target.error() != null) {
+                        return Mono.just(new LogLineEvent(serverName, target.error().filePath(), null, target.error().error()));
+                    }
+                    String filePath = settings.relativePath(target.filePath(), basePathSize);
+                    return lines(target.filePath(), target.members(), request, settings, budget, true, new ScanOutcome(null))
+                            .map(line -> new LogLineEvent(serverName, filePath, line, null))
+                            .onErrorResume(e -> Mono.just(new LogLineEvent(serverName, filePath, null, readError(e))));
+                });
+    }
+
+    /**
+     * Lists the targets of a read once it's subscribed to. Walking directories, probing files and finding devices all
+     * block, so like reading they're done on the bounded elastic scheduler rather than the event loop.
+     */
+    private static Mono<List<ReadTargets.Target>> findTargets(File logFile, LogReadRequest request, ReadSettings settings,
+                                                              ScanBudget budget, int basePathSize) {
+        return Mono.fromCallable(() -> ReadTargets.find(logFile, request.followRotations(), settings, budget, basePathSize))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Reads the selected lines of a file, or a set of rotated files, newest first. Nothing is opened until the
+     * {@link Flux} is subscribed to, and each line is only read once it's requested.
+     *
+     * @param filePath the path of the file, or of the live file for a set of rotated files
+     * @param members the files to read newest first, either just filePath or every file in its rotation set
+     * @param request the {@link LogReadRequest} with the line limit, search term, filter and context to use
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} for this request
+     * @return a {@link Flux} of the selected lines and their context, up to the request's line limit
+     */
+    public static Flux<String> lines(Path filePath, List<Path> members, LogReadRequest request, ReadSettings settings, ScanBudget budget) {
+        return lines(filePath, members, request, settings, budget, true, new ScanOutcome(null));
+    }
+
+    private static Flux<String> lines(Path filePath, List<Path> members, LogReadRequest request, ReadSettings settings,
+                                      ScanBudget budget, boolean chargeReturned, ScanOutcome outcome) {
+        Object device = settings.deviceOf(filePath);
+        return Flux.<String, SelectedLines>generate(
+                        () -> {
+                            if (!budget.acquireScan(device)) {
+                                outcome.cutShort = true;
+                                return null;
+                            }
+                            try {
+                                return SelectedLines.open(filePath, members, request, settings, budget, outcome.cursor());
+                            } catch (Exception e) {
+                                budget.releaseScan(device);
+                                throw e;
+                            }
+                        },
+                        (scan, sink) -> {
+                            if (scan == null) {
+                                sink.complete();
+                                return null;
+                            }
+                            try {
+                                if (scan.next() && (!chargeReturned || budget.tryChargeReturned(scan.getLineBytes()))) {
+                                    sink.next(scan.getLine());
+                                } else {
+                                    outcome.finish(scan, budget);
+                                    sink.complete();
+                                }
+                            } catch (Exception e) {
+                                sink.error(e);
+                            }
+                            return scan;
+                        },
+                        scan -> {
+                            if (scan == null) {
+                                return;
+                            }
+                            try {
+                                scan.close();
+                            } catch (Exception e) {
+                                LOGGER.info("Exception closing reverse file reader: " + e.getMessage());
+                            }
+                            budget.releaseScan(device);
+                        })
+                // Cancelling interrupts the worker mid-read, which closes the file's channel for everyone sharing it.
+                // The other readers carry on with a fresh channel, see FileHandleCache.Handle#read
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Reads a whole file into a {@link LogFile}, mining patterns instead of keeping lines in patterns mode. The file is
+     * matched to the request's cursors first, which may skip it, see {@link FileCursors}.
+     */
+    private static Mono<LogFile> readFile(ReadTargets.Target target, LogReadRequest request, ReadSettings settings, ScanBudget budget, int basePathSize) {
+        String fileName = target.filePath().getFileName().toString();
+        String filePath = settings.relativePath(target.filePath(), basePathSize);
+        if (request.mode() == ReadMode.SAMPLE) {
+            // Sampling reads a few small pieces of the file, so it isn't worth streaming
+            return Mono.fromCallable(() -> LineSampler.sample(target.filePath(), filePath, request, settings, budget))
+                    .subscribeOn(Schedulers.boundedElastic());
+        }
+        return Mono.fromCallable(() -> FileCursors.match(target.filePath(), filePath, target.members(), request.cursors()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(cursors -> {
+                    if (cursors.skip()) {
+                        return Mono.<LogFile>empty();
+                    }
+                    if (cursors.stale()) {
+                        return Mono.just(new LogFile(
+                                fileName, filePath, null, null, FileCursors.STALE_CURSOR, null, cursors.restartCursor(), null));
+                    }
+                    ScanOutcome outcome = new ScanOutcome(cursors);
+                    boolean patterns = request.mode() == ReadMode.PATTERNS;
+                    Flux<String> lines = lines(target.filePath(), target.members(), request, settings, budget, !patterns, outcome);
+                    if (patterns) {
+                        return lines.collect(LogPatternMiner::new, LogPatternMiner::add)
+                                .map(miner -> new LogFile(fileName, filePath, null, miner.getPatterns(), outcome.error(budget),
+                                        outcome.olderCursor, outcome.newerCursor, null));
+                    }
+                    return lines.collect(LogLines::new, LogLines::add)
+                            .map(logLines -> new LogFile(fileName, filePath, logLines, null, outcome.error(budget),
+                                    outcome.olderCursor, outcome.newerCursor, null));
+                })
+                .onErrorResume(e -> Mono.just(new LogFile(fileName, filePath, null, readError(e))));
+    }
+
+    private static String readError(Throwable e) {
+        LOGGER.info("Exception reading file: " + e.getMessage());
+        return "Encountered an exception reading the file";
+    }
+
+    /**
+     * Records whether the budget or a cancellation stopped a file before it was fully read, and the cursors the read
+     * left behind
+     */
+    private static final class ScanOutcome {
+        // The file's match for the request's cursors, or null when it isn't given any
+        private final FileCursors.Match cursors;
+        private volatile boolean cutShort;
+        private volatile String olderCursor;
+        private volatile String newerCursor;
+
+        private ScanOutcome(FileCursors.Match cursors) {
+            this.cursors = cursors;
+        }
+
+        private LogCursor cursor() {
+            return cursors != null ? cursors.cursor() : null;
+        }
+
+        private void finish(SelectedLines scan, ScanBudget budget) {
+            cutShort = budget.isStopped() && scan.hasMoreData();
+            if (cursors != null) {
+                olderCursor = cursors.olderCursor(scan);
+                newerCursor = cursors.newerCursor(scan);
+            }
+        }
+
+        private String error(ScanBudget budget) {
+            if (!cutShort) {
+                return null;
+            }
+            return budget.isExhausted() ? ScanBudget.FILE_BUDGET_EXHAUSTED : ScanBudget.FILE_CANCELLED;
+        }
+    }
+}
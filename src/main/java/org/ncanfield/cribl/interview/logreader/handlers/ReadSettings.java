@@ -0,0 +1,67 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.utils.FileHandleCache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * Server wide settings for how files are read, as opposed to the per-request options in a
+ * {@link org.ncanfield.cribl.interview.logreader.models.LogReadRequest}
+ *
+ * @param rotationPattern the pattern rotated files are matched with, see {@link RotationFamilies}
+ * @param segments the {@link SegmentStore} compacted files can be read from, or null if compaction is off
+ * @param maxLineLength the max bytes of a line to return before it's truncated, or 0 or less for no limit
+ * @param handles the {@link FileHandleCache} files are opened through, or null to open every file afresh
+ * @param parallelScanThreshold the size in bytes from which a file is searched on several cores, see
+ *                              {@link ParallelScan}, or 0 or less to always search files on one
+ * @param roots the {@link LogRoots} mounted into the log directory and the devices files are on, or null to read just
+ *              the log directory with no queues per device
+ */
+public record ReadSettings(Pattern rotationPattern, SegmentStore segments, int maxLineLength, FileHandleCache handles,
+                           long parallelScanThreshold, LogRoots roots) {
+    public static final int DEFAULT_MAX_LINE_LENGTH = 1024 * 1024;
+    public static final long DEFAULT_PARALLEL_SCAN_THRESHOLD = 256L * 1024 * 1024;
+
+    /**
+     * @param filePath a file to be read
+     * @return the device the file is on, or null if files aren't queued per device
+     */
+    public Object deviceOf(Path filePath) {
+        return roots != null ? roots.deviceOf(filePath) : null;
+    }
+
+    /**
+     * @param filePath the absolute path of a file or directory being read
+     * @param basePathSize the length of the log directory's path
+     * @return the path of filePath as it's shown to clients, relative to the log directory and through any mounted root
+     */
+    public String relativePath(Path filePath, int basePathSize) {
+        String mounted = roots != null ? roots.mountedPath(filePath) : null;
+        if (mounted != null) {
+            return mounted;
+        }
+        String path = filePath.toString();
+        return path.substring(Math.min(basePathSize + 1, path.length()));
+    }
+
+    /**
+     * Opens filePath through the {@link FileHandleCache} if there is one
+     *
+     * @param filePath the file to open
+     * @return a {@link FileHandleCache.Handle} on the file, which must be closed once the caller is done with it
+     * @throws IOException if the file cannot be opened
+     */
+    public FileHandleCache.Handle open(Path filePath) throws IOException {
+        return handles != null ? handles.open(filePath) : FileHandleCache.openUncached(filePath);
+    }
+
+    /**
+     * @return the settings used when none are configured
+     */
+    public static ReadSettings defaults() {
+        return new ReadSettings(
+                Pattern.compile(RotationFamilies.DEFAULT_PATTERN), null, DEFAULT_MAX_LINE_LENGTH, null, DEFAULT_PARALLEL_SCAN_THRESHOLD, null);
+    }
+}
@@ -0,0 +1,177 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Lists what a request reads up front, walking directories and the roots mounted into the log directory, see
+ * {@link LogRoots}, and reads them a device at a time
+ */
+final class ReadTargets {
+    private static final Logger LOGGER = Logger.getLogger("ReadTargets");
+    // Stands in for the device of targets whose device isn't known, like errors
+    private static final Object NO_DEVICE = new Object();
+    // Each device of a read gets a thread, and threads are only kept while reads are going
+    private static final ExecutorService DEVICE_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "device-read");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ReadTargets() {
+    }
+
+    /**
+     * Lists the files, or sets of rotated files, under logFile. Walking the directories stops once the budget is
+     * stopped, so a cancelled request doesn't list the rest of a large tree.
+     *
+     * @param logFile the file/directory to search
+     * @param followRotations whether each set of rotated files is read as one log
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} for the request
+     * @param basePathSize the length of the log directory's path, which is cut off the front of file paths
+     * @return a {@link Target} for each file to read, or for the error to return in place of logFile
+     */
+    static List<Target> find(File logFile, boolean followRotations, ReadSettings settings, ScanBudget budget, int basePathSize) {
+        List<Target> targets = new ArrayList<>();
+        if (!logFile.exists()) {
+            targets.add(Target.error(new LogFile(logFile.getName(), relativePath(logFile, settings, basePathSize), null, "The specified file does not exist")));
+        } else if (logFile.isDirectory()) {
+            if (logFile.listFiles() == null) {
+                targets.add(Target.error(new LogFile(logFile.getName(), relativePath(logFile, settings, basePathSize), null, "This directory could not be accessed")));
+            } else {
+                addDirectory(logFile, followRotations, settings, budget, targets);
+                if (settings.roots() != null && settings.roots().isLogDir(logFile.toPath())) {
+                    // Reading the whole log directory reads every root mounted into it too
+                    for (Path root : settings.roots().getMounts().values()) {
+                        addDirectory(root.toFile(), followRotations, settings, budget, targets);
+                    }
+                }
+            }
+        } else if (logFile.isFile()) {
+            if (LogReadRequestHandler.isReadableFile(logFile.toPath())) {
+                List<Path> members = followRotations ?
+                        RotationFamilies.familyOf(logFile, settings.rotationPattern()).members() :
+                        List.of(logFile.toPath());
+                targets.add(new Target(logFile.toPath(), members, null));
+            } else {
+                targets.add(Target.error(new LogFile(logFile.getName(), relativePath(logFile, settings, basePathSize), null, "The specified file is not a text file")));
+            }
+        }
+        return targets;
+    }
+
+    private static String relativePath(File logFile, ReadSettings settings, int basePathSize) {
+        return settings.relativePath(Path.of(logFile.getAbsolutePath()), basePathSize);
+    }
+
+    /**
+     * Reads every target, running the targets on each device one after another and the devices at the same time, so a
+     * read of several disks uses them all without making any one of them seek between files. Targets whose device isn't
+     * known are read together as if they were on a device of their own. Reads stop being started once the budget is
+     * stopped.
+     *
+     * @param targets the targets to read, as listed by {@link #find}
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} for the request
+     * @param read reads one target, which may return null
+     * @return what read returned for each target that was read, in the order of targets
+     */
+    static <T> List<T> readByDevice(List<Target> targets, ReadSettings settings, ScanBudget budget, Function<Target, T> read) {
+        Map<Object, List<Integer>> devices = new LinkedHashMap<>();
+        for (int i = 0; i < targets.size(); i++) {
+            Target target = targets.get(i);
+            Object device = target.filePath() != null ? settings.deviceOf(target.filePath()) : null;
+            devices.computeIfAbsent(device != null ? device : NO_DEVICE, key -> new ArrayList<>()).add(i);
+        }
+        if (devices.size() <= 1) {
+            List<T> results = new ArrayList<>();
+            for (Target target : targets) {
+                if (budget.isStopped()) {
+                    // No budget left for any more files, or nobody is waiting for them
+                    break;
+                }
+                T result = read.apply(target);
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+            return results;
+        }
+
+        List<T> results = new ArrayList<>(Collections.nCopies(targets.size(), null));
+        List<CompletableFuture<Void>> reads = new ArrayList<>();
+        for (List<Integer> indexes : devices.values()) {
+            reads.add(CompletableFuture.runAsync(() -> {
+                for (int index : indexes) {
+                    if (budget.isStopped()) {
+                        break;
+                    }
+                    results.set(index, read.apply(targets.get(index)));
+                }
+            }, DEVICE_EXECUTOR));
+        }
+        CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new)).join();
+        return results.stream().filter(Objects::nonNull).toList();
+    }
+
+    private static void addDirectory(File logDir, boolean followRotations, ReadSettings settings, ScanBudget budget,
+                                     List<Target> targets) {
+        if (budget.isStopped()) {
+            return;
+        }
+        File[] logFiles = logDir.listFiles();
+        if (logFiles == null) {
+            LOGGER.info("Cannot access directory" + logDir.getAbsolutePath());
+            return;
+        }
+        if (followRotations) {
+            for (RotationFamilies.Family family : RotationFamilies.group(logFiles, settings.rotationPattern())) {
+                if (budget.isStopped()) {
+                    return;
+                }
+                if (LogReadRequestHandler.isReadableFile(family.basePath())) {
+                    targets.add(new Target(family.basePath(), family.members(), null));
+                }
+            }
+            for (File logFile : logFiles) {
+                if (logFile.isDirectory()) {
+                    addDirectory(logFile, true, settings, budget, targets);
+                }
+            }
+            return;
+        }
+        for (File logFile : logFiles) {
+            if (budget.isStopped()) {
+                return;
+            }
+            if (logFile.isDirectory()) {
+                addDirectory(logFile, false, settings, budget, targets);
+            } else if (logFile.isFile() && LogReadRequestHandler.isReadableFile(logFile.toPath())) {
+                targets.add(new Target(logFile.toPath(), List.of(logFile.toPath()), null));
+            }
+        }
+    }
+
+    /**
+     * A file, or set of rotated files, to read, or an error to return in its place
+     */
+    record Target(Path filePath, List<Path> members, LogFile error) {
+        private static Target error(LogFile error) {
+            return new Target(null, null, error);
+        }
+    }
+}
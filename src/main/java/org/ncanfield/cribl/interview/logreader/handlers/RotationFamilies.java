@@ -0,0 +1,112 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Groups rotated log files (like app.log, app.log.1, app.log.2.gz) into families using the configured rotation pattern.
+ * <p/>
+ * The pattern must have a named group called base that captures the name of the live file, and may have one called
+ * index to order the rotations - lower indexes are newer. The live file itself is always the newest member.
+ */
+public class RotationFamilies {
+    public static final String DEFAULT_PATTERN = "^(?<base>.+)\\.(?<index>\\d+)(\\.gz)?$";
+
+    private RotationFamilies() {
+    }
+
+    /**
+     * Groups the files of a single directory into families, keeping the order they were first seen in
+     *
+     * @param files the files in the directory, directories are ignored
+     * @param rotationPattern the pattern to match rotations with
+     * @return a list of {@link Family}, with files that aren't part of a rotation as their own family
+     */
+    public static List<Family> group(File[] files, Pattern rotationPattern) {
+        Map<String, List<Member>> families = new LinkedHashMap<>();
+        Map<String, Path> directories = new LinkedHashMap<>();
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            Member member = toMember(file, rotationPattern);
+            families.computeIfAbsent(member.baseName(), name -> new ArrayList<>()).add(member);
+            directories.putIfAbsent(member.baseName(), file.toPath().getParent());
+        }
+
+        List<Family> result = new ArrayList<>();
+        for (Map.Entry<String, List<Member>> family : families.entrySet()) {
+            Path basePath = directories.get(family.getKey()).resolve(family.getKey());
+            result.add(new Family(basePath, sortMembers(family.getValue())));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the family a file is the live file of, looking through its directory for its rotations
+     *
+     * @param file the live file
+     * @param rotationPattern the pattern to match rotations with
+     * @return the {@link Family} of the file, which may only contain the file itself
+     */
+    public static Family familyOf(File file, Pattern rotationPattern) {
+        List<Member> members = new ArrayList<>();
+        members.add(new Member(file.toPath(), file.getName(), -1));
+        File parent = file.getAbsoluteFile().getParentFile();
+        File[] siblings = parent != null ? parent.listFiles() : null;
+        if (siblings != null) {
+            for (File sibling : siblings) {
+                if (!sibling.isFile() || sibling.getName().equals(file.getName())) {
+                    continue;
+                }
+                Member member = toMember(sibling, rotationPattern);
+                if (member.baseName().equals(file.getName())) {
+                    members.add(member);
+                }
+            }
+        }
+        return new Family(file.toPath(), sortMembers(members));
+    }
+
+    private static Member toMember(File file, Pattern rotationPattern) {
+        Matcher matcher = rotationPattern.matcher(file.getName());
+        if (!matcher.matches()) {
+            return new Member(file.toPath(), file.getName(), -1);
+        }
+        long index = 0;
+        try {
+            String indexValue = matcher.group("index");
+            index = indexValue != null ? Long.parseLong(indexValue) : 0;
+        } catch (IllegalArgumentException e) {
+            // No index group in the pattern, or it wasn't a number, so these just sort after the live file
+        }
+        return new Member(file.toPath(), matcher.group("base"), index);
+    }
+
+    private static List<Path> sortMembers(List<Member> members) {
+        return members.stream()
+                .sorted(Comparator.comparingLong(Member::index)
+                        .thenComparing(member -> member.path().getFileName().toString()))
+                .map(Member::path)
+                .toList();
+    }
+
+    /**
+     * A family of rotated files
+     *
+     * @param basePath the path of the live file, which may no longer exist
+     * @param members the files in the family, newest first
+     */
+    public record Family(Path basePath, List<Path> members) {
+    }
+
+    private record Member(Path path, String baseName, long index) {
+    }
+}
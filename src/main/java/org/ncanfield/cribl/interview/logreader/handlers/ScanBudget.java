@@ -0,0 +1,208 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.utils.CancellationToken;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the bytes a single request has scanned and returned, so one request can't read or return without bound.
+ * <p/>
+ * Once either limit is hit the budget is exhausted and the request should stop and return what it has so far. The
+ * budget also carries the request's {@link CancellationToken}, and once that's cancelled the request should stop too.
+ */
+public class ScanBudget {
+    public static final String FILE_BUDGET_EXHAUSTED = "Stopped early, the request reached its scan limit";
+    public static final String REQUEST_BUDGET_EXHAUSTED = "The request reached its scan limit, results are partial";
+    public static final String FILE_CANCELLED = "Stopped early, the request was cancelled";
+    public static final String REQUEST_CANCELLED = "The request was cancelled, results are partial";
+
+    private final ScanScheduler scheduler;
+    private final long maxScanBytes;
+    private final long maxReturnBytes;
+    private final CancellationToken cancellation;
+    private final AtomicLong scannedBytes = new AtomicLong();
+    private final AtomicLong returnedBytes = new AtomicLong();
+    private volatile boolean exhausted;
+
+    /**
+     * Creates a new ScanBudget
+     *
+     * @param scheduler the scheduler to take scan permits from, or null to not limit concurrent scans
+     * @param maxScanBytes the max bytes to read from files, or less than 1 for unlimited
+     * @param maxReturnBytes the max bytes of lines to return, or less than 1 for unlimited
+     */
+    public ScanBudget(ScanScheduler scheduler, long maxScanBytes, long maxReturnBytes) {
+        this(scheduler, maxScanBytes, maxReturnBytes, new CancellationToken());
+    }
+
+    /**
+     * Creates a new ScanBudget
+     *
+     * @param scheduler the scheduler to take scan permits from, or null to not limit concurrent scans
+     * @param maxScanBytes the max bytes to read from files, or less than 1 for unlimited
+     * @param maxReturnBytes the max bytes of lines to return, or less than 1 for unlimited
+     * @param cancellation the request's {@link CancellationToken}
+     */
+    public ScanBudget(ScanScheduler scheduler, long maxScanBytes, long maxReturnBytes, CancellationToken cancellation) {
+        this.scheduler = scheduler;
+        this.maxScanBytes = maxScanBytes;
+        this.maxReturnBytes = maxReturnBytes;
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * @return a budget with no limits and no scheduler
+     */
+    public static ScanBudget unlimited() {
+        return new ScanBudget(null, -1, -1);
+    }
+
+    /**
+     * Records bytes read from a file
+     *
+     * @param bytes the number of bytes read
+     * @return true if the request may keep scanning
+     */
+    public boolean chargeScanned(long bytes) {
+        long total = scannedBytes.addAndGet(bytes);
+        if (maxScanBytes > 0 && total >= maxScanBytes) {
+            exhausted = true;
+        }
+        return !exhausted;
+    }
+
+    /**
+     * Tries to reserve room in the response for a line. The line should only be returned if this succeeds.
+     *
+     * @param bytes the size of the line in bytes
+     * @return true if the line fits in the budget, false if the budget is now exhausted
+     */
+    public boolean tryChargeReturned(long bytes) {
+        long total = returnedBytes.addAndGet(bytes);
+        if (maxReturnBytes > 0 && total > maxReturnBytes) {
+            returnedBytes.addAndGet(-bytes);
+            exhausted = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the bytes of lines that may still be returned, or -1 if there's no limit
+     */
+    public long getRemainingReturnBytes() {
+        return maxReturnBytes > 0 ? Math.max(maxReturnBytes - returnedBytes.get(), 0) : -1;
+    }
+
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    public boolean isCancelled() {
+        return cancellation.isCancelled();
+    }
+
+    /**
+     * @return true if the request should stop, either because the budget is exhausted or it was cancelled
+     */
+    public boolean isStopped() {
+        return exhausted || cancellation.isCancelled();
+    }
+
+    public long getScannedBytes() {
+        return scannedBytes.get();
+    }
+
+    public long getReturnedBytes() {
+        return returnedBytes.get();
+    }
+
+    /**
+     * Waits for the scheduler to allow another file scan, giving up if the request is cancelled while it waits. The
+     * waiting thread is interrupted on cancellation rather than polling, so it keeps its place in the scheduler's queue.
+     *
+     * @return true if the scan may go ahead, false if the request was cancelled and no permit is held
+     * @throws InterruptedException if the thread is interrupted while waiting for any other reason
+     */
+    public boolean acquireScan() throws InterruptedException {
+        return acquireScan(null);
+    }
+
+    /**
+     * Waits for the scheduler to allow another file scan on device, see {@link #acquireScan()} and
+     * {@link ScanScheduler#acquire(Object)}
+     *
+     * @param device the device the file is on, see {@link ReadSettings#deviceOf}, or null if it isn't known
+     * @return true if the scan may go ahead, false if the request was cancelled and no permit is held
+     * @throws InterruptedException if the thread is interrupted while waiting for any other reason
+     */
+    public boolean acquireScan(Object device) throws InterruptedException {
+        if (scheduler == null) {
+            return !cancellation.isCancelled();
+        }
+        Waiter waiter = new Waiter(Thread.currentThread());
+        boolean acquired = false;
+        // The callback is removed once the wait is over, so a request reading many files doesn't collect one per file
+        CancellationToken.Registration registration = cancellation.onCancel(waiter::interrupt);
+        try {
+            scheduler.acquire(device);
+            acquired = true;
+        } catch (InterruptedException e) {
+            if (!cancellation.isCancelled()) {
+                throw e;
+            }
+        } finally {
+            registration.close();
+            waiter.finish();
+        }
+        if (cancellation.isCancelled()) {
+            // The cancellation may have interrupted this thread just after the permit was taken
+            Thread.interrupted();
+            if (acquired) {
+                scheduler.release(device);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Releases a scan permit taken by {@link #acquireScan()}
+     */
+    public void releaseScan() {
+        releaseScan(null);
+    }
+
+    /**
+     * Releases a scan permit taken by {@link #acquireScan(Object)}
+     *
+     * @param device the device the permit was taken for
+     */
+    public void releaseScan(Object device) {
+        if (scheduler != null) {
+            scheduler.release(device);
+        }
+    }
+
+    /**
+     * A thread waiting for a scan permit, which may only be interrupted until it stops waiting
+     */
+    private static final class Waiter {
+        private final Thread thread;
+        private boolean waiting = true;
+
+        private Waiter(Thread thread) {
+            this.thread = thread;
+        }
+
+        private synchronized void interrupt() {
+            if (waiting) {
+                thread.interrupt();
+            }
+        }
+
+        private synchronized void finish() {
+            waiting = false;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits how many files can be scanned at once across all requests, both overall and on each device.
+ * <p/>
+ * Permits are handed out first come, first served and are only held for one file at a time. Since a request scans its
+ * files one after another, it has to queue up again behind the other requests for each file, so a request reading a
+ * whole directory can't starve out smaller requests.
+ * <p/>
+ * Each device, as found by {@link LogRoots#deviceOf}, has its own queue as well, so a spinning disk isn't made to seek
+ * between more files than it can keep up with while another disk sits idle. A scan waits for its device first and only
+ * then for an overall permit, so a scan queued behind a busy disk doesn't hold up scans of other disks.
+ */
+public class ScanScheduler {
+    private final Semaphore scanPermits;
+    private final int maxConcurrentScans;
+    private final int maxScansPerDevice;
+    private final Map<Object, Semaphore> devicePermits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new ScanScheduler with no limit per device
+     *
+     * @param maxConcurrentScans the max number of files that may be scanned at once, or less than 1 for unlimited
+     */
+    public ScanScheduler(int maxConcurrentScans) {
+        this(maxConcurrentScans, -1);
+    }
+
+    /**
+     * Creates a new ScanScheduler
+     *
+     * @param maxConcurrentScans the max number of files that may be scanned at once, or less than 1 for unlimited
+     * @param maxScansPerDevice the max number of files on one device that may be scanned at once, or less than 1 for
+     *                          unlimited
+     */
+    public ScanScheduler(int maxConcurrentScans, int maxScansPerDevice) {
+        this.maxConcurrentScans = maxConcurrentScans;
+        this.maxScansPerDevice = maxScansPerDevice;
+        this.scanPermits = maxConcurrentScans > 0 ? new Semaphore(maxConcurrentScans, true) : null;
+    }
+
+    /**
+     * Waits for a permit to scan a file. Every successful call must be matched by a call to {@link #release()}.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        if (scanPermits != null) {
+            scanPermits.acquire();
+        }
+    }
+
+    /**
+     * Waits for a permit to scan a file on device, then for an overall permit. Every successful call must be matched by
+     * a call to {@link #release(Object)} with the same device.
+     *
+     * @param device the device the file is on, or null if it isn't known
+     * @throws InterruptedException if the thread is interrupted while waiting, in which case no permit is held
+     */
+    public void acquire(Object device) throws InterruptedException {
+        Semaphore permits = devicePermits(device);
+        if (permits != null) {
+            permits.acquire();
+        }
+        try {
+            acquire();
+        } catch (InterruptedException e) {
+            if (permits != null) {
+                permits.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a permit taken by {@link #acquire()}
+     */
+    public void release() {
+        if (scanPermits != null) {
+            scanPermits.release();
+        }
+    }
+
+    /**
+     * Returns the permits taken by {@link #acquire(Object)}
+     *
+     * @param device the device the permits were taken for
+     */
+    public void release(Object device) {
+        release();
+        Semaphore permits = devicePermits(device);
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return the number of requests waiting for a permit
+     */
+    public int queueLength() {
+        return scanPermits != null ? scanPermits.getQueueLength() : 0;
+    }
+
+    /**
+     * @param device a device, as found by {@link LogRoots#deviceOf}
+     * @return the number of requests waiting for a permit to scan a file on device
+     */
+    public int queueLength(Object device) {
+        Semaphore permits = devicePermits(device);
+        return permits != null ? permits.getQueueLength() : 0;
+    }
+
+    public int getMaxConcurrentScans() {
+        return maxConcurrentScans;
+    }
+
+    public int getMaxScansPerDevice() {
+        return maxScansPerDevice;
+    }
+
+    private Semaphore devicePermits(Object device) {
+        if (device == null || maxScansPerDevice <= 0) {
+            return null;
+        }
+        return devicePermits.computeIfAbsent(device, key -> new Semaphore(maxScansPerDevice, true));
+    }
+}
@@ -0,0 +1,171 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.utils.LogCharset;
+import org.ncanfield.cribl.interview.logreader.utils.SegmentWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Compacts closed log files into segments in the background, so searches of old logs can skip most of their blocks.
+ * <p/>
+ * A file is closed once it's a rotation - it matches the rotation pattern with an index - and hasn't been modified for
+ * a minute. Segments are only rewritten when their file changes, and segments whose file is gone are deleted.
+ */
+public class SegmentCompactor implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger("SegmentCompactor");
+    private static final Duration MIN_AGE = Duration.ofMinutes(1);
+
+    private final SegmentStore store;
+    private final Pattern rotationPattern;
+    private final int maxLineLength;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Creates a new SegmentCompactor, which does nothing until it's started
+     *
+     * @param store the {@link SegmentStore} to compact into
+     * @param rotationPattern the pattern rotated files are matched with, see {@link RotationFamilies}
+     */
+    public SegmentCompactor(SegmentStore store, Pattern rotationPattern) {
+        this(store, rotationPattern, 0);
+    }
+
+    /**
+     * Creates a new SegmentCompactor, which does nothing until it's started
+     *
+     * @param store the {@link SegmentStore} to compact into
+     * @param rotationPattern the pattern rotated files are matched with, see {@link RotationFamilies}
+     * @param maxLineLength the max bytes of a line to store before it's truncated, or 0 or less for no limit
+     */
+    public SegmentCompactor(SegmentStore store, Pattern rotationPattern, int maxLineLength) {
+        this.store = store;
+        this.rotationPattern = rotationPattern;
+        this.maxLineLength = maxLineLength;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-compactor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts compacting every interval
+     *
+     * @param interval the time between passes
+     */
+    public void start(Duration interval) {
+        executor.scheduleWithFixedDelay(this::compactQuietly, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a single pass over the log directory, compacting any closed files without a fresh segment
+     *
+     * @return the number of segments written
+     * @throws IOException if the log directory cannot be walked
+     */
+    public int compactAll() throws IOException {
+        int written = 0;
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(store.getLogDir())) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+        for (Path file : files) {
+            if (!isClosed(file) || store.findFresh(file) != null || !isUtf8(file)) {
+                continue;
+            }
+            try {
+                SegmentWriter.write(file, store.segmentPathFor(file), maxLineLength);
+                written++;
+            } catch (IOException e) {
+                // Carry on with the rest, this one will be retried next pass
+                LOGGER.info("Could not compact " + file + ": " + e.getMessage());
+            }
+        }
+        removeOrphans();
+        return written;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void compactQuietly() {
+        try {
+            int written = compactAll();
+            if (written > 0) {
+                LOGGER.info("Compacted " + written + " log files into segments");
+            }
+        } catch (Exception e) {
+            LOGGER.warning("Segment compaction failed: " + e.getMessage());
+        }
+    }
+
+    private boolean isClosed(Path file) {
+        Matcher matcher = rotationPattern.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            return false;
+        }
+        try {
+            if (matcher.group("index") == null) {
+                return false;
+            }
+        } catch (IllegalArgumentException e) {
+            // No index group, so there's no telling rotations apart from live files
+            return false;
+        }
+        try {
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis();
+            return age >= MIN_AGE.toMillis();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Segments are stored as UTF-8, so files in other charsets are left to be read as they are. Gzipped rotations can't
+     * be sampled without inflating them, and are taken to be UTF-8.
+     */
+    private static boolean isUtf8(Path file) {
+        if (file.getFileName().toString().endsWith(".gz")) {
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return LogCharset.detect(channel).isUtf8();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void removeOrphans() throws IOException {
+        if (!Files.isDirectory(store.getSegmentDir())) {
+            return;
+        }
+        List<Path> segments;
+        try (Stream<Path> walk = Files.walk(store.getSegmentDir())) {
+            segments = walk.filter(path -> path.getFileName().toString().endsWith(SegmentStore.EXTENSION)).toList();
+        }
+        for (Path segment : segments) {
+            String relative = store.getSegmentDir().relativize(segment).toString();
+            Path source = store.getLogDir().resolve(relative.substring(0, relative.length() - SegmentStore.EXTENSION.length()));
+            if (!Files.exists(source)) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.utils.SegmentFormat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+/**
+ * Maps log files to the segments compacted from them. Segments live in their own directory, mirroring the layout of
+ * the log directory, so the log directory itself is never written to.
+ */
+public class SegmentStore {
+    public static final String EXTENSION = ".seg";
+
+    private static final Logger LOGGER = Logger.getLogger("SegmentStore");
+
+    private final Path logDir;
+    private final Path segmentDir;
+
+    /**
+     * Creates a new SegmentStore
+     *
+     * @param logDir the directory logs are read from
+     * @param segmentDir the directory segments are kept in
+     */
+    public SegmentStore(Path logDir, Path segmentDir) {
+        this.logDir = logDir.toAbsolutePath().normalize();
+        this.segmentDir = segmentDir.toAbsolutePath().normalize();
+    }
+
+    /**
+     * @param source a log file
+     * @return where the segment for source goes, or null if source isn't in the log directory
+     */
+    public Path segmentPathFor(Path source) {
+        Path absolute = source.toAbsolutePath().normalize();
+        if (!absolute.startsWith(logDir)) {
+            return null;
+        }
+        return segmentDir.resolve(logDir.relativize(absolute) + EXTENSION);
+    }
+
+    /**
+     * Finds the segment for source if it's up-to-date, that is if it was made from a file of the same size and
+     * modification time
+     *
+     * @param source a log file
+     * @return the segment, or null if there isn't a fresh one
+     */
+    public Path findFresh(Path source) {
+        Path segment = segmentPathFor(source);
+        if (segment == null || !Files.isRegularFile(segment)) {
+            return null;
+        }
+        try {
+            SegmentFormat.Footer footer = SegmentFormat.readFooter(segment);
+            if (footer.sourceSize() == Files.size(source) &&
+                    footer.sourceModified() == Files.getLastModifiedTime(source).toMillis()) {
+                return segment;
+            }
+        } catch (IOException e) {
+            LOGGER.info("Could not check segment " + segment + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @param source a log file
+     * @return the fresh segment for source if there is one, otherwise source itself
+     */
+    public Path resolve(Path source) {
+        Path segment = findFresh(source);
+        return segment != null ? segment : source;
+    }
+
+    public Path getLogDir() {
+        return logDir;
+    }
+
+    public Path getSegmentDir() {
+        return segmentDir;
+    }
+}
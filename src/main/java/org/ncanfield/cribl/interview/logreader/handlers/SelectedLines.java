@@ -0,0 +1,108 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.models.LogCursor;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The lines a request returns from a file, newest first. The blocking and reactive reads both step through these, so
+ * they return the same lines however the file is scanned.
+ */
+interface SelectedLines extends Closeable {
+
+    /**
+     * Opens the lines a request selects from a file. Large single files are split up and scanned by a
+     * {@link ParallelScan} where the request allows it, everything else is read line by line through a
+     * {@link ContextScan}.
+     *
+     * @param filePath the path of the file, or of the live file for a set of rotated files
+     * @param members the files to read newest first, either just filePath or every file in its rotation set
+     * @param request the {@link LogReadRequest} with the line limit, search term, filter and context to use
+     * @param settings the server's {@link ReadSettings}
+     * @param budget the {@link ScanBudget} to charge lines to
+     * @return the new {@link SelectedLines}
+     * @throws IOException if the file cannot be opened
+     * @throws LogReaderException if the reader cannot be created
+     */
+    static SelectedLines open(Path filePath, List<Path> members, LogReadRequest request, ReadSettings settings, ScanBudget budget)
+            throws IOException, LogReaderException {
+        return open(filePath, members, request, settings, budget, null);
+    }
+
+    /**
+     * Opens the lines a request selects from a file, carrying on from a cursor if there is one
+     *
+     * @param cursor the {@link LogCursor} for filePath to read the range of, or null to read the whole file
+     */
+    static SelectedLines open(Path filePath, List<Path> members, LogReadRequest request, ReadSettings settings, ScanBudget budget,
+                              LogCursor cursor) throws IOException, LogReaderException {
+        if (ParallelScan.applies(filePath, members, request, settings, cursor)) {
+            return cursor != null ?
+                    ParallelScan.open(filePath, request, settings, budget, cursor.start(), cursor.end()) :
+                    ParallelScan.open(filePath, request, settings, budget);
+        }
+        // Patterns are only mined from matching lines, so context isn't read for them
+        boolean withContext = request.mode() != ReadMode.PATTERNS;
+        return new ContextScan(
+                LineScan.open(filePath, members, request, settings, budget, cursor),
+                request.maxLines(),
+                withContext ? request.before() : 0,
+                withContext ? request.after() : 0);
+    }
+
+    /**
+     * Moves to the next line to return
+     *
+     * @return true if there's a line, false once the file runs out, the line limit is reached or the budget stops the
+     * request
+     * @throws IOException if there's an exception reading the file
+     * @throws LogReaderException if there's an issue parsing the file
+     */
+    boolean next() throws IOException, LogReaderException;
+
+    /**
+     * @return true if the file has lines left that weren't scanned
+     */
+    boolean hasMoreData();
+
+    /**
+     * @return the offset in the file the lines are read back to, or -1 if they don't come straight from a single file
+     */
+    long getRangeStart();
+
+    /**
+     * @return the offset in the file the lines are read back from, or -1 if they don't come straight from a single file
+     */
+    long getRangeEnd();
+
+    /**
+     * @return the offset in the file reading has got back to, every line from here to {@link #getRangeEnd()} has been
+     * dealt with, or -1 if lines don't come straight from a single file
+     */
+    long getPosition();
+
+    byte[] getLineBuffer();
+
+    int getLineStart();
+
+    int getLineLength();
+
+    Charset getCharset();
+
+    /**
+     * @return the bytes the line took up in the file, including its newline
+     */
+    long getLineBytes();
+
+    /**
+     * @return the line decoded
+     */
+    String getLine();
+}
@@ -0,0 +1,503 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.models.FieldFilter;
+import org.ncanfield.cribl.interview.logreader.models.LogQuery;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.StandingMatch;
+import org.ncanfield.cribl.interview.logreader.models.StandingQueryResult;
+import org.ncanfield.cribl.interview.logreader.utils.AhoCorasick;
+import org.ncanfield.cribl.interview.logreader.utils.FileHandleCache;
+import org.ncanfield.cribl.interview.logreader.utils.LogCharset;
+import org.ncanfield.cribl.interview.logreader.utils.LogFormat;
+import org.ncanfield.cribl.interview.logreader.utils.Utf8Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the latest matches of saved searches up to date as lines are appended to the log directory, so reading one
+ * is a lookup rather than a scan of the files.
+ * <p/>
+ * Once the first query is registered the log directory is watched, and each time a file grows just the bytes appended
+ * since it was last read are read forwards and checked against every query at once with an {@link AhoCorasick}
+ * automaton. Each query keeps a count of the lines it has matched and the latest of them. Queries only see lines
+ * appended after they were registered. A file that's truncated or replaced is read again from its start, and one that's
+ * renamed carries on from where it was, so a rotation isn't counted twice.
+ * <p/>
+ * Each file's {@link LogCharset} is detected the first time it's read. Lines of files that aren't UTF-8 are split on
+ * the newlines of their charset and encoded as UTF-8 before they're checked, so they match the same queries.
+ */
+public class StandingQueries implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger("StandingQueries");
+    public static final int MAX_QUERIES = AhoCorasick.MAX_PATTERNS;
+    // The search terms are built into a table of 1KB per byte, so this bounds it at 4MB
+    public static final int MAX_SEARCH_BYTES = 4096;
+    public static final int DEFAULT_MATCHES = 100;
+    public static final int MAX_MATCHES = 10000;
+    public static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path logDir;
+    private final int maxLineLength;
+    private final Map<String, Query> queries = new ConcurrentSkipListMap<>();
+    private volatile QuerySet querySet = new QuerySet(List.of());
+
+    // Everything below is guarded by the watcher lock, as both the watcher thread and refresh() read files
+    private final Object watcherLock = new Object();
+    // Where each file has been read up to, keyed by its identity so a renamed file carries on where it was
+    private final Map<Object, Tail> tails = new HashMap<>();
+    private final Map<Path, Object> identities = new HashMap<>();
+    private final Set<Path> watchedDirs = new HashSet<>();
+    private WatchService watchService;
+    private Thread watcher;
+    private byte[] lineBuffer = new byte[1024];
+
+    /**
+     * Creates a new StandingQueries, which doesn't watch anything until a query is registered
+     *
+     * @param logDir the log directory to watch
+     * @param maxLineLength the max bytes of a line to keep before it's truncated, or 0 or less for no limit
+     */
+    public StandingQueries(Path logDir, int maxLineLength) {
+        this.logDir = logDir.toAbsolutePath().normalize();
+        this.maxLineLength = maxLineLength > 0 ? maxLineLength : Integer.MAX_VALUE - 8;
+    }
+
+    /**
+     * Registers a query, or replaces the one of the same name, starting to watch the log directory if it isn't yet.
+     * The query starts out with no matches.
+     *
+     * @param name the name to look the query up by, matching {@link #NAME_PATTERN}
+     * @param query the query as it was asked, which is returned with its results
+     * @param request the parsed query, its line limit is the number of matches to keep
+     * @return the new query's results
+     * @throws LogReaderException if there are already as many queries as can be kept, or their search terms are too
+     * long together
+     * @throws IOException if the log directory cannot be watched
+     */
+    public StandingQueryResult register(String name, LogQuery query, LogReadRequest request) throws LogReaderException, IOException {
+        synchronized (queries) {
+            if (!queries.containsKey(name) && queries.size() >= MAX_QUERIES) {
+                throw new LogReaderException(String.format("At most %d standing queries can be registered", MAX_QUERIES));
+            }
+            int capacity = request.maxLines() != null && request.maxLines() > 0 ?
+                    Math.min(request.maxLines(), MAX_MATCHES) :
+                    DEFAULT_MATCHES;
+            Query standing = new Query(name, query, request.searchTerm(), request.filter(), capacity);
+
+            List<Query> updated = new ArrayList<>(queries.values());
+            updated.removeIf(existing -> existing.name.equals(name));
+            updated.add(standing);
+            int searchBytes = updated.stream()
+                    .filter(existing -> existing.searchTerm != null)
+                    .mapToInt(existing -> existing.searchTerm.getBytes(StandardCharsets.UTF_8).length)
+                    .sum();
+            if (searchBytes > MAX_SEARCH_BYTES) {
+                throw new LogReaderException(String.format(
+                        "The search terms of all standing queries may be at most %d bytes together", MAX_SEARCH_BYTES));
+            }
+
+            startWatching();
+            queries.put(name, standing);
+            querySet = new QuerySet(new ArrayList<>(queries.values()));
+            return standing.toResult();
+        }
+    }
+
+    /**
+     * Removes a query
+     *
+     * @param name the name of the query
+     * @return true if there was a query of that name
+     */
+    public boolean remove(String name) {
+        synchronized (queries) {
+            if (queries.remove(name) == null) {
+                return false;
+            }
+            querySet = new QuerySet(new ArrayList<>(queries.values()));
+            return true;
+        }
+    }
+
+    /**
+     * @param name the name of the query
+     * @return the query's latest results, or null if there's no query of that name
+     */
+    public StandingQueryResult get(String name) {
+        Query query = queries.get(name);
+        return query != null ? query.toResult() : null;
+    }
+
+    /**
+     * @return the latest results of every query, by name
+     */
+    public List<StandingQueryResult> getAll() {
+        return queries.values().stream().map(Query::toResult).toList();
+    }
+
+    /**
+     * Checks every file in the log directory for appended lines straight away, rather than waiting for the watcher to
+     * notice them. This is also what the watcher does when it's missed events.
+     */
+    public void refresh() {
+        synchronized (watcherLock) {
+            if (watchService == null) {
+                return;
+            }
+            try {
+                registerTree(logDir);
+                for (Path file : listFiles(logDir)) {
+                    readAppended(file, false);
+                }
+                pruneTails();
+            } catch (IOException e) {
+                LOGGER.info("Could not check the log directory for appended lines: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (watcherLock) {
+            if (watchService == null) {
+                return;
+            }
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.info("Could not close the log directory watcher: " + e.getMessage());
+            }
+            watcher.interrupt();
+        }
+    }
+
+    private void startWatching() throws IOException {
+        synchronized (watcherLock) {
+            if (watchService != null) {
+                return;
+            }
+            watchService = logDir.getFileSystem().newWatchService();
+            // Directories are watched before their files are measured, so nothing appended in between is missed
+            registerTree(logDir);
+            for (Path file : listFiles(logDir)) {
+                readAppended(file, true);
+            }
+            watcher = new Thread(this::watch, "standing-queries");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            synchronized (watcherLock) {
+                try {
+                    handleEvents(key);
+                } catch (ClosedWatchServiceException e) {
+                    return;
+                } catch (Exception e) {
+                    LOGGER.warning("Could not check appended lines: " + e.getMessage());
+                }
+                if (!key.reset()) {
+                    watchedDirs.remove((Path) key.watchable());
+                }
+            }
+        }
+    }
+
+    private void handleEvents(WatchKey key) throws IOException {
+        Path dir = (Path) key.watchable();
+        boolean missedEvents = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                missedEvents = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                identities.remove(path);
+            } else if (Files.isDirectory(path)) {
+                registerTree(path);
+                // Anything already in a new directory was written after the queries were registered
+                for (Path file : listFiles(path)) {
+                    readAppended(file, false);
+                }
+            } else {
+                readAppended(path, false);
+            }
+        }
+        if (missedEvents) {
+            for (Path file : listFiles(logDir)) {
+                readAppended(file, false);
+            }
+        }
+        // Renames show up as a delete and a create, so files are only forgotten once neither is left to come
+        pruneTails();
+    }
+
+    private void registerTree(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path subdir : walk.filter(Files::isDirectory).toList()) {
+                if (watchedDirs.add(subdir)) {
+                    subdir.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.ENTRY_DELETE);
+                }
+            }
+        }
+    }
+
+    private static List<Path> listFiles(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private void pruneTails() {
+        tails.keySet().retainAll(new HashSet<>(identities.values()));
+    }
+
+    /**
+     * Reads the lines appended to file since it was last read
+     *
+     * @param file the file that may have grown
+     * @param skipExisting whether lines already in a file that hasn't been seen before are skipped, rather than read
+     */
+    private void readAppended(Path file, boolean skipExisting) {
+        if (!Files.isRegularFile(file) || !LogReadRequestHandler.isReadableFile(file)) {
+            return;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            Object identity = FileHandleCache.identity(attributes);
+            identities.put(file, identity);
+            Tail tail = tails.get(identity);
+            if (tail == null) {
+                tail = new Tail();
+                tail.offset = skipExisting ? attributes.size() : 0;
+                tails.put(identity, tail);
+            }
+            if (attributes.size() < tail.offset) {
+                // Truncated, so all of it is new
+                tail.offset = 0;
+                tail.format = null;
+                tail.charset = null;
+            }
+            if (querySet.queries.isEmpty()) {
+                // Nothing to check the lines against, so just keep up with the file
+                tail.offset = attributes.size();
+            } else if (attributes.size() > tail.offset) {
+                readLines(file, tail);
+            }
+        } catch (IOException e) {
+            LOGGER.info("Could not read appended lines of " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void readLines(Path file, Tail tail) throws IOException {
+        String filePath = logDir.relativize(file.toAbsolutePath().normalize()).toString();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (tail.charset == null) {
+                tail.charset = LogCharset.detect(channel);
+            }
+            // UTF-16 newlines are a two byte unit, with the zero on the side of the byte order
+            int unit = tail.charset.isUtf16() ? 2 : 1;
+            int newlineByte = StandardCharsets.UTF_16BE.equals(tail.charset.charset()) ? 1 : 0;
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            long position = tail.charset.alignStart(tail.offset);
+            int lineLength = 0;
+            int read;
+            while ((read = channel.read(buffer.clear(), position)) > 0) {
+                // Half a UTF-16 character is left to be read with the rest of it
+                read -= read % unit;
+                if (read == 0) {
+                    break;
+                }
+                byte[] bytes = buffer.array();
+                int lineStart = 0;
+                for (int i = 0; i < read; i += unit) {
+                    if (isNewline(bytes, i, unit, newlineByte)) {
+                        check(tail, filePath, append(bytes, lineStart, i, lineLength));
+                        lineLength = 0;
+                        lineStart = i + unit;
+                        tail.offset = position + lineStart;
+                    }
+                }
+                lineLength = append(bytes, lineStart, read, lineLength);
+                position += read;
+            }
+            // A line without its newline yet is left to be read once it's finished
+        }
+    }
+
+    private static boolean isNewline(byte[] bytes, int i, int unit, int newlineByte) {
+        if (unit == 1) {
+            return bytes[i] == '\n';
+        }
+        return bytes[i + newlineByte] == '\n' && bytes[i + 1 - newlineByte] == 0;
+    }
+
+    /**
+     * Appends bytes start to end to the line being read, up to the max line length
+     *
+     * @return the new length of the line
+     */
+    private int append(byte[] bytes, int start, int end, int lineLength) {
+        int length = Math.min(end - start, maxLineLength - lineLength);
+        if (length <= 0) {
+            return lineLength;
+        }
+        if (lineLength + length > lineBuffer.length) {
+            lineBuffer = Arrays.copyOf(lineBuffer, Math.min(Math.max(lineBuffer.length * 2, lineLength + length), maxLineLength));
+        }
+        System.arraycopy(bytes, start, lineBuffer, lineLength, length);
+        return lineLength + length;
+    }
+
+    private void check(Tail tail, String filePath, int lineLength) {
+        byte[] line = lineBuffer;
+        if (!tail.charset.isUtf8()) {
+            // A UTF-16 line cut at the max line length can end in half a character, which is replaced
+            line = new String(lineBuffer, 0, lineLength, tail.charset.charset()).getBytes(StandardCharsets.UTF_8);
+            lineLength = line.length;
+        }
+        int end = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+        if (Utf8Bytes.isBlank(line, 0, end, StandardCharsets.UTF_8)) {
+            return;
+        }
+        QuerySet current = querySet;
+        long found = current.matcher != null ? current.matcher.search(line, 0, end) : 0;
+        StandingMatch match = null;
+        for (int i = 0; i < current.queries.size(); i++) {
+            Query query = current.queries.get(i);
+            if (current.terms[i] >= 0 && (found & (1L << current.terms[i])) == 0) {
+                continue;
+            }
+            if (query.filter != null) {
+                if (tail.format == null) {
+                    tail.format = LogFormat.detect(line, 0, end);
+                }
+                if (!query.filter.matches(tail.format, line, 0, end)) {
+                    continue;
+                }
+            }
+            if (match == null) {
+                match = new StandingMatch(filePath, new String(line, 0, end, StandardCharsets.UTF_8));
+            }
+            query.add(match);
+        }
+    }
+
+    /**
+     * Where a file has been read up to
+     */
+    private static final class Tail {
+        private long offset;
+        // Detected from the first line read, for the queries with a filter
+        private LogFormat format;
+        // Detected the first time the file is read
+        private LogCharset charset;
+    }
+
+    /**
+     * A registered query and what it's matched
+     */
+    private static final class Query {
+        private final String name;
+        private final LogQuery query;
+        private final String searchTerm;
+        private final FieldFilter filter;
+        private final int capacity;
+        private final Instant since = Instant.now();
+        // Oldest first, so the newest is added to the end and the oldest dropped from the front
+        private final Deque<StandingMatch> latest = new ArrayDeque<>();
+        private long count;
+
+        private Query(String name, LogQuery query, String searchTerm, FieldFilter filter, int capacity) {
+            this.name = name;
+            this.query = query;
+            this.searchTerm = searchTerm;
+            this.filter = filter;
+            this.capacity = capacity;
+        }
+
+        private synchronized void add(StandingMatch match) {
+            count++;
+            if (latest.size() == capacity) {
+                latest.removeFirst();
+            }
+            latest.addLast(match);
+        }
+
+        private synchronized StandingQueryResult toResult() {
+            List<StandingMatch> matches = new ArrayList<>(latest.size());
+            latest.descendingIterator().forEachRemaining(matches::add);
+            return new StandingQueryResult(name, query, count, since.toString(), matches);
+        }
+    }
+
+    /**
+     * The registered queries, with their distinct search terms built into one automaton
+     */
+    private static final class QuerySet {
+        private final List<Query> queries;
+        // The automaton's pattern number for each query's search term, or -1 if it has none
+        private final int[] terms;
+        private final AhoCorasick matcher;
+
+        private QuerySet(List<Query> queries) {
+            this.queries = queries;
+            this.terms = new int[queries.size()];
+            List<String> distinct = new ArrayList<>();
+            for (int i = 0; i < queries.size(); i++) {
+                String searchTerm = queries.get(i).searchTerm;
+                if (searchTerm == null) {
+                    terms[i] = -1;
+                    continue;
+                }
+                if (!distinct.contains(searchTerm)) {
+                    distinct.add(searchTerm);
+                }
+                terms[i] = distinct.indexOf(searchTerm);
+            }
+            this.matcher = distinct.isEmpty() ?
+                    null :
+                    new AhoCorasick(distinct.stream().map(term -> term.getBytes(StandardCharsets.UTF_8)).toList());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.utils.LogFormat;
+import org.ncanfield.cribl.interview.logreader.utils.Utf8Bytes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A filter on the fields of structured log lines, like {@code level=ERROR AND status>=500}.
+ * <p/>
+ * Conditions are joined with AND and OR, with AND binding tighter, and compare a field with =, !=, &gt;, &gt;=, &lt;
+ * or &lt;=. Values can be double quoted to include spaces. Lines are checked while they're still raw bytes, and only
+ * the fields the filter mentions are looked for. A line without the field never matches the condition.
+ */
+public final class FieldFilter {
+    private static final Pattern CONDITION = Pattern.compile("^([^\\s=!<>\"]+)\\s*(>=|<=|!=|=|>|<)\\s*(.+)$");
+
+    private final String expression;
+    // Each inner list is ANDed together, and the lists are ORed
+    private final List<List<Condition>> groups;
+
+    private FieldFilter(List<List<Condition>> groups) {
+        this.groups = groups;
+        this.expression = groups.stream()
+                .map(group -> group.stream().map(Condition::toString).collect(Collectors.joining(" AND ")))
+                .collect(Collectors.joining(" OR "));
+    }
+
+    /**
+     * Parses a filter from a query parameter
+     *
+     * @param expression the filter, or null for none
+     * @return the parsed {@link FieldFilter}, or null if expression is null or blank
+     * @throws LogReaderException if the filter cannot be parsed, with a message saying why
+     */
+    public static FieldFilter parse(String expression) throws LogReaderException {
+        if (expression == null || expression.isBlank()) {
+            return null;
+        }
+
+        List<List<Condition>> groups = new ArrayList<>();
+        List<Condition> group = new ArrayList<>();
+        List<String> clause = new ArrayList<>();
+        for (String token : tokenize(expression)) {
+            boolean and = token.equalsIgnoreCase("AND");
+            boolean or = token.equalsIgnoreCase("OR");
+            if (and || or) {
+                group.add(parseCondition(clause, token));
+                clause.clear();
+                if (or) {
+                    groups.add(List.copyOf(group));
+                    group.clear();
+                }
+            } else {
+                clause.add(token);
+            }
+        }
+        group.add(parseCondition(clause, "the end of the filter"));
+        groups.add(List.copyOf(group));
+        return new FieldFilter(List.copyOf(groups));
+    }
+
+    /**
+     * Checks if a line matches the filter
+     *
+     * @param format the {@link LogFormat} of the line
+     * @param line the buffer holding the line
+     * @param start the index the line starts at
+     * @param end the index the line ends at, exclusive
+     * @return true if the line matches
+     */
+    public boolean matches(LogFormat format, byte[] line, int start, int end) {
+        int[] value = new int[2];
+        for (List<Condition> group : groups) {
+            boolean matched = true;
+            for (Condition condition : group) {
+                if (!condition.matches(format, line, start, end, value)) {
+                    matched = false;
+                    break;
+                }
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof FieldFilter filter && expression.equals(filter.expression);
+    }
+
+    @Override
+    public int hashCode() {
+        return expression.hashCode();
+    }
+
+    /**
+     * @return the filter in a normalized form that parses back to the same filter
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * Splits the expression on whitespace, keeping double quoted values together
+     */
+    private static List<String> tokenize(String expression) throws LogReaderException {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                token.append(c);
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (!token.isEmpty()) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                }
+            } else {
+                token.append(c);
+            }
+        }
+        if (quoted) {
+            throw new LogReaderException("A quoted value is missing its closing quote");
+        }
+        if (!token.isEmpty()) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    private static Condition parseCondition(List<String> clause, String before) throws LogReaderException {
+        if (clause.isEmpty()) {
+            throw new LogReaderException("Expected a condition before " + before);
+        }
+        Matcher matcher = CONDITION.matcher(String.join(" ", clause));
+        if (!matcher.matches()) {
+            throw new LogReaderException("Could not understand the condition " + String.join(" ", clause));
+        }
+        String value = matcher.group(3);
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        Operator operator = Operator.fromSymbol(matcher.group(2));
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        double number = Utf8Bytes.parseNumber(valueBytes, 0, valueBytes.length);
+        if (operator.numeric && Double.isNaN(number)) {
+            throw new LogReaderException("Only numbers can be compared with " + operator.symbol);
+        }
+        return new Condition(matcher.group(1), operator, value, valueBytes, number);
+    }
+
+    private enum Operator {
+        EQUALS("=", false),
+        NOT_EQUALS("!=", false),
+        GREATER(">", true),
+        GREATER_OR_EQUAL(">=", true),
+        LESS("<", true),
+        LESS_OR_EQUAL("<=", true);
+
+        private final String symbol;
+        private final boolean numeric;
+
+        Operator(String symbol, boolean numeric) {
+            this.symbol = symbol;
+            this.numeric = numeric;
+        }
+
+        private static Operator fromSymbol(String symbol) {
+            for (Operator operator : values()) {
+                if (operator.symbol.equals(symbol)) {
+                    return operator;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operator " + symbol);
+        }
+    }
+
+    /**
+     * A single comparison, with the field and value encoded up front so lines never need decoding
+     */
+    private static final class Condition {
+        private final String field;
+        private final byte[] fieldBytes;
+        private final Operator operator;
+        private final String value;
+        private final byte[] valueBytes;
+        private final double number;
+
+        private Condition(String field, Operator operator, String value, byte[] valueBytes, double number) {
+            this.field = field;
+            this.fieldBytes = field.getBytes(StandardCharsets.UTF_8);
+            this.operator = operator;
+            this.value = value;
+            this.valueBytes = valueBytes;
+            this.number = number;
+        }
+
+        private boolean matches(LogFormat format, byte[] line, int start, int end, int[] bounds) {
+            if (!format.findField(line, start, end, fieldBytes, bounds)) {
+                return false;
+            }
+            return switch (operator) {
+                case EQUALS -> valueEquals(line, bounds[0], bounds[1]);
+                case NOT_EQUALS -> !valueEquals(line, bounds[0], bounds[1]);
+                default -> compare(Utf8Bytes.parseNumber(line, bounds[0], bounds[1]));
+            };
+        }
+
+        private boolean valueEquals(byte[] line, int start, int end) {
+            if (Arrays.equals(line, start, end, valueBytes, 0, valueBytes.length)) {
+                return true;
+            }
+            // So status=500 still matches 500.0
+            return !Double.isNaN(number) && Utf8Bytes.parseNumber(line, start, end) == number;
+        }
+
+        private boolean compare(double lineNumber) {
+            if (Double.isNaN(lineNumber)) {
+                return false;
+            }
+            return switch (operator) {
+                case GREATER -> lineNumber > number;
+                case GREATER_OR_EQUAL -> lineNumber >= number;
+                case LESS -> lineNumber < number;
+                case LESS_OR_EQUAL -> lineNumber <= number;
+                default -> false;
+            };
+        }
+
+        @Override
+        public String toString() {
+            boolean quote = value.isEmpty() || value.chars().anyMatch(Character::isWhitespace);
+            return field + operator.symbol + (quote ? "\"" + value + "\"" : value);
+        }
+    }
+}
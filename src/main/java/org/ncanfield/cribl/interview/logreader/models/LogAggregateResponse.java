@@ -2,5 +2,8 @@ package org.ncanfield.cribl.interview.logreader.models;
 
 import java.util.List;
 
-public record LogAggregateResponse(List<LogReadResponse> serverLogs, List<String> errors) {
+public record LogAggregateResponse(List<LogReadResponse> serverLogs, List<LogPattern> patterns, List<String> errors) {
+    public LogAggregateResponse(List<LogReadResponse> serverLogs, List<String> errors) {
+        this(serverLogs, null, errors);
+    }
 }
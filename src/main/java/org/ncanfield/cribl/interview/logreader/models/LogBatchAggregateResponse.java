@@ -0,0 +1,6 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import java.util.List;
+
+public record LogBatchAggregateResponse(List<LogBatchResponse> serverLogs, List<String> errors) {
+}
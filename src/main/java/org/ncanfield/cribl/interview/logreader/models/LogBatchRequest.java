@@ -0,0 +1,9 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import java.util.List;
+
+/**
+ * The body of a /logs/batch or /aggregate/batch request: several queries answered from a single read of the same files
+ */
+public record LogBatchRequest(String fileName, boolean followRotations, List<LogQuery> queries) {
+}
@@ -0,0 +1,9 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import java.util.List;
+
+/**
+ * A server's answer to a /logs/batch request, with a result per query in the order they were asked
+ */
+public record LogBatchResponse(String serverName, List<LogQueryResult> results, List<String> errors) {
+}
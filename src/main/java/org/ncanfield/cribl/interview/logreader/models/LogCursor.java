@@ -0,0 +1,69 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Where a read of a file left off, so the next read can carry on from there instead of reading the file again.
+ * <p/>
+ * A cursor covers a byte range of one file: an older cursor covers the lines a read didn't get back to, and a newer
+ * cursor starts at the end of the file as it was read and runs on to wherever the end is by the time it's used. It's
+ * tied to the file it was issued for by a hash of its path and a hash of its identity (the inode where the filesystem
+ * has one), so a file that's been rotated away underneath it is noticed.
+ *
+ * @param pathKey a hash of the path of the file, relative to the log directory
+ * @param fileId a hash of the identity of the file
+ * @param start the offset the range starts at
+ * @param end the offset the range ends at, or -1 for the end of the file when the cursor is used
+ */
+public record LogCursor(long pathKey, long fileId, long start, long end) {
+    private static final byte VERSION = 1;
+    private static final int ENCODED_BYTES = 1 + 4 * Long.BYTES;
+
+    /**
+     * @return true if this cursor is for lines older than a read, false if it's for lines written after it
+     */
+    public boolean isOlder() {
+        return end >= 0;
+    }
+
+    /**
+     * @return the cursor as an opaque URL safe string
+     */
+    public String encode() {
+        ByteBuffer bytes = ByteBuffer.allocate(ENCODED_BYTES)
+                .put(VERSION)
+                .putLong(pathKey)
+                .putLong(fileId)
+                .putLong(start)
+                .putLong(end);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array());
+    }
+
+    /**
+     * Parses a cursor from a query parameter
+     *
+     * @param value the cursor as returned by {@link #encode()}
+     * @return the {@link LogCursor}
+     * @throws LogReaderException if value isn't a cursor
+     */
+    public static LogCursor decode(String value) throws LogReaderException {
+        byte[] decoded;
+        try {
+            decoded = Base64.getUrlDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            throw new LogReaderException("Cursor is not valid", e);
+        }
+        if (decoded.length != ENCODED_BYTES || decoded[0] != VERSION) {
+            throw new LogReaderException("Cursor is not valid");
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(decoded, 1, ENCODED_BYTES - 1);
+        LogCursor cursor = new LogCursor(bytes.getLong(), bytes.getLong(), bytes.getLong(), bytes.getLong());
+        if (cursor.start() < 0 || (cursor.isOlder() && cursor.end() < cursor.start()) || cursor.end() < -1) {
+            throw new LogReaderException("Cursor is not valid");
+        }
+        return cursor;
+    }
+}
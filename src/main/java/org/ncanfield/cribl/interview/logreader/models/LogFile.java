@@ -2,5 +2,9 @@ package org.ncanfield.cribl.interview.logreader.models;
 
 import java.util.List;
 
-public record LogFile(String fileName, String filePath, List<String> logLines, String error) {
+public record LogFile(String fileName, String filePath, List<String> logLines, List<LogPattern> patterns, String error,
+                      String olderCursor, String newerCursor, LogSample sample) {
+    public LogFile(String fileName, String filePath, List<String> logLines, String error) {
+        this(fileName, filePath, logLines, null, error, null, null, null);
+    }
 }
@@ -0,0 +1,7 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+/**
+ * A single line streamed from /logs/stream or /aggregate/stream, or an error for a file or server in place of its lines
+ */
+public record LogLineEvent(String serverName, String filePath, String line, String error) {
+}
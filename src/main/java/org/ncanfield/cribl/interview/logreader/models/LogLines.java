@@ -0,0 +1,155 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.ncanfield.cribl.interview.logreader.profiling.LinesWriteEvent;
+import org.ncanfield.cribl.interview.logreader.utils.Utf8Bytes;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact list of log lines, stored as UTF-8 bytes packed into shared chunks rather than as individual Strings.
+ * <p/>
+ * Lines are only decoded when {@link #get(int)} is called, and are written to JSON straight from their bytes, so
+ * returning a large number of lines costs roughly their size in bytes rather than a String, its array and a copy each.
+ */
+@JsonSerialize(using = LogLines.Serializer.class)
+public class LogLines extends AbstractList<String> {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    // The chunk short lines are currently being packed into, and how much of it is used
+    private int sharedChunk = -1;
+    private int chunkUsed;
+    // Chunk index in the high bits and the offset in that chunk in the low bits
+    private long[] locations = new long[16];
+    private int[] lengths = new int[16];
+    private int size;
+
+    /**
+     * Adds a line from raw bytes, copying them in
+     *
+     * @param bytes the array holding the line
+     * @param offset the index the line starts at
+     * @param length the length of the line in bytes
+     * @param charset the charset of the bytes, lines that aren't valid UTF-8 get re-encoded
+     */
+    public void add(byte[] bytes, int offset, int length, Charset charset) {
+        if (!StandardCharsets.UTF_8.equals(charset) || !Utf8Bytes.isValid(bytes, offset, offset + length)) {
+            // Invalid sequences get replaced the same way decoding to a String would
+            byte[] encoded = new String(bytes, offset, length, charset).getBytes(StandardCharsets.UTF_8);
+            addUtf8(encoded, 0, encoded.length);
+        } else {
+            addUtf8(bytes, offset, length);
+        }
+    }
+
+    @Override
+    public boolean add(String line) {
+        byte[] encoded = line.getBytes(StandardCharsets.UTF_8);
+        addUtf8(encoded, 0, encoded.length);
+        return true;
+    }
+
+    @Override
+    public String get(int index) {
+        checkIndex(index);
+        long location = locations[index];
+        return new String(chunks.get((int) (location >>> 32)), (int) location, lengths[index], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the total bytes of all lines held
+     */
+    public long byteSize() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += lengths[i];
+        }
+        return total;
+    }
+
+    private void addUtf8(byte[] bytes, int offset, int length) {
+        byte[] chunk;
+        if (length > CHUNK_SIZE / 4) {
+            // Big lines get a chunk of their own so they don't waste the rest of a shared one
+            chunk = Arrays.copyOfRange(bytes, offset, offset + length);
+            chunks.add(chunk);
+            store(chunks.size() - 1, 0, length);
+            return;
+        }
+        if (sharedChunk < 0 || chunkUsed + length > CHUNK_SIZE) {
+            chunks.add(new byte[CHUNK_SIZE]);
+            sharedChunk = chunks.size() - 1;
+            chunkUsed = 0;
+        }
+        chunk = chunks.get(sharedChunk);
+        System.arraycopy(bytes, offset, chunk, chunkUsed, length);
+        store(sharedChunk, chunkUsed, length);
+        chunkUsed += length;
+    }
+
+    private void store(int chunkIndex, int offset, int length) {
+        if (size == locations.length) {
+            locations = Arrays.copyOf(locations, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        locations[size] = ((long) chunkIndex << 32) | offset;
+        lengths[size] = length;
+        size++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+
+    /**
+     * Writes the lines as a JSON array of strings directly from their UTF-8 bytes, escaping them without decoding
+     */
+    public static class Serializer extends StdSerializer<LogLines> {
+        public Serializer() {
+            super(LogLines.class);
+        }
+
+        @Override
+        public void serialize(LogLines lines, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            LinesWriteEvent event = new LinesWriteEvent();
+            event.begin();
+            generator.writeStartArray(lines, lines.size);
+            // Only the byte based generator can take UTF-8 directly, anything else gets Strings
+            boolean writesBytes = generator instanceof UTF8JsonGenerator;
+            for (int i = 0; i < lines.size; i++) {
+                if (writesBytes) {
+                    long location = lines.locations[i];
+                    generator.writeUTF8String(lines.chunks.get((int) (location >>> 32)), (int) location, lines.lengths[i]);
+                } else {
+                    generator.writeString(lines.get(i));
+                }
+            }
+            generator.writeEndArray();
+            event.end();
+            if (event.shouldCommit()) {
+                event.lines = lines.size;
+                event.bytes = lines.byteSize();
+                event.decoded = !writesBytes;
+                event.commit();
+            }
+        }
+    }
+}
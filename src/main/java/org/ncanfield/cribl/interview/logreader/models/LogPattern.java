@@ -0,0 +1,4 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+public record LogPattern(String template, long count, String sample) {
+}
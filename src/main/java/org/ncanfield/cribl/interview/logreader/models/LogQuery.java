@@ -0,0 +1,7 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+/**
+ * One query of a /logs/batch request, taking the same values as the /logs parameters of the same names
+ */
+public record LogQuery(String searchTerm, Integer logLines, String filter) {
+}
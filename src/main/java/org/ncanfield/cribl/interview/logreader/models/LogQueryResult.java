@@ -0,0 +1,9 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import java.util.List;
+
+/**
+ * The lines one query of a batch selected from each file
+ */
+public record LogQueryResult(LogQuery query, List<LogFile> logFiles) {
+}
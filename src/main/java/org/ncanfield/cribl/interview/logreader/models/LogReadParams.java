@@ -0,0 +1,47 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import java.util.List;
+
+/**
+ * The parameters of a /logs or /aggregate request as they were sent, before they're checked and turned into a
+ * {@link LogReadRequest}. Aggregators pass them on to every server as they are.
+ *
+ * @param fileName the file or directory to read, or null for the whole log directory
+ * @param logLines the max lines per file, or null for the server's default
+ * @param searchTerm the term lines must hold, or null
+ * @param mode the {@link ReadMode} parameter, or null for lines
+ * @param followRotations whether rotated files are read as one log
+ * @param filter the {@link FieldFilter} expression, or null
+ * @param before the lines of context before each match, or null
+ * @param after the lines of context after each match, or null
+ * @param cursors the encoded cursors of earlier reads to carry on from, or null
+ */
+public record LogReadParams(String fileName, Integer logLines, String searchTerm, String mode, boolean followRotations,
+                            String filter, Integer before, Integer after, List<String> cursors) {
+    /**
+     * @return the parameters of a plain read of the latest lines of fileName
+     */
+    public static LogReadParams of(String fileName, Integer logLines, String searchTerm) {
+        return new LogReadParams(fileName, logLines, searchTerm, null, false, null, null, null, null);
+    }
+
+    public LogReadParams withMode(String mode) {
+        return new LogReadParams(fileName, logLines, searchTerm, mode, followRotations, filter, before, after, cursors);
+    }
+
+    public LogReadParams withFollowRotations(boolean followRotations) {
+        return new LogReadParams(fileName, logLines, searchTerm, mode, followRotations, filter, before, after, cursors);
+    }
+
+    public LogReadParams withFilter(String filter) {
+        return new LogReadParams(fileName, logLines, searchTerm, mode, followRotations, filter, before, after, cursors);
+    }
+
+    public LogReadParams withContext(Integer before, Integer after) {
+        return new LogReadParams(fileName, logLines, searchTerm, mode, followRotations, filter, before, after, cursors);
+    }
+
+    public LogReadParams withCursors(List<String> cursors) {
+        return new LogReadParams(fileName, logLines, searchTerm, mode, followRotations, filter, before, after, cursors);
+    }
+}
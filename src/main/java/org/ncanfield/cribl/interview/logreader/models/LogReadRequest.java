@@ -0,0 +1,26 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import java.util.List;
+
+public record LogReadRequest(Integer maxLines, String searchTerm, ReadMode mode, boolean followRotations, FieldFilter filter,
+                             int before, int after, List<LogCursor> cursors) {
+    public LogReadRequest(Integer maxLines, String searchTerm, ReadMode mode) {
+        this(maxLines, searchTerm, mode, false, null, 0, 0, List.of());
+    }
+
+    public LogReadRequest withFollowRotations(boolean followRotations) {
+        return new LogReadRequest(maxLines, searchTerm, mode, followRotations, filter, before, after, cursors);
+    }
+
+    public LogReadRequest withFilter(FieldFilter filter) {
+        return new LogReadRequest(maxLines, searchTerm, mode, followRotations, filter, before, after, cursors);
+    }
+
+    public LogReadRequest withContext(int before, int after) {
+        return new LogReadRequest(maxLines, searchTerm, mode, followRotations, filter, before, after, cursors);
+    }
+
+    public LogReadRequest withCursors(List<LogCursor> cursors) {
+        return new LogReadRequest(maxLines, searchTerm, mode, followRotations, filter, before, after, cursors);
+    }
+}
@@ -0,0 +1,13 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+/**
+ * What a file's sample says about the whole of it, in {@link ReadMode#SAMPLE} mode
+ *
+ * @param sampledLines the number of lines looked at, blank lines aside
+ * @param estimatedLines the estimated number of lines in the file, blank lines aside
+ * @param matchRate the share of the lines looked at that matched the search term and filter
+ * @param estimatedMatches the estimated number of lines in the file that match
+ * @param exact true if every line was looked at, so the estimates are exact counts
+ */
+public record LogSample(long sampledLines, long estimatedLines, double matchRate, long estimatedMatches, boolean exact) {
+}
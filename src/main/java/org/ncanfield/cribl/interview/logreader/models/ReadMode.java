@@ -0,0 +1,25 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+public enum ReadMode {
+    LINES,
+    PATTERNS,
+    SAMPLE;
+
+    /**
+     * Parses a mode from a query parameter, ignoring case
+     *
+     * @param mode the mode name, or null for the default
+     * @return the matching {@link ReadMode}, {@link #LINES} if mode is null, or null if it is not a known mode
+     */
+    public static ReadMode fromParam(String mode) {
+        if (mode == null) {
+            return LINES;
+        }
+        for (ReadMode readMode : values()) {
+            if (readMode.name().equalsIgnoreCase(mode.trim())) {
+                return readMode;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,7 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+/**
+ * A line a standing query matched, and the file it was appended to
+ */
+public record StandingMatch(String filePath, String line) {
+}
@@ -0,0 +1,6 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import java.util.List;
+
+public record StandingQueryResponse(String serverName, List<StandingQueryResult> queries, List<String> errors) {
+}
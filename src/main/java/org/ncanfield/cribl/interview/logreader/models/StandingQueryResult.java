@@ -0,0 +1,9 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import java.util.List;
+
+/**
+ * What a standing query has matched since it was registered: how many lines, and the latest of them newest first
+ */
+public record StandingQueryResult(String name, LogQuery query, long count, String since, List<StandingMatch> matches) {
+}
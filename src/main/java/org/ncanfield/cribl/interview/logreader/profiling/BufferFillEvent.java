@@ -0,0 +1,35 @@
+package org.ncanfield.cribl.interview.logreader.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for a reader loading its next block of a file, either from disk or by waiting on a block read
+ * ahead. Blocks served from the page cache take microseconds, so by default only slow ones are recorded.
+ */
+@Name("org.ncanfield.logreader.BufferFill")
+@Label("Buffer Fill")
+@Category("Log Reader")
+@Description("Loading the next block of a file being read backwards")
+@Threshold("1 ms")
+public class BufferFillEvent extends jdk.jfr.Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Read")
+    @DataAmount
+    public int bytes;
+
+    @Label("Spillover")
+    @Description("The bytes of a partial line carried over from the previous block")
+    @DataAmount
+    public int spilloverBytes;
+
+    @Label("Read Ahead")
+    @Description("Whether the block was read ahead in the background")
+    public boolean readAhead;
+}
@@ -0,0 +1,23 @@
+package org.ncanfield.cribl.interview.logreader.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for probing a file's content type, to see if a file without a log extension is text
+ */
+@Name("org.ncanfield.logreader.ContentProbe")
+@Label("Content Type Probe")
+@Category("Log Reader")
+@Description("Probing the content type of a file")
+@Threshold("1 ms")
+public class ContentProbeEvent extends jdk.jfr.Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Content Type")
+    public String contentType;
+}
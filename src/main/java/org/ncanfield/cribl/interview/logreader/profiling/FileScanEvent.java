@@ -0,0 +1,34 @@
+package org.ncanfield.cribl.interview.logreader.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one file, or set of rotated files, read for a request, including waiting for a scan slot
+ */
+@Name("org.ncanfield.logreader.FileScan")
+@Label("File Scan")
+@Category("Log Reader")
+@Description("Reading one file for a request")
+public class FileScanEvent extends jdk.jfr.Event {
+    @Label("Path")
+    @Description("The file, relative to the log directory")
+    public String path;
+
+    @Label("Mode")
+    public String mode;
+
+    @Label("Scanned")
+    @DataAmount
+    public long scannedBytes;
+
+    @Label("Lines")
+    @Description("The lines selected from the file")
+    public long lines;
+
+    @Label("Error")
+    public String error;
+}
@@ -0,0 +1,28 @@
+package org.ncanfield.cribl.interview.logreader.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for writing one file's lines into a JSON response
+ */
+@Name("org.ncanfield.logreader.LinesWrite")
+@Label("Lines Write")
+@Category("Log Reader")
+@Description("Serializing a file's lines to JSON")
+public class LinesWriteEvent extends jdk.jfr.Event {
+    @Label("Lines")
+    public int lines;
+
+    @Label("Size")
+    @Description("The size of the lines before escaping")
+    @DataAmount
+    public long bytes;
+
+    @Label("Decoded")
+    @Description("Whether the lines had to be decoded to Strings, rather than written straight from their UTF-8 bytes")
+    public boolean decoded;
+}
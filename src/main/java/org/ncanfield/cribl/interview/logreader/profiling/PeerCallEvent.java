@@ -0,0 +1,31 @@
+package org.ncanfield.cribl.interview.logreader.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a call to another server's /logs, from sending the request to parsing the response
+ */
+@Name("org.ncanfield.logreader.PeerCall")
+@Label("Peer Call")
+@Category("Log Reader")
+@Description("Calling another server for /aggregate")
+public class PeerCallEvent extends jdk.jfr.Event {
+    @Label("URL")
+    public String url;
+
+    @Label("Status")
+    @Description("The HTTP status, or 0 if there was no response")
+    public int status;
+
+    @Label("Response Size")
+    @Description("The size of the response body in characters")
+    @DataAmount
+    public long bytes;
+
+    @Label("Error")
+    public String error;
+}
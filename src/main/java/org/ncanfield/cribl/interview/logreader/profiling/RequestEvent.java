@@ -0,0 +1,78 @@
+package org.ncanfield.cribl.interview.logreader.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.ncanfield.cribl.interview.logreader.handlers.ReadSettings;
+import org.ncanfield.cribl.interview.logreader.handlers.ScanBudget;
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Flight Recorder event for the read behind a /logs request, from the first file opened to the last line selected.
+ * Serializing the response is recorded separately by {@link LinesWriteEvent}.
+ */
+@Name("org.ncanfield.logreader.Request")
+@Label("Log Request")
+@Category("Log Reader")
+@Description("Reading the files of a /logs request")
+public class RequestEvent extends jdk.jfr.Event {
+    @Label("Path")
+    @Description("The file or directory requested, as it's shown to clients")
+    public String path;
+
+    @Label("Mode")
+    public String mode;
+
+    @Label("Files")
+    public int files;
+
+    @Label("Lines")
+    @Description("The lines returned, or the patterns found in patterns mode")
+    public long lines;
+
+    @Label("Scanned")
+    @DataAmount
+    public long scannedBytes;
+
+    @Label("Returned")
+    @DataAmount
+    public long returnedBytes;
+
+    /**
+     * Ends the event and writes it, if Flight Recorder is recording it. The fields are only filled in if it is.
+     *
+     * @param settings the server's {@link ReadSettings}, for the path of target through any mounted root
+     * @param basePathSize the length of the log directory's path
+     * @param target the file or directory that was read
+     * @param request the {@link LogReadRequest} it was read with
+     * @param logFiles the {@link LogFile}s read
+     * @param budget the {@link ScanBudget} of the request
+     */
+    public void finish(ReadSettings settings, int basePathSize, File target, LogReadRequest request, List<LogFile> logFiles,
+                       ScanBudget budget) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        path = settings.relativePath(Path.of(target.getAbsolutePath()), basePathSize);
+        mode = request.mode().name();
+        files = logFiles.size();
+        for (LogFile logFile : logFiles) {
+            if (logFile.logLines() != null) {
+                lines += logFile.logLines().size();
+            } else if (logFile.patterns() != null) {
+                lines += logFile.patterns().size();
+            }
+        }
+        scannedBytes = budget.getScannedBytes();
+        returnedBytes = budget.getReturnedBytes();
+        commit();
+    }
+}
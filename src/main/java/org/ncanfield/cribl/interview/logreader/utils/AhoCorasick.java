@@ -0,0 +1,102 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Finds which of a set of byte strings appear in a line in a single pass over it, however many strings there are.
+ * <p/>
+ * The strings are built into an Aho-Corasick automaton with every transition worked out up front, so each byte of the
+ * line is one table lookup. The table takes 1KB per byte of the strings, so callers should bound their total length.
+ * Like {@link Utf8Bytes#indexOf}, matching on UTF-8 bytes gives the same result as {@link String#contains} would on
+ * the decoded line.
+ */
+public class AhoCorasick {
+    // Which strings were found is returned as the bits of a long
+    public static final int MAX_PATTERNS = 64;
+    private static final int ALPHABET = 256;
+
+    // The state reached from state s on byte b is transitions[s * ALPHABET + b]
+    private final int[] transitions;
+    // The strings that end at each state, as bits
+    private final long[] outputs;
+    private final long allPatterns;
+
+    /**
+     * Builds the automaton for patterns. Pattern i is reported as bit i of {@link #search}.
+     *
+     * @param patterns the strings to look for, at most {@link #MAX_PATTERNS}
+     */
+    public AhoCorasick(List<byte[]> patterns) {
+        if (patterns.size() > MAX_PATTERNS) {
+            throw new IllegalArgumentException("At most " + MAX_PATTERNS + " patterns are supported");
+        }
+        int maxStates = 1 + patterns.stream().mapToInt(pattern -> pattern.length).sum();
+        int[] trie = new int[maxStates * ALPHABET];
+        Arrays.fill(trie, -1);
+        long[] found = new long[maxStates];
+        int states = 1;
+        for (int i = 0; i < patterns.size(); i++) {
+            int state = 0;
+            for (byte b : patterns.get(i)) {
+                int slot = state * ALPHABET + (b & 0xFF);
+                if (trie[slot] < 0) {
+                    trie[slot] = states++;
+                }
+                state = trie[slot];
+            }
+            found[state] |= 1L << i;
+        }
+
+        // Breadth first, so every state's failure state is finished before it's needed. Missing transitions are filled
+        // in from the failure state, which turns the trie into a complete automaton.
+        int[] failure = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int b = 0; b < ALPHABET; b++) {
+            if (trie[b] < 0) {
+                trie[b] = 0;
+            } else {
+                queue.add(trie[b]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            found[state] |= found[failure[state]];
+            for (int b = 0; b < ALPHABET; b++) {
+                int slot = state * ALPHABET + b;
+                int fallback = trie[failure[state] * ALPHABET + b];
+                if (trie[slot] < 0) {
+                    trie[slot] = fallback;
+                } else {
+                    failure[trie[slot]] = fallback;
+                    queue.add(trie[slot]);
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(trie, states * ALPHABET);
+        this.outputs = Arrays.copyOf(found, states);
+        this.allPatterns = patterns.size() == MAX_PATTERNS ? -1L : (1L << patterns.size()) - 1;
+    }
+
+    /**
+     * Finds which patterns appear in bytes start to end, stopping early once all of them have
+     *
+     * @param bytes the bytes to search
+     * @param start the index to start searching from
+     * @param end the index to stop searching at, exclusive
+     * @return the patterns found, bit i set for pattern i
+     */
+    public long search(byte[] bytes, int start, int end) {
+        // An empty pattern ends at the start state, so it's found in every line
+        long found = outputs[0];
+        int state = 0;
+        for (int i = start; i < end && found != allPatterns; i++) {
+            state = transitions[state * ALPHABET + (bytes[i] & 0xFF)];
+            found |= outputs[state];
+        }
+        return found;
+    }
+}
@@ -0,0 +1,106 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Lets a request tell the work it started that nobody is waiting for the result any more, for example because the
+ * client disconnected or the request timed out.
+ * <p/>
+ * Work checks {@link #isCancelled()} as it goes, which is just a volatile read, and anything that can be stopped from
+ * outside like an HTTP call registers a callback with {@link #onCancel(Runnable)}. A token can only be cancelled once.
+ * <p/>
+ * Work that's done with its callback before the request ends, like waiting for a single scan permit, should close the
+ * {@link Registration} so callbacks don't pile up on a long request.
+ */
+public class CancellationToken {
+    private static final Logger LOGGER = Logger.getLogger("CancellationToken");
+
+    private final List<Registration> callbacks = new ArrayList<>();
+    private volatile String reason;
+
+    /**
+     * Cancels the token and runs its callbacks on the calling thread. Does nothing if it was already cancelled.
+     *
+     * @param reason why the work was cancelled
+     */
+    public void cancel(String reason) {
+        List<Registration> toRun;
+        synchronized (this) {
+            if (this.reason != null) {
+                return;
+            }
+            this.reason = reason;
+            toRun = List.copyOf(callbacks);
+            callbacks.clear();
+        }
+        for (Registration registration : toRun) {
+            run(registration.callback);
+        }
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    /**
+     * @return why the token was cancelled, or null if it hasn't been
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Registers a callback to run when the token is cancelled, or runs it straight away if it already has been
+     *
+     * @param callback the callback, which should be quick and not throw
+     * @return the {@link Registration}, which removes the callback when closed
+     */
+    public Registration onCancel(Runnable callback) {
+        Registration registration = new Registration(callback);
+        synchronized (this) {
+            if (reason == null) {
+                callbacks.add(registration);
+                return registration;
+            }
+        }
+        run(callback);
+        return registration;
+    }
+
+    private synchronized void remove(Registration registration) {
+        callbacks.remove(registration);
+    }
+
+    /**
+     * @return the number of callbacks waiting for the token to be cancelled
+     */
+    synchronized int callbackCount() {
+        return callbacks.size();
+    }
+
+    private static void run(Runnable callback) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            LOGGER.info("Exception running cancellation callback: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A callback registered with {@link #onCancel(Runnable)}. Closing it after the token is cancelled does nothing.
+     */
+    public final class Registration implements AutoCloseable {
+        private final Runnable callback;
+
+        private Registration(Runnable callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void close() {
+            remove(this);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Keeps files that are read often open between requests, so polling the same few files doesn't open and close them
+ * every time.
+ * <p/>
+ * Files are keyed by path and checked against their identity (the inode where the filesystem has one) and size on
+ * every {@link #open(Path)}. A file that's been rotated away, so the path is now a different file, or truncated is
+ * opened again. Readers share a channel through positional reads, which don't touch the channel's own position, and
+ * each holds a {@link Handle} on it. A channel that's evicted or replaced stays open until its last handle is closed.
+ * <p/>
+ * A thread that's interrupted while reading a channel closes it for every thread sharing it. The interrupted reader
+ * fails, as it was meant to, but the others have done nothing wrong, so reads through {@link Handle#read} and
+ * {@link Handle#size} pick up a freshly opened channel on the same file and carry on.
+ * <p/>
+ * Only the least recently used maxOpenFiles files are kept open when nothing is reading them.
+ */
+public class FileHandleCache implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger("FileHandleCache");
+
+    private final int maxOpenFiles;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean closed;
+
+    /**
+     * @param maxOpenFiles the most files to keep open while they're not being read, 0 or less to not keep any
+     */
+    public FileHandleCache(int maxOpenFiles) {
+        this.maxOpenFiles = Math.max(maxOpenFiles, 0);
+    }
+
+    /**
+     * Opens a file without caching it, the handle just closes the channel
+     *
+     * @param path the file to open
+     * @return a {@link Handle} on the file
+     * @throws IOException if the file cannot be opened
+     */
+    public static Handle openUncached(Path path) throws IOException {
+        return new Handle(null, new Entry(null, FileChannel.open(path, StandardOpenOption.READ)), path);
+    }
+
+    /**
+     * Gets a handle on a file, sharing the channel already open for it if it's still the same file
+     *
+     * @param path the file to open
+     * @return a {@link Handle} on the file, which must be closed once the caller is done with it
+     * @throws IOException if the file cannot be opened
+     */
+    public Handle open(Path path) throws IOException {
+        if (maxOpenFiles == 0) {
+            return openUncached(path);
+        }
+        Path key = path.toAbsolutePath().normalize();
+        // The file is looked at before it's opened. If it's rotated in between, the channel is for the new file but is
+        // recorded with the old identity, so it's just opened again next time rather than the old file being kept
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        Object identity = identity(attributes);
+        List<Entry> retired = new ArrayList<>();
+        try {
+            synchronized (this) {
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    // A reader being interrupted closes the channel for everyone, so that's opened again too, see Handle#reopen
+                    if (entry.identity.equals(identity) && attributes.size() >= entry.size && entry.channel.isOpen()) {
+                        entry.size = attributes.size();
+                        entry.references++;
+                        return new Handle(this, entry, key);
+                    }
+                    // Rotated away, truncated or closed
+                    entries.remove(key);
+                    retired.add(retire(entry));
+                }
+            }
+
+            Entry opened = new Entry(identity, FileChannel.open(key, StandardOpenOption.READ));
+            opened.size = attributes.size();
+            opened.references = 1;
+            synchronized (this) {
+                if (closed) {
+                    opened.cached = false;
+                    return new Handle(this, opened, key);
+                }
+                Entry replaced = entries.put(key, opened);
+                if (replaced != null) {
+                    retired.add(retire(replaced));
+                }
+                Iterator<Map.Entry<Path, Entry>> eldest = entries.entrySet().iterator();
+                while (entries.size() > maxOpenFiles && eldest.hasNext()) {
+                    Entry evicted = eldest.next().getValue();
+                    eldest.remove();
+                    retired.add(retire(evicted));
+                }
+            }
+            return new Handle(this, opened, key);
+        } finally {
+            closeAll(retired);
+        }
+    }
+
+    /**
+     * @return the number of files currently cached
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stops caching and closes every file that isn't being read, the rest are closed as their readers finish
+     */
+    @Override
+    public void close() {
+        List<Entry> retired = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (Entry entry : entries.values()) {
+                retired.add(retire(entry));
+            }
+            entries.clear();
+        }
+        closeAll(retired);
+    }
+
+    private void release(Entry entry) {
+        synchronized (this) {
+            entry.references--;
+            if (entry.cached || entry.references > 0) {
+                return;
+            }
+        }
+        closeAll(List.of(entry));
+    }
+
+    /**
+     * Takes an entry out of the cache, returning it if nothing is reading it so it can be closed outside the lock
+     */
+    private Entry retire(Entry entry) {
+        entry.cached = false;
+        return entry.references == 0 ? entry : null;
+    }
+
+    private static void closeAll(List<Entry> retired) {
+        for (Entry entry : retired) {
+            if (entry == null) {
+                continue;
+            }
+            try {
+                entry.channel.close();
+            } catch (IOException e) {
+                LOGGER.info("Exception closing cached file: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Identifies a file beyond its path, so a new file at the same path isn't mistaken for the old one
+     *
+     * @param attributes the file's attributes
+     * @return the file's key, like its device and inode, or its creation time where the filesystem has no keys
+     */
+    public static Object identity(BasicFileAttributes attributes) {
+        return Objects.requireNonNullElse(attributes.fileKey(), attributes.creationTime());
+    }
+
+    /**
+     * An open file and the number of handles on it
+     */
+    private static final class Entry {
+        private final Object identity;
+        private final FileChannel channel;
+        private long size;
+        private int references;
+        private boolean cached = true;
+        // Detected on first use, along with the size of the file at the time
+        private volatile LogCharset charset;
+        private volatile long charsetSize;
+
+        private Entry(Object identity, FileChannel channel) {
+            this.identity = identity;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Something done with a file's channel, which can be done again on a new channel if the first is closed under it
+     */
+    @FunctionalInterface
+    private interface ChannelOperation<T> {
+        T apply(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * A reader's hold on an open file. Reads should be positional, as the channel may be shared, and should go through
+     * {@link #read} rather than the channel itself so that a channel closed by another reader being interrupted is
+     * opened again.
+     */
+    public static final class Handle implements Closeable {
+        private final FileHandleCache cache;
+        private final Path path;
+        // Replaced if the channel is closed under this handle, and may be used by several threads at once
+        private volatile Entry entry;
+        private boolean closed;
+
+        private Handle(FileHandleCache cache, Entry entry, Path path) {
+            this.cache = cache;
+            this.entry = entry;
+            this.path = path;
+        }
+
+        /**
+         * @return the channel the handle reads from now, which may be replaced by a later {@link #read}
+         */
+        public FileChannel channel() {
+            return entry.channel;
+        }
+
+        /**
+         * @return the path the file was opened by
+         */
+        public Path path() {
+            return path;
+        }
+
+        /**
+         * Reads from the file at position without touching the channel's own position, the same as
+         * {@link FileChannel#read(ByteBuffer, long)}
+         *
+         * @param target the buffer to read into
+         * @param position the offset in the file to read from
+         * @return the number of bytes read, or -1 at the end of the file
+         * @throws IOException if the file cannot be read, including if this thread was interrupted
+         */
+        public int read(ByteBuffer target, long position) throws IOException {
+            return withChannel(channel -> channel.read(target, position));
+        }
+
+        /**
+         * @return the current size of the file
+         * @throws IOException if the size cannot be read
+         */
+        public long size() throws IOException {
+            return withChannel(FileChannel::size);
+        }
+
+        /**
+         * Gets the charset of the file, detecting it the first time and keeping it for as long as the file's cached.
+         * It's detected again if the file was shorter than the sample then and has grown since.
+         *
+         * @return the {@link LogCharset} of the file
+         * @throws IOException if the file cannot be read
+         */
+        public LogCharset charset() throws IOException {
+            Entry current = entry;
+            LogCharset detected = current.charset;
+            if (detected == null || (current.charsetSize < LogCharset.SAMPLE_SIZE && size() > current.charsetSize)) {
+                // Racing detections just find the same thing
+                long size = size();
+                detected = withChannel(LogCharset::detect);
+                current = entry;
+                current.charsetSize = size;
+                current.charset = detected;
+            }
+            return detected;
+        }
+
+        private <T> T withChannel(ChannelOperation<T> operation) throws IOException {
+            Entry current = entry;
+            try {
+                return operation.apply(current.channel);
+            } catch (ClosedChannelException e) {
+                return operation.apply(reopen(current, e).channel);
+            }
+        }
+
+        /**
+         * Swaps a channel that was closed while this handle was using it for a new one on the same file. Only channels
+         * closed by another thread are replaced - if this thread was interrupted, or the handle itself is closed, the
+         * read fails.
+         *
+         * @param current the entry whose channel was closed
+         * @param cause the exception the closed channel threw
+         * @return the entry to read from instead
+         * @throws IOException cause, if the channel can't or shouldn't be replaced
+         */
+        private synchronized Entry reopen(Entry current, ClosedChannelException cause) throws IOException {
+            if (entry != current) {
+                // Another thread using this handle has already replaced it
+                return entry;
+            }
+            if (cache == null || closed || cause instanceof ClosedByInterruptException || Thread.currentThread().isInterrupted()) {
+                throw cause;
+            }
+            Handle fresh = cache.open(path);
+            if (!fresh.entry.identity.equals(current.identity)) {
+                // The file's been rotated away since, so the rest of it can't be read any more
+                fresh.close();
+                throw cause;
+            }
+            // The new handle's hold on the file becomes this one's
+            entry = fresh.entry;
+            cache.release(current);
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Entry current;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                current = entry;
+            }
+            if (cache == null) {
+                current.channel.close();
+            } else {
+                cache.release(current);
+            }
+        }
+    }
+}
@@ -2,39 +2,163 @@ package org.ncanfield.cribl.interview.logreader.utils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchRequest;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogReadParams;
 import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+import org.ncanfield.cribl.interview.logreader.profiling.PeerCallEvent;
 
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 
 public class HttpUtils {
+    public static final String PARSE_ERROR = "There was an error parsing the response from the server";
+    public static final String FETCH_ERROR = "There was an error fetching the response from the server";
+
     //Just using default settings for now
     private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder().build();
 
     private static final ObjectMapper mapper = new ObjectMapper();
 
+    // Responses are kept so peers whose logs haven't changed can answer with a 304 and no body
+    private static final PeerResponseCache RESPONSE_CACHE = new PeerResponseCache(256, 64L * 1024 * 1024);
+
     private HttpUtils() {
     }
 
     /**
      * This creates a completable future for the given URL to a specified logs reader server
+     * <p/>
+     * If an earlier response from this URL is cached, its ETag is sent as If-None-Match and the cached response is
+     * reused if the server says it's not modified.
+     * <p/>
+     * Cancelling the returned future also aborts the HTTP exchange, so the peer sees the connection close.
      *
      * @param url the url, with endpoint and any relevant query parameters, to use
      * @return a {@link CompletableFuture} that will eventually resolve to a {@link LogReadResponse}
      */
     public static CompletableFuture<LogReadResponse> buildFuture (String url) {
+        PeerResponseCache.CachedResponse cached = RESPONSE_CACHE.get(url);
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(Duration.ofSeconds(10))
+                .GET();
+        if (cached != null) {
+            request.header("If-None-Match", cached.etag());
+        }
+        PeerCallEvent event = new PeerCallEvent();
+        event.begin();
+        CompletableFuture<HttpResponse<String>> exchange = HTTP_CLIENT.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<LogReadResponse> future = exchange.handle((response, ex) -> {
+            LogReadResponse parsed = handleCachedResponse(response, ex, url, cached, RESPONSE_CACHE);
+            event.end();
+            if (event.shouldCommit()) {
+                event.url = url;
+                event.status = response != null ? response.statusCode() : 0;
+                event.bytes = response != null && response.body() != null ? response.body().length() : 0;
+                event.error = ex != null ? ex.toString() : null;
+                event.commit();
+            }
+            return parsed;
+        });
+        future.whenComplete((response, ex) -> {
+            if (ex instanceof CancellationException) {
+                exchange.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * This creates a completable future that posts a batch to the /logs/batch endpoint of a logs reader server. Batch
+     * responses aren't cached.
+     * <p/>
+     * Cancelling the returned future also aborts the HTTP exchange, so the peer sees the connection close.
+     *
+     * @param url the url of the server's /logs/batch endpoint
+     * @param batch the {@link LogBatchRequest} to send
+     * @return a {@link CompletableFuture} that will eventually resolve to a {@link LogBatchResponse}
+     */
+    public static CompletableFuture<LogBatchResponse> buildBatchFuture(String url, LogBatchRequest batch) {
+        String body;
+        try {
+            body = mapper.writeValueAsString(batch);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.completedFuture(new LogBatchResponse(url, null, List.of(PARSE_ERROR)));
+        }
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
                 .timeout(Duration.ofSeconds(10))
-                .GET()
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
                 .build();
-        return HTTP_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .handle((response, ex) -> handleResponse(response, ex, url));
+        CompletableFuture<HttpResponse<String>> exchange = HTTP_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<LogBatchResponse> future = exchange.handle((response, ex) -> handleBatchResponse(response, ex, url));
+        future.whenComplete((response, ex) -> {
+            if (ex instanceof CancellationException) {
+                exchange.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Handler for an HTTP response from a /logs/batch endpoint, parsing it to a {@link LogBatchResponse}
+     *
+     * @param response the HTTP response object, if it exists
+     * @param ex the exception, if it exists
+     * @param url the URL this call was for
+     * @return a {@link LogBatchResponse} with either provided data or an error message
+     */
+    public static LogBatchResponse handleBatchResponse(HttpResponse<String> response, Throwable ex, String url) {
+        if (ex != null) {
+            return new LogBatchResponse(url, null, List.of(FETCH_ERROR));
+        }
+        try {
+            return mapper.readValue(response.body(), LogBatchResponse.class);
+        } catch (JsonProcessingException e) {
+            return new LogBatchResponse(url, null, List.of(PARSE_ERROR));
+        }
+    }
+
+    /**
+     * Handler for an HTTP response that may be a 304 Not Modified for a cached response, caching the new response if it
+     * came with an ETag
+     *
+     * @param response the HTTP response object, if it exists
+     * @param ex the exception, if it exists
+     * @param url the URL this call was for
+     * @param cached the cached response the request was made with, if any
+     * @param cache the cache to update
+     * @return a {@link LogReadResponse} with either provided data or an error message
+     */
+    public static LogReadResponse handleCachedResponse(HttpResponse<String> response,
+                                                       Throwable ex,
+                                                       String url,
+                                                       PeerResponseCache.CachedResponse cached,
+                                                       PeerResponseCache cache) {
+        if (ex == null && response.statusCode() == 304 && cached != null) {
+            return cached.response();
+        }
+
+        LogReadResponse logReadResponse = handleResponse(response, ex, url);
+        String etag = ex == null && response.statusCode() == 200 ?
+                response.headers().firstValue("ETag").orElse(null) :
+                null;
+        if (etag != null && response.body() != null && logReadResponse.logFiles() != null) {
+            cache.put(url, etag, logReadResponse, response.body().length());
+        } else {
+            cache.remove(url);
+        }
+        return logReadResponse;
     }
 
     /**
@@ -50,33 +174,58 @@ public class HttpUtils {
             try {
                 return mapper.readValue(response.body(), LogReadResponse.class);
             } catch (JsonProcessingException e) {
-                return new LogReadResponse(url, null, List.of("There was an error parsing the response from the server"));
+                return new LogReadResponse(url, null, List.of(PARSE_ERROR));
             }
         } else {
-            return new LogReadResponse(url, null, List.of("There was an error fetching the response from the server"));
+            return new LogReadResponse(url, null, List.of(FETCH_ERROR));
         }
     }
 
     /**
-     * Builds the URL for the aggregator to call for a given server
+     * Builds the URL for the aggregator to call on a given endpoint of a server, passing on every parameter the
+     * request was sent with. Every value is URL encoded, so file names and search terms with spaces, &, # or + reach
+     * the server as they were sent.
      *
      * @param server the base URL to use. Should not include the endpoint.
-     * @param fileName the file name, if any, to query for
-     * @param logLines the log line limite to use, if any
-     * @param searchTerm the search term to use, if any
+     * @param endpoint the endpoint to call, like /logs
+     * @param params the {@link LogReadParams} of the request
      * @return the URL the aggregator should hit
      */
-    public static String makeUrl(String server, String fileName, Integer logLines, String searchTerm) {
-        StringBuilder urlBuilder = new StringBuilder(server + "/logs?");
-        if (fileName != null) {
-            urlBuilder.append(String.format("fileName=%s&", fileName));
+    public static String makeUrl(String server, String endpoint, LogReadParams params) {
+        StringBuilder urlBuilder = new StringBuilder(server + endpoint + "?");
+        if (params.fileName() != null) {
+            urlBuilder.append(String.format("fileName=%s&", encode(params.fileName())));
+        }
+        if (params.logLines() != null) {
+            urlBuilder.append(String.format("logLines=%s&", params.logLines()));
+        }
+        if (params.mode() != null) {
+            urlBuilder.append(String.format("mode=%s&", encode(params.mode())));
+        }
+        if (params.followRotations()) {
+            urlBuilder.append("followRotations=true&");
+        }
+        if (params.filter() != null) {
+            urlBuilder.append(String.format("filter=%s&", encode(params.filter())));
         }
-        if (logLines != null) {
-            urlBuilder.append(String.format("logLines=%s&", logLines));
+        if (params.before() != null) {
+            urlBuilder.append(String.format("before=%s&", params.before()));
         }
-        if (searchTerm != null) {
-            urlBuilder.append(String.format("searchTerm=%s", searchTerm));
+        if (params.after() != null) {
+            urlBuilder.append(String.format("after=%s&", params.after()));
+        }
+        if (params.cursors() != null) {
+            for (String cursor : params.cursors()) {
+                urlBuilder.append(String.format("cursor=%s&", encode(cursor)));
+            }
+        }
+        if (params.searchTerm() != null) {
+            urlBuilder.append(String.format("searchTerm=%s", encode(params.searchTerm())));
         }
         return urlBuilder.toString();
     }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,102 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the lines of an ISO-8859-1 file as UTF-8, so they can be searched and filtered the same as any other file.
+ * Lines that are all ASCII, which is most of them in most logs, are the same bytes in both and are passed straight
+ * through. The rest are re-encoded, which for ISO-8859-1 is just splitting each byte past ASCII into two.
+ */
+public class Latin1LineReader implements ReverseLineReader {
+    private final ReverseLineReader reader;
+    private byte[] encoded = new byte[256];
+    private boolean transcoded;
+    private int encodedLength;
+
+    /**
+     * @param reader the reader on the file, reading it as ISO-8859-1
+     */
+    public Latin1LineReader(ReverseLineReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean hasMoreData() {
+        return reader.hasMoreData();
+    }
+
+    @Override
+    public boolean nextLine() throws IOException, LogReaderException {
+        if (!reader.nextLine()) {
+            return false;
+        }
+        byte[] line = reader.getLineBuffer();
+        int start = reader.getLineStart();
+        int end = start + reader.getLineLength();
+        transcoded = !Utf8Bytes.isAscii(line, start, end);
+        if (transcoded) {
+            if (encoded.length < reader.getLineLength() * 2) {
+                encoded = new byte[reader.getLineLength() * 2];
+            }
+            encodedLength = toUtf8(line, start, end, encoded);
+        }
+        return true;
+    }
+
+    /**
+     * Encodes ISO-8859-1 bytes as UTF-8
+     *
+     * @param bytes the ISO-8859-1 bytes
+     * @param start the index to start at
+     * @param end the index to stop at, exclusive
+     * @param target where to write the UTF-8, which needs room for twice as many bytes
+     * @return the number of bytes written to target
+     */
+    public static int toUtf8(byte[] bytes, int start, int end, byte[] target) {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                target[length++] = (byte) b;
+            } else {
+                target[length++] = (byte) (0xC0 | (b >> 6));
+                target[length++] = (byte) (0x80 | (b & 0x3F));
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public byte[] getLineBuffer() {
+        return transcoded ? encoded : reader.getLineBuffer();
+    }
+
+    @Override
+    public int getLineStart() {
+        return transcoded ? 0 : reader.getLineStart();
+    }
+
+    @Override
+    public int getLineLength() {
+        return transcoded ? encodedLength : reader.getLineLength();
+    }
+
+    @Override
+    public Charset getCharset() {
+        return StandardCharsets.UTF_8;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return reader.getBytesRead();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,129 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The charset a log file is written in, as detected from the start of the file.
+ * <p/>
+ * A byte order mark settles it. Without one, a sample where nearly every other byte is zero is UTF-16 in the byte
+ * order the zeros fall on, as logs are mostly ASCII, a sample that's valid UTF-8 is UTF-8 (which covers plain ASCII),
+ * and anything else is read as ISO-8859-1, where every byte is a character so nothing is ever lost.
+ *
+ * @param charset the charset of the file
+ * @param bomLength the length of the byte order mark at the start of the file, 0 if there isn't one
+ */
+public record LogCharset(Charset charset, int bomLength) {
+    // Enough of the start of the file to hold a good few lines
+    public static final int SAMPLE_SIZE = 8 * 1024;
+    public static final LogCharset UTF_8 = new LogCharset(StandardCharsets.UTF_8, 0);
+
+    // Over this share of the two byte units having a zero in one half, and under the other share in the other half
+    private static final double UTF_16_ZERO_SHARE = 0.4;
+    private static final double UTF_16_OTHER_ZERO_SHARE = 0.05;
+
+    /**
+     * Detects the charset of a file from its first {@link #SAMPLE_SIZE} bytes
+     *
+     * @param channel the open file, only read positionally so it may be shared
+     * @return the {@link LogCharset} of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static LogCharset detect(FileChannel channel) throws IOException {
+        ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE);
+        int read;
+        do {
+            read = channel.read(sample, sample.position());
+        } while (read > 0 && sample.hasRemaining());
+        return detect(sample.array(), sample.position());
+    }
+
+    /**
+     * Detects the charset of a file from the start of it
+     *
+     * @param bytes the first bytes of the file
+     * @param length the number of bytes in the sample
+     * @return the {@link LogCharset} of the file
+     */
+    public static LogCharset detect(byte[] bytes, int length) {
+        if (length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            return new LogCharset(StandardCharsets.UTF_8, 3);
+        }
+        if (length >= 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE) {
+            return new LogCharset(StandardCharsets.UTF_16LE, 2);
+        }
+        if (length >= 2 && (bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) {
+            return new LogCharset(StandardCharsets.UTF_16BE, 2);
+        }
+
+        int units = length / 2;
+        if (units > 0) {
+            int evenZeros = 0;
+            int oddZeros = 0;
+            for (int i = 0; i < units * 2; i += 2) {
+                evenZeros += bytes[i] == 0 ? 1 : 0;
+                oddZeros += bytes[i + 1] == 0 ? 1 : 0;
+            }
+            if (oddZeros > units * UTF_16_ZERO_SHARE && evenZeros < units * UTF_16_OTHER_ZERO_SHARE) {
+                return new LogCharset(StandardCharsets.UTF_16LE, 0);
+            }
+            if (evenZeros > units * UTF_16_ZERO_SHARE && oddZeros < units * UTF_16_OTHER_ZERO_SHARE) {
+                return new LogCharset(StandardCharsets.UTF_16BE, 0);
+            }
+        }
+
+        if (Utf8Bytes.isValid(bytes, 0, length)) {
+            return UTF_8;
+        }
+        // A full sample can end part way through a character
+        if (length == SAMPLE_SIZE) {
+            for (int end = length - 1; end >= length - 3; end--) {
+                if (Utf8Bytes.isValid(bytes, 0, end)) {
+                    return UTF_8;
+                }
+            }
+        }
+        return new LogCharset(StandardCharsets.ISO_8859_1, 0);
+    }
+
+    /**
+     * @return true if the file is UTF-8, so its lines can be used just as they're read
+     */
+    public boolean isUtf8() {
+        return StandardCharsets.UTF_8.equals(charset);
+    }
+
+    /**
+     * @return true if the file is UTF-16 of either byte order, where newlines aren't single bytes
+     */
+    public boolean isUtf16() {
+        return StandardCharsets.UTF_16LE.equals(charset) || StandardCharsets.UTF_16BE.equals(charset);
+    }
+
+    /**
+     * Moves the start of a range of the file past the byte order mark
+     *
+     * @param start the offset the range starts at
+     * @return the offset the range should start at
+     */
+    public long alignStart(long start) {
+        long aligned = Math.max(start, bomLength);
+        // UTF-16 characters start an even number of bytes into the file
+        return isUtf16() ? aligned + ((aligned - bomLength) & 1) : aligned;
+    }
+
+    /**
+     * Cuts the end of a range of the file back to a whole character, for UTF-16 files caught part way through a write
+     *
+     * @param start the offset the range starts at, as returned by {@link #alignStart(long)}
+     * @param end the offset the range ends at
+     * @return the offset the range should end at, never before start
+     */
+    public long alignEnd(long start, long end) {
+        long aligned = Math.max(start, end);
+        return isUtf16() ? aligned - ((aligned - start) & 1) : aligned;
+    }
+}
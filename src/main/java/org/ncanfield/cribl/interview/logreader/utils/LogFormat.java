@@ -0,0 +1,302 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The structured formats fields can be pulled out of a log line in.
+ * <p/>
+ * Fields are found by scanning the raw bytes of the line for just the field asked for, nothing else in the line is
+ * parsed or decoded. Values are returned as the bounds of the raw value in the line, without any surrounding quotes
+ * and with escapes left as they are.
+ */
+public enum LogFormat {
+    /**
+     * One JSON object per line. Only scalar values can be found, and a key is matched wherever it appears as a key,
+     * including in nested objects - the first one wins.
+     */
+    JSON {
+        @Override
+        public boolean findField(byte[] line, int start, int end, byte[] field, int[] value) {
+            int from = start;
+            while (true) {
+                int keyStart = Utf8Bytes.indexOf(line, from, end, field);
+                if (keyStart < 0) {
+                    return false;
+                }
+                from = keyStart + 1;
+                int keyEnd = keyStart + field.length;
+                if (keyStart - 1 <= start || line[keyStart - 1] != '"' || keyEnd >= end || line[keyEnd] != '"') {
+                    continue;
+                }
+                // A key always follows the start of an object or a comma, anything else is inside a string
+                int before = skipWhitespaceBack(line, start, keyStart - 2);
+                if (before < start || (line[before] != '{' && line[before] != ',')) {
+                    continue;
+                }
+                int colon = skipWhitespace(line, keyEnd + 1, end);
+                if (colon >= end || line[colon] != ':') {
+                    continue;
+                }
+                int valueStart = skipWhitespace(line, colon + 1, end);
+                if (valueStart >= end || line[valueStart] == '{' || line[valueStart] == '[') {
+                    return false;
+                }
+                if (line[valueStart] == '"') {
+                    int valueEnd = findQuote(line, valueStart + 1, end);
+                    if (valueEnd >= end) {
+                        return false;
+                    }
+                    value[0] = valueStart + 1;
+                    value[1] = valueEnd;
+                    return true;
+                }
+                int valueEnd = valueStart;
+                while (valueEnd < end && line[valueEnd] != ',' && line[valueEnd] != '}' && line[valueEnd] != ']' &&
+                        !isWhitespace(line[valueEnd])) {
+                    valueEnd++;
+                }
+                value[0] = valueStart;
+                value[1] = valueEnd;
+                return true;
+            }
+        }
+    },
+    /**
+     * key=value pairs separated by whitespace, with values optionally in double quotes. Words that aren't pairs are
+     * skipped, so this also finds pairs in the middle of free text.
+     */
+    LOGFMT {
+        @Override
+        public boolean findField(byte[] line, int start, int end, byte[] field, int[] value) {
+            int i = start;
+            while (i < end) {
+                i = skipWhitespace(line, i, end);
+                int keyStart = i;
+                while (i < end && line[i] != '=' && !isWhitespace(line[i])) {
+                    i++;
+                }
+                int keyEnd = i;
+                if (i >= end || line[i] != '=') {
+                    continue;
+                }
+                i++;
+                int valueStart;
+                int valueEnd;
+                if (i < end && line[i] == '"') {
+                    valueStart = i + 1;
+                    valueEnd = Math.min(findQuote(line, valueStart, end), end);
+                    i = valueEnd + 1;
+                } else {
+                    valueStart = i;
+                    while (i < end && !isWhitespace(line[i])) {
+                        i++;
+                    }
+                    valueEnd = i;
+                }
+                if (Arrays.equals(line, keyStart, keyEnd, field, 0, field.length)) {
+                    value[0] = valueStart;
+                    value[1] = valueEnd;
+                    return true;
+                }
+            }
+            return false;
+        }
+    },
+    /**
+     * RFC 3164 and RFC 5424 syslog lines, with or without the priority. The header fields are pri, timestamp, host,
+     * app, pid and msgid (5424 only), and message is the rest of the line. Any other field is looked for as a
+     * key=value pair in the message.
+     */
+    SYSLOG {
+        @Override
+        public boolean findField(byte[] line, int start, int end, byte[] field, int[] value) {
+            int i = start;
+            int priStart = -1;
+            int priEnd = -1;
+            if (i < end && line[i] == '<') {
+                int digits = i + 1;
+                while (digits < end && line[digits] >= '0' && line[digits] <= '9') {
+                    digits++;
+                }
+                if (digits < end && line[digits] == '>') {
+                    priStart = i + 1;
+                    priEnd = digits;
+                    i = digits + 1;
+                }
+            }
+            if (Arrays.equals(field, PRI)) {
+                return setValue(value, priStart, priEnd);
+            }
+
+            // A version number straight after the priority means RFC 5424
+            boolean rfc5424 = priEnd > 0 && i + 1 < end && line[i] >= '1' && line[i] <= '9' && line[i + 1] == ' ';
+            int[] header = new int[12];
+            int messageStart;
+            if (rfc5424) {
+                i = skipWhitespace(line, nextWhitespace(line, i, end), end);
+                // timestamp, host, app, pid and msgid are single words
+                for (int word = 0; word < 5; word++) {
+                    header[word * 2] = i;
+                    header[word * 2 + 1] = nextWhitespace(line, i, end);
+                    i = skipWhitespace(line, header[word * 2 + 1], end);
+                }
+                // Then the structured data, either - or a run of [...] elements
+                if (i < end && line[i] == '[') {
+                    while (i < end && line[i] == '[') {
+                        i = findClosingBracket(line, i + 1, end) + 1;
+                    }
+                } else {
+                    i = nextWhitespace(line, i, end);
+                }
+                messageStart = skipWhitespace(line, i, end);
+            } else {
+                // Either one ISO timestamp or the classic Mmm dd hh:mm:ss
+                int timestampStart = i;
+                int words = i < end && line[i] >= '0' && line[i] <= '9' ? 1 : 3;
+                int timestampEnd = i;
+                for (int word = 0; word < words; word++) {
+                    timestampEnd = nextWhitespace(line, skipWhitespace(line, timestampEnd, end), end);
+                }
+                header[0] = timestampStart;
+                header[1] = timestampEnd;
+                i = skipWhitespace(line, timestampEnd, end);
+                header[2] = i;
+                header[3] = nextWhitespace(line, i, end);
+                i = skipWhitespace(line, header[3], end);
+                // The tag is app[pid]: with the pid optional
+                int tagEnd = i;
+                while (tagEnd < end && line[tagEnd] != ':' && line[tagEnd] != '[' && !isWhitespace(line[tagEnd])) {
+                    tagEnd++;
+                }
+                header[4] = i;
+                header[5] = tagEnd;
+                header[6] = -1;
+                header[7] = -1;
+                if (tagEnd < end && line[tagEnd] == '[') {
+                    int pidEnd = findClosingBracket(line, tagEnd + 1, end);
+                    header[6] = tagEnd + 1;
+                    header[7] = pidEnd;
+                    tagEnd = pidEnd + 1;
+                }
+                header[8] = -1;
+                header[9] = -1;
+                messageStart = tagEnd < end && line[tagEnd] == ':' ? skipWhitespace(line, tagEnd + 1, end) : i;
+            }
+
+            for (int headerField = 0; headerField < HEADER_FIELDS.length; headerField++) {
+                if (Arrays.equals(field, HEADER_FIELDS[headerField])) {
+                    return setValue(value, header[headerField * 2], header[headerField * 2 + 1]);
+                }
+            }
+            if (Arrays.equals(field, MESSAGE)) {
+                return setValue(value, messageStart, end);
+            }
+            return LOGFMT.findField(line, messageStart, end, field, value);
+        }
+    };
+
+    private static final byte[] PRI = "pri".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MESSAGE = "message".getBytes(StandardCharsets.UTF_8);
+    // In the same order as the bounds the syslog parser fills in
+    private static final byte[][] HEADER_FIELDS = toBytes("timestamp", "host", "app", "pid", "msgid");
+    private static final byte[][] MONTHS = toBytes(
+            "Jan ", "Feb ", "Mar ", "Apr ", "May ", "Jun ", "Jul ", "Aug ", "Sep ", "Oct ", "Nov ", "Dec ");
+
+    /**
+     * Finds field in the line
+     *
+     * @param line the buffer holding the line
+     * @param start the index the line starts at
+     * @param end the index the line ends at, exclusive
+     * @param field the name of the field, encoded as UTF-8
+     * @param value set to the start and end (exclusive) of the value if it's found
+     * @return true if the field was found
+     */
+    public abstract boolean findField(byte[] line, int start, int end, byte[] field, int[] value);
+
+    /**
+     * Works out the format of a line from how it starts: JSON objects start with {, syslog starts with a priority or a
+     * month, and anything else is treated as logfmt.
+     *
+     * @param line the buffer holding the line
+     * @param start the index the line starts at
+     * @param end the index the line ends at, exclusive
+     * @return the {@link LogFormat} of the line
+     */
+    public static LogFormat detect(byte[] line, int start, int end) {
+        int first = skipWhitespace(line, start, end);
+        if (first < end && line[first] == '{') {
+            return JSON;
+        }
+        if (first + 1 < end && line[first] == '<' && line[first + 1] >= '0' && line[first + 1] <= '9') {
+            return SYSLOG;
+        }
+        for (byte[] month : MONTHS) {
+            if (end - first >= month.length && Arrays.equals(line, first, first + month.length, month, 0, month.length)) {
+                return SYSLOG;
+            }
+        }
+        return LOGFMT;
+    }
+
+    private static byte[][] toBytes(String... values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static boolean setValue(int[] value, int start, int end) {
+        if (start < 0 || end < start) {
+            return false;
+        }
+        value[0] = start;
+        value[1] = end;
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static int skipWhitespace(byte[] line, int i, int end) {
+        while (i < end && isWhitespace(line[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWhitespaceBack(byte[] line, int start, int i) {
+        while (i >= start && isWhitespace(line[i])) {
+            i--;
+        }
+        return i;
+    }
+
+    private static int nextWhitespace(byte[] line, int i, int end) {
+        while (i < end && !isWhitespace(line[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int findQuote(byte[] line, int i, int end) {
+        while (i < end && line[i] != '"') {
+            i += line[i] == '\\' ? 2 : 1;
+        }
+        return i;
+    }
+
+    private static int findClosingBracket(byte[] line, int i, int end) {
+        while (i < end && line[i] != ']') {
+            // Structured data values are quoted and may contain an escaped ]
+            if (line[i] == '"') {
+                i = findQuote(line, i + 1, end);
+            }
+            i++;
+        }
+        return Math.min(i, end);
+    }
+}
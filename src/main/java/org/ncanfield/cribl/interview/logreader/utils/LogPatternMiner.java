@@ -0,0 +1,259 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.ncanfield.cribl.interview.logreader.models.LogPattern;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clusters log lines into templates as they are streamed in, using a Drain style fixed-depth parse tree.
+ * <p/>
+ * Lines are split on whitespace, and tokens made only of digits and punctuation (numbers, IPs, times and the like)
+ * are masked as wildcards up front. Lines are then routed first by their token count and then by their leading tokens. Each leaf
+ * holds a small list of clusters, and a line joins the most similar one if enough of its tokens match, turning the
+ * differing tokens into wildcards. Memory is bounded by the cluster limit - once it's reached, lines that don't fit an
+ * existing cluster are counted in a single catch-all cluster instead.
+ */
+public class LogPatternMiner {
+    public static final String WILDCARD = "<*>";
+
+    private static final int DEFAULT_DEPTH = 4;
+    private static final double DEFAULT_SIMILARITY = 0.4;
+    private static final int DEFAULT_MAX_CHILDREN = 100;
+    private static final int DEFAULT_MAX_CLUSTERS = 1000;
+
+    private final int depth;
+    private final double similarityThreshold;
+    private final int maxChildren;
+    private final int maxClusters;
+    private final Map<Integer, Node> lengthNodes = new HashMap<>();
+    private final List<Cluster> clusters = new ArrayList<>();
+    private Cluster overflow;
+
+    public LogPatternMiner() {
+        this(DEFAULT_DEPTH, DEFAULT_SIMILARITY, DEFAULT_MAX_CHILDREN, DEFAULT_MAX_CLUSTERS);
+    }
+
+    /**
+     * Creates a new LogPatternMiner
+     *
+     * @param depth the depth of the parse tree, including the root and length levels, so depth - 2 tokens are used to route
+     * @param similarityThreshold the fraction of tokens that must match for a line to join a cluster
+     * @param maxChildren the max children of any node before further tokens get routed to the wildcard node
+     * @param maxClusters the max clusters to hold before lines get counted in the catch-all cluster
+     */
+    public LogPatternMiner(int depth, double similarityThreshold, int maxChildren, int maxClusters) {
+        this.depth = Math.max(depth, 3);
+        this.similarityThreshold = similarityThreshold;
+        this.maxChildren = maxChildren;
+        this.maxClusters = maxClusters;
+    }
+
+    /**
+     * Adds a single log line to the miner
+     *
+     * @param line the log line to add
+     */
+    public void add(String line) {
+        add(line, 1, line);
+    }
+
+    /**
+     * Adds a line or template that has already been seen count times. This is used to merge the results of other miners.
+     *
+     * @param line the log line or template to add
+     * @param count the number of times it was seen
+     * @param sample a sample line for it
+     */
+    public void add(String line, long count, String sample) {
+        if (line == null || count < 1) {
+            return;
+        }
+        String[] tokens = tokenize(line);
+        boolean full = clusters.size() >= maxClusters;
+        Node leaf = findLeaf(tokens, !full);
+        Cluster match = null;
+        double bestSimilarity = -1;
+        int bestWildcards = -1;
+
+        for (Cluster cluster : leaf != null ? leaf.clusters : List.<Cluster>of()) {
+            double similarity = similarity(cluster.template, tokens);
+            int wildcards = cluster.wildcardCount();
+            if (similarity > bestSimilarity || (similarity == bestSimilarity && wildcards > bestWildcards)) {
+                bestSimilarity = similarity;
+                bestWildcards = wildcards;
+                match = cluster;
+            }
+        }
+
+        if (match != null && bestSimilarity < similarityThreshold) {
+            // Not similar enough, merging it would wildcard tokens the cluster's lines really share
+            match = null;
+        }
+
+        if (match != null) {
+            match.merge(tokens);
+        } else if (!full) {
+            match = new Cluster(tokens, sample);
+            leaf.clusters.add(match);
+            clusters.add(match);
+        } else {
+            if (overflow == null) {
+                overflow = new Cluster(new String[] {WILDCARD}, sample);
+            }
+            match = overflow;
+        }
+        match.count += count;
+    }
+
+    /**
+     * Gets the patterns found so far, most common first
+     *
+     * @return a list of {@link LogPattern}, sorted by count descending
+     */
+    public List<LogPattern> getPatterns() {
+        List<Cluster> allClusters = new ArrayList<>(clusters);
+        if (overflow != null) {
+            allClusters.add(overflow);
+        }
+        return allClusters.stream()
+                .sorted(Comparator.comparingLong((Cluster cluster) -> cluster.count).reversed())
+                .map(cluster -> new LogPattern(String.join(" ", cluster.template), cluster.count, cluster.sample))
+                .toList();
+    }
+
+    /**
+     * Walks the parse tree to the leaf for these tokens, creating nodes as needed if create is set
+     *
+     * @param tokens the tokens of the line
+     * @param create whether missing nodes may be created, which stops once the cluster limit is reached as they could
+     *               never hold a cluster
+     * @return the leaf node for the line, or null if it doesn't exist and create isn't set
+     */
+    private Node findLeaf(String[] tokens, boolean create) {
+        Node node = create ? lengthNodes.computeIfAbsent(tokens.length, length -> new Node()) : lengthNodes.get(tokens.length);
+        if (node == null) {
+            return null;
+        }
+        int routeTokens = Math.min(depth - 2, tokens.length);
+
+        for (int i = 0; i < routeTokens; i++) {
+            String key = hasDigit(tokens[i]) ? WILDCARD : tokens[i];
+            Node child = node.children.get(key);
+            if (child == null) {
+                if (node.children.size() >= maxChildren - 1 && !WILDCARD.equals(key)) {
+                    // Leave the last slot for the wildcard so this node can't grow unbounded
+                    key = WILDCARD;
+                    child = node.children.get(key);
+                }
+                if (child == null) {
+                    if (!create) {
+                        return null;
+                    }
+                    child = new Node();
+                    node.children.put(key, child);
+                }
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * Gets the fraction of positions where the template and tokens match. A wildcard in the template only counts as a
+     * match against a token that was also masked as a wildcard.
+     */
+    private static double similarity(String[] template, String[] tokens) {
+        if (template.length != tokens.length) {
+            return 0;
+        }
+        if (template.length == 0) {
+            return 1;
+        }
+        int matches = 0;
+        for (int i = 0; i < template.length; i++) {
+            if (template[i].equals(tokens[i])) {
+                matches++;
+            }
+        }
+        return (double) matches / template.length;
+    }
+
+    private static boolean hasDigit(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (Character.isDigit(token.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] tokenize(String line) {
+        String trimmed = line.strip();
+        if (trimmed.isEmpty()) {
+            return new String[0];
+        }
+        String[] tokens = trimmed.split("\\s+");
+        for (int i = 0; i < tokens.length; i++) {
+            if (isNumeric(tokens[i])) {
+                tokens[i] = WILDCARD;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Checks if a token has at least one digit and no letters, so is likely a variable like a number, IP or timestamp
+     */
+    private static boolean isNumeric(String token) {
+        boolean hasDigit = false;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (Character.isLetter(c)) {
+                return false;
+            }
+            hasDigit |= Character.isDigit(c);
+        }
+        return hasDigit;
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<Cluster> clusters = new ArrayList<>();
+    }
+
+    private static class Cluster {
+        private final String[] template;
+        private final String sample;
+        private long count;
+
+        private Cluster(String[] template, String sample) {
+            this.template = template;
+            this.sample = sample;
+        }
+
+        private void merge(String[] tokens) {
+            if (tokens.length != template.length) {
+                return;
+            }
+            for (int i = 0; i < template.length; i++) {
+                if (!template[i].equals(tokens[i])) {
+                    template[i] = WILDCARD;
+                }
+            }
+        }
+
+        private int wildcardCount() {
+            int wildcards = 0;
+            for (String token : template) {
+                if (WILDCARD.equals(token)) {
+                    wildcards++;
+                }
+            }
+            return wildcards;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least recently used cache of peer responses and their ETags, keyed by the URL they were fetched from.
+ * <p/>
+ * It's bounded both by the number of responses and the total size of the bodies they were parsed from, so a handful
+ * of huge responses can't push out everything else or hold on to too much heap. Responses bigger than the whole cache
+ * are never cached.
+ */
+public class PeerResponseCache {
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedResponse> responses = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    /**
+     * Creates a new PeerResponseCache
+     *
+     * @param maxEntries the most responses to keep
+     * @param maxBytes the most body bytes to keep across all responses
+     */
+    public PeerResponseCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param url the URL the response was fetched from
+     * @return the cached response for url, or null if there isn't one
+     */
+    public synchronized CachedResponse get(String url) {
+        return responses.get(url);
+    }
+
+    /**
+     * Caches a response, replacing any older one for the same URL and evicting the least recently used responses if
+     * the cache is full
+     *
+     * @param url the URL the response was fetched from
+     * @param etag the ETag the peer sent with it
+     * @param response the parsed response
+     * @param size the size of the body it was parsed from
+     */
+    public synchronized void put(String url, String etag, LogReadResponse response, long size) {
+        remove(url);
+        if (size > maxBytes || maxEntries < 1) {
+            return;
+        }
+        responses.put(url, new CachedResponse(etag, response, size));
+        cachedBytes += size;
+
+        Iterator<Map.Entry<String, CachedResponse>> eldest = responses.entrySet().iterator();
+        while ((responses.size() > maxEntries || cachedBytes > maxBytes) && eldest.hasNext()) {
+            cachedBytes -= eldest.next().getValue().size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Drops the cached response for url, if any
+     *
+     * @param url the URL to drop
+     */
+    public synchronized void remove(String url) {
+        CachedResponse removed = responses.remove(url);
+        if (removed != null) {
+            cachedBytes -= removed.size();
+        }
+    }
+
+    /**
+     * @return the number of responses cached
+     */
+    public synchronized int size() {
+        return responses.size();
+    }
+
+    /**
+     * @return the total body bytes of the responses cached
+     */
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * A response from a peer along with the ETag it was sent with
+     *
+     * @param etag the ETag, to send back as If-None-Match
+     * @param response the parsed response
+     * @param size the size of the body it was parsed from
+     */
+    public record CachedResponse(String etag, LogReadResponse response, long size) {
+    }
+}
@@ -1,28 +1,55 @@
 package org.ncanfield.cribl.interview.logreader.utils;
 
 import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.profiling.BufferFillEvent;
 
-import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ReverseFileReader implements ReverseLineReader {
+    // Added to the end of a truncated line along with its full length in bytes
+    public static final String TRUNCATED_MARKER = "... [truncated, %d bytes]";
+
+    // Read-ahead blocks are read on these threads, the same as the default pool an AsynchronousFileChannel would use
+    private static final ExecutorService READ_AHEAD_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "read-ahead");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-public class ReverseFileReader implements Closeable {
     private final Charset charset;
     private final int bufferSize;
     private final List<byte[]> newLines;
-    private final SeekableByteChannel fileChannel;
+    private final FileHandleCache.Handle handle;
+    private final int readAheadBlocks;
+    private final int maxLineLength;
+    private final Deque<PendingBlock> pendingBlocks = new ArrayDeque<>();
+    // Where the bytes being read start in the file, every other offset is from here
+    private final long rangeStart;
+    private final long fileSize;
+    private long nextPrefetchEnd;
     private long remainingBytes;
     private int bufferOffset;
     private int lastNewline;
     private byte[] buffer;
+    private int lineStart;
+    private int lineLength;
+    // File offset of the end of a line that's too long to keep, while the reader skips back to its start
+    private long longLineEnd = -1;
+    private byte[] truncatedLine;
+    private boolean lineTruncated;
 
     /**
      * Creates a new ReverseFileReader. Only UTF-8 and single byte encodings are currently supported
@@ -34,7 +61,83 @@ public class ReverseFileReader implements Closeable {
      * @throws LogReaderException if an unsupported charset is passed
      */
     public ReverseFileReader(Charset charset, Path filePath, int bufferSize) throws IOException, LogReaderException {
+        this(charset, filePath, bufferSize, 0);
+    }
+
+    /**
+     * Creates a new ReverseFileReader. Only UTF-8 and single byte encodings are currently supported
+     * <p/>
+     * If readAheadBlocks is above 0 the reader runs in pipelined mode: it keeps that many of the next earlier blocks
+     * being read in the background while the current one is scanned, so disk I/O and scanning overlap.
+     *
+     * @param charset the charset to use, only UTF-8 and single byte encodings are supported
+     * @param filePath the path to the file to read
+     * @param bufferSize the buffer size to use when reading the file
+     * @param readAheadBlocks the number of blocks to prefetch, or 0 to read each block only when it's needed
+     * @throws IOException if there's an exception loading the file in
+     * @throws LogReaderException if an unsupported charset is passed
+     */
+    public ReverseFileReader(Charset charset, Path filePath, int bufferSize, int readAheadBlocks) throws IOException, LogReaderException {
+        this(charset, filePath, bufferSize, readAheadBlocks, 0);
+    }
+
+    /**
+     * Creates a new ReverseFileReader. Only UTF-8 and single byte encodings are currently supported
+     * <p/>
+     * If maxLineLength is above 0, lines longer than it are cut down to their first maxLineLength bytes followed by
+     * {@link #TRUNCATED_MARKER}. Only the end of a long line is noted as the reader goes back through it, so no more
+     * than about bufferSize + maxLineLength bytes are ever held however long the line is.
+     *
+     * @param charset the charset to use, only UTF-8 and single byte encodings are supported
+     * @param filePath the path to the file to read
+     * @param bufferSize the buffer size to use when reading the file
+     * @param readAheadBlocks the number of blocks to prefetch, or 0 to read each block only when it's needed
+     * @param maxLineLength the max bytes of a line to keep, or 0 or less to keep every line whole
+     * @throws IOException if there's an exception loading the file in
+     * @throws LogReaderException if an unsupported charset is passed
+     */
+    public ReverseFileReader(Charset charset, Path filePath, int bufferSize, int readAheadBlocks, int maxLineLength) throws IOException, LogReaderException {
+        this(charset, FileHandleCache.openUncached(filePath), bufferSize, readAheadBlocks, maxLineLength);
+    }
+
+    /**
+     * Creates a new ReverseFileReader on a file that's already open, see
+     * {@link #ReverseFileReader(Charset, Path, int, int, int)}. Every read is positional, so the file may be shared
+     * with other readers. The handle is closed with the reader, including if this throws.
+     *
+     * @param charset the charset to use, only UTF-8 and single byte encodings are supported
+     * @param handle the {@link FileHandleCache.Handle} on the file to read
+     * @param bufferSize the buffer size to use when reading the file
+     * @param readAheadBlocks the number of blocks to prefetch, or 0 to read each block only when it's needed
+     * @param maxLineLength the max bytes of a line to keep, or 0 or less to keep every line whole
+     * @throws IOException if there's an exception loading the file in
+     * @throws LogReaderException if an unsupported charset is passed
+     */
+    public ReverseFileReader(Charset charset, FileHandleCache.Handle handle, int bufferSize, int readAheadBlocks, int maxLineLength)
+            throws IOException, LogReaderException {
+        this(charset, handle, 0, -1, bufferSize, readAheadBlocks, maxLineLength);
+    }
+
+    /**
+     * Creates a new ReverseFileReader on just the bytes from rangeStart to rangeEnd of a file that's already open, see
+     * {@link #ReverseFileReader(Charset, FileHandleCache.Handle, int, int, int)}. The range is read as if it was the
+     * whole file, so it should start at the start of a line and end at the end of one. Positions and bytes read are
+     * counted from rangeStart.
+     *
+     * @param charset the charset to use, only UTF-8 and single byte encodings are supported
+     * @param handle the {@link FileHandleCache.Handle} on the file to read
+     * @param rangeStart the offset in the file to read back to
+     * @param rangeEnd the offset in the file to read back from, or less than 0 for the current end of the file
+     * @param bufferSize the buffer size to use when reading the file
+     * @param readAheadBlocks the number of blocks to prefetch, or 0 to read each block only when it's needed
+     * @param maxLineLength the max bytes of a line to keep, or 0 or less to keep every line whole
+     * @throws IOException if there's an exception loading the file in
+     * @throws LogReaderException if an unsupported charset is passed
+     */
+    public ReverseFileReader(Charset charset, FileHandleCache.Handle handle, long rangeStart, long rangeEnd, int bufferSize,
+                             int readAheadBlocks, int maxLineLength) throws IOException, LogReaderException {
         if (charset.newEncoder().maxBytesPerChar() != 1f && !StandardCharsets.UTF_8.equals(charset)) {
+            handle.close();
             throw new LogReaderException("Only single byte encodings and UTF-8 are supported at the moment");
         }
 
@@ -46,15 +149,42 @@ public class ReverseFileReader implements Closeable {
                 "\r".getBytes(charset)
         );
 
-        fileChannel = Files.newByteChannel(filePath, StandardOpenOption.READ);
-        remainingBytes = fileChannel.size();
-        buffer = fillBuffer(null);
+        this.readAheadBlocks = Math.max(readAheadBlocks, 0);
+        this.maxLineLength = Math.max(maxLineLength, 0);
+        this.handle = handle;
+        this.rangeStart = Math.max(rangeStart, 0);
+        try {
+            // Anything appended after this is left for the next read
+            remainingBytes = (rangeEnd < 0 ? handle.size() : rangeEnd) - this.rangeStart;
+            fileSize = remainingBytes;
+            nextPrefetchEnd = remainingBytes;
+            buffer = fillBuffer(null);
+        } catch (IOException | LogReaderException | RuntimeException e) {
+            close();
+            throw e;
+        }
     }
 
+    @Override
     public boolean hasMoreData() {
         return bufferOffset + remainingBytes >= 0;
     }
 
+    /**
+     * Gets the offset in the file that reading has reached, everything from here to the end of the file has been read.
+     * For a reader on a range of the file this is from the start of the range.
+     *
+     * @return the file offset just past the last unread byte
+     */
+    public long getPosition() {
+        return Math.max(remainingBytes + bufferOffset + 1, 0);
+    }
+
+    @Override
+    public long getBytesRead() {
+        return fileSize - getPosition();
+    }
+
     /**
      * Reads the next line up in the file, or null
      *
@@ -63,12 +193,26 @@ public class ReverseFileReader implements Closeable {
      * @throws LogReaderException if there's an issue parsing the file
      */
     public String readLine() throws IOException, LogReaderException {
-        String line = null;
+        return nextLine() ? new String(getLineBuffer(), lineStart, lineLength, charset) : null;
+    }
+
+    /**
+     * Moves to the next line up in the file without decoding it. The line's bytes can then be found with
+     * {@link #getLineBuffer()}, {@link #getLineStart()} and {@link #getLineLength()}, which are only valid until the
+     * next call to this or {@link #readLine()}.
+     *
+     * @return true if a line was found, false if there are no more
+     * @throws IOException if there's an exception accessing
+     * @throws LogReaderException if there's an issue parsing the file
+     */
+    @Override
+    public boolean nextLine() throws IOException, LogReaderException {
+        boolean found = false;
         while (bufferOffset > -1) {
             //We don't want to split up \r\n newlines.
             if (remainingBytes > 0 && bufferOffset < newLines.get(0).length) {
                 // We can refill the buffer and add in the
-                 buffer = fillBuffer(Arrays.copyOfRange(buffer, 0, lastNewline));
+                 buffer = fillBuffer(spillover());
                  // Just refilled the buffer, start scanning again.
                  continue;
             }
@@ -81,9 +225,13 @@ public class ReverseFileReader implements Closeable {
                             bufferOffset == 0)
             ) {
                 // If newline bytes are 0, we're here because we need to read the rest of the file from the start
-                int startIndex = newLineBytes == 0 ? 0 : bufferOffset + 1;
-                byte[] lineBytes = Arrays.copyOfRange(buffer, startIndex, lastNewline);
-                line = new String(lineBytes, charset);
+                lineStart = newLineBytes == 0 ? 0 : bufferOffset + 1;
+                lineLength = lastNewline - lineStart;
+                lineTruncated = false;
+                if (longLineEnd >= 0 || (maxLineLength > 0 && lineLength > maxLineLength)) {
+                    truncateLine();
+                }
+                found = true;
                 // Move both the buffer offset and last new line to just before the found newline
                 // Move it at least one if this is the EOF so that the hasMoreData check returns false
                 bufferOffset -= Math.max(newLineBytes, 1);
@@ -95,7 +243,121 @@ public class ReverseFileReader implements Closeable {
             // If nothing was found, move the buffer offset back one
             bufferOffset -= 1;
         }
-        return line;
+        return found;
+    }
+
+    /**
+     * @return the buffer holding the line found by the last call to {@link #nextLine()}
+     */
+    @Override
+    public byte[] getLineBuffer() {
+        return lineTruncated ? truncatedLine : buffer;
+    }
+
+    /**
+     * @return the index in {@link #getLineBuffer()} the last line starts at
+     */
+    @Override
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    /**
+     * @return the length in bytes of the last line, not including its newline
+     */
+    @Override
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    @Override
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Builds the truncated form of a line: its first maxLength bytes, cut back to the start of a character for UTF-8,
+     * followed by {@link #TRUNCATED_MARKER}
+     *
+     * @param line the buffer holding at least the first maxLength + 1 bytes of the line
+     * @param start the index the line starts at
+     * @param maxLength the max bytes of the line to keep
+     * @param originalLength the full length of the line in bytes
+     * @param charset the charset of the line
+     * @return the truncated line
+     */
+    public static byte[] truncate(byte[] line, int start, int maxLength, long originalLength, Charset charset) {
+        int length = maxLength;
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            // Don't split a multi-byte character, continuation bytes all start with 10
+            while (length > 0 && (line[start + length] & 0xC0) == 0x80) {
+                length--;
+            }
+        }
+        byte[] marker = String.format(TRUNCATED_MARKER, originalLength).getBytes(charset);
+        byte[] truncated = new byte[length + marker.length];
+        System.arraycopy(line, start, truncated, 0, length);
+        System.arraycopy(marker, 0, truncated, length, marker.length);
+        return truncated;
+    }
+
+    /**
+     * Gets the part of the buffer that still has to be scanned along with the rest of the current line. Once the line
+     * is longer than the max, only the unscanned bytes are kept and the line's end is noted instead.
+     *
+     * @return the bytes to carry over to the next buffer
+     */
+    private byte[] spillover() {
+        if (longLineEnd >= 0 || (maxLineLength > 0 && lastNewline > maxLineLength)) {
+            if (longLineEnd < 0) {
+                // The start of the buffer is at remainingBytes in the file
+                longLineEnd = remainingBytes + lastNewline;
+            }
+            return Arrays.copyOfRange(buffer, 0, Math.min(lastNewline, bufferOffset + 1));
+        }
+        return Arrays.copyOfRange(buffer, 0, lastNewline);
+    }
+
+    /**
+     * Replaces the line just found with its truncated form, reading its start back from the file if it was skipped
+     */
+    private void truncateLine() throws IOException, LogReaderException {
+        long fileStart = remainingBytes + lineStart;
+        if (longLineEnd < 0) {
+            truncatedLine = truncate(buffer, lineStart, maxLineLength, lineLength, charset);
+        } else {
+            byte[] head = new byte[maxLineLength + 1];
+            readAt(head, fileStart);
+            truncatedLine = truncate(head, 0, maxLineLength, longLineEnd - fileStart, charset);
+            longLineEnd = -1;
+        }
+        lineStart = 0;
+        lineLength = truncatedLine.length;
+        lineTruncated = true;
+    }
+
+    /**
+     * Reads target.length bytes from position, outside of the usual block order
+     */
+    private void readAt(byte[] target, long position) throws IOException, LogReaderException {
+        ByteBuffer data = ByteBuffer.wrap(target);
+        readFully(handle, data, rangeStart + position);
+        if (data.hasRemaining()) {
+            throw new LogReaderException("Could not read requested bytes");
+        }
+    }
+
+    /**
+     * Reads from position until data is full or the end of the file is reached, without moving the channel's position
+     * so it can be shared
+     */
+    private static void readFully(FileHandleCache.Handle handle, ByteBuffer data, long position) throws IOException {
+        int start = data.position();
+        while (data.hasRemaining()) {
+            if (handle.read(data, position + data.position() - start) < 0) {
+                return;
+            }
+        }
     }
 
     /**
@@ -131,35 +393,28 @@ public class ReverseFileReader implements Closeable {
      * @throws LogReaderException if the expected bytes could not be read from the file
      */
     private byte[] fillBuffer(byte[] spillover) throws IOException, LogReaderException {
-        byte[] newBuffer;
         int dataSize = spillover != null ? spillover.length : 0;
+        // Either a full buffer or the rest of the bytes at the top of the file. Without read-ahead the block grows to
+        // match a long partial line, so each refill at least doubles the buffer rather than copying the line again for
+        // every bufferSize bytes.
+        int blockSize = readAheadBlocks == 0 ? Math.max(bufferSize, dataSize) : bufferSize;
+        int readSize = Long.valueOf(Math.min(remainingBytes, blockSize)).intValue();
+        dataSize += readSize;
 
-        if (remainingBytes > bufferSize) {
-            // Enough bytes are left to fill the buffer
-            dataSize += bufferSize;
-
-            // Move the offset to the end of the latest data
-            bufferOffset = bufferSize - 1;
-            newBuffer = new byte[dataSize];
-            remainingBytes -= bufferSize;
-            fileChannel.position(remainingBytes);
-            int readCount = fileChannel.read(ByteBuffer.wrap(newBuffer, 0, bufferSize));
-            if (readCount != bufferSize) {
-                throw new LogReaderException("Could not read requested bytes");
-            }
-        } else {
-            // Read the rest of the bytes
-            dataSize += remainingBytes;
-
-            // Move the offset to the end of the latest data
-            bufferOffset = Long.valueOf(remainingBytes).intValue() - 1;
-            newBuffer = new byte[dataSize];
-            fileChannel.position(0);
-            int readCount = fileChannel.read(ByteBuffer.wrap(newBuffer, 0, Long.valueOf(remainingBytes).intValue()));
-            if (readCount != remainingBytes) {
-                throw new LogReaderException("Could not read requested bytes");
-            }
-            remainingBytes = 0L;
+        // Move the offset to the end of the latest data
+        bufferOffset = readSize - 1;
+        byte[] newBuffer = new byte[dataSize];
+        remainingBytes -= readSize;
+        BufferFillEvent event = new BufferFillEvent();
+        event.begin();
+        readBlock(newBuffer, remainingBytes, readSize);
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = String.valueOf(handle.path());
+            event.bytes = readSize;
+            event.spilloverBytes = spillover != null ? spillover.length : 0;
+            event.readAhead = readAheadBlocks > 0;
+            event.commit();
         }
 
         if (spillover != null) {
@@ -175,8 +430,96 @@ public class ReverseFileReader implements Closeable {
         return newBuffer;
     }
 
+    /**
+     * Reads size bytes at position into the start of target, either directly or from the read-ahead queue
+     *
+     * @param target the array to read into
+     * @param position the file offset to read from
+     * @param size the number of bytes to read
+     * @throws IOException if there is an error reading from the file
+     * @throws LogReaderException if the expected bytes could not be read from the file
+     */
+    private void readBlock(byte[] target, long position, int size) throws IOException, LogReaderException {
+        if (size == 0) {
+            // Nothing to read for an empty file
+            return;
+        }
+        if (readAheadBlocks == 0) {
+            ByteBuffer data = ByteBuffer.wrap(target, 0, size);
+            readFully(handle, data, rangeStart + position);
+            if (data.hasRemaining()) {
+                throw new LogReaderException("Could not read requested bytes");
+            }
+            return;
+        }
+
+        prefetch();
+        PendingBlock block = pendingBlocks.poll();
+        if (block == null || block.position() != position || block.data().capacity() != size) {
+            // Blocks are always read in the same order they were queued, so this shouldn't happen
+            throw new LogReaderException("Read-ahead block did not match the requested bytes");
+        }
+        awaitBlock(block);
+        block.data().flip();
+        block.data().get(target, 0, size);
+        // Queue up the next block while this one gets scanned
+        prefetch();
+    }
+
+    /**
+     * Queues background reads until readAheadBlocks blocks are pending or the top of the file is reached
+     */
+    private void prefetch() {
+        while (pendingBlocks.size() < readAheadBlocks && nextPrefetchEnd > 0) {
+            int size = Long.valueOf(Math.min(nextPrefetchEnd, bufferSize)).intValue();
+            long position = nextPrefetchEnd - size;
+            ByteBuffer data = ByteBuffer.allocate(size);
+            CompletableFuture<Void> read = CompletableFuture.runAsync(() -> {
+                try {
+                    readFully(handle, data, rangeStart + position);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, READ_AHEAD_EXECUTOR);
+            pendingBlocks.add(new PendingBlock(position, data, read));
+            nextPrefetchEnd = position;
+        }
+    }
+
+    /**
+     * Waits for a prefetched block to finish
+     *
+     * @param block the block to wait on
+     * @throws IOException if there is an error reading from the file
+     * @throws LogReaderException if the expected bytes could not be read from the file
+     */
+    private void awaitBlock(PendingBlock block) throws IOException, LogReaderException {
+        try {
+            block.read().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LogReaderException("Interrupted while reading the file", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause() : e.getCause();
+            throw new IOException("Could not read requested bytes", cause);
+        }
+        if (block.data().hasRemaining()) {
+            throw new LogReaderException("Could not read requested bytes");
+        }
+    }
+
     @Override
     public void close() throws IOException {
-        fileChannel.close();
+        for (PendingBlock block : pendingBlocks) {
+            block.read().cancel(false);
+        }
+        pendingBlocks.clear();
+        handle.close();
+    }
+
+    /**
+     * A block being read in the background
+     */
+    private record PendingBlock(long position, ByteBuffer data, CompletableFuture<Void> read) {
     }
 }
@@ -0,0 +1,51 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Reads lines newest first, exposing each line as a slice of a byte buffer so it only has to be decoded if it's used
+ */
+public interface ReverseLineReader extends Closeable {
+    /**
+     * @return true if there may be more lines to read
+     */
+    boolean hasMoreData();
+
+    /**
+     * Moves to the next line up without decoding it
+     *
+     * @return true if a line was found, false if there are no more
+     * @throws IOException if there's an exception accessing the file
+     * @throws LogReaderException if there's an issue parsing the file
+     */
+    boolean nextLine() throws IOException, LogReaderException;
+
+    /**
+     * @return the buffer holding the line found by the last call to {@link #nextLine()}
+     */
+    byte[] getLineBuffer();
+
+    /**
+     * @return the index in {@link #getLineBuffer()} the last line starts at
+     */
+    int getLineStart();
+
+    /**
+     * @return the length in bytes of the last line, not including its newline
+     */
+    int getLineLength();
+
+    /**
+     * @return the charset lines are encoded in
+     */
+    Charset getCharset();
+
+    /**
+     * @return the total bytes consumed so far, including newlines
+     */
+    long getBytesRead();
+}
@@ -0,0 +1,217 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.LongPredicate;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a set of rotated files (like app.log, app.log.1, app.log.2.gz) as one newest-first stream of lines.
+ * <p/>
+ * Files are opened one at a time and only once every newer file has been read, so older rotations are never touched
+ * if the newer ones satisfy the request. Gzipped rotations can't be read backwards, so they're inflated to a temporary
+ * file when they're reached and that gets deleted once it's done with.
+ * <p/>
+ * Inflating is charged to the reader's budget a block at a time as it goes, so a request that's cancelled or out of
+ * budget stops part way through rather than inflating the whole file first. A rotation that inflates to more than the
+ * max inflated size isn't read, and the chain ends before it as if the budget had run out, leaving it and any older
+ * rotations unread.
+ */
+public class RotationChainReader implements ReverseLineReader {
+    private static final Logger LOGGER = Logger.getLogger("RotationChainReader");
+    public static final long DEFAULT_MAX_INFLATED_BYTES = 4L * 1024 * 1024 * 1024;
+    private static final int INFLATE_BLOCK_SIZE = 64 * 1024;
+
+    private final List<Path> members;
+    private final ReaderOpener opener;
+    private final Charset charset;
+    private final LongPredicate inflateBudget;
+    private final long maxInflatedBytes;
+    private int nextMember;
+    // Inflating a rotation was stopped, so the chain ends there with the rest unread
+    private boolean stoppedEarly;
+    private ReverseLineReader current;
+    private Path currentTempFile;
+    private long finishedBytes;
+
+    /**
+     * Creates a new RotationChainReader
+     *
+     * @param members the files to read, newest first
+     * @param opener opens a reader for a single uncompressed file
+     * @param charset the charset lines are encoded in
+     */
+    public RotationChainReader(List<Path> members, ReaderOpener opener, Charset charset) {
+        this(members, opener, charset, bytes -> true, DEFAULT_MAX_INFLATED_BYTES);
+    }
+
+    /**
+     * Creates a new RotationChainReader that charges inflating gzipped rotations to a budget
+     *
+     * @param members the files to read, newest first
+     * @param opener opens a reader for a single uncompressed file
+     * @param charset the charset lines are encoded in
+     * @param inflateBudget charged with each block of bytes inflated, returning false to stop inflating
+     * @param maxInflatedBytes the most bytes a gzipped rotation may inflate to before it's given up on
+     */
+    public RotationChainReader(List<Path> members, ReaderOpener opener, Charset charset, LongPredicate inflateBudget,
+                               long maxInflatedBytes) {
+        this.members = members;
+        this.opener = opener;
+        this.charset = charset;
+        this.inflateBudget = inflateBudget;
+        this.maxInflatedBytes = maxInflatedBytes;
+    }
+
+    @Override
+    public boolean hasMoreData() {
+        return stoppedEarly || (current != null && current.hasMoreData()) || nextMember < members.size();
+    }
+
+    @Override
+    public boolean nextLine() throws IOException, LogReaderException {
+        while (true) {
+            if (current != null && current.hasMoreData() && current.nextLine()) {
+                return true;
+            }
+            if (stoppedEarly || nextMember >= members.size()) {
+                closeCurrent();
+                return false;
+            }
+            openNext();
+        }
+    }
+
+    @Override
+    public byte[] getLineBuffer() {
+        return current.getLineBuffer();
+    }
+
+    @Override
+    public int getLineStart() {
+        return current.getLineStart();
+    }
+
+    @Override
+    public int getLineLength() {
+        return current.getLineLength();
+    }
+
+    @Override
+    public Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return finishedBytes + (current != null ? current.getBytesRead() : 0);
+    }
+
+    /**
+     * @return the number of files that have been opened so far
+     */
+    public int getOpenedCount() {
+        return nextMember;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeCurrent();
+    }
+
+    /**
+     * @return true if the chain ended before its last rotation because inflating one was stopped
+     */
+    public boolean isStoppedEarly() {
+        return stoppedEarly;
+    }
+
+    /**
+     * Moves on to the next older file, inflating it first if it's gzipped
+     */
+    private void openNext() throws IOException, LogReaderException {
+        closeCurrent();
+        Path member = members.get(nextMember++);
+        if (member.getFileName().toString().endsWith(".gz")) {
+            currentTempFile = Files.createTempFile("rotation", ".log");
+            try {
+                if (!inflate(member, currentTempFile)) {
+                    stoppedEarly = true;
+                    deleteTempFile();
+                    return;
+                }
+            } catch (IOException e) {
+                deleteTempFile();
+                throw e;
+            }
+            current = opener.open(currentTempFile);
+        } else {
+            current = opener.open(member);
+        }
+    }
+
+    /**
+     * Inflates a gzipped rotation a block at a time, charging each block to the budget
+     *
+     * @return true if it was inflated whole, false if the budget ran out or it got too big
+     */
+    private boolean inflate(Path member, Path target) throws IOException {
+        byte[] block = new byte[INFLATE_BLOCK_SIZE];
+        long inflated = 0;
+        try (InputStream inflater = new GZIPInputStream(Files.newInputStream(member), INFLATE_BLOCK_SIZE);
+             OutputStream output = Files.newOutputStream(target)) {
+            int read;
+            while ((read = inflater.read(block)) > 0) {
+                inflated += read;
+                if (inflated > maxInflatedBytes) {
+                    LOGGER.info("Not reading " + member + ", it inflates to more than " + maxInflatedBytes + " bytes");
+                    return false;
+                }
+                if (!inflateBudget.test(read)) {
+                    return false;
+                }
+                output.write(block, 0, read);
+            }
+        }
+        return true;
+    }
+
+    private void closeCurrent() throws IOException {
+        if (current != null) {
+            finishedBytes += current.getBytesRead();
+            try {
+                current.close();
+            } finally {
+                current = null;
+                deleteTempFile();
+            }
+        }
+    }
+
+    private void deleteTempFile() {
+        if (currentTempFile != null) {
+            try {
+                Files.deleteIfExists(currentTempFile);
+            } catch (IOException e) {
+                LOGGER.info("Could not delete inflated rotation: " + e.getMessage());
+            }
+            currentTempFile = null;
+        }
+    }
+
+    /**
+     * Opens a reader for a single file
+     */
+    @FunctionalInterface
+    public interface ReaderOpener {
+        ReverseLineReader open(Path filePath) throws IOException, LogReaderException;
+    }
+}
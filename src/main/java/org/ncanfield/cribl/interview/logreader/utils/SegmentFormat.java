@@ -0,0 +1,134 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The layout of a segment, a log file stored as independently deflated blocks of whole lines with an index that lets
+ * readers skip blocks without inflating them.
+ * <pre>
+ * header  magic (int), version (int)
+ * blocks  deflated lines, each ended with \n
+ * index   one entry per block, oldest first: offset (long), compressed length (int), raw length (int),
+ *         term filter (FILTER_LONGS longs)
+ * footer  index offset (long), block count (int), source size (long), source modified (long), magic (int)
+ * </pre>
+ * The term filter is a bloom filter of every three byte sequence in the block's lines, so a block can only contain a
+ * search term if every three bytes of the term are in its filter. Terms shorter than that can't rule blocks out.
+ * <p/>
+ * Segments of any other version are treated as stale and compacted again.
+ * <p/>
+ * Deflate is used rather than something like LZ4 or zstd since it ships with the JDK - blocks are small enough that
+ * inflating them is still much cheaper than reading the plain text from disk.
+ */
+public class SegmentFormat {
+    public static final int MAGIC = 0x4C534547;
+    public static final int VERSION = 2;
+    public static final int BLOCK_SIZE = 64 * 1024;
+    public static final int FILTER_BITS = 32 * 1024;
+    public static final int FILTER_LONGS = FILTER_BITS / 64;
+    public static final int INDEX_ENTRY_SIZE = 8 + 4 + 4 + FILTER_LONGS * 8;
+    public static final int FOOTER_SIZE = 8 + 4 + 8 + 8 + 4;
+
+    private SegmentFormat() {
+    }
+
+    /**
+     * Adds every three byte sequence in bytes start to end to the filter
+     */
+    static void addTrigrams(long[] filter, byte[] bytes, int start, int end) {
+        for (int i = start; i + 2 < end; i++) {
+            int hash = trigramHash(bytes, i);
+            setBit(filter, hash);
+            setBit(filter, hash >>> 16);
+        }
+    }
+
+    /**
+     * Checks if a block with this filter could contain term
+     *
+     * @param filter the block's term filter
+     * @param term the term to look for
+     * @return false if the block definitely doesn't contain term
+     */
+    public static boolean mightContain(long[] filter, byte[] term) {
+        for (int i = 0; i + 2 < term.length; i++) {
+            int hash = trigramHash(term, i);
+            if (!isSet(filter, hash) || !isSet(filter, hash >>> 16)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the footer of a segment
+     *
+     * @param segment the segment file
+     * @return the {@link Footer}
+     * @throws IOException if the file cannot be read or isn't a segment
+     */
+    public static Footer readFooter(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return readFooter(channel);
+        }
+    }
+
+    static Footer readFooter(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < 8 + FOOTER_SIZE) {
+            throw new IOException("File is too small to be a segment");
+        }
+        ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+        Footer result = new Footer(footer.getLong(), footer.getInt(), footer.getLong(), footer.getLong());
+        if (footer.getInt() != MAGIC) {
+            throw new IOException("File is not a segment");
+        }
+        ByteBuffer header = readFully(channel, 0, 8);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Segment is from another version");
+        }
+        return result;
+    }
+
+    static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Segment ended early");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static int trigramHash(byte[] bytes, int i) {
+        int trigram = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+        return trigram * 0x9E3779B1;
+    }
+
+    private static void setBit(long[] filter, int hash) {
+        int bit = hash & (FILTER_BITS - 1);
+        filter[bit >>> 6] |= 1L << bit;
+    }
+
+    private static boolean isSet(long[] filter, int hash) {
+        int bit = hash & (FILTER_BITS - 1);
+        return (filter[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * The index entry for a block
+     */
+    public record Block(long offset, int compressedLength, int rawLength, long[] termFilter) {
+    }
+
+    /**
+     * The footer of a segment, with the size and modification time of the file it was made from so stale segments
+     * can be spotted
+     */
+    public record Footer(long indexOffset, int blockCount, long sourceSize, long sourceModified) {
+    }
+}
@@ -0,0 +1,194 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the lines of a segment from the bottom up, see {@link SegmentFormat}.
+ * <p/>
+ * Blocks are inflated one at a time, newest first. If a search term is given, blocks whose term filter says they can't
+ * contain it are skipped without being read from disk at all.
+ */
+public class SegmentReader implements ReverseLineReader {
+    private final FileChannel channel;
+    private final SegmentFormat.Footer footer;
+    private final byte[] searchTerm;
+    private final Inflater inflater = new Inflater();
+    private int nextBlock;
+    private byte[] block = new byte[0];
+    private byte[] compressed = new byte[0];
+    // Everything in the current block before this has yet to be read
+    private int blockPosition;
+    private int lineStart;
+    private int lineLength;
+    private long bytesRead;
+    private int blocksRead;
+    private int blocksSkipped;
+
+    /**
+     * Creates a new SegmentReader
+     *
+     * @param segment the segment file
+     * @param searchTerm the term lines will be searched for as UTF-8, used to skip blocks, or null to read every block
+     * @throws IOException if the segment cannot be opened or isn't a segment
+     */
+    public SegmentReader(Path segment, byte[] searchTerm) throws IOException {
+        channel = FileChannel.open(segment, StandardOpenOption.READ);
+        try {
+            footer = SegmentFormat.readFooter(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.searchTerm = searchTerm;
+        nextBlock = footer.blockCount() - 1;
+    }
+
+    @Override
+    public boolean hasMoreData() {
+        return blockPosition > 0 || nextBlock >= 0;
+    }
+
+    @Override
+    public boolean nextLine() throws IOException, LogReaderException {
+        while (blockPosition <= 0) {
+            if (!loadPreviousBlock()) {
+                return false;
+            }
+        }
+        // Every line in a block ends with \n, including the last
+        int lineEnd = blockPosition - 1;
+        int start = lineEnd;
+        while (start > 0 && block[start - 1] != '\n') {
+            start--;
+        }
+        lineStart = start;
+        lineLength = lineEnd - start;
+        bytesRead += blockPosition - start;
+        blockPosition = start;
+        return true;
+    }
+
+    @Override
+    public byte[] getLineBuffer() {
+        return block;
+    }
+
+    @Override
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    @Override
+    public Charset getCharset() {
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * @return the bytes of lines read so far, skipped blocks aren't counted
+     */
+    @Override
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of blocks that have been inflated
+     */
+    public int getBlocksRead() {
+        return blocksRead;
+    }
+
+    /**
+     * @return the number of blocks skipped because their term filter ruled out the search term
+     */
+    public int getBlocksSkipped() {
+        return blocksSkipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    /**
+     * Moves to the newest block before the current one that could hold the search term
+     *
+     * @return false if there are no more blocks
+     */
+    private boolean loadPreviousBlock() throws IOException, LogReaderException {
+        while (nextBlock >= 0) {
+            SegmentFormat.Block entry = readIndexEntry(nextBlock--);
+            if (searchTerm != null && !SegmentFormat.mightContain(entry.termFilter(), searchTerm)) {
+                blocksSkipped++;
+                continue;
+            }
+            inflate(entry);
+            blocksRead++;
+            return true;
+        }
+        return false;
+    }
+
+    private SegmentFormat.Block readIndexEntry(int index) throws IOException {
+        ByteBuffer entry = SegmentFormat.readFully(
+                channel,
+                footer.indexOffset() + (long) index * SegmentFormat.INDEX_ENTRY_SIZE,
+                SegmentFormat.INDEX_ENTRY_SIZE);
+        long offset = entry.getLong();
+        int compressedLength = entry.getInt();
+        int rawLength = entry.getInt();
+        long[] termFilter = new long[SegmentFormat.FILTER_LONGS];
+        entry.asLongBuffer().get(termFilter);
+        return new SegmentFormat.Block(offset, compressedLength, rawLength, termFilter);
+    }
+
+    private void inflate(SegmentFormat.Block entry) throws IOException, LogReaderException {
+        if (compressed.length < entry.compressedLength()) {
+            compressed = new byte[entry.compressedLength()];
+        }
+        ByteBuffer target = ByteBuffer.wrap(compressed, 0, entry.compressedLength());
+        while (target.hasRemaining()) {
+            if (channel.read(target, entry.offset() + target.position()) < 0) {
+                throw new LogReaderException("Segment ended early");
+            }
+        }
+        // Lines handed out from the last block have already been copied, so the buffer can be reused
+        if (block.length < entry.rawLength()) {
+            block = new byte[entry.rawLength()];
+        }
+        inflater.reset();
+        inflater.setInput(compressed, 0, entry.compressedLength());
+        try {
+            int inflated = 0;
+            while (inflated < entry.rawLength() && !inflater.finished()) {
+                int count = inflater.inflate(block, inflated, entry.rawLength() - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != entry.rawLength()) {
+                throw new LogReaderException("Segment block was shorter than expected");
+            }
+        } catch (DataFormatException e) {
+            throw new LogReaderException("Segment block could not be inflated", e);
+        }
+        blockPosition = entry.rawLength();
+    }
+}
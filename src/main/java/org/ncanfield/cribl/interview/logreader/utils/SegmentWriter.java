@@ -0,0 +1,205 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Writes a log file out as a segment, see {@link SegmentFormat} for the layout.
+ * <p/>
+ * Lines are read forwards and packed into blocks of about {@link SegmentFormat#BLOCK_SIZE} bytes, only ever splitting
+ * between lines, and each block is deflated on its own so it can be read without the rest of the segment. Line endings
+ * are all stored as \n.
+ */
+public class SegmentWriter {
+    private SegmentWriter() {
+    }
+
+    /**
+     * Writes source out as a segment at target. The segment is written to a temporary file next to target first and
+     * moved into place once it's complete, so readers never see a partial segment.
+     *
+     * @param source the log file, which may be gzipped
+     * @param target where to write the segment
+     * @throws IOException if source cannot be read or target cannot be written
+     */
+    public static void write(Path source, Path target) throws IOException {
+        write(source, target, 0);
+    }
+
+    /**
+     * Writes source out as a segment at target, truncating any line longer than maxLineLength the same way
+     * {@link ReverseFileReader} does. Only the start of a long line is ever held, however long it is.
+     *
+     * @param source the log file, which may be gzipped
+     * @param target where to write the segment
+     * @param maxLineLength the max bytes of a line to store, or 0 or less for no limit
+     * @throws IOException if source cannot be read or target cannot be written
+     */
+    public static void write(Path source, Path target, int maxLineLength) throws IOException {
+        long sourceSize = Files.size(source);
+        long sourceModified = Files.getLastModifiedTime(source).toMillis();
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            // The index is spilled to its own file while the blocks are written, so memory use doesn't grow with the log
+            try (InputStream input = open(source);
+                 FileChannel output = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 FileChannel index = FileChannel.open(temp.resolveSibling(temp.getFileName() + ".index"),
+                         StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                         StandardOpenOption.DELETE_ON_CLOSE)) {
+                writeSegment(input, output, index, sourceSize, sourceModified, maxLineLength);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static InputStream open(Path source) throws IOException {
+        if (source.getFileName().toString().endsWith(".gz")) {
+            return new BufferedInputStream(new GZIPInputStream(Files.newInputStream(source), 64 * 1024), 64 * 1024);
+        }
+        return new BufferedInputStream(Files.newInputStream(source), 64 * 1024);
+    }
+
+    private static void writeSegment(InputStream input, FileChannel output, FileChannel index, long sourceSize, long sourceModified,
+                                     int maxLineLength) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(SegmentFormat.MAGIC).putInt(SegmentFormat.VERSION).flip();
+        writeFully(output, header);
+
+        int blockCount = 0;
+        BlockBuilder block = new BlockBuilder();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            // The full length of the current line, which may be more than is kept in line
+            long lineBytes = 0;
+            int previous = -1;
+            int current;
+            boolean pendingLine = false;
+            while ((current = input.read()) != -1) {
+                if (current == '\n' && previous == '\r') {
+                    // Second half of a \r\n that already ended the line
+                    previous = current;
+                    continue;
+                }
+                if (current == '\n' || current == '\r') {
+                    block.add(finishLine(line, lineBytes, maxLineLength));
+                    line.reset();
+                    lineBytes = 0;
+                    pendingLine = false;
+                } else {
+                    // One byte past the max is kept so truncation can tell where the last character starts
+                    if (maxLineLength <= 0 || line.size() <= maxLineLength) {
+                        line.write(current);
+                    }
+                    lineBytes++;
+                    pendingLine = true;
+                }
+                previous = current;
+                if (block.size() >= SegmentFormat.BLOCK_SIZE) {
+                    writeIndexEntry(index, block.flush(output, deflater));
+                    blockCount++;
+                }
+            }
+            if (pendingLine) {
+                block.add(finishLine(line, lineBytes, maxLineLength));
+            }
+            if (block.size() > 0) {
+                writeIndexEntry(index, block.flush(output, deflater));
+                blockCount++;
+            }
+        } finally {
+            deflater.end();
+        }
+
+        long indexOffset = output.position();
+        long indexSize = index.position();
+        long copied = 0;
+        while (copied < indexSize) {
+            copied += index.transferTo(copied, indexSize - copied, output);
+        }
+        output.position(indexOffset + indexSize);
+        ByteBuffer footer = ByteBuffer.allocate(SegmentFormat.FOOTER_SIZE)
+                .putLong(indexOffset)
+                .putInt(blockCount)
+                .putLong(sourceSize)
+                .putLong(sourceModified)
+                .putInt(SegmentFormat.MAGIC)
+                .flip();
+        writeFully(output, footer);
+    }
+
+    private static byte[] finishLine(ByteArrayOutputStream line, long lineBytes, int maxLineLength) {
+        if (maxLineLength > 0 && lineBytes > maxLineLength) {
+            return ReverseFileReader.truncate(line.toByteArray(), 0, maxLineLength, lineBytes, StandardCharsets.UTF_8);
+        }
+        return line.toByteArray();
+    }
+
+    private static void writeIndexEntry(FileChannel index, SegmentFormat.Block block) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(SegmentFormat.INDEX_ENTRY_SIZE)
+                .putLong(block.offset())
+                .putInt(block.compressedLength())
+                .putInt(block.rawLength());
+        for (long bits : block.termFilter()) {
+            entry.putLong(bits);
+        }
+        writeFully(index, entry.flip());
+    }
+
+    private static void writeFully(FileChannel output, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+
+    /**
+     * Collects the lines of a block along with its term filter until it's flushed
+     */
+    private static class BlockBuilder {
+        private final ByteArrayOutputStream raw = new ByteArrayOutputStream(SegmentFormat.BLOCK_SIZE + 1024);
+        private final byte[] compressed = new byte[64 * 1024];
+        private long[] termFilter = new long[SegmentFormat.FILTER_LONGS];
+
+        private void add(byte[] line) {
+            raw.write(line, 0, line.length);
+            raw.write('\n');
+            SegmentFormat.addTrigrams(termFilter, line, 0, line.length);
+        }
+
+        private int size() {
+            return raw.size();
+        }
+
+        private SegmentFormat.Block flush(FileChannel output, Deflater deflater) throws IOException {
+            long offset = output.position();
+            byte[] data = raw.toByteArray();
+            deflater.reset();
+            deflater.setInput(data);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                int count = deflater.deflate(compressed);
+                writeFully(output, ByteBuffer.wrap(compressed, 0, count));
+                compressedLength += count;
+            }
+            SegmentFormat.Block block = new SegmentFormat.Block(offset, compressedLength, data.length, termFilter);
+
+            raw.reset();
+            termFilter = new long[SegmentFormat.FILTER_LONGS];
+            return block;
+        }
+    }
+}
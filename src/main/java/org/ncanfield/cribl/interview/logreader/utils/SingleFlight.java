@@ -0,0 +1,114 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key so only one of them does the work and the rest share its result.
+ * <p/>
+ * Nothing is cached - once the in-flight call finishes, the next call for that key will run the supplier again.
+ * <p/>
+ * The shared work gets its own {@link CancellationToken}, which is only cancelled once every caller waiting on it has
+ * been cancelled, so one caller going away doesn't cut the work short for the others.
+ *
+ * @param <K> the key type, which should have a value based equals/hashCode
+ * @param <V> the result type
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs supplier for key, or waits for and returns the result of a call already in flight for that key
+     *
+     * @param key the key identifying identical calls
+     * @param supplier the work to do if no call is in flight for this key
+     * @return the result of the supplier, either from this call or the one it joined
+     */
+    public V execute(K key, Supplier<V> supplier) {
+        return execute(key, new CancellationToken(), token -> supplier.get());
+    }
+
+    /**
+     * Runs work for key, or waits for and returns the result of a call already in flight for that key
+     * <p/>
+     * If caller is cancelled while waiting on another call, this stops waiting and throws a
+     * {@link java.util.concurrent.CancellationException}.
+     *
+     * @param key the key identifying identical calls
+     * @param caller the cancellation token of this caller
+     * @param work the work to do if no call is in flight for this key, given the token shared by everyone waiting on it
+     * @return the result of the work, either from this call or the one it joined
+     */
+    public V execute(K key, CancellationToken caller, Function<CancellationToken, V> work) {
+        Flight<V> created = new Flight<>();
+        // A flight everyone has given up on is cancelled, so it's replaced rather than joined
+        Flight<V> flight = inFlight.compute(key, (k, current) -> current != null && current.join() ? current : created);
+        caller.onCancel(() -> flight.leave(caller.getReason()));
+
+        if (flight != created) {
+            CompletableFuture<V> waiting = flight.result.copy();
+            caller.onCancel(() -> waiting.cancel(false));
+            try {
+                return waiting.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            V result = work.apply(flight.token);
+            flight.result.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * @return the number of calls currently in flight
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * A call in progress and the number of callers still waiting on it
+     */
+    private static final class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private final CancellationToken token = new CancellationToken();
+        private int callers = 1;
+        private boolean abandoned;
+
+        /**
+         * @return true if the caller joined, false if the flight has already been cancelled
+         */
+        private synchronized boolean join() {
+            if (abandoned) {
+                return false;
+            }
+            callers++;
+            return true;
+        }
+
+        private void leave(String reason) {
+            synchronized (this) {
+                if (--callers > 0) {
+                    return;
+                }
+                abandoned = true;
+            }
+            token.cancel(reason);
+        }
+    }
+}
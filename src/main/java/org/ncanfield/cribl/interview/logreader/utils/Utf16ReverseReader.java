@@ -0,0 +1,262 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.profiling.BufferFillEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the lines of a UTF-16 file newest first, handing each one out as UTF-8 so it can be searched and filtered the
+ * same as any other file.
+ * <p/>
+ * The file is read back a block at a time and stepped through two bytes at a time, so a newline is only ever matched
+ * on a whole character, and \r\n, \n and \r all end a line the same as in {@link ReverseFileReader}. A line's
+ * characters are gathered from its end back to its start, then encoded. Lines of only ASCII are copied across a
+ * character at a time, and the rest go through a UTF-8 encoder that replaces unpaired surrogates.
+ * <p/>
+ * Lines longer than the max line length are truncated the same way {@link ReverseFileReader} does, on their UTF-8
+ * bytes. Only the start of a long line is kept as the reader goes back through it, so memory stays bounded however long
+ * the line is.
+ */
+public class Utf16ReverseReader implements ReverseLineReader {
+    private final FileHandleCache.Handle handle;
+    private final boolean bigEndian;
+    private final int bufferSize;
+    private final int maxLineLength;
+    private final long rangeStart;
+    private final long rangeEnd;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // The block of the file being stepped through, which starts at blockStart
+    private final byte[] block;
+    private long blockStart;
+    // The offset everything after has been read, just before the newline of the last line found
+    private long position;
+    private boolean done;
+
+    // The characters of the line being gathered, filled from the end of the array back
+    private char[] chars = new char[256];
+    private int charsStart;
+    private byte[] encoded = new byte[256];
+    // Either encoded or the truncated form of the line
+    private byte[] lineBuffer = encoded;
+    private int lineLength;
+
+    /**
+     * Creates a reader on the bytes rangeStart to rangeEnd of an open UTF-16 file. The range is read as if it was the
+     * whole file, so it should start after any byte order mark and at the start of a line, and end at the end of one.
+     * The handle is closed with the reader, including if this throws.
+     *
+     * @param charset {@link StandardCharsets#UTF_16LE} or {@link StandardCharsets#UTF_16BE}
+     * @param handle the {@link FileHandleCache.Handle} on the file to read
+     * @param rangeStart the offset in the file to read back to
+     * @param rangeEnd the offset in the file to read back from, or less than 0 for the current end of the file
+     * @param bufferSize the bytes to read from the file at a time
+     * @param maxLineLength the max bytes of a line to keep as UTF-8, or 0 or less to keep every line whole
+     * @throws IOException if the size of the file cannot be read
+     * @throws LogReaderException if charset isn't UTF-16 with a byte order
+     */
+    public Utf16ReverseReader(Charset charset, FileHandleCache.Handle handle, long rangeStart, long rangeEnd, int bufferSize,
+                              int maxLineLength) throws IOException, LogReaderException {
+        if (!StandardCharsets.UTF_16LE.equals(charset) && !StandardCharsets.UTF_16BE.equals(charset)) {
+            handle.close();
+            throw new LogReaderException("Only UTF-16LE and UTF-16BE can be read as UTF-16");
+        }
+        this.handle = handle;
+        this.bigEndian = StandardCharsets.UTF_16BE.equals(charset);
+        this.bufferSize = Math.max(bufferSize & ~1, 2);
+        this.maxLineLength = Math.max(maxLineLength, 0);
+        this.rangeStart = Math.max(rangeStart, 0);
+        try {
+            long end = rangeEnd < 0 ? handle.size() : rangeEnd;
+            // Leave off half a character at the end, it's still being written
+            this.rangeEnd = Math.max(end, this.rangeStart) - ((Math.max(end, this.rangeStart) - this.rangeStart) & 1);
+        } catch (IOException e) {
+            handle.close();
+            throw e;
+        }
+        block = new byte[this.bufferSize];
+        blockStart = this.rangeEnd;
+        position = this.rangeEnd;
+        done = position == this.rangeStart;
+    }
+
+    @Override
+    public boolean hasMoreData() {
+        return !done;
+    }
+
+    @Override
+    public boolean nextLine() throws IOException, LogReaderException {
+        if (done) {
+            return false;
+        }
+        long lineEnd = position;
+        charsStart = chars.length;
+        boolean cut = false;
+        long offset = position;
+        while (offset > rangeStart) {
+            char c = charAt(offset - 2);
+            if (c == '\n' || c == '\r') {
+                long newline = offset - 2;
+                if (c == '\n' && newline > rangeStart && charAt(newline - 2) == '\r') {
+                    newline -= 2;
+                }
+                position = newline;
+                done = position == rangeStart;
+                encodeLine(lineEnd - offset, cut);
+                return true;
+            }
+            cut |= prepend(c);
+            offset -= 2;
+        }
+        position = rangeStart;
+        done = true;
+        encodeLine(lineEnd - offset, cut);
+        return true;
+    }
+
+    @Override
+    public byte[] getLineBuffer() {
+        return lineBuffer;
+    }
+
+    @Override
+    public int getLineStart() {
+        return 0;
+    }
+
+    @Override
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    @Override
+    public Charset getCharset() {
+        return StandardCharsets.UTF_8;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return rangeEnd - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        handle.close();
+    }
+
+    /**
+     * Adds a character to the start of the line being gathered. Past the max line length only the start of the line
+     * matters, so once the array is full its first characters are kept and the rest let go.
+     *
+     * @return true if characters from the end of the line were let go
+     */
+    private boolean prepend(char c) {
+        if (charsStart == 0) {
+            // A character never takes fewer UTF-8 bytes than UTF-16 chars, so this many hold at least the max bytes
+            int keep = maxLineLength + 1;
+            if (maxLineLength > 0 && chars.length > keep * 2) {
+                System.arraycopy(chars, 0, chars, chars.length - keep, keep);
+                charsStart = chars.length - keep;
+                chars[--charsStart] = c;
+                return true;
+            }
+            char[] grown = new char[chars.length * 2];
+            System.arraycopy(chars, 0, grown, chars.length, chars.length);
+            charsStart = chars.length;
+            chars = grown;
+        }
+        chars[--charsStart] = c;
+        return false;
+    }
+
+    /**
+     * Encodes the gathered characters into the line buffer as UTF-8, truncating them if the line is too long
+     *
+     * @param fileBytes the bytes the line takes up in the file, not including its newline
+     * @param cut whether the end of the line was already let go
+     */
+    private void encodeLine(long fileBytes, boolean cut) {
+        int length = chars.length - charsStart;
+        if (encoded.length < length * 3) {
+            encoded = new byte[length * 3];
+        }
+        lineBuffer = encoded;
+        lineLength = encodeAscii(length);
+        if (lineLength < 0) {
+            ByteBuffer out = ByteBuffer.wrap(encoded);
+            encoder.reset();
+            encoder.encode(CharBuffer.wrap(chars, charsStart, length), out, true);
+            encoder.flush(out);
+            lineLength = out.position();
+        }
+        if (cut || (maxLineLength > 0 && lineLength > maxLineLength)) {
+            lineBuffer = ReverseFileReader.truncate(encoded, 0, maxLineLength, fileBytes, StandardCharsets.UTF_8);
+            lineLength = lineBuffer.length;
+        }
+    }
+
+    /**
+     * Copies the gathered characters into the line buffer if they're all ASCII
+     *
+     * @return the number of bytes copied, or -1 if there was a character past ASCII
+     */
+    private int encodeAscii(int length) {
+        for (int i = 0; i < length; i++) {
+            char c = chars[charsStart + i];
+            if (c >= 0x80) {
+                return -1;
+            }
+            encoded[i] = (byte) c;
+        }
+        return length;
+    }
+
+    /**
+     * Gets the character at offset, reading the block before the current one if it's not in it. Offsets only ever go
+     * back through the file, so each block is read once.
+     */
+    private char charAt(long offset) throws IOException, LogReaderException {
+        if (offset < blockStart) {
+            readBlock();
+        }
+        int i = (int) (offset - blockStart);
+        int high = bigEndian ? block[i] : block[i + 1];
+        int low = bigEndian ? block[i + 1] : block[i];
+        return (char) (((high & 0xFF) << 8) | (low & 0xFF));
+    }
+
+    /**
+     * Reads the block of the file just before the current one
+     */
+    private void readBlock() throws IOException, LogReaderException {
+        long start = Math.max(rangeStart, blockStart - bufferSize);
+        int size = (int) (blockStart - start);
+        BufferFillEvent event = new BufferFillEvent();
+        event.begin();
+        ByteBuffer data = ByteBuffer.wrap(block, 0, size);
+        while (data.hasRemaining()) {
+            if (handle.read(data, start + data.position()) < 0) {
+                throw new LogReaderException("Could not read requested bytes");
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = String.valueOf(handle.path());
+            event.bytes = size;
+            event.spilloverBytes = 0;
+            event.readAhead = false;
+            event.commit();
+        }
+        blockStart = start;
+    }
+}
@@ -0,0 +1,201 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Helpers for checking and searching lines while they're still raw bytes, so lines that get skipped never have to be
+ * decoded into Strings
+ */
+public class Utf8Bytes {
+    // Reads eight bytes at once, so ASCII can be checked a word at a time
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    // The top bit of every byte, which is only set outside ASCII
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private Utf8Bytes() {
+    }
+
+    /**
+     * Finds needle in bytes start to end. For UTF-8 this gives the same result as {@link String#contains} would on the
+     * decoded line, since no character's encoding can appear in the middle of another's.
+     *
+     * @param bytes the bytes to search
+     * @param start the index to start searching from
+     * @param end the index to stop searching at, exclusive
+     * @param needle the bytes to look for
+     * @return the index needle was found at, or -1 if it wasn't
+     */
+    public static int indexOf(byte[] bytes, int start, int end, byte[] needle) {
+        if (needle.length == 0) {
+            return start;
+        }
+        byte first = needle[0];
+        int lastStart = end - needle.length;
+        for (int i = start; i <= lastStart; i++) {
+            if (bytes[i] != first) {
+                continue;
+            }
+            int matched = 1;
+            while (matched < needle.length && bytes[i + matched] == needle[matched]) {
+                matched++;
+            }
+            if (matched == needle.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the bytes decode to a blank string, matching {@link String#isBlank()}. Only lines with non-ASCII bytes
+     * need to be decoded to check.
+     *
+     * @param bytes the bytes to check
+     * @param start the index to start at
+     * @param end the index to stop at, exclusive
+     * @param charset the charset of the bytes
+     * @return true if the line is empty or only whitespace
+     */
+    public static boolean isBlank(byte[] bytes, int start, int end, Charset charset) {
+        for (int i = start; i < end; i++) {
+            byte b = bytes[i];
+            if (b < 0) {
+                // Non-ASCII, let String decide if it's whitespace
+                return new String(bytes, start, end - start, charset).isBlank();
+            }
+            if (!Character.isWhitespace(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the bytes are all ASCII, eight at a time, which is valid in UTF-8, ISO-8859-1 and most other single
+     * byte encodings alike
+     *
+     * @param bytes the bytes to check
+     * @param start the index to start at
+     * @param end the index to stop at, exclusive
+     * @return true if none of the bytes have their top bit set
+     */
+    public static boolean isAscii(byte[] bytes, int start, int end) {
+        return asciiPrefix(bytes, start, end) == end;
+    }
+
+    /**
+     * @return the index of the first word holding a non-ASCII byte, or of the first byte after the last whole word, or
+     * end if every byte is ASCII
+     */
+    private static int asciiPrefix(byte[] bytes, int start, int end) {
+        int i = start;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            if (((long) LONGS.get(bytes, i) & HIGH_BITS) != 0) {
+                return i;
+            }
+        }
+        for (; i < end; i++) {
+            if (bytes[i] < 0) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Checks if the bytes are well-formed UTF-8. Runs of ASCII are skipped a word at a time, so plain ASCII lines only
+     * cost a pass of {@link #isAscii}.
+     *
+     * @param bytes the bytes to check
+     * @param start the index to start at
+     * @param end the index to stop at, exclusive
+     * @return true if the bytes are valid UTF-8
+     */
+    public static boolean isValid(byte[] bytes, int start, int end) {
+        int i = asciiPrefix(bytes, start, end);
+        while (i < end) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            int continuation;
+            int minimum;
+            if (b >= 0xC2 && b <= 0xDF) {
+                continuation = 1;
+                minimum = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                continuation = 2;
+                minimum = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                continuation = 3;
+                minimum = 0x10000;
+            } else {
+                return false;
+            }
+            if (i + continuation >= end) {
+                return false;
+            }
+            int codePoint = b & (0x3F >> continuation);
+            for (int j = 1; j <= continuation; j++) {
+                int next = bytes[i + j] & 0xFF;
+                if ((next & 0xC0) != 0x80) {
+                    return false;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+            // Reject overlong encodings, surrogates and anything past the max code point
+            if (codePoint < minimum || (codePoint >= 0xD800 && codePoint <= 0xDFFF) || codePoint > 0x10FFFF) {
+                return false;
+            }
+            i += continuation + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a plain decimal number, like 500, -3 or 0.25, straight from the bytes without decoding them
+     *
+     * @param bytes the bytes to parse
+     * @param start the index to start at
+     * @param end the index to stop at, exclusive
+     * @return the number, or NaN if the bytes aren't a plain decimal number
+     */
+    public static double parseNumber(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i >= end) {
+            return Double.NaN;
+        }
+        double value = 0;
+        double scale = 0;
+        boolean digits = false;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                digits = true;
+                if (scale == 0) {
+                    value = value * 10 + (b - '0');
+                } else {
+                    value += (b - '0') * scale;
+                    scale /= 10;
+                }
+            } else if (b == '.' && scale == 0) {
+                scale = 0.1;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (!digits) {
+            return Double.NaN;
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,24 @@
+package org.ncanfield.cribl.interview.logreader;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CriblInterviewLogsModuleTest {
+    @Test
+    public void onlyCompactsSegmentsWithASegmentDir() {
+        assertFalse(segmentsEnabled(new MockEnvironment()));
+        assertFalse(segmentsEnabled(new MockEnvironment().withProperty("log-reader.segmentDir", "")));
+        assertFalse(segmentsEnabled(new MockEnvironment().withProperty("log-reader.segmentDir", "  ")));
+        assertTrue(segmentsEnabled(new MockEnvironment().withProperty("log-reader.segmentDir", "/var/segments")));
+    }
+
+    private static boolean segmentsEnabled(MockEnvironment environment) {
+        ConditionContext context = Mockito.mock(ConditionContext.class);
+        Mockito.when(context.getEnvironment()).thenReturn(environment);
+        return new CriblInterviewLogsModule.SegmentsEnabled().matches(context, null);
+    }
+}
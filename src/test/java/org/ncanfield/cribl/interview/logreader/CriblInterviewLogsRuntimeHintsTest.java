@@ -0,0 +1,28 @@
+package org.ncanfield.cribl.interview.logreader;
+
+import org.junit.jupiter.api.Test;
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogLines;
+import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogSample;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CriblInterviewLogsRuntimeHintsTest {
+
+    @Test
+    public void registersModelsForBinding() throws NoSuchMethodException {
+        RuntimeHints hints = new RuntimeHints();
+        new CriblInterviewLogsRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertTrue(RuntimeHintsPredicates.reflection().onType(LogReadResponse.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+        // Records held by the registered models are registered too
+        assertTrue(RuntimeHintsPredicates.reflection().onType(LogFile.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(LogSample.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onConstructor(LogLines.Serializer.class.getConstructor()).test(hints));
+    }
+}
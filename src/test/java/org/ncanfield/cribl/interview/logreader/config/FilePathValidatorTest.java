@@ -1,10 +1,14 @@
 package org.ncanfield.cribl.interview.logreader.config;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.ncanfield.cribl.interview.logreader.endpoints.LogReader;
 import org.springframework.validation.Errors;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -21,7 +25,7 @@ public class FilePathValidatorTest {
 
     @Test
     public void validateRejectsMissingDir() {
-        LogReaderConfig config = new LogReaderConfig(null, "", 100, List.of("self"));
+        LogReaderConfig config = config(null);
         FilePathValidator validator = new FilePathValidator();
         Errors errors = validator.validateObject(config);
         assertEquals(1, errors.getAllErrors().size());
@@ -32,7 +36,7 @@ public class FilePathValidatorTest {
 
     @Test
     public void validateRejectsRelativeDir() {
-        LogReaderConfig config = new LogReaderConfig("./test", "", 100, List.of("self"));
+        LogReaderConfig config = config("./test");
         FilePathValidator validator = new FilePathValidator();
         Errors errors = validator.validateObject(config);
         assertEquals(1, errors.getAllErrors().size());
@@ -43,7 +47,7 @@ public class FilePathValidatorTest {
 
     @Test
     public void validateRejectsNonExistantDir() {
-        LogReaderConfig config = new LogReaderConfig(TEST_RESOURCE_PATH + "/nowaythisreallyexists", "", 100, List.of("self"));
+        LogReaderConfig config = config(TEST_RESOURCE_PATH + "/nowaythisreallyexists");
         FilePathValidator validator = new FilePathValidator();
         Errors errors = validator.validateObject(config);
         assertEquals(1, errors.getAllErrors().size());
@@ -53,11 +57,86 @@ public class FilePathValidatorTest {
 
     @Test
     public void validateRejectsNonDir() {
-        LogReaderConfig config = new LogReaderConfig(TEST_RESOURCE_PATH + "/emptyFile.txt", "", 100, List.of("self"));
+        LogReaderConfig config = config(TEST_RESOURCE_PATH + "/emptyFile.txt");
         FilePathValidator validator = new FilePathValidator();
         Errors errors = validator.validateObject(config);
         assertEquals(1, errors.getAllErrors().size());
         //The actual path will vary depending on system, just check the right error message appears
         assertTrue(errors.getAllErrors().get(0).toString().contains("[The logDir must be a directory path]"));
     }
+
+    @Test
+    public void validateRejectsRotationPatternWithoutBase() {
+        LogReaderConfig config = new LogReaderConfig(TEST_RESOURCE_PATH, "", 100, List.of("self"), null, null, null, "^(.+)\\.\\d+$", null, null, null, null, null, null, null, null);
+        FilePathValidator validator = new FilePathValidator();
+        Errors errors = validator.validateObject(config);
+        assertEquals(1, errors.getAllErrors().size());
+        assertTrue(errors.getAllErrors().get(0).toString().contains("[The rotationPattern must have a named group called base]"));
+    }
+
+    @Test
+    public void validateRejectsInvalidRotationPattern() {
+        LogReaderConfig config = new LogReaderConfig(TEST_RESOURCE_PATH, "", 100, List.of("self"), null, null, null, "(?<base>.+", null, null, null, null, null, null, null, null);
+        FilePathValidator validator = new FilePathValidator();
+        Errors errors = validator.validateObject(config);
+        assertEquals(1, errors.getAllErrors().size());
+        assertTrue(errors.getAllErrors().get(0).toString().contains("[The rotationPattern must be a valid regular expression]"));
+    }
+
+    @Test
+    public void validateRejectsSegmentDirInsideLogDir() {
+        LogReaderConfig config = new LogReaderConfig(TEST_RESOURCE_PATH, "", 100, List.of("self"), null, null, null, null, TEST_RESOURCE_PATH + "/segments", null, null, null, null, null, null, null);
+        FilePathValidator validator = new FilePathValidator();
+        Errors errors = validator.validateObject(config);
+        assertEquals(1, errors.getAllErrors().size());
+        assertTrue(errors.getAllErrors().get(0).toString().contains("[The segmentDir must not be inside the logDir]"));
+
+        config = new LogReaderConfig(TEST_RESOURCE_PATH, "", 100, List.of("self"), null, null, null, null, "segments", null, null, null, null, null, null, null);
+        errors = validator.validateObject(config);
+        assertEquals(1, errors.getAllErrors().size());
+        assertTrue(errors.getAllErrors().get(0).toString().contains("[The segmentDir must be an absolute path]"));
+    }
+
+    @Test
+    public void validateRejectsInvalidStandingQueries() {
+        FilePathValidator validator = new FilePathValidator();
+        LogReaderConfig config = new LogReaderConfig(TEST_RESOURCE_PATH, "", 100, List.of("self"), null, null, null, null, null, null, null, null, null, List.of("errors=ERROR", "oom=OutOfMemoryError"), null, null);
+        assertEquals(0, validator.validateObject(config).getAllErrors().size());
+
+        for (String definition : List.of("ERROR", "bad name=ERROR", "errors=")) {
+            config = new LogReaderConfig(TEST_RESOURCE_PATH, "", 100, List.of("self"), null, null, null, null, null, null, null, null, null, List.of(definition), null, null);
+            Errors errors = validator.validateObject(config);
+            assertEquals(1, errors.getAllErrors().size());
+            assertTrue(errors.getAllErrors().get(0).toString().contains("[Each of the standingQueries must be a name and a search term, like errors=ERROR]"));
+        }
+    }
+
+    @Test
+    public void validateRejectsInvalidLogRoots(@TempDir Path tempDir) throws IOException {
+        FilePathValidator validator = new FilePathValidator();
+        Path archive = Files.createDirectory(tempDir.resolve("archive"));
+        Path disk3 = Files.createDirectory(tempDir.resolve("disk3"));
+        LogReaderConfig config = new LogReaderConfig(TEST_RESOURCE_PATH, "", 100, List.of("self"), null, null, null, null, null, null, null, null, null, null, List.of("archive=" + archive, "disk3=" + disk3), 2);
+        assertEquals(0, validator.validateObject(config).getAllErrors().size());
+
+        List<List<String>> invalid = List.of(
+                List.of(archive.toString()),
+                List.of("bad name=" + archive),
+                List.of("archive=" + archive, "archive=" + disk3),
+                List.of("archive=relative/logs"),
+                List.of("archive=" + tempDir.resolve("nowaythisreallyexists")),
+                List.of("archive=" + TEST_RESOURCE_PATH + "/emptyFile.txt"),
+                List.of("archive=" + TEST_RESOURCE_PATH + "/secondLevelDir"),
+                List.of("archive=" + tempDir, "disk3=" + disk3));
+        for (List<String> roots : invalid) {
+            config = new LogReaderConfig(TEST_RESOURCE_PATH, "", 100, List.of("self"), null, null, null, null, null, null, null, null, null, null, roots, null);
+            Errors errors = validator.validateObject(config);
+            assertEquals(1, errors.getAllErrors().size(), roots.toString());
+            assertTrue(errors.getAllErrors().get(0).toString().contains("on field 'logRoots'"));
+        }
+    }
+
+    private static LogReaderConfig config(String logDir) {
+        return new LogReaderConfig(logDir, "", 100, List.of("self"), null, null, null, null, null, null, null, null, null, null, null, null);
+    }
 }
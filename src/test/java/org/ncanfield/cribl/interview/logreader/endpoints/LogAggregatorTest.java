@@ -5,14 +5,28 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
 import org.ncanfield.cribl.interview.logreader.config.LogReaderConfig;
+import org.ncanfield.cribl.interview.logreader.models.LogAggregateResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchAggregateResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchRequest;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchResponse;
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogPattern;
+import org.ncanfield.cribl.interview.logreader.models.LogQuery;
+import org.ncanfield.cribl.interview.logreader.models.LogReadParams;
 import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+import org.ncanfield.cribl.interview.logreader.utils.CancellationToken;
 import org.ncanfield.cribl.interview.logreader.utils.HttpUtils;
 
 import java.io.File;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class LogAggregatorTest {
+    private static final LogReadParams ALL_FILES = LogReadParams.of(null, null, null);
+
     @Mock
     private LogReaderConfig config;
 
@@ -27,10 +41,9 @@ public class LogAggregatorTest {
     @BeforeEach
     public void setup() throws Exception {
         AutoCloseable autoCloseable = MockitoAnnotations.openMocks(this);
-        mockedHttpUtils = Mockito.mockStatic(HttpUtils.class);
+        // Only the calls to other servers are stubbed, everything else runs for real
+        mockedHttpUtils = Mockito.mockStatic(HttpUtils.class, Mockito.CALLS_REAL_METHODS);
         mockedHttpUtils.when(() -> HttpUtils.buildFuture(ArgumentMatchers.anyString())).thenReturn(getFuture());
-        mockedHttpUtils.when(() -> HttpUtils.makeUrl(ArgumentMatchers.anyString(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
-                .thenCallRealMethod();
 
         String testResourcesPath = new File("src/test/resources").getAbsolutePath();
         Mockito.when(config.logDir()).thenReturn(testResourcesPath);
@@ -38,7 +51,7 @@ public class LogAggregatorTest {
         Mockito.when(config.defaultLineLimit()).thenReturn(1000);
         Mockito.when(config.logServers()).thenReturn(List.of("self", "http://localhost:8080", "https://github.com"));
 
-        Mockito.when(logReader.readLogs(null, null, null))
+        Mockito.when(logReader.readLogs(ArgumentMatchers.eq(ALL_FILES), ArgumentMatchers.any()))
                         .thenReturn(new LogReadResponse("Test", List.of(), List.of()));
         autoCloseable.close();
     }
@@ -53,15 +66,96 @@ public class LogAggregatorTest {
 
     @Test
     public void callsAllServers() {
-        logAggregator.aggregateLogs(null, null, null);
-        Mockito.verify(logReader, Mockito.times(1)).readLogs(null, null, null);
+        logAggregator.aggregateLogs(ALL_FILES, new CancellationToken());
+        Mockito.verify(logReader, Mockito.times(1)).readLogs(ArgumentMatchers.eq(ALL_FILES), ArgumentMatchers.any());
         //Calls both servers and nothing else
         mockedHttpUtils.verify(() -> HttpUtils.buildFuture("http://localhost:8080/logs?"), Mockito.times(1));
         mockedHttpUtils.verify(() -> HttpUtils.buildFuture("https://github.com/logs?"), Mockito.times(1));
         mockedHttpUtils.verify(() -> HttpUtils.buildFuture(ArgumentMatchers.any()), Mockito.times(2));
     }
 
+    @Test
+    public void mergesPatternsFromAllServers() {
+        LogFile selfFile = new LogFile("app.log", "app.log", null,
+                List.of(new LogPattern("user <*> logged in", 3, "user 1 logged in")), null, null, null, null);
+        LogFile peerFile = new LogFile("app.log", "app.log", null,
+                List.of(new LogPattern("user 7 logged in", 2, "user 7 logged in"),
+                        new LogPattern("disk full", 1, "disk full")), null, null, null, null);
+        Mockito.when(logReader.readLogs(ArgumentMatchers.eq(ALL_FILES.withMode("patterns")), ArgumentMatchers.any()))
+                .thenReturn(new LogReadResponse("Test", List.of(selfFile), List.of()));
+        mockedHttpUtils.when(() -> HttpUtils.buildFuture(ArgumentMatchers.anyString()))
+                .thenReturn(CompletableFuture.completedFuture(new LogReadResponse("Peer", List.of(peerFile), List.of())));
+
+        LogAggregateResponse response = logAggregator.aggregateLogs(ALL_FILES.withMode("patterns"), new CancellationToken());
+
+        mockedHttpUtils.verify(() -> HttpUtils.buildFuture("http://localhost:8080/logs?mode=patterns&"), Mockito.times(1));
+        assertEquals(3, response.serverLogs().size());
+        assertEquals(2, response.patterns().size());
+        // Three from self and two from each peer
+        assertEquals("user <*> logged in", response.patterns().get(0).template());
+        assertEquals(7, response.patterns().get(0).count());
+        assertEquals("disk full", response.patterns().get(1).template());
+        assertEquals(2, response.patterns().get(1).count());
+    }
+
+    @Test
+    public void rejectsUnknownMode() {
+        LogAggregateResponse response = logAggregator.aggregateLogs(ALL_FILES.withMode("bogus"), new CancellationToken());
+        assertNull(response.serverLogs());
+        assertEquals(List.of("Requested mode is not supported"), response.errors());
+        mockedHttpUtils.verify(() -> HttpUtils.buildFuture(ArgumentMatchers.any()), Mockito.never());
+    }
+
+    @Test
+    public void sendsBatchToAllServers() {
+        LogBatchRequest batch = new LogBatchRequest("app.log", false, List.of(new LogQuery("ERROR", 5, null)));
+        LogBatchResponse self = new LogBatchResponse("Test", List.of(), List.of());
+        LogBatchResponse peer = new LogBatchResponse("Peer", List.of(), List.of());
+        Mockito.when(logReader.readBatch(ArgumentMatchers.eq(batch), ArgumentMatchers.any())).thenReturn(self);
+        mockedHttpUtils.when(() -> HttpUtils.buildBatchFuture(ArgumentMatchers.anyString(), ArgumentMatchers.eq(batch)))
+                .thenReturn(CompletableFuture.completedFuture(peer));
+
+        LogBatchAggregateResponse response = logAggregator.aggregateBatch(batch, new CancellationToken());
+
+        assertEquals(List.of(self, peer, peer), response.serverLogs());
+        assertTrue(response.errors().isEmpty());
+        mockedHttpUtils.verify(() -> HttpUtils.buildBatchFuture("http://localhost:8080/logs/batch", batch), Mockito.times(1));
+        mockedHttpUtils.verify(() -> HttpUtils.buildBatchFuture("https://github.com/logs/batch", batch), Mockito.times(1));
+    }
+
+    @Test
+    public void rejectsInvalidBatch() {
+        LogBatchAggregateResponse response = logAggregator.aggregateBatch(
+                new LogBatchRequest(null, false, List.of(new LogQuery(null, -1, null))), new CancellationToken());
+        assertNull(response.serverLogs());
+        assertEquals(List.of("Query 1: Requested log lines must be > 0"), response.errors());
+        mockedHttpUtils.verify(() -> HttpUtils.buildBatchFuture(ArgumentMatchers.any(), ArgumentMatchers.any()), Mockito.never());
+    }
+
     private static CompletableFuture<LogReadResponse> getFuture() {
         return CompletableFuture.supplyAsync(() -> new LogReadResponse("Test", List.of(), List.of()));
     }
+
+    @Test
+    public void rejectsInvalidFilter() {
+        LogAggregateResponse response = logAggregator.aggregateLogs(ALL_FILES.withFilter("status>=high"), new CancellationToken());
+        assertNull(response.serverLogs());
+        assertEquals(List.of("Requested filter is not valid: Only numbers can be compared with >="), response.errors());
+        mockedHttpUtils.verify(() -> HttpUtils.buildFuture(ArgumentMatchers.any()), Mockito.never());
+    }
+
+    @Test
+    public void cancelsServerCallsWhenCancelled() {
+        CompletableFuture<LogReadResponse> slowPeer = new CompletableFuture<>();
+        mockedHttpUtils.when(() -> HttpUtils.buildFuture(ArgumentMatchers.anyString())).thenReturn(slowPeer);
+        CancellationToken cancellation = new CancellationToken();
+        CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS).execute(() -> cancellation.cancel("Test"));
+
+        LogAggregateResponse response = logAggregator.aggregateLogs(ALL_FILES, cancellation);
+
+        assertTrue(slowPeer.isCancelled());
+        assertEquals(3, response.serverLogs().size());
+        assertEquals(List.of(LogAggregator.CANCELLED), response.serverLogs().get(1).errors());
+        assertEquals(List.of(LogAggregator.CANCELLED), response.serverLogs().get(2).errors());
+    }
 }
@@ -2,15 +2,33 @@ package org.ncanfield.cribl.interview.logreader.endpoints;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.ncanfield.cribl.interview.logreader.config.LogReaderConfig;
+import org.ncanfield.cribl.interview.logreader.handlers.ScanBudget;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchRequest;
+import org.ncanfield.cribl.interview.logreader.models.LogBatchResponse;
 import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogQuery;
+import org.ncanfield.cribl.interview.logreader.models.LogReadParams;
 import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+import org.ncanfield.cribl.interview.logreader.utils.CancellationToken;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -93,6 +111,121 @@ public class LogReaderTest {
         assertNull(response.logFiles());
     }
 
+    @Test
+    public void flagsPartialResultsWhenOverBudget() {
+        Mockito.when(config.maxResponseBytes()).thenReturn(4L);
+        LogReadResponse response = logReader.readLogs("numberFile.txt", null, null);
+
+        assertEquals(1, response.logFiles().size());
+        assertEquals(2, response.logFiles().get(0).logLines().size());
+        assertEquals(ScanBudget.FILE_BUDGET_EXHAUSTED, response.logFiles().get(0).error());
+        assertEquals(1, response.errors().size());
+        assertEquals(ScanBudget.REQUEST_BUDGET_EXHAUSTED, response.errors().get(0));
+    }
+
+    @Test
+    public void streamsRawFile() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        logReader.readRawLogs("numberFile.txt", null, null, new MockHttpServletRequest(), response, new CancellationToken());
+
+        assertEquals(200, response.getStatus());
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertEquals("10\n9\n8\n7\n6\n5\n4\n3\n2\n1", response.getContentAsString());
+    }
+
+    @Test
+    public void streamsRawRangesAndTails() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        logReader.readRawLogs("numberFile.txt", null, "bytes=0-3", new MockHttpServletRequest(), response, new CancellationToken());
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 0-3/20", response.getHeader("Content-Range"));
+        assertEquals("10\n9", response.getContentAsString());
+
+        response = new MockHttpServletResponse();
+        logReader.readRawLogs("numberFile.txt", 3, null, new MockHttpServletRequest(), response, new CancellationToken());
+        assertEquals(200, response.getStatus());
+        assertEquals("3\n2\n1", response.getContentAsString());
+
+        response = new MockHttpServletResponse();
+        logReader.readRawLogs("numberFile.txt", null, "bytes=50-", new MockHttpServletRequest(), response, new CancellationToken());
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */20", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    public void gzipsRawFile() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Accept-Encoding", "deflate, gzip");
+        logReader.readRawLogs("numberFile.txt", null, null, request, response, new CancellationToken());
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        try (GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals("10\n9\n8\n7\n6\n5\n4\n3\n2\n1", new String(gzipStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void sendsPlainRawFileUnlessGzipIsAccepted() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Accept-Encoding", "gzip;q=0");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        logReader.readRawLogs("numberFile.txt", null, null, request, response, new CancellationToken());
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("10\n9\n8\n7\n6\n5\n4\n3\n2\n1", response.getContentAsString());
+    }
+
+    @Test
+    public void stopsRawTailAtScanLimit(@TempDir Path tempDir) throws Exception {
+        // Two 64KB blocks of 1KB lines, and a scan limit that only covers the first
+        Files.writeString(tempDir.resolve("app.log"), ("x".repeat(1023) + "\n").repeat(128));
+        Mockito.when(config.logDir()).thenReturn(tempDir.toString());
+        Mockito.when(config.maxScanBytes()).thenReturn(64L * 1024);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        logReader.readRawLogs("app.log", 100, null, new MockHttpServletRequest(), response, new CancellationToken());
+
+        assertEquals(200, response.getStatus());
+        assertEquals(ScanBudget.REQUEST_BUDGET_EXHAUSTED, response.getHeader(LogReader.PARTIAL_HEADER));
+        assertEquals(64 * 1024, response.getContentAsByteArray().length);
+
+        response = new MockHttpServletResponse();
+        logReader.readRawLogs("app.log", 3, null, new MockHttpServletRequest(), response, new CancellationToken());
+        assertNull(response.getHeader(LogReader.PARTIAL_HEADER));
+        assertEquals(3 * 1024, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void stopsRawTailWhenRequestEnds() throws Exception {
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel("The client went away");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        logReader.readRawLogs("numberFile.txt", 3, null, new MockHttpServletRequest(), response, cancellation);
+
+        assertEquals(503, response.getStatus());
+        assertTrue(response.getContentAsString().contains(ScanBudget.REQUEST_CANCELLED));
+        assertFalse(response.getContentAsString().contains("3\n2\n1"));
+    }
+
+    @Test
+    public void validatesRawRequests() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        logReader.readRawLogs("../../main/java", null, null, new MockHttpServletRequest(), response, new CancellationToken());
+        assertEquals(400, response.getStatus());
+        assertTrue(response.getContentAsString().contains("Provided file path is invalid"));
+
+        response = new MockHttpServletResponse();
+        logReader.readRawLogs("secondLevelDir", null, null, new MockHttpServletRequest(), response, new CancellationToken());
+        assertEquals(400, response.getStatus());
+        assertTrue(response.getContentAsString().contains("Raw logs can only be read from a single file"));
+
+        response = new MockHttpServletResponse();
+        logReader.readRawLogs("goatPic.jpg", null, null, new MockHttpServletRequest(), response, new CancellationToken());
+        assertEquals(400, response.getStatus());
+        assertTrue(response.getContentAsString().contains("The specified file is not a text file"));
+    }
+
     @Test
     public void withAllParameters() {
         // Just to check it's passing everything down to the handler like we expect
@@ -104,4 +237,105 @@ public class LogReaderTest {
         assertEquals("longLineFile.txt", response.logFiles().get(0).fileName());
         assertTrue(response.errors().isEmpty());
     }
+
+    @Test
+    public void rejectsInvalidContext() {
+        LogReadResponse response = logReader.readLogs(LogReadParams.of("numberFile.txt", null, "1").withContext(-1, 1001), new CancellationToken());
+        assertNull(response.logFiles());
+        assertEquals(List.of(
+                "Requested before lines must be between 0 and 1000",
+                "Requested after lines must be between 0 and 1000"), response.errors());
+    }
+
+    @Test
+    public void samplesLines() {
+        LogReadResponse response = logReader.readLogs(LogReadParams.of("numberFile.txt", 3, null).withMode("sample"), new CancellationToken());
+        assertTrue(response.errors().isEmpty());
+        LogFile logFile = response.logFiles().get(0);
+        assertEquals(3, logFile.logLines().size());
+        assertEquals(10, logFile.sample().estimatedLines());
+        assertTrue(logFile.sample().exact());
+
+        LogReadResponse rotations = logReader.readLogs(
+                LogReadParams.of("numberFile.txt", 3, null).withMode("sample").withFollowRotations(true), new CancellationToken());
+        assertEquals(List.of("Sample mode can't be used with followRotations"), rotations.errors());
+    }
+
+    @Test
+    public void rejectsInvalidCursors() {
+        LogReadResponse invalid = logReader.readLogs(
+                LogReadParams.of("numberFile.txt", null, null).withCursors(List.of("not a cursor")), new CancellationToken());
+        assertNull(invalid.logFiles());
+        assertEquals(List.of("Requested cursor is not valid"), invalid.errors());
+
+        String cursor = logReader.readLogs("numberFile.txt", 3, null).logFiles().get(0).olderCursor();
+        LogReadResponse rotations = logReader.readLogs(
+                LogReadParams.of("numberFile.txt", null, null).withFollowRotations(true).withCursors(List.of(cursor)), new CancellationToken());
+        assertEquals(List.of("Cursors can't be used with followRotations"), rotations.errors());
+    }
+
+    @Test
+    public void rejectsInvalidFilter() {
+        LogReadResponse response = logReader.readLogs(LogReadParams.of("numberFile.txt", null, null).withFilter("level=ERROR AND"), new CancellationToken());
+        assertNull(response.logFiles());
+        assertEquals(1, response.errors().size());
+        assertEquals("Requested filter is not valid: Expected a condition before the end of the filter", response.errors().get(0));
+    }
+
+    @Test
+    public void answersEveryQueryOfBatch() {
+        LogQuery ones = new LogQuery("1", null, null);
+        LogQuery zero = new LogQuery("0", 1, null);
+        LogBatchResponse response = logReader.readBatch(
+                new LogBatchRequest("numberFile.txt", false, List.of(ones, zero)), new CancellationToken());
+
+        assertTrue(response.errors().isEmpty());
+        assertEquals(2, response.results().size());
+        assertEquals(ones, response.results().get(0).query());
+        assertEquals(List.of("1", "10"), response.results().get(0).logFiles().get(0).logLines());
+        assertEquals(zero, response.results().get(1).query());
+        assertEquals(List.of("10"), response.results().get(1).logFiles().get(0).logLines());
+    }
+
+    @Test
+    public void rejectsInvalidBatch() {
+        LogBatchResponse empty = logReader.readBatch(new LogBatchRequest("numberFile.txt", false, List.of()), new CancellationToken());
+        assertNull(empty.results());
+        assertEquals(List.of("A batch needs at least one query"), empty.errors());
+
+        LogBatchResponse invalid = logReader.readBatch(
+                new LogBatchRequest("numberFile.txt", false, List.of(new LogQuery("1", 0, null), new LogQuery(null, null, "level=ERROR AND"))),
+                new CancellationToken());
+        assertNull(invalid.results());
+        assertEquals(List.of(
+                "Query 1: Requested log lines must be > 0",
+                "Query 2: Requested filter is not valid: Expected a condition before the end of the filter"), invalid.errors());
+
+        LogBatchResponse outside = logReader.readBatch(
+                new LogBatchRequest("../secrets", false, List.of(new LogQuery("1", null, null))), new CancellationToken());
+        assertEquals(List.of("Provided file path is invalid"), outside.errors());
+    }
+
+    @Test
+    public void answersNotModifiedForMatchingETag() {
+        ResponseEntity<LogReadResponse> response = logReader.readLogsIfModified(LogReadParams.of("numberFile.txt", 5, null), null, new CancellationToken());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        String etag = response.getHeaders().getETag();
+        assertNotNull(etag);
+        assertEquals(5, response.getBody().logFiles().get(0).logLines().size());
+
+        ResponseEntity<LogReadResponse> notModified = logReader.readLogsIfModified(LogReadParams.of("numberFile.txt", 5, null), etag, new CancellationToken());
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        assertEquals(etag, notModified.getHeaders().getETag());
+        assertNull(notModified.getBody());
+
+        // A different query is a different response
+        ResponseEntity<LogReadResponse> changed = logReader.readLogsIfModified(LogReadParams.of("numberFile.txt", 4, null), etag, new CancellationToken());
+        assertEquals(HttpStatus.OK, changed.getStatusCode());
+        assertNotEquals(etag, changed.getHeaders().getETag());
+
+        // Error responses aren't tagged
+        ResponseEntity<LogReadResponse> invalid = logReader.readLogsIfModified(LogReadParams.of("../numberFile.txt", 5, null), null, new CancellationToken());
+        assertNull(invalid.getHeaders().getETag());
+    }
 }
@@ -0,0 +1,65 @@
+package org.ncanfield.cribl.interview.logreader.endpoints;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.ncanfield.cribl.interview.logreader.config.LogReaderConfig;
+import org.ncanfield.cribl.interview.logreader.models.LogAggregateResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReactiveLogAggregatorTest {
+    private final List<String> peerQueries = new CopyOnWriteArrayList<>();
+    private HttpServer peer;
+    private ReactiveLogAggregator logAggregator;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        // A stub peer that records the query exactly as it was sent
+        peer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        peer.createContext("/logs", exchange -> {
+            peerQueries.add(exchange.getRequestURI().getRawPath() + "?" + exchange.getRequestURI().getRawQuery());
+            byte[] body = exchange.getRequestURI().getPath().endsWith("/stream") ?
+                    new byte[0] :
+                    "{\"serverName\":\"Peer\",\"logFiles\":[],\"errors\":[]}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                    body.length == 0 ? "application/x-ndjson" : "application/json");
+            exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        peer.start();
+
+        LogReaderConfig config = Mockito.mock(LogReaderConfig.class);
+        Mockito.when(config.logServers()).thenReturn(List.of("http://localhost:" + peer.getAddress().getPort()));
+        logAggregator = new ReactiveLogAggregator(WebClient.builder());
+        ReflectionTestUtils.setField(logAggregator, "config", config);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        peer.stop(0);
+    }
+
+    @Test
+    public void sendsEncodedParametersToPeersOnce() {
+        LogAggregateResponse response = logAggregator.aggregateLogs(
+                "dir/app 1.log", null, "a&b", null, false, "level=ERROR", null, null, null).block();
+        assertEquals("Peer", response.serverLogs().get(0).serverName());
+
+        logAggregator.streamLogs("dir/app 1.log", null, "a&b", false, "level=ERROR", null, null).collectList().block();
+
+        assertEquals(List.of(
+                "/logs?fileName=dir%2Fapp+1.log&filter=level%3DERROR&searchTerm=a%26b",
+                "/logs/stream?fileName=dir%2Fapp+1.log&filter=level%3DERROR&searchTerm=a%26b"), peerQueries);
+    }
+}
@@ -0,0 +1,72 @@
+package org.ncanfield.cribl.interview.logreader.endpoints;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.ncanfield.cribl.interview.logreader.config.LogReaderConfig;
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.handlers.StandingQueries;
+import org.ncanfield.cribl.interview.logreader.models.LogQuery;
+import org.ncanfield.cribl.interview.logreader.models.StandingQueryResponse;
+import org.ncanfield.cribl.interview.logreader.models.StandingQueryResult;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class StandingQueryReaderTest {
+    @Mock
+    private LogReaderConfig config;
+
+    @Mock
+    private StandingQueries standingQueries;
+
+    @InjectMocks
+    private StandingQueryReader standingQueryReader;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        AutoCloseable autoCloseable = MockitoAnnotations.openMocks(this);
+        Mockito.when(config.friendlyName()).thenReturn("TestServer");
+        autoCloseable.close();
+    }
+
+    @Test
+    public void registersValidQueries() throws Exception {
+        LogQuery query = new LogQuery("ERROR", 5, "level=ERROR");
+        StandingQueryResult result = new StandingQueryResult("errors", query, 0, "now", List.of());
+        Mockito.when(standingQueries.register(eq("errors"), eq(query), any())).thenReturn(result);
+
+        StandingQueryResponse response = standingQueryReader.registerQuery("errors", query);
+        assertTrue(response.errors().isEmpty());
+        assertEquals(List.of(result), response.queries());
+    }
+
+    @Test
+    public void rejectsInvalidQueries() throws Exception {
+        StandingQueryResponse response = standingQueryReader.registerQuery("bad name", new LogQuery("ERROR", 0, "level="));
+        assertNull(response.queries());
+        assertEquals(3, response.errors().size());
+        assertEquals("Requested log lines must be between 1 and 10000", response.errors().get(1));
+        assertTrue(response.errors().get(2).startsWith("Requested filter is not valid"));
+
+        assertEquals(List.of("Query is missing"), standingQueryReader.registerQuery("errors", null).errors());
+
+        Mockito.when(standingQueries.register(eq("full"), any(), any()))
+                .thenThrow(new LogReaderException("At most 64 standing queries can be registered"));
+        assertEquals(List.of("At most 64 standing queries can be registered"),
+                standingQueryReader.registerQuery("full", new LogQuery("x", null, null)).errors());
+        Mockito.verify(standingQueries, Mockito.never()).register(eq("bad name"), any(), any());
+    }
+
+    @Test
+    public void reportsUnknownQueries() {
+        assertEquals(List.of("There is no standing query named missing"), standingQueryReader.readQuery("missing").errors());
+        assertEquals(List.of("There is no standing query named missing"), standingQueryReader.removeQuery("missing").errors());
+    }
+}
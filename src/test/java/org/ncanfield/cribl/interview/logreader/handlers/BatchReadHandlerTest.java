@@ -0,0 +1,117 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ncanfield.cribl.interview.logreader.models.FieldFilter;
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchReadHandlerTest {
+    private static final String TEST_RESOURCE_PATH = new File("src/test/resources").getAbsolutePath();
+
+    @Test
+    public void answersEachQueryLikeItsOwnRead(@TempDir Path tempDir) throws Exception {
+        Path logPath = writeLog(tempDir);
+        List<LogReadRequest> queries = List.of(
+                new LogReadRequest(5, "ERROR", ReadMode.LINES),
+                new LogReadRequest(3, "disk", ReadMode.LINES),
+                new LogReadRequest(-1, "ERROR disk", ReadMode.LINES),
+                new LogReadRequest(4, null, ReadMode.LINES).withFilter(FieldFilter.parse("status>=500")),
+                new LogReadRequest(2, "ERROR", ReadMode.LINES).withFilter(FieldFilter.parse("user=7")));
+
+        ScanBudget budget = ScanBudget.unlimited();
+        List<List<LogFile>> results = BatchReadHandler.readLogs(
+                logPath.toFile(), queries, false, ReadSettings.defaults(), budget, tempDir.toString().length());
+
+        assertEquals(queries.size(), results.size());
+        for (int i = 0; i < queries.size(); i++) {
+            List<LogFile> expected = LogReadRequestHandler.readLogs(logPath.toFile(), queries.get(i), ReadSettings.defaults(), ScanBudget.unlimited(), tempDir.toString().length());
+            assertEquals(withoutCursors(expected), results.get(i));
+        }
+        // The unlimited query reads to the top, but only once for all of them
+        assertEquals(Files.size(logPath), budget.getScannedBytes());
+    }
+
+    @Test
+    public void stopsOnceEveryQueryHasItsLines(@TempDir Path tempDir) throws Exception {
+        Path logPath = writeLog(tempDir);
+        List<LogReadRequest> queries = List.of(
+                new LogReadRequest(2, "ERROR", ReadMode.LINES),
+                new LogReadRequest(2, "INFO", ReadMode.LINES));
+
+        ScanBudget budget = ScanBudget.unlimited();
+        List<List<LogFile>> results = BatchReadHandler.readLogs(
+                logPath.toFile(), queries, false, ReadSettings.defaults(), budget, tempDir.toString().length());
+
+        assertEquals(List.of("line=999 ERROR disk status=599 user=9", "line=996 ERROR disk status=596 user=6"),
+                results.get(0).get(0).logLines());
+        assertEquals(List.of("line=998 INFO cpu status=298 user=8", "line=997 INFO cpu status=297 user=7"),
+                results.get(1).get(0).logLines());
+        assertTrue(budget.getScannedBytes() < 500);
+    }
+
+    @Test
+    public void readsDirectoryForEveryQuery() {
+        File testDir = new File(TEST_RESOURCE_PATH);
+        List<LogReadRequest> queries = List.of(
+                new LogReadRequest(1000, "1", ReadMode.LINES),
+                new LogReadRequest(1000, "line", ReadMode.LINES));
+
+        List<List<LogFile>> results = BatchReadHandler.readLogs(
+                testDir, queries, false, ReadSettings.defaults(), ScanBudget.unlimited(), TEST_RESOURCE_PATH.length());
+
+        for (int i = 0; i < queries.size(); i++) {
+            assertEquals(withoutCursors(LogReadRequestHandler.readLogs(testDir, queries.get(i), ReadSettings.defaults(), ScanBudget.unlimited(), TEST_RESOURCE_PATH.length())), results.get(i));
+        }
+    }
+
+    @Test
+    public void reportsMissingFileForEveryQuery() {
+        File missing = new File(TEST_RESOURCE_PATH + "/missing.log");
+        List<List<LogFile>> results = BatchReadHandler.readLogs(
+                missing,
+                List.of(new LogReadRequest(1, "a", ReadMode.LINES), new LogReadRequest(1, "b", ReadMode.LINES)),
+                false,
+                ReadSettings.defaults(),
+                ScanBudget.unlimited(),
+                TEST_RESOURCE_PATH.length());
+
+        assertEquals("The specified file does not exist", results.get(0).get(0).error());
+        assertEquals("The specified file does not exist", results.get(1).get(0).error());
+    }
+
+    /**
+     * Batches don't hand out cursors, as each query stops at a different place in the file
+     */
+    private static List<LogFile> withoutCursors(List<LogFile> logFiles) {
+        return logFiles.stream()
+                .map(logFile -> new LogFile(logFile.fileName(), logFile.filePath(), logFile.logLines(), logFile.patterns(), logFile.error(), null, null, null))
+                .toList();
+    }
+
+    /**
+     * Writes 1000 lines, every third an ERROR about the disk
+     */
+    private static Path writeLog(Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("app.log");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            boolean error = i % 3 == 0;
+            content.append("line=").append(i)
+                    .append(error ? " ERROR disk" : " INFO cpu")
+                    .append(" status=").append((error ? 500 : 200) + i % 100)
+                    .append(" user=").append(i % 10)
+                    .append('\n');
+        }
+        Files.writeString(logPath, content);
+        return logPath;
+    }
+}
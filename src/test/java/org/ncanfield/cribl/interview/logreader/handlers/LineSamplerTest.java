@@ -0,0 +1,103 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.LogSample;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineSamplerTest {
+
+    @Test
+    public void samplesSmallFilesExactly(@TempDir Path tempDir) throws IOException {
+        Path appLog = tempDir.resolve("app.log");
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            lines.append(i % 4 == 0 ? "ERROR " : "INFO ").append(i).append('\n');
+            if (i % 100 == 0) {
+                // Blank lines aren't counted
+                lines.append('\n');
+            }
+        }
+        Files.writeString(appLog, lines);
+
+        LogFile logFile = LineSampler.sample(appLog, "app.log", sampleRequest(20, "ERROR"), ReadSettings.defaults(), ScanBudget.unlimited());
+        assertNull(logFile.error());
+        assertEquals(new LogSample(1000, 1000, 0.25, 250, true), logFile.sample());
+        assertEquals(20, logFile.logLines().size());
+        assertEquals(20, new HashSet<>(logFile.logLines()).size());
+        assertTrue(logFile.logLines().stream().allMatch(line -> line.startsWith("ERROR ")));
+        // Newest first, like every other read
+        List<Integer> numbers = logFile.logLines().stream().map(line -> Integer.parseInt(line.substring(6))).toList();
+        List<Integer> sorted = new ArrayList<>(numbers);
+        sorted.sort((a, b) -> b - a);
+        assertEquals(sorted, numbers);
+    }
+
+    @Test
+    public void returnsEveryLineWhenTheSampleIsBigger(@TempDir Path tempDir) throws IOException {
+        Path appLog = tempDir.resolve("app.log");
+        Files.writeString(appLog, "one\ntwo\nthree");
+
+        LogFile logFile = LineSampler.sample(appLog, "app.log", sampleRequest(10, null), ReadSettings.defaults(), ScanBudget.unlimited());
+        assertEquals(List.of("three", "two", "one"), logFile.logLines());
+        assertEquals(new LogSample(3, 3, 1.0, 3, true), logFile.sample());
+    }
+
+    @Test
+    public void samplesLatin1AsUtf8(@TempDir Path tempDir) throws IOException {
+        Path appLog = tempDir.resolve("app.log");
+        Files.write(appLog, "café\ntea\ncrème\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        LogFile logFile = LineSampler.sample(appLog, "app.log", sampleRequest(10, "é"), ReadSettings.defaults(), ScanBudget.unlimited());
+        assertEquals(List.of("café"), logFile.logLines());
+
+        Path windowsLog = tempDir.resolve("windows.log");
+        Files.write(windowsLog, "one\ntwo\n".getBytes(StandardCharsets.UTF_16LE));
+        logFile = LineSampler.sample(windowsLog, "windows.log", sampleRequest(10, null), ReadSettings.defaults(), ScanBudget.unlimited());
+        assertEquals(LineSampler.UNSUPPORTED_CHARSET, logFile.error());
+    }
+
+    @Test
+    public void probesLargeFiles(@TempDir Path tempDir) throws IOException {
+        Path appLog = tempDir.resolve("app.log");
+        int lineCount = 1_000_000;
+        try (BufferedWriter writer = Files.newBufferedWriter(appLog)) {
+            for (int i = 0; i < lineCount; i++) {
+                writer.write(i % 10 == 0 ? "level=ERROR request " : "level=INFO request ");
+                writer.write(Integer.toString(i));
+                writer.write('\n');
+            }
+        }
+        long size = Files.size(appLog);
+        assertTrue(size > LineSampler.SCAN_THRESHOLD);
+
+        ScanBudget budget = ScanBudget.unlimited();
+        LogFile logFile = LineSampler.sample(appLog, "app.log", sampleRequest(50, "ERROR"), ReadSettings.defaults(), budget);
+        LogSample sample = logFile.sample();
+        assertFalse(sample.exact());
+        assertEquals(50, logFile.logLines().size());
+        assertTrue(logFile.logLines().stream().allMatch(line -> line.contains("ERROR")));
+        // Loose bounds, as the sample is random
+        assertEquals(lineCount, sample.estimatedLines(), lineCount * 0.1);
+        assertEquals(0.1, sample.matchRate(), 0.05);
+        // Only a small part of the file is read
+        assertTrue(budget.getScannedBytes() < size / 4, "Read " + budget.getScannedBytes() + " of " + size);
+    }
+
+    private static LogReadRequest sampleRequest(int maxLines, String searchTerm) {
+        return new LogReadRequest(maxLines, searchTerm, ReadMode.SAMPLE);
+    }
+}
@@ -0,0 +1,79 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogETagTest {
+    private static final LogReadRequest REQUEST = new LogReadRequest(10, null, ReadMode.LINES);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void changesWithFilesAndQuery() throws IOException {
+        Path log = Files.writeString(tempDir.resolve("app.log"), "one\n");
+        String etag = LogETag.compute(tempDir.toFile(), REQUEST, ReadSettings.defaults(), "server");
+        assertTrue(etag.matches("\"[0-9a-f]{32}\""));
+        assertEquals(etag, LogETag.compute(tempDir.toFile(), REQUEST, ReadSettings.defaults(), "server"));
+
+        assertNotEquals(etag, LogETag.compute(tempDir.toFile(), new LogReadRequest(11, null, ReadMode.LINES), ReadSettings.defaults(), "server"));
+        assertNotEquals(etag, LogETag.compute(tempDir.toFile(), REQUEST, ReadSettings.defaults(), "other"));
+
+        // Same size, different modification time
+        Files.setLastModifiedTime(log, FileTime.fromMillis(Files.getLastModifiedTime(log).toMillis() + 1000));
+        String touched = LogETag.compute(tempDir.toFile(), REQUEST, ReadSettings.defaults(), "server");
+        assertNotEquals(etag, touched);
+
+        // New files in subdirectories count too
+        Files.createDirectory(tempDir.resolve("sub"));
+        Files.writeString(tempDir.resolve("sub/other.log"), "two\n");
+        assertNotEquals(touched, LogETag.compute(tempDir.toFile(), REQUEST, ReadSettings.defaults(), "server"));
+    }
+
+    @Test
+    public void includesRotationsOnlyWhenFollowed() throws IOException {
+        Path log = Files.writeString(tempDir.resolve("app.log"), "one\n");
+        Files.writeString(tempDir.resolve("app.log.1"), "zero\n");
+        LogReadRequest following = new LogReadRequest(10, null, ReadMode.LINES).withFollowRotations(true);
+        String plain = LogETag.compute(log.toFile(), REQUEST, ReadSettings.defaults(), "server");
+        String rotations = LogETag.compute(log.toFile(), following, ReadSettings.defaults(), "server");
+
+        Files.writeString(tempDir.resolve("app.log.1"), "older line\n");
+        assertEquals(plain, LogETag.compute(log.toFile(), REQUEST, ReadSettings.defaults(), "server"));
+        assertNotEquals(rotations, LogETag.compute(log.toFile(), following, ReadSettings.defaults(), "server"));
+    }
+
+    @Test
+    public void includesMountedRootsOfLogDir() throws IOException {
+        Path logDir = Files.createDirectory(tempDir.resolve("logs"));
+        Path disk2 = Files.createDirectory(tempDir.resolve("disk2"));
+        Files.writeString(logDir.resolve("app.log"), "one\n");
+        ReadSettings settings = new ReadSettings(Pattern.compile(RotationFamilies.DEFAULT_PATTERN), null,
+                ReadSettings.DEFAULT_MAX_LINE_LENGTH, null, ReadSettings.DEFAULT_PARALLEL_SCAN_THRESHOLD,
+                new LogRoots(logDir, Map.of("archive", disk2)));
+        String etag = LogETag.compute(logDir.toFile(), REQUEST, settings, "server");
+
+        Files.writeString(disk2.resolve("old.log"), "zero\n");
+        assertNotEquals(etag, LogETag.compute(logDir.toFile(), REQUEST, settings, "server"));
+    }
+
+    @Test
+    public void matchesIfNoneMatch() {
+        assertFalse(LogETag.matches(null, "\"a\""));
+        assertTrue(LogETag.matches("\"a\"", "\"a\""));
+        assertTrue(LogETag.matches("\"b\", W/\"a\"", "\"a\""));
+        assertTrue(LogETag.matches("*", "\"a\""));
+        assertFalse(LogETag.matches("\"b\"", "\"a\""));
+    }
+}
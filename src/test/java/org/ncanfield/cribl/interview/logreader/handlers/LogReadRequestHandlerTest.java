@@ -1,14 +1,29 @@
 package org.ncanfield.cribl.interview.logreader.handlers;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.models.FieldFilter;
+import org.ncanfield.cribl.interview.logreader.models.LogCursor;
 import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.utils.CancellationToken;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -130,6 +145,87 @@ public class LogReadRequestHandlerTest {
         assertEquals("longLineFile.txt", logFiles.get(0).fileName());
     }
 
+    @Test
+    public void returnsPatternsInPatternMode() {
+        File testFile = new File(TEST_RESOURCE_PATH + "/numberFile.txt");
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(testFile, new LogReadRequest(-1, null, ReadMode.PATTERNS), ReadSettings.defaults(), ScanBudget.unlimited(), TEST_RESOURCE_PATH.length());
+
+        assertEquals(1, logFiles.size());
+        assertNull(logFiles.get(0).logLines());
+        // Every line is a single number, so they should all fall into one template
+        assertEquals(1, logFiles.get(0).patterns().size());
+        assertEquals("<*>", logFiles.get(0).patterns().get(0).template());
+        assertEquals(10, logFiles.get(0).patterns().get(0).count());
+        assertEquals("1", logFiles.get(0).patterns().get(0).sample());
+    }
+
+    @Test
+    public void stopsAtReturnedBytesBudget() {
+        File testFile = new File(TEST_RESOURCE_PATH + "/numberFile.txt");
+        ScanBudget budget = new ScanBudget(new ScanScheduler(1), -1, 6);
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(testFile, new LogReadRequest(-1, null, ReadMode.LINES), ReadSettings.defaults(), budget, TEST_RESOURCE_PATH.length());
+
+        // Each line is one digit plus its newline, so only three fit
+        assertEquals(1, logFiles.size());
+        assertEquals(List.of("1", "2", "3"), logFiles.get(0).logLines());
+        assertEquals(ScanBudget.FILE_BUDGET_EXHAUSTED, logFiles.get(0).error());
+        assertTrue(budget.isExhausted());
+    }
+
+    @Test
+    public void stopsWaitingForScanWhenCancelled() throws Exception {
+        File testFile = new File(TEST_RESOURCE_PATH + "/numberFile.txt");
+        ScanScheduler scheduler = new ScanScheduler(1);
+        // Hold the only permit so the read has to queue for it
+        scheduler.acquire();
+        CancellationToken cancellation = new CancellationToken();
+        ScanBudget budget = new ScanBudget(scheduler, -1, -1, cancellation);
+        CompletableFuture<List<LogFile>> read = CompletableFuture.supplyAsync(() -> LogReadRequestHandler.readLogs(
+                testFile, new LogReadRequest(-1, null, ReadMode.LINES), ReadSettings.defaults(), budget, TEST_RESOURCE_PATH.length()));
+        Thread.sleep(100);
+        assertFalse(read.isDone());
+
+        cancellation.cancel("Test");
+        List<LogFile> logFiles = read.get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, logFiles.size());
+        assertEquals(ScanBudget.FILE_CANCELLED, logFiles.get(0).error());
+        assertTrue(budget.isCancelled());
+        // The read never took a permit, so once the one held here is returned it's free again
+        scheduler.release();
+        ScanBudget next = new ScanBudget(scheduler, -1, -1);
+        assertTrue(CompletableFuture.supplyAsync(() -> {
+            try {
+                return next.acquireScan();
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void stopsReadingDirectoryWhenCancelled() {
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel("Test");
+        ScanBudget budget = new ScanBudget(new ScanScheduler(1), -1, -1, cancellation);
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                new File(TEST_RESOURCE_PATH), new LogReadRequest(-1, null, ReadMode.LINES), ReadSettings.defaults(), budget, TEST_RESOURCE_PATH.length());
+
+        assertTrue(logFiles.isEmpty());
+    }
+
+    @Test
+    public void stopsAtScannedBytesBudget() {
+        File testFile = new File(TEST_RESOURCE_PATH);
+        ScanBudget budget = new ScanBudget(new ScanScheduler(1), 5, -1);
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(testFile, new LogReadRequest(-1, null, ReadMode.LINES), ReadSettings.defaults(), budget, TEST_RESOURCE_PATH.length());
+
+        // Stops reading further files once the budget is gone
+        assertTrue(budget.isExhausted());
+        assertTrue(logFiles.size() < 10);
+        assertTrue(logFiles.stream().anyMatch(logFile -> ScanBudget.FILE_BUDGET_EXHAUSTED.equals(logFile.error())));
+    }
+
     @Test
     public void errorWhenNoFileExists() {
         File testFile = new File(TEST_RESOURCE_PATH + "/notAFile.txt");
@@ -194,4 +290,282 @@ public class LogReadRequestHandlerTest {
         assertNull(logFiles.get(0).logLines());
         assertEquals("Encountered an exception reading the file", logFiles.get(0).error());
     }
+
+    @Test
+    public void followsRotationsForDirectory(@TempDir Path tempDir) throws IOException {
+        Files.writeString(tempDir.resolve("app.log"), "line5\nline6");
+        Files.writeString(tempDir.resolve("app.log.1"), "line3\nline4");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tempDir.resolve("app.log.2.gz")))) {
+            out.write("line1\nline2".getBytes(StandardCharsets.UTF_8));
+        }
+        Files.writeString(tempDir.resolve("other.log"), "other");
+        String basePath = tempDir.toFile().getAbsolutePath();
+
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                tempDir.toFile(), new LogReadRequest(5, null, ReadMode.LINES).withFollowRotations(true), ReadSettings.defaults(), ScanBudget.unlimited(), basePath.length());
+        assertEquals(2, logFiles.size());
+        LogFile app = logFiles.stream().filter(logFile -> logFile.fileName().equals("app.log")).findFirst().orElseThrow();
+        assertEquals(List.of("line6", "line5", "line4", "line3", "line2"), app.logLines());
+
+        // Without following rotations the rotated files are skipped, since they don't look like text files
+        logFiles = LogReadRequestHandler.readLogs(
+                tempDir.toFile(), new LogReadRequest(5, null, ReadMode.LINES), ReadSettings.defaults(), ScanBudget.unlimited(), basePath.length());
+        assertEquals(List.of("app.log", "other.log"), logFiles.stream().map(LogFile::fileName).sorted().toList());
+    }
+
+    @Test
+    public void followsRotationsForFile(@TempDir Path tempDir) throws IOException {
+        Files.writeString(tempDir.resolve("app.log"), "line3\nline4");
+        Files.writeString(tempDir.resolve("app.log.1"), "line1\nline2");
+        String basePath = tempDir.toFile().getAbsolutePath();
+
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                tempDir.resolve("app.log").toFile(), new LogReadRequest(-1, "line", ReadMode.LINES).withFollowRotations(true), ReadSettings.defaults(), ScanBudget.unlimited(), basePath.length());
+        assertEquals(1, logFiles.size());
+        assertEquals(List.of("line4", "line3", "line2", "line1"), logFiles.get(0).logLines());
+    }
+
+    @Test
+    public void readsFilesInOtherCharsets(@TempDir Path tempDir) throws IOException {
+        byte[] utf16 = "first\r\nsecond café\r\nthird\r\n".getBytes(StandardCharsets.UTF_16LE);
+        byte[] withBom = new byte[utf16.length + 2];
+        withBom[0] = (byte) 0xFF;
+        withBom[1] = (byte) 0xFE;
+        System.arraycopy(utf16, 0, withBom, 2, utf16.length);
+        Files.write(tempDir.resolve("windows.log"), withBom);
+        Files.write(tempDir.resolve("latin1.log"), "first\nsecond café\nthird\n".getBytes(StandardCharsets.ISO_8859_1));
+        String basePath = tempDir.toFile().getAbsolutePath();
+
+        for (String fileName : List.of("windows.log", "latin1.log")) {
+            List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                    tempDir.resolve(fileName).toFile(), new LogReadRequest(-1, null, ReadMode.LINES), ReadSettings.defaults(), ScanBudget.unlimited(), basePath.length());
+            assertEquals(List.of("third", "second café", "first"), logFiles.get(0).logLines(), fileName);
+
+            // Search terms are matched on the lines as UTF-8
+            logFiles = LogReadRequestHandler.readLogs(
+                    tempDir.resolve(fileName).toFile(), new LogReadRequest(-1, "café", ReadMode.LINES), ReadSettings.defaults(), ScanBudget.unlimited(), basePath.length());
+            assertEquals(List.of("second café"), logFiles.get(0).logLines(), fileName);
+        }
+    }
+
+    @Test
+    public void readsMountedRoots(@TempDir Path tempDir) throws IOException {
+        Path logDir = Files.createDirectory(tempDir.resolve("logs"));
+        Path disk2 = Files.createDirectory(tempDir.resolve("disk2"));
+        Files.writeString(logDir.resolve("app.log"), "app\n");
+        Files.writeString(disk2.resolve("old.log"), "old\n");
+        ReadSettings settings = new ReadSettings(Pattern.compile(RotationFamilies.DEFAULT_PATTERN), null,
+                ReadSettings.DEFAULT_MAX_LINE_LENGTH, null, ReadSettings.DEFAULT_PARALLEL_SCAN_THRESHOLD,
+                new LogRoots(logDir, Map.of("archive", disk2)));
+        int basePathSize = logDir.toString().length();
+
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                logDir.toFile(), new LogReadRequest(-1, null, ReadMode.LINES), settings, ScanBudget.unlimited(), basePathSize);
+        assertEquals(List.of("app.log", "archive/old.log"), logFiles.stream().map(LogFile::filePath).toList());
+        assertEquals(List.of("old"), logFiles.get(1).logLines());
+
+        logFiles = LogReadRequestHandler.readLogs(
+                disk2.resolve("old.log").toFile(), new LogReadRequest(-1, null, ReadMode.LINES), settings, ScanBudget.unlimited(), basePathSize);
+        assertEquals("archive/old.log", logFiles.get(0).filePath());
+    }
+
+    @Test
+    public void readsDevicesInParallelInOrder(@TempDir Path tempDir) throws Exception {
+        Path logDir = Files.createDirectory(tempDir.resolve("logs"));
+        Path disk2 = Files.createDirectory(tempDir.resolve("disk2"));
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(logDir.resolve("app" + i + ".log"), "app" + i + "\n");
+            Files.writeString(disk2.resolve("old" + i + ".log"), "old" + i + "\n");
+        }
+        // Every file in the archive root is on a second device
+        LogRoots roots = new LogRoots(logDir, Map.of("archive", disk2)) {
+            @Override
+            public Object deviceOf(Path filePath) {
+                return filePath.startsWith(disk2) ? "disk2" : "disk1";
+            }
+        };
+        ReadSettings settings = new ReadSettings(Pattern.compile(RotationFamilies.DEFAULT_PATTERN), null,
+                ReadSettings.DEFAULT_MAX_LINE_LENGTH, null, ReadSettings.DEFAULT_PARALLEL_SCAN_THRESHOLD, roots);
+        ScanScheduler scheduler = new ScanScheduler(-1, 1);
+        // Hold the first disk, so only the second can be read until it's let go
+        scheduler.acquire("disk1");
+        ScanBudget budget = new ScanBudget(scheduler, -1, -1);
+        CompletableFuture<List<LogFile>> read = CompletableFuture.supplyAsync(() -> LogReadRequestHandler.readLogs(
+                logDir.toFile(), new LogReadRequest(-1, null, ReadMode.LINES), settings, budget, logDir.toString().length()));
+        Thread.sleep(100);
+        assertFalse(read.isDone());
+        assertEquals(1, scheduler.queueLength("disk1"));
+
+        scheduler.release("disk1");
+        List<LogFile> logFiles = read.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("app0.log", "app1.log", "app2.log", "archive/old0.log", "archive/old1.log", "archive/old2.log"),
+                logFiles.stream().map(LogFile::filePath).sorted().toList());
+        // Files come back in the order they were found, whichever device finished first
+        List<String> found = ReadTargets.find(logDir.toFile(), false, settings, ScanBudget.unlimited(), logDir.toString().length()).stream()
+                .map(target -> settings.relativePath(target.filePath(), logDir.toString().length()))
+                .toList();
+        assertEquals(found, logFiles.stream().map(LogFile::filePath).toList());
+    }
+
+    @Test
+    public void stopsListingFilesOnceCancelled(@TempDir Path tempDir) throws IOException {
+        Files.createDirectories(tempDir.resolve("nested"));
+        Files.writeString(tempDir.resolve("app.log"), "line");
+        Files.writeString(tempDir.resolve("nested/app.log"), "line");
+        int basePathSize = tempDir.toString().length();
+        assertEquals(2, ReadTargets.find(tempDir.toFile(), false, ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize).size());
+
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel("Test");
+        ScanBudget cancelled = new ScanBudget(null, -1, -1, cancellation);
+        assertTrue(ReadTargets.find(tempDir.toFile(), false, ReadSettings.defaults(), cancelled, basePathSize).isEmpty());
+    }
+
+    @Test
+    public void filtersStructuredFields(@TempDir Path tempDir) throws IOException, LogReaderException {
+        Files.writeString(tempDir.resolve("app.log"), String.join("\n",
+                "{\"level\":\"ERROR\",\"status\":503,\"msg\":\"upstream down\"}",
+                "{\"level\":\"INFO\",\"status\":200,\"msg\":\"level=ERROR\"}",
+                "{\"level\":\"ERROR\",\"status\":404,\"msg\":\"not found\"}",
+                "{\"level\":\"ERROR\",\"status\":500,\"msg\":\"boom\"}"));
+        String basePath = tempDir.toFile().getAbsolutePath();
+        FieldFilter filter = FieldFilter.parse("level=ERROR AND status>=500");
+
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                tempDir.resolve("app.log").toFile(), new LogReadRequest(-1, null, ReadMode.LINES).withFilter(filter), ReadSettings.defaults(), ScanBudget.unlimited(), basePath.length());
+        assertEquals(List.of(
+                "{\"level\":\"ERROR\",\"status\":500,\"msg\":\"boom\"}",
+                "{\"level\":\"ERROR\",\"status\":503,\"msg\":\"upstream down\"}"), logFiles.get(0).logLines());
+
+        // The line limit only counts lines that matched
+        logFiles = LogReadRequestHandler.readLogs(
+                tempDir.resolve("app.log").toFile(), new LogReadRequest(1, "upstream", ReadMode.LINES).withFilter(filter), ReadSettings.defaults(), ScanBudget.unlimited(), basePath.length());
+        assertEquals(List.of("{\"level\":\"ERROR\",\"status\":503,\"msg\":\"upstream down\"}"), logFiles.get(0).logLines());
+    }
+
+    @Test
+    public void returnsContextAroundMatches(@TempDir Path tempDir) throws IOException {
+        Files.writeString(tempDir.resolve("app.log"), String.join("\n",
+                "a1", "a2 ERROR x", "a3", "a4", "", "a5", "a6 ERROR y", "a7", "a8 ERROR z", "a9", "a10"));
+        String basePath = tempDir.toFile().getAbsolutePath();
+
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                tempDir.resolve("app.log").toFile(),
+                new LogReadRequest(-1, "ERROR", ReadMode.LINES).withContext(1, 1),
+                ReadSettings.defaults(),
+                ScanBudget.unlimited(),
+                basePath.length());
+        // Overlapping context is only returned once, and groups that aren't next to each other are split up
+        assertEquals(List.of("a9", "a8 ERROR z", "a7", "a6 ERROR y", "a5", ContextScan.SEPARATOR, "a3", "a2 ERROR x", "a1"),
+                logFiles.get(0).logLines());
+
+        // The line limit only counts matches, the last one still gets its context
+        logFiles = LogReadRequestHandler.readLogs(
+                tempDir.resolve("app.log").toFile(),
+                new LogReadRequest(1, "ERROR", ReadMode.LINES).withContext(2, 3),
+                ReadSettings.defaults(),
+                ScanBudget.unlimited(),
+                basePath.length());
+        assertEquals(List.of("a10", "a9", "a8 ERROR z", "a7", "a6 ERROR y"), logFiles.get(0).logLines());
+    }
+
+    @Test
+    public void keepsOnlyNearestAfterContext(@TempDir Path tempDir) throws IOException {
+        StringBuilder lines = new StringBuilder("match\n");
+        for (int i = 0; i < 10000; i++) {
+            lines.append("line ").append(i).append('\n');
+        }
+        Files.writeString(tempDir.resolve("app.log"), lines);
+        String basePath = tempDir.toFile().getAbsolutePath();
+
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                tempDir.resolve("app.log").toFile(),
+                new LogReadRequest(-1, "match", ReadMode.LINES).withContext(0, 2),
+                ReadSettings.defaults(),
+                ScanBudget.unlimited(),
+                basePath.length());
+        assertEquals(List.of("line 1", "line 0", "match"), logFiles.get(0).logLines());
+    }
+
+    @Test
+    public void pagesOlderLinesWithCursors(@TempDir Path tempDir) throws IOException, LogReaderException {
+        Files.writeString(tempDir.resolve("app.log"), "line1\nline2\nline3\nline4\nline5\n");
+        File logFile = tempDir.resolve("app.log").toFile();
+        int basePathSize = tempDir.toFile().getAbsolutePath().length();
+
+        LogFile page = LogReadRequestHandler.readLogs(
+                logFile, new LogReadRequest(2, null, ReadMode.LINES), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize).get(0);
+        assertEquals(List.of("line5", "line4"), page.logLines());
+        assertNotNull(page.newerCursor());
+
+        page = LogReadRequestHandler.readLogs(logFile, pageRequest(2, page.olderCursor()), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize).get(0);
+        assertEquals(List.of("line3", "line2"), page.logLines());
+        // Paging back doesn't move the end of the file along, so no newer cursor
+        assertNull(page.newerCursor());
+
+        page = LogReadRequestHandler.readLogs(logFile, pageRequest(2, page.olderCursor()), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize).get(0);
+        assertEquals(List.of("line1"), page.logLines());
+        assertNull(page.olderCursor());
+    }
+
+    @Test
+    public void pollsNewerLinesWithCursors(@TempDir Path tempDir) throws IOException, LogReaderException {
+        Path appLog = tempDir.resolve("app.log");
+        Files.writeString(appLog, "line1\nline2\n");
+        int basePathSize = tempDir.toFile().getAbsolutePath().length();
+
+        LogFile read = LogReadRequestHandler.readLogs(
+                appLog.toFile(), new LogReadRequest(-1, null, ReadMode.LINES), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize).get(0);
+        assertEquals(List.of("line2", "line1"), read.logLines());
+
+        Files.writeString(appLog, "line3\nline4\n", StandardOpenOption.APPEND);
+        read = LogReadRequestHandler.readLogs(appLog.toFile(), pageRequest(-1, read.newerCursor()), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize).get(0);
+        assertEquals(List.of("line4", "line3"), read.logLines());
+
+        // Nothing written since the last poll
+        read = LogReadRequestHandler.readLogs(appLog.toFile(), pageRequest(-1, read.newerCursor()), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize).get(0);
+        assertEquals(List.of(), read.logLines());
+        assertNotNull(read.newerCursor());
+    }
+
+    @Test
+    public void reportsStaleCursors(@TempDir Path tempDir) throws IOException, LogReaderException {
+        Path appLog = tempDir.resolve("app.log");
+        Files.writeString(appLog, "line1\nline2\nline3\n");
+        int basePathSize = tempDir.toFile().getAbsolutePath().length();
+        LogFile read = LogReadRequestHandler.readLogs(
+                appLog.toFile(), new LogReadRequest(-1, null, ReadMode.LINES), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize).get(0);
+
+        // Rotated away and replaced by a new, shorter file
+        Files.move(appLog, tempDir.resolve("app.log.1"));
+        Files.writeString(appLog, "new1\n");
+        LogFile stale = LogReadRequestHandler.readLogs(
+                appLog.toFile(), pageRequest(-1, read.newerCursor()), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize).get(0);
+        assertEquals(FileCursors.STALE_CURSOR, stale.error());
+        assertNull(stale.logLines());
+
+        // The restart cursor reads the new file from its start
+        read = LogReadRequestHandler.readLogs(appLog.toFile(), pageRequest(-1, stale.newerCursor()), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize).get(0);
+        assertNull(read.error());
+        assertEquals(List.of("new1"), read.logLines());
+    }
+
+    @Test
+    public void pagesOnlyFilesWithCursors(@TempDir Path tempDir) throws IOException, LogReaderException {
+        Files.writeString(tempDir.resolve("a.log"), "a1\na2\na3\n");
+        Files.writeString(tempDir.resolve("b.log"), "b1\nb2\nb3\n");
+        int basePathSize = tempDir.toFile().getAbsolutePath().length();
+
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                tempDir.toFile(), new LogReadRequest(1, null, ReadMode.LINES), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize);
+        LogFile a = logFiles.stream().filter(logFile -> logFile.fileName().equals("a.log")).findFirst().orElseThrow();
+
+        logFiles = LogReadRequestHandler.readLogs(tempDir.toFile(), pageRequest(1, a.olderCursor()), ReadSettings.defaults(), ScanBudget.unlimited(), basePathSize);
+        assertEquals(1, logFiles.size());
+        assertEquals(List.of("a2"), logFiles.get(0).logLines());
+    }
+
+    private static LogReadRequest pageRequest(int maxLines, String cursor) throws LogReaderException {
+        return new LogReadRequest(maxLines, null, ReadMode.LINES).withCursors(List.of(LogCursor.decode(cursor)));
+    }
 }
@@ -0,0 +1,76 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogRootsTest {
+    @Test
+    public void parsesRootDefinitions() {
+        Map<String, Path> mounts = LogRoots.parse(Arrays.asList("archive=/mnt/disk2/logs", " ", "disk3 = /mnt/disk3"));
+        assertEquals(List.of("archive", "disk3"), List.copyOf(mounts.keySet()));
+        assertEquals(Path.of("/mnt/disk2/logs"), mounts.get("archive"));
+        assertEquals(Path.of("/mnt/disk3"), mounts.get("disk3"));
+        assertTrue(LogRoots.parse(null).isEmpty());
+    }
+
+    @Test
+    public void resolvesIntoMountedRoots(@TempDir Path tempDir) {
+        Path logDir = tempDir.resolve("logs");
+        Path archive = tempDir.resolve("disk2");
+        LogRoots roots = new LogRoots(logDir, Map.of("archive", archive));
+
+        assertEquals(logDir.resolve("app.log"), roots.resolve("app.log"));
+        assertEquals(logDir.resolve("nested/app.log"), roots.resolve("/nested/app.log"));
+        assertEquals(archive.resolve("app.log"), roots.resolve("archive/app.log"));
+        assertEquals(archive, roots.resolve("archive"));
+        // A root whose name only starts the same isn't followed
+        assertEquals(logDir.resolve("archived/app.log"), roots.resolve("archived/app.log"));
+    }
+
+    @Test
+    public void rejectsPathsOutsideTheirRoot(@TempDir Path tempDir) {
+        Path logDir = tempDir.resolve("logs");
+        LogRoots roots = new LogRoots(logDir, Map.of("archive", tempDir.resolve("disk2")));
+
+        assertNull(roots.resolve("../secret"));
+        assertNull(roots.resolve("archive/../logs/app.log"));
+        assertNull(roots.resolve("archive/../../etc/passwd"));
+        // Leaving the log directory into a root's real path isn't allowed either
+        assertNull(roots.resolve("../disk2/app.log"));
+    }
+
+    @Test
+    public void showsMountedPathsByName(@TempDir Path tempDir) {
+        Path archive = tempDir.resolve("disk2");
+        LogRoots roots = new LogRoots(tempDir.resolve("logs"), Map.of("archive", archive));
+
+        assertEquals("archive/nested/app.log", roots.mountedPath(archive.resolve("nested/app.log")));
+        assertEquals("archive", roots.mountedPath(archive));
+        assertNull(roots.mountedPath(tempDir.resolve("logs/app.log")));
+        assertTrue(roots.isLogDir(tempDir.resolve("logs/../logs")));
+        assertFalse(roots.isLogDir(archive));
+    }
+
+    @Test
+    public void findsTheDeviceOfAFile(@TempDir Path tempDir) throws IOException {
+        Path file = Files.writeString(tempDir.resolve("app.log"), "line");
+        LogRoots roots = new LogRoots(tempDir, Map.of());
+
+        Object device = roots.deviceOf(file);
+        assertEquals(Files.getFileStore(tempDir), device);
+        assertInstanceOf(FileStore.class, device);
+        // Looked up once per directory
+        assertSame(device, roots.deviceOf(tempDir.resolve("other.log")));
+        assertNull(roots.deviceOf(tempDir.resolve("missing/app.log")));
+    }
+}
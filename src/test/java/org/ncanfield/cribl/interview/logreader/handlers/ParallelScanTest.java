@@ -0,0 +1,172 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ncanfield.cribl.interview.logreader.models.FieldFilter;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.utils.FileHandleCache;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelScanTest {
+    private static final ReadSettings PARALLEL_SETTINGS =
+            new ReadSettings(Pattern.compile(RotationFamilies.DEFAULT_PATTERN), null, ReadSettings.DEFAULT_MAX_LINE_LENGTH, null, 1, null);
+
+    @Test
+    public void returnsSameLinesAsSingleScan(@TempDir Path tempDir) throws Exception {
+        Path logPath = writeLog(tempDir);
+        LogReadRequest request = new LogReadRequest(-1, "ERROR", ReadMode.LINES);
+
+        List<String> expected = readSingle(logPath, request);
+        ScanBudget budget = ScanBudget.unlimited();
+        List<String> lines = read(ParallelScan.open(logPath, request, PARALLEL_SETTINGS, budget, 1000));
+
+        assertEquals(6667, expected.size());
+        assertEquals(expected, lines);
+        // Every range was scanned once and only once
+        assertEquals(Files.size(logPath), budget.getScannedBytes());
+    }
+
+    @Test
+    public void appliesFilterInEveryRange(@TempDir Path tempDir) throws Exception {
+        Path logPath = writeLog(tempDir);
+        LogReadRequest request = new LogReadRequest(-1, null, ReadMode.LINES).withFilter(FieldFilter.parse("line=42"));
+
+        List<String> lines = read(ParallelScan.open(logPath, request, PARALLEL_SETTINGS, ScanBudget.unlimited(), 1000));
+
+        assertEquals(readSingle(logPath, request), lines);
+    }
+
+    @Test
+    public void stopsOlderRangesOnceLimitIsFilled(@TempDir Path tempDir) throws Exception {
+        Path logPath = writeLog(tempDir);
+        LogReadRequest request = new LogReadRequest(5, "ERROR", ReadMode.LINES);
+
+        ScanBudget budget = ScanBudget.unlimited();
+        List<String> lines;
+        try (ParallelScan scan = ParallelScan.open(logPath, request, PARALLEL_SETTINGS, budget, 1000)) {
+            lines = read(scan);
+            assertTrue(scan.hasMoreData());
+        }
+
+        assertEquals(readSingle(logPath, request), lines);
+        // Only the newest few ranges were ever started
+        assertTrue(budget.getScannedBytes() < Files.size(logPath) / 2);
+    }
+
+    @Test
+    public void splitsOnNewlines(@TempDir Path tempDir) throws Exception {
+        Path logPath = writeLog(tempDir);
+        byte[] content = Files.readAllBytes(logPath);
+
+        try (FileHandleCache.Handle handle = FileHandleCache.openUncached(logPath)) {
+            long[] boundaries = ParallelScan.split(handle, content.length, 1000);
+
+            assertEquals(0, boundaries[0]);
+            assertEquals(content.length, boundaries[boundaries.length - 1]);
+            assertTrue(boundaries.length > 100);
+            for (int i = 1; i < boundaries.length - 1; i++) {
+                assertTrue(boundaries[i] >= boundaries[i - 1] + 1000);
+                assertEquals('\n', content[(int) boundaries[i] - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void boundsMatchesHeldByResponseBudget(@TempDir Path tempDir) throws Exception {
+        Path logPath = writeLog(tempDir);
+        LogReadRequest request = new LogReadRequest(-1, "ERROR", ReadMode.LINES);
+        List<String> expected = readSingle(logPath, request);
+        long matchBytes = expected.stream().mapToLong(line -> line.getBytes(StandardCharsets.UTF_8).length).sum();
+
+        // Room for every match and its newline, but the one range can only keep its share of that at a time
+        ScanBudget budget = new ScanBudget(null, -1, matchBytes * 2);
+        List<String> lines;
+        try (ParallelScan scan = ParallelScan.open(logPath, request, PARALLEL_SETTINGS, budget, Files.size(logPath))) {
+            lines = new ArrayList<>();
+            while (scan.next()) {
+                assertTrue(budget.tryChargeReturned(scan.getLineBytes()));
+                lines.add(scan.getLine());
+            }
+            assertFalse(scan.hasMoreData());
+        }
+
+        assertEquals(expected, lines);
+    }
+
+    @Test
+    public void carriesOnFromRangeCutByResponseBudget(@TempDir Path tempDir) throws Exception {
+        Path logPath = writeLog(tempDir);
+        LogReadRequest request = new LogReadRequest(-1, "ERROR", ReadMode.LINES);
+        List<String> expected = readSingle(logPath, request);
+
+        // Too small for every match, so the response is cut off in the middle of the range
+        ScanBudget budget = new ScanBudget(null, -1, 20000);
+        List<String> lines = new ArrayList<>();
+        try (ParallelScan scan = ParallelScan.open(logPath, request, PARALLEL_SETTINGS, budget, Files.size(logPath))) {
+            while (scan.next() && budget.tryChargeReturned(scan.getLineBytes())) {
+                lines.add(scan.getLine());
+            }
+            assertTrue(scan.hasMoreData());
+        }
+
+        assertEquals(expected.subList(0, lines.size()), lines);
+    }
+
+    @Test
+    public void appliesOnlyToLargeSearchedFiles(@TempDir Path tempDir) throws Exception {
+        Path logPath = writeLog(tempDir);
+        List<Path> members = List.of(logPath);
+        ReadSettings small = new ReadSettings(
+                Pattern.compile(RotationFamilies.DEFAULT_PATTERN), null, ReadSettings.DEFAULT_MAX_LINE_LENGTH, null, Files.size(logPath) + 1, null);
+
+        assertTrue(ParallelScan.applies(logPath, members, new LogReadRequest(10, "ERROR", ReadMode.LINES), PARALLEL_SETTINGS));
+        assertFalse(ParallelScan.applies(logPath, members, new LogReadRequest(10, "ERROR", ReadMode.LINES), small));
+        assertFalse(ParallelScan.applies(logPath, members, new LogReadRequest(10, null, ReadMode.LINES), PARALLEL_SETTINGS));
+        assertFalse(ParallelScan.applies(logPath, List.of(logPath, tempDir.resolve("app.log.1")),
+                new LogReadRequest(10, "ERROR", ReadMode.LINES), PARALLEL_SETTINGS));
+        assertFalse(ParallelScan.applies(logPath, members,
+                new LogReadRequest(10, "ERROR", ReadMode.LINES).withContext(2, 0), PARALLEL_SETTINGS));
+    }
+
+    /**
+     * Writes 20000 lines, every third an error, with blank lines and \r\n newlines mixed in
+     */
+    private static Path writeLog(Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("app.log");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append("line=").append(i % 100).append(i % 3 == 0 ? " ERROR " : " INFO ").append(i);
+            content.append(i % 7 == 0 ? "\r\n" : "\n");
+            if (i % 11 == 0) {
+                content.append('\n');
+            }
+        }
+        Files.writeString(logPath, content);
+        return logPath;
+    }
+
+    private static List<String> readSingle(Path logPath, LogReadRequest request) throws Exception {
+        return read(new ContextScan(
+                LineScan.open(logPath, List.of(logPath), request, ReadSettings.defaults(), ScanBudget.unlimited()),
+                request.maxLines(), 0, 0));
+    }
+
+    private static List<String> read(SelectedLines scan) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (scan) {
+            while (scan.next()) {
+                lines.add(scan.getLine());
+            }
+        }
+        return lines;
+    }
+}
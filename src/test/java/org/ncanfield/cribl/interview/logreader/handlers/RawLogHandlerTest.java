@@ -0,0 +1,119 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.utils.CancellationToken;
+import org.ncanfield.cribl.interview.logreader.utils.FileHandleCache;
+import org.ncanfield.cribl.interview.logreader.utils.LogCharset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RawLogHandlerTest {
+    private static final String TEST_RESOURCE_PATH = new File("src/test/resources").getAbsolutePath();
+
+    @Test
+    public void parsesRanges() throws Exception {
+        assertNull(RawLogHandler.parseRange(null, 100));
+        assertNull(RawLogHandler.parseRange("bytes=0-1,5-6", 100));
+        assertNull(RawLogHandler.parseRange("lines=0-1", 100));
+        assertNull(RawLogHandler.parseRange("bytes=abc-", 100));
+
+        assertEquals(new RawLogHandler.ByteRange(0, 10), RawLogHandler.parseRange("bytes=0-9", 100));
+        assertEquals(new RawLogHandler.ByteRange(90, 100), RawLogHandler.parseRange("bytes=90-", 100));
+        assertEquals(new RawLogHandler.ByteRange(80, 100), RawLogHandler.parseRange("bytes=-20", 100));
+        // Ranges past the end get clipped to the file
+        assertEquals(new RawLogHandler.ByteRange(50, 100), RawLogHandler.parseRange("bytes=50-500", 100));
+        assertEquals(new RawLogHandler.ByteRange(0, 100), RawLogHandler.parseRange("bytes=-500", 100));
+    }
+
+    @Test
+    public void rejectsUnsatisfiableRanges() {
+        assertThrows(LogReaderException.class, () -> RawLogHandler.parseRange("bytes=100-", 100));
+        assertThrows(LogReaderException.class, () -> RawLogHandler.parseRange("bytes=9-5", 100));
+        assertThrows(LogReaderException.class, () -> RawLogHandler.parseRange("bytes=-0", 100));
+    }
+
+    @Test
+    public void findsTailOffset() throws Exception {
+        try (FileHandleCache.Handle handle = FileHandleCache.openUncached(Path.of(TEST_RESOURCE_PATH, "numberFile.txt"))) {
+            // File is 10 down to 1 with no trailing newline
+            assertEquals(new RawLogHandler.Tail(handle.size() - 1, true), findTail(handle, LogCharset.UTF_8, 1));
+            assertEquals(new RawLogHandler.Tail(handle.size() - 3, true), findTail(handle, LogCharset.UTF_8, 2));
+            assertEquals(new RawLogHandler.Tail(0, true), findTail(handle, LogCharset.UTF_8, 10));
+            assertEquals(new RawLogHandler.Tail(0, true), findTail(handle, LogCharset.UTF_8, 50));
+        }
+        try (FileHandleCache.Handle handle = FileHandleCache.openUncached(Path.of(TEST_RESOURCE_PATH, "rnLineEnd.txt"))) {
+            assertEquals("This is the second line", tail(handle, 1).strip());
+        }
+        try (FileHandleCache.Handle handle = FileHandleCache.openUncached(Path.of(TEST_RESOURCE_PATH, "rLineEnd.txt"))) {
+            assertEquals("This is the second line", tail(handle, 1).strip());
+        }
+    }
+
+    @Test
+    public void findsUtf16TailOffset(@TempDir Path tempDir) throws Exception {
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_16LE, StandardCharsets.UTF_16BE}) {
+            // \u010A has 0x0A as one of its bytes, which mustn't be taken for a newline
+            Path file = Files.writeString(tempDir.resolve("utf16.log"), "first\r\nsecond \u010A\nthird\n", charset);
+            try (FileHandleCache.Handle handle = FileHandleCache.openUncached(file)) {
+                LogCharset detected = handle.charset();
+                assertEquals(charset, detected.charset());
+                long offset = findTail(handle, detected, 2).offset();
+                assertEquals(0, offset % 2);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                RawLogHandler.transfer(handle.channel(), offset, handle.size(), Channels.newChannel(out));
+                assertEquals("second \u010A\nthird\n", out.toString(charset));
+                assertEquals(0, findTail(handle, detected, 3).offset());
+            }
+        }
+    }
+
+    @Test
+    public void stopsTailAtScanLimit(@TempDir Path tempDir) throws Exception {
+        // Two 64KB blocks of 1KB lines, and a budget that only covers the first
+        String line = "x".repeat(1023) + "\n";
+        Path file = Files.writeString(tempDir.resolve("app.log"), line.repeat(128));
+        try (FileHandleCache.Handle handle = FileHandleCache.openUncached(file)) {
+            RawLogHandler.Tail tail = RawLogHandler.findTail(handle, LogCharset.UTF_8, 100, new ScanBudget(null, 64 * 1024, -1));
+            assertFalse(tail.complete());
+            // The earliest whole line of the block that was read
+            assertEquals(64 * 1024, tail.offset());
+
+            CancellationToken cancellation = new CancellationToken();
+            cancellation.cancel("Test");
+            tail = RawLogHandler.findTail(handle, LogCharset.UTF_8, 1, new ScanBudget(null, -1, -1, cancellation));
+            assertEquals(new RawLogHandler.Tail(handle.size(), false), tail);
+        }
+    }
+
+    @Test
+    public void negotiatesGzip() {
+        assertFalse(RawLogHandler.acceptsGzip(null));
+        assertFalse(RawLogHandler.acceptsGzip("identity"));
+        assertFalse(RawLogHandler.acceptsGzip("br, deflate"));
+        assertTrue(RawLogHandler.acceptsGzip("gzip"));
+        assertTrue(RawLogHandler.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(RawLogHandler.acceptsGzip("br, *"));
+        assertFalse(RawLogHandler.acceptsGzip("gzip;q=0, *"));
+        assertFalse(RawLogHandler.acceptsGzip("*;q=0"));
+    }
+
+    private static RawLogHandler.Tail findTail(FileHandleCache.Handle handle, LogCharset charset, int lines) throws Exception {
+        return RawLogHandler.findTail(handle, charset, lines, ScanBudget.unlimited());
+    }
+
+    private static String tail(FileHandleCache.Handle handle, int lines) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RawLogHandler.transfer(handle.channel(), findTail(handle, LogCharset.UTF_8, lines).offset(), handle.size(), Channels.newChannel(out));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
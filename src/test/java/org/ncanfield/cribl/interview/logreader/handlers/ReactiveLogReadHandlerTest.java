@@ -0,0 +1,148 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogLineEvent;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReactiveLogReadHandlerTest {
+    private static final String TEST_RESOURCE_PATH = new File("src/test/resources").getAbsolutePath();
+
+    @Test
+    public void readsSameLinesAsBlockingHandler() {
+        File testFile = new File(TEST_RESOURCE_PATH + "/whitespaces.log");
+        LogReadRequest request = new LogReadRequest(-1, null, ReadMode.LINES);
+        List<LogFile> logFiles = ReactiveLogReadHandler.readLogs(
+                testFile, request, ReadSettings.defaults(), new ScanBudget(new ScanScheduler(1), -1, -1), TEST_RESOURCE_PATH.length()).block();
+
+        assertEquals(1, logFiles.size());
+        assertEquals(List.of("Newest Line", "After various whitespace lines", "Oldest line"), logFiles.get(0).logLines());
+        assertNull(logFiles.get(0).error());
+    }
+
+    @Test
+    public void readsDirectory() {
+        File testFile = new File(TEST_RESOURCE_PATH);
+        LogReadRequest request = new LogReadRequest(1000, null, ReadMode.LINES);
+        List<LogFile> reactive = ReactiveLogReadHandler.readLogs(
+                testFile, request, ReadSettings.defaults(), new ScanBudget(new ScanScheduler(1), -1, -1), TEST_RESOURCE_PATH.length()).block();
+        List<LogFile> blocking = LogReadRequestHandler.readLogs(
+                testFile, request, ReadSettings.defaults(), new ScanBudget(new ScanScheduler(1), -1, -1), TEST_RESOURCE_PATH.length());
+
+        assertEquals(blocking.size(), reactive.size());
+        for (int i = 0; i < blocking.size(); i++) {
+            assertEquals(blocking.get(i).filePath(), reactive.get(i).filePath());
+            assertEquals(blocking.get(i).logLines(), reactive.get(i).logLines());
+        }
+    }
+
+    @Test
+    public void limitsAndSearchesLines() {
+        Path filePath = Path.of(TEST_RESOURCE_PATH + "/whitespaces.log");
+        List<String> lines = ReactiveLogReadHandler.lines(
+                filePath,
+                List.of(filePath),
+                new LogReadRequest(1, "line", ReadMode.LINES),
+                ReadSettings.defaults(),
+                new ScanBudget(new ScanScheduler(1), -1, -1)).collectList().block();
+
+        assertEquals(List.of("After various whitespace lines"), lines);
+    }
+
+    @Test
+    public void findsTargetsOffTheEventLoop() {
+        // Records whether the blocking lookups ran on one of Reactor's non-blocking threads, like an event loop
+        List<Boolean> nonBlocking = new CopyOnWriteArrayList<>();
+        LogRoots roots = new LogRoots(Path.of(TEST_RESOURCE_PATH), Map.of()) {
+            @Override
+            public boolean isLogDir(Path directory) {
+                nonBlocking.add(Schedulers.isInNonBlockingThread());
+                return super.isLogDir(directory);
+            }
+
+            @Override
+            public Object deviceOf(Path filePath) {
+                nonBlocking.add(Schedulers.isInNonBlockingThread());
+                return super.deviceOf(filePath);
+            }
+        };
+        ReadSettings settings = new ReadSettings(Pattern.compile(RotationFamilies.DEFAULT_PATTERN), null,
+                ReadSettings.DEFAULT_MAX_LINE_LENGTH, null, ReadSettings.DEFAULT_PARALLEL_SCAN_THRESHOLD, roots);
+        LogReadRequest request = new LogReadRequest(1, null, ReadMode.LINES);
+
+        ReactiveLogReadHandler.readLogs(new File(TEST_RESOURCE_PATH), request, settings, ScanBudget.unlimited(), TEST_RESOURCE_PATH.length())
+                .subscribeOn(Schedulers.parallel())
+                .block();
+        ReactiveLogReadHandler.streamLogs("TestServer", new File(TEST_RESOURCE_PATH), request, settings, ScanBudget.unlimited(),
+                        TEST_RESOURCE_PATH.length())
+                .subscribeOn(Schedulers.parallel())
+                .blockLast();
+
+        assertFalse(nonBlocking.isEmpty());
+        assertFalse(nonBlocking.contains(true));
+    }
+
+    @Test
+    public void streamsLinesWithFile() {
+        File testFile = new File(TEST_RESOURCE_PATH + "/numberFile.txt");
+        List<LogLineEvent> events = ReactiveLogReadHandler.streamLogs(
+                "TestServer",
+                testFile,
+                new LogReadRequest(2, null, ReadMode.LINES),
+                ReadSettings.defaults(),
+                new ScanBudget(new ScanScheduler(1), -1, -1),
+                TEST_RESOURCE_PATH.length()).collectList().block();
+
+        assertEquals(List.of(
+                new LogLineEvent("TestServer", "numberFile.txt", "1", null),
+                new LogLineEvent("TestServer", "numberFile.txt", "2", null)), events);
+    }
+
+    @Test
+    public void stopsAtReturnedBytesBudget() {
+        File testFile = new File(TEST_RESOURCE_PATH + "/numberFile.txt");
+        ScanBudget budget = new ScanBudget(new ScanScheduler(1), -1, 6);
+        List<LogFile> logFiles = ReactiveLogReadHandler.readLogs(
+                testFile, new LogReadRequest(-1, null, ReadMode.LINES), ReadSettings.defaults(), budget, TEST_RESOURCE_PATH.length()).block();
+
+        assertEquals(List.of("1", "2", "3"), logFiles.get(0).logLines());
+        assertEquals(ScanBudget.FILE_BUDGET_EXHAUSTED, logFiles.get(0).error());
+    }
+
+    @Test
+    public void releasesScanWhenCancelled() throws Exception {
+        Path filePath = Path.of(TEST_RESOURCE_PATH + "/numberFile.txt");
+        ScanScheduler scheduler = new ScanScheduler(1);
+        // Taking a few lines cancels the rest of the unlimited read
+        List<String> lines = ReactiveLogReadHandler.lines(
+                filePath,
+                List.of(filePath),
+                new LogReadRequest(-1, null, ReadMode.LINES),
+                ReadSettings.defaults(),
+                new ScanBudget(scheduler, -1, -1)).take(3).collectList().block();
+        assertEquals(List.of("1", "2", "3"), lines);
+
+        // The file was closed and its permit returned, so the only permit is free again
+        ScanBudget next = new ScanBudget(scheduler, -1, -1);
+        assertTrue(CompletableFuture.supplyAsync(() -> {
+            try {
+                return next.acquireScan();
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }).get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,71 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RotationFamiliesTest {
+    private static final Pattern DEFAULT = Pattern.compile(RotationFamilies.DEFAULT_PATTERN);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void groupsRotationsNewestFirst() throws IOException {
+        for (String name : List.of("app.log.10", "app.log.2.gz", "other.txt", "app.log", "app.log.1")) {
+            Files.writeString(tempDir.resolve(name), name);
+        }
+
+        List<RotationFamilies.Family> families = RotationFamilies.group(tempDir.toFile().listFiles(), DEFAULT);
+        assertEquals(2, families.size());
+
+        RotationFamilies.Family app = families.stream()
+                .filter(family -> family.basePath().getFileName().toString().equals("app.log"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(List.of("app.log", "app.log.1", "app.log.2.gz", "app.log.10"),
+                app.members().stream().map(member -> member.getFileName().toString()).toList());
+    }
+
+    @Test
+    public void groupsRotationsWithoutLiveFile() throws IOException {
+        Files.writeString(tempDir.resolve("app.log.2"), "2");
+        Files.writeString(tempDir.resolve("app.log.1"), "1");
+
+        List<RotationFamilies.Family> families = RotationFamilies.group(tempDir.toFile().listFiles(), DEFAULT);
+        assertEquals(1, families.size());
+        assertEquals(tempDir.resolve("app.log"), families.get(0).basePath());
+        assertEquals(List.of(tempDir.resolve("app.log.1"), tempDir.resolve("app.log.2")), families.get(0).members());
+    }
+
+    @Test
+    public void findsFamilyOfFile() throws IOException {
+        for (String name : List.of("app.log", "app.log.1", "app.log.2.gz", "other.log.1")) {
+            Files.writeString(tempDir.resolve(name), name);
+        }
+
+        RotationFamilies.Family family = RotationFamilies.familyOf(tempDir.resolve("app.log").toFile(), DEFAULT);
+        assertEquals(List.of(tempDir.resolve("app.log"), tempDir.resolve("app.log.1"), tempDir.resolve("app.log.2.gz")),
+                family.members());
+    }
+
+    @Test
+    public void usesCustomPattern() throws IOException {
+        for (String name : List.of("app.log", "app.log-2", "app.log-1")) {
+            Files.writeString(tempDir.resolve(name), name);
+        }
+        Pattern dashPattern = Pattern.compile("^(?<base>.+)-(?<index>\\d+)$");
+
+        List<RotationFamilies.Family> families = RotationFamilies.group(tempDir.toFile().listFiles(), dashPattern);
+        assertEquals(1, families.size());
+        assertEquals(List.of(tempDir.resolve("app.log"), tempDir.resolve("app.log-1"), tempDir.resolve("app.log-2")),
+                families.get(0).members());
+    }
+}
@@ -0,0 +1,98 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanSchedulerTest {
+    @Test
+    public void limitsScansOnEachDevice() throws Exception {
+        ScanScheduler scheduler = new ScanScheduler(4, 1);
+        Object disk1 = "disk1";
+        Object disk2 = "disk2";
+        scheduler.acquire(disk1);
+
+        // Another disk isn't held up by the busy one
+        CompletableFuture<Void> other = CompletableFuture.runAsync(() -> acquire(scheduler, disk2));
+        other.get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Void> same = CompletableFuture.runAsync(() -> acquire(scheduler, disk1));
+        Thread.sleep(100);
+        assertFalse(same.isDone());
+        assertEquals(1, scheduler.queueLength(disk1));
+        assertEquals(0, scheduler.queueLength(disk2));
+        // Waiting on a disk doesn't take one of the overall permits
+        assertEquals(0, scheduler.queueLength());
+
+        scheduler.release(disk1);
+        same.get(5, TimeUnit.SECONDS);
+        scheduler.release(disk1);
+        scheduler.release(disk2);
+    }
+
+    @Test
+    public void waitsForOverallPermitAfterDevice() throws Exception {
+        ScanScheduler scheduler = new ScanScheduler(1, 2);
+        scheduler.acquire("disk1");
+
+        CompletableFuture<Void> other = CompletableFuture.runAsync(() -> acquire(scheduler, "disk2"));
+        Thread.sleep(100);
+        assertFalse(other.isDone());
+        assertEquals(1, scheduler.queueLength());
+
+        scheduler.release("disk1");
+        other.get(5, TimeUnit.SECONDS);
+        scheduler.release("disk2");
+    }
+
+    @Test
+    public void skipsDeviceLimitWhenUnknownOrUnlimited() throws Exception {
+        ScanScheduler scheduler = new ScanScheduler(-1, 1);
+        scheduler.acquire(null);
+        scheduler.acquire(null);
+        assertEquals(0, scheduler.queueLength(null));
+
+        ScanScheduler unlimited = new ScanScheduler(-1);
+        unlimited.acquire("disk1");
+        unlimited.acquire("disk1");
+        assertEquals(-1, unlimited.getMaxScansPerDevice());
+    }
+
+    @Test
+    public void returnsDevicePermitWhenInterrupted() throws Exception {
+        ScanScheduler scheduler = new ScanScheduler(1, 1);
+        scheduler.acquire();
+
+        // Gets the device permit, then is interrupted waiting for the overall one
+        CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+        Thread waiting = new Thread(() -> {
+            try {
+                scheduler.acquire("disk1");
+                interrupted.complete(false);
+            } catch (InterruptedException e) {
+                interrupted.complete(true);
+            }
+        });
+        waiting.start();
+        Thread.sleep(100);
+        assertEquals(1, scheduler.queueLength());
+        waiting.interrupt();
+        assertTrue(interrupted.get(5, TimeUnit.SECONDS));
+        scheduler.release();
+
+        // The device permit was handed back, so the disk is free again
+        CompletableFuture.runAsync(() -> acquire(scheduler, "disk1")).get(5, TimeUnit.SECONDS);
+        scheduler.release("disk1");
+    }
+
+    private static void acquire(ScanScheduler scheduler, Object device) {
+        try {
+            scheduler.acquire(device);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentCompactorTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void compactsClosedRotations() throws IOException {
+        Path logDir = Files.createDirectories(tempDir.resolve("logs"));
+        Path segmentDir = tempDir.resolve("segments");
+        Path live = Files.writeString(logDir.resolve("app.log"), "line3\nline4\n");
+        Path rotated = Files.writeString(Files.createDirectories(logDir.resolve("sub")).resolve("app.log.1"), "line1\nline2\n");
+        Path recent = Files.writeString(logDir.resolve("app.log.2"), "line0\n");
+        age(rotated);
+
+        SegmentStore store = new SegmentStore(logDir, segmentDir);
+        try (SegmentCompactor compactor = new SegmentCompactor(store, Pattern.compile(RotationFamilies.DEFAULT_PATTERN))) {
+            assertEquals(1, compactor.compactAll());
+            assertEquals(segmentDir.resolve("sub/app.log.1.seg"), store.findFresh(rotated));
+            // Live files and files that were just written to are left alone
+            assertNull(store.findFresh(live));
+            assertNull(store.findFresh(recent));
+
+            // Nothing to do until the file changes
+            assertEquals(0, compactor.compactAll());
+            Files.writeString(rotated, "changed\n");
+            assertNull(store.findFresh(rotated));
+            age(rotated);
+            assertEquals(1, compactor.compactAll());
+
+            // Segments for files that are gone get cleaned up
+            Files.delete(rotated);
+            compactor.compactAll();
+            assertFalse(Files.exists(segmentDir.resolve("sub/app.log.1.seg")));
+        }
+    }
+
+    @Test
+    public void readsThroughSegments() throws IOException {
+        Path logDir = Files.createDirectories(tempDir.resolve("logs"));
+        Path segmentDir = tempDir.resolve("segments");
+        Files.writeString(logDir.resolve("app.log"), "line3\nline4\n");
+        age(Files.writeString(logDir.resolve("app.log.1"), "line1 error\nline2\n"));
+        SegmentStore store = new SegmentStore(logDir, segmentDir);
+        try (SegmentCompactor compactor = new SegmentCompactor(store, Pattern.compile(RotationFamilies.DEFAULT_PATTERN))) {
+            compactor.compactAll();
+        }
+        // Swap the plain file's contents without changing its size or time, to show the segment is what gets read
+        FileTime modified = Files.getLastModifiedTime(logDir.resolve("app.log.1"));
+        Files.writeString(logDir.resolve("app.log.1"), "XXXXX XXXXX\nXXXXX\n");
+        Files.setLastModifiedTime(logDir.resolve("app.log.1"), modified);
+
+        ReadSettings settings = new ReadSettings(Pattern.compile(RotationFamilies.DEFAULT_PATTERN), store,
+                ReadSettings.DEFAULT_MAX_LINE_LENGTH, null, ReadSettings.DEFAULT_PARALLEL_SCAN_THRESHOLD, null);
+        List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                logDir.resolve("app.log").toFile(),
+                new LogReadRequest(-1, null, ReadMode.LINES).withFollowRotations(true),
+                settings,
+                ScanBudget.unlimited(),
+                logDir.toString().length());
+        assertEquals(List.of("line4", "line3", "line2", "line1 error"), logFiles.get(0).logLines());
+
+        logFiles = LogReadRequestHandler.readLogs(
+                logDir.resolve("app.log").toFile(),
+                new LogReadRequest(-1, "error", ReadMode.LINES).withFollowRotations(true),
+                settings,
+                ScanBudget.unlimited(),
+                logDir.toString().length());
+        assertEquals(List.of("line1 error"), logFiles.get(0).logLines());
+    }
+
+    private static void age(Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 3_600_000));
+    }
+}
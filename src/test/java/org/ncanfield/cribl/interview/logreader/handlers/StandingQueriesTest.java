@@ -0,0 +1,141 @@
+package org.ncanfield.cribl.interview.logreader.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.models.FieldFilter;
+import org.ncanfield.cribl.interview.logreader.models.LogQuery;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+import org.ncanfield.cribl.interview.logreader.models.StandingMatch;
+import org.ncanfield.cribl.interview.logreader.models.StandingQueryResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StandingQueriesTest {
+
+    @Test
+    public void matchesOnlyAppendedLines(@TempDir Path tempDir) throws IOException, LogReaderException {
+        Path appLog = tempDir.resolve("app.log");
+        Files.writeString(appLog, "ERROR before registering\n");
+        try (StandingQueries standingQueries = new StandingQueries(tempDir, 0)) {
+            register(standingQueries, "errors", "ERROR", null, 2);
+
+            append(appLog, "INFO ok\nERROR one\nERROR two\nERROR three\nERROR not fin");
+            standingQueries.refresh();
+            StandingQueryResult result = standingQueries.get("errors");
+            assertEquals(3, result.count());
+            // Only the latest are kept, newest first, and the unfinished line waits for its newline
+            assertEquals(List.of(new StandingMatch("app.log", "ERROR three"), new StandingMatch("app.log", "ERROR two")),
+                    result.matches());
+
+            append(appLog, "ished\n");
+            standingQueries.refresh();
+            assertEquals(4, standingQueries.get("errors").count());
+            assertEquals("ERROR not finished", standingQueries.get("errors").matches().get(0).line());
+        }
+    }
+
+    @Test
+    public void checksEveryQueryInOnePass(@TempDir Path tempDir) throws IOException, LogReaderException {
+        Path appLog = tempDir.resolve("app.log");
+        Files.writeString(appLog, "");
+        try (StandingQueries standingQueries = new StandingQueries(tempDir, 0)) {
+            register(standingQueries, "errors", "ERROR", null, 10);
+            register(standingQueries, "oom", "OutOfMemory", null, 10);
+            register(standingQueries, "slow", null, "duration>=500", 10);
+
+            append(appLog, "level=ERROR msg=OutOfMemory duration=10\nlevel=INFO duration=900\nlevel=ERROR duration=600\n");
+            standingQueries.refresh();
+            assertEquals(List.of("errors", "oom", "slow"), standingQueries.getAll().stream().map(StandingQueryResult::name).toList());
+            assertEquals(2, standingQueries.get("errors").count());
+            assertEquals(1, standingQueries.get("oom").count());
+            assertEquals(2, standingQueries.get("slow").count());
+
+            assertTrue(standingQueries.remove("oom"));
+            assertFalse(standingQueries.remove("oom"));
+            assertNull(standingQueries.get("oom"));
+        }
+    }
+
+    @Test
+    public void followsTruncationAndRotation(@TempDir Path tempDir) throws IOException, LogReaderException {
+        Path appLog = tempDir.resolve("app.log");
+        Files.writeString(appLog, "");
+        try (StandingQueries standingQueries = new StandingQueries(tempDir, 0)) {
+            register(standingQueries, "errors", "ERROR", null, 10);
+            append(appLog, "ERROR one\n");
+            standingQueries.refresh();
+
+            // Truncated in place, so everything in it is new
+            Files.writeString(appLog, "ERROR 2\n");
+            standingQueries.refresh();
+            assertEquals(2, standingQueries.get("errors").count());
+
+            // Renamed away, which carries on where it was, and replaced by a new file
+            Files.move(appLog, tempDir.resolve("app-old.log"));
+            Files.writeString(appLog, "ERROR three\n");
+            standingQueries.refresh();
+            assertEquals(3, standingQueries.get("errors").count());
+            assertEquals("ERROR three", standingQueries.get("errors").matches().get(0).line());
+        }
+    }
+
+    @Test
+    public void noticesAppendsWithoutRefreshing(@TempDir Path tempDir) throws IOException, LogReaderException, InterruptedException {
+        Path appLog = tempDir.resolve("app.log");
+        Files.writeString(appLog, "");
+        try (StandingQueries standingQueries = new StandingQueries(tempDir, 0)) {
+            register(standingQueries, "errors", "ERROR", null, 10);
+            append(appLog, "ERROR watched\n");
+            // Some platforms poll for changes rather than being told about them
+            for (int i = 0; i < 300 && standingQueries.get("errors").count() == 0; i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(1, standingQueries.get("errors").count());
+        }
+    }
+
+    @Test
+    public void matchesUtf16Lines(@TempDir Path tempDir) throws IOException, LogReaderException {
+        Path appLog = tempDir.resolve("app.log");
+        Files.writeString(appLog, "\uFEFFINFO started\n", StandardCharsets.UTF_16LE);
+        try (StandingQueries standingQueries = new StandingQueries(tempDir, 0)) {
+            register(standingQueries, "errors", "ERROR", null, 10);
+
+            // \u0A45 has 0x0A as one of its bytes, which mustn't end the line
+            Files.writeString(appLog, "ERROR caf\u00E9 \u0A45\r\nINFO ok\n", StandardCharsets.UTF_16LE, StandardOpenOption.APPEND);
+            standingQueries.refresh();
+            assertEquals(List.of(new StandingMatch("app.log", "ERROR caf\u00E9 \u0A45")), standingQueries.get("errors").matches());
+        }
+    }
+
+    @Test
+    public void limitsQueries(@TempDir Path tempDir) throws IOException, LogReaderException {
+        try (StandingQueries standingQueries = new StandingQueries(tempDir, 0)) {
+            for (int i = 0; i < StandingQueries.MAX_QUERIES; i++) {
+                register(standingQueries, "query" + i, "term" + i, null, 1);
+            }
+            assertThrows(LogReaderException.class, () -> register(standingQueries, "one-more", "x", null, 1));
+            // Replacing a query doesn't count as another
+            register(standingQueries, "query0", "other", null, 1);
+        }
+    }
+
+    private static void register(StandingQueries standingQueries, String name, String searchTerm, String filter, int logLines)
+            throws LogReaderException, IOException {
+        standingQueries.register(name, new LogQuery(searchTerm, logLines, filter),
+                new LogReadRequest(logLines, searchTerm, ReadMode.LINES).withFilter(FieldFilter.parse(filter)));
+    }
+
+    private static void append(Path file, String lines) throws IOException {
+        Files.writeString(file, lines, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,63 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import org.junit.jupiter.api.Test;
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.utils.LogFormat;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FieldFilterTest {
+    @Test
+    public void parsesAndNormalizes() throws LogReaderException {
+        assertNull(FieldFilter.parse(null));
+        assertNull(FieldFilter.parse("  "));
+
+        FieldFilter filter = FieldFilter.parse("level = ERROR and status>=500 OR msg=\"disk full\"");
+        assertEquals("level=ERROR AND status>=500 OR msg=\"disk full\"", filter.toString());
+        assertEquals(filter, FieldFilter.parse(filter.toString()));
+        assertEquals(filter.hashCode(), FieldFilter.parse("level=ERROR AND status >= 500 or msg=\"disk full\"").hashCode());
+    }
+
+    @Test
+    public void rejectsInvalidFilters() {
+        assertEquals("Expected a condition before AND",
+                assertThrows(LogReaderException.class, () -> FieldFilter.parse("AND level=ERROR")).getMessage());
+        assertEquals("Could not understand the condition level",
+                assertThrows(LogReaderException.class, () -> FieldFilter.parse("level")).getMessage());
+        assertEquals("Only numbers can be compared with <",
+                assertThrows(LogReaderException.class, () -> FieldFilter.parse("status<abc")).getMessage());
+        assertEquals("A quoted value is missing its closing quote",
+                assertThrows(LogReaderException.class, () -> FieldFilter.parse("msg=\"oops")).getMessage());
+    }
+
+    @Test
+    public void matchesLines() throws LogReaderException {
+        FieldFilter filter = FieldFilter.parse("level=ERROR AND status>=500 OR level=FATAL");
+
+        assertTrue(matches(filter, "level=ERROR status=503 msg=\"upstream down\""));
+        assertTrue(matches(filter, "level=FATAL"));
+        assertFalse(matches(filter, "level=ERROR status=404"));
+        assertFalse(matches(filter, "level=WARN status=503"));
+        // Missing fields never match
+        assertFalse(matches(filter, "level=ERROR"));
+        assertFalse(matches(filter, "status=abc level=ERROR"));
+    }
+
+    @Test
+    public void comparesNumbersAndText() throws LogReaderException {
+        assertTrue(matches(FieldFilter.parse("status=500"), "status=500.0"));
+        assertTrue(matches(FieldFilter.parse("status!=500"), "status=501"));
+        assertFalse(matches(FieldFilter.parse("status!=500"), "other=501"));
+        assertTrue(matches(FieldFilter.parse("latency<0.5"), "latency=0.25"));
+        assertTrue(matches(FieldFilter.parse("latency<=-1"), "latency=-1"));
+        assertFalse(matches(FieldFilter.parse("level=error"), "level=ERROR"));
+        assertTrue(matches(FieldFilter.parse("msg=\"disk full\""), "msg=\"disk full\""));
+    }
+
+    private static boolean matches(FieldFilter filter, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return filter.matches(LogFormat.LOGFMT, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,35 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import org.junit.jupiter.api.Test;
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogCursorTest {
+
+    @Test
+    public void roundTrips() throws LogReaderException {
+        LogCursor older = new LogCursor(-42L, 7L, 0, 1234);
+        LogCursor newer = new LogCursor(42L, -7L, 1234, -1);
+
+        assertEquals(older, LogCursor.decode(older.encode()));
+        assertEquals(newer, LogCursor.decode(newer.encode()));
+        assertTrue(older.isOlder());
+        assertFalse(newer.isOlder());
+        // Safe to put straight into a query string
+        assertTrue(older.encode().matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void rejectsInvalidCursors() {
+        assertThrows(LogReaderException.class, () -> LogCursor.decode("not a cursor!"));
+        assertThrows(LogReaderException.class, () -> LogCursor.decode("AAAA"));
+        // Right length, wrong version
+        String wrongVersion = Base64.getUrlEncoder().withoutPadding().encodeToString(new byte[33]);
+        assertThrows(LogReaderException.class, () -> LogCursor.decode(wrongVersion));
+        // A range that ends before it starts
+        assertThrows(LogReaderException.class, () -> LogCursor.decode(new LogCursor(1, 1, 100, 50).encode()));
+    }
+}
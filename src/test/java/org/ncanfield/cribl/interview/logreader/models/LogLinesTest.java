@@ -0,0 +1,72 @@
+package org.ncanfield.cribl.interview.logreader.models;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogLinesTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void storesAndDecodesLines() {
+        LogLines lines = new LogLines();
+        byte[] buffer = "xxfirst line\nsecond línea".getBytes(StandardCharsets.UTF_8);
+        lines.add(buffer, 2, 10, StandardCharsets.UTF_8);
+        lines.add(buffer, 13, buffer.length - 13, StandardCharsets.UTF_8);
+        lines.add("third");
+
+        assertEquals(List.of("first line", "second línea", "third"), lines);
+        assertThrows(IndexOutOfBoundsException.class, () -> lines.get(3));
+    }
+
+    @Test
+    public void growsAcrossChunks() {
+        LogLines lines = new LogLines();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String line = "Line " + i + " " + "x".repeat(i % 50);
+            expected.add(line);
+            lines.add(line);
+        }
+        // One line bigger than the shared chunks
+        String bigLine = "y".repeat(100_000);
+        expected.add(bigLine);
+        lines.add(bigLine);
+
+        assertEquals(expected, lines);
+    }
+
+    @Test
+    public void replacesInvalidUtf8() {
+        LogLines lines = new LogLines();
+        byte[] invalid = {'a', (byte) 0xFF, 'b'};
+        lines.add(invalid, 0, invalid.length, StandardCharsets.UTF_8);
+        assertEquals("a�b", lines.get(0));
+
+        byte[] latin1 = {'c', (byte) 0xE9};
+        lines.add(latin1, 0, latin1.length, StandardCharsets.ISO_8859_1);
+        assertEquals("cé", lines.get(1));
+    }
+
+    @Test
+    public void serializesAsEscapedJsonStrings() throws Exception {
+        LogLines lines = new LogLines();
+        lines.add("plain");
+        lines.add("quote \" and \\ backslash");
+        lines.add("tab\there ünïcode");
+
+        String expected = MAPPER.writeValueAsString(List.of("plain", "quote \" and \\ backslash", "tab\there ünïcode"));
+        // Byte based output takes the raw UTF-8 path, String based output falls back to decoding
+        assertEquals(expected, new String(MAPPER.writeValueAsBytes(lines), StandardCharsets.UTF_8));
+        assertEquals(expected, MAPPER.writeValueAsString(lines));
+
+        LogFile logFile = new LogFile("a.log", "a.log", lines, null);
+        LogFile parsed = MAPPER.readValue(MAPPER.writeValueAsBytes(logFile), LogFile.class);
+        assertEquals(lines, parsed.logLines());
+    }
+}
@@ -0,0 +1,120 @@
+package org.ncanfield.cribl.interview.logreader.profiling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ncanfield.cribl.interview.logreader.handlers.LogReadRequestHandler;
+import org.ncanfield.cribl.interview.logreader.handlers.LogRoots;
+import org.ncanfield.cribl.interview.logreader.handlers.ReadSettings;
+import org.ncanfield.cribl.interview.logreader.handlers.RotationFamilies;
+import org.ncanfield.cribl.interview.logreader.handlers.ScanBudget;
+import org.ncanfield.cribl.interview.logreader.models.LogFile;
+import org.ncanfield.cribl.interview.logreader.models.LogReadRequest;
+import org.ncanfield.cribl.interview.logreader.models.ReadMode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProfilingEventsTest {
+
+    @Test
+    public void recordsReadEvents(@TempDir Path tempDir) throws IOException {
+        Path appLog = tempDir.resolve("app.log");
+        try (BufferedWriter writer = Files.newBufferedWriter(appLog)) {
+            for (int i = 0; i < 50_000; i++) {
+                writer.write(i % 10 == 0 ? "ERROR request " : "INFO request ");
+                writer.write(Integer.toString(i));
+                writer.write('\n');
+            }
+        }
+        // No log extension, so its content type has to be probed
+        Files.writeString(tempDir.resolve("notes"), "a note\n");
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            for (Class<? extends jdk.jfr.Event> eventType : List.of(
+                    FileScanEvent.class, BufferFillEvent.class, ContentProbeEvent.class, LinesWriteEvent.class)) {
+                recording.enable(eventType).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            List<LogFile> logFiles = LogReadRequestHandler.readLogs(
+                    tempDir.toFile(),
+                    new LogReadRequest(10, "ERROR", ReadMode.LINES),
+                    ReadSettings.defaults(),
+                    ScanBudget.unlimited(),
+                    tempDir.toString().length());
+            new ObjectMapper().writeValueAsBytes(logFiles);
+            recording.stop();
+
+            Path dump = tempDir.resolve("recording.jfr");
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump);
+        }
+
+        RecordedEvent fileScan = events.stream()
+                .filter(event -> event.getEventType().getName().equals("org.ncanfield.logreader.FileScan"))
+                .filter(event -> "app.log".equals(event.getString("path")))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("LINES", fileScan.getString("mode"));
+        assertEquals(10, fileScan.getLong("lines"));
+        assertTrue(fileScan.getLong("scannedBytes") > 0);
+        assertNull(fileScan.getString("error"));
+
+        assertTrue(events.stream()
+                .filter(event -> event.getEventType().getName().equals("org.ncanfield.logreader.BufferFill"))
+                .anyMatch(event -> event.getString("path").endsWith("app.log") && event.getInt("bytes") > 0));
+        assertTrue(events.stream()
+                .filter(event -> event.getEventType().getName().equals("org.ncanfield.logreader.ContentProbe"))
+                .anyMatch(event -> event.getString("path").endsWith("notes")));
+        // Files with a log extension are never probed
+        assertTrue(events.stream()
+                .filter(event -> event.getEventType().getName().equals("org.ncanfield.logreader.ContentProbe"))
+                .noneMatch(event -> event.getString("path").endsWith("app.log")));
+        assertTrue(events.stream()
+                .filter(event -> event.getEventType().getName().equals("org.ncanfield.logreader.LinesWrite"))
+                .anyMatch(event -> event.getInt("lines") == 10 && event.getLong("bytes") > 0));
+    }
+
+    @Test
+    public void recordsRequestPathThroughMountedRoots(@TempDir Path tempDir) throws IOException {
+        Path logDir = Files.createDirectories(tempDir.resolve("logs"));
+        Path disk2 = Files.createDirectories(tempDir.resolve("mnt/disk2"));
+        Path oldLog = Files.writeString(disk2.resolve("old.log"), "line\n");
+        ReadSettings settings = new ReadSettings(Pattern.compile(RotationFamilies.DEFAULT_PATTERN), null,
+                ReadSettings.DEFAULT_MAX_LINE_LENGTH, null, ReadSettings.DEFAULT_PARALLEL_SCAN_THRESHOLD,
+                new LogRoots(logDir, Map.of("archive", disk2)));
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(RequestEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            RequestEvent event = new RequestEvent();
+            event.begin();
+            event.finish(settings, logDir.toString().length(), oldLog.toFile(), new LogReadRequest(10, null, ReadMode.LINES),
+                    List.of(), ScanBudget.unlimited());
+            recording.stop();
+
+            Path dump = tempDir.resolve("recording.jfr");
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump);
+        }
+
+        // The path clients see, rather than one climbing out of the log directory
+        assertEquals(List.of("archive/old.log"), events.stream()
+                .filter(event -> event.getEventType().getName().equals("org.ncanfield.logreader.Request"))
+                .map(event -> event.getString("path"))
+                .toList());
+    }
+}
@@ -0,0 +1,72 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AhoCorasickTest {
+    @Test
+    public void findsOverlappingPatterns() {
+        AhoCorasick matcher = matcher("he", "she", "his", "hers");
+
+        assertEquals(0b1011, search(matcher, "ushers"));
+        assertEquals(0b0100, search(matcher, "this"));
+        assertEquals(0, search(matcher, "nothing at all, s h"));
+    }
+
+    @Test
+    public void findsPatternsThatEndInsideOthers() {
+        // "error" only ends where the longer "timeout error" branch fails over to it
+        AhoCorasick matcher = matcher("timeout error", "error", "out");
+
+        assertEquals(0b110, search(matcher, "timeout err error"));
+        assertEquals(0b111, search(matcher, "a timeout error"));
+    }
+
+    @Test
+    public void matchesMultiByteCharacters() {
+        AhoCorasick matcher = matcher("café", "naïve");
+
+        assertEquals(0b01, search(matcher, "le café est fermé"));
+        assertEquals(0, search(matcher, "cafe"));
+    }
+
+    @Test
+    public void emptyPatternMatchesEveryLine() {
+        AhoCorasick matcher = matcher("", "x");
+
+        assertEquals(0b01, search(matcher, ""));
+        assertEquals(0b11, search(matcher, "x"));
+    }
+
+    @Test
+    public void supportsMaxPatterns() {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < AhoCorasick.MAX_PATTERNS; i++) {
+            patterns.add("p" + i + ";");
+        }
+        AhoCorasick matcher = matcher(patterns.toArray(new String[0]));
+
+        assertEquals(1L << 63, search(matcher, "xx p63; yy"));
+        assertEquals(-1L, search(matcher, String.join("", patterns)));
+        patterns.add("one too many");
+        assertThrows(IllegalArgumentException.class, () -> matcher(patterns.toArray(new String[0])));
+    }
+
+    private static AhoCorasick matcher(String... patterns) {
+        List<byte[]> bytes = new ArrayList<>();
+        for (String pattern : patterns) {
+            bytes.add(pattern.getBytes(StandardCharsets.UTF_8));
+        }
+        return new AhoCorasick(bytes);
+    }
+
+    private static long search(AhoCorasick matcher, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return matcher.search(bytes, 0, bytes.length);
+    }
+}
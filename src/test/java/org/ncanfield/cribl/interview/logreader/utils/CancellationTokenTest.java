@@ -0,0 +1,66 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CancellationTokenTest {
+    @Test
+    public void runsCallbacksOnce() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        token.onCancel(calls::incrementAndGet);
+        assertFalse(token.isCancelled());
+        assertNull(token.getReason());
+
+        token.cancel("First");
+        token.cancel("Second");
+
+        assertTrue(token.isCancelled());
+        assertEquals("First", token.getReason());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void runsLateCallbacksStraightAway() {
+        CancellationToken token = new CancellationToken();
+        token.cancel("Done");
+        AtomicInteger calls = new AtomicInteger();
+
+        token.onCancel(calls::incrementAndGet);
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void keepsRunningCallbacksAfterOneThrows() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        token.onCancel(() -> {
+            throw new IllegalStateException("Test exception");
+        });
+        token.onCancel(calls::incrementAndGet);
+
+        token.cancel("Done");
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void skipsClosedCallbacks() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        CancellationToken.Registration registration = token.onCancel(calls::incrementAndGet);
+        token.onCancel(calls::incrementAndGet);
+        assertEquals(2, token.callbackCount());
+
+        registration.close();
+        assertEquals(1, token.callbackCount());
+        token.cancel("Done");
+
+        assertEquals(1, calls.get());
+        assertEquals(0, token.callbackCount());
+    }
+}
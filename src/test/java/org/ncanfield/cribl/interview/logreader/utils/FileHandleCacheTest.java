@@ -0,0 +1,215 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileHandleCacheTest {
+    @Test
+    public void sharesOpenFile(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("app.log");
+        Files.writeString(logPath, "first\n");
+        FileHandleCache cache = new FileHandleCache(4);
+
+        FileHandleCache.Handle first = cache.open(logPath);
+        FileHandleCache.Handle second = cache.open(logPath);
+        assertSame(first.channel(), second.channel());
+        first.close();
+        second.close();
+
+        // Still open for the next request, and sees what was appended since
+        Files.writeString(logPath, "second\n", StandardOpenOption.APPEND);
+        try (FileHandleCache.Handle third = cache.open(logPath)) {
+            assertSame(first.channel(), third.channel());
+            assertEquals("first\nsecond\n", read(third.channel()));
+        }
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void detectsCharsetOnce(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("app.log");
+        Files.write(logPath, "first\n".getBytes(StandardCharsets.UTF_16LE));
+        FileHandleCache cache = new FileHandleCache(4);
+
+        try (FileHandleCache.Handle handle = cache.open(logPath)) {
+            assertEquals(StandardCharsets.UTF_16LE, handle.charset().charset());
+            assertSame(handle.charset(), handle.charset());
+        }
+        try (FileHandleCache.Handle handle = cache.open(logPath)) {
+            assertEquals(StandardCharsets.UTF_16LE, handle.charset().charset());
+        }
+
+        // A file too short to tell is looked at again once there's more of it
+        Path shortPath = tempDir.resolve("short.log");
+        Files.write(shortPath, new byte[0]);
+        try (FileHandleCache.Handle handle = cache.open(shortPath)) {
+            assertEquals(LogCharset.UTF_8, handle.charset());
+        }
+        Files.write(shortPath, "café\n".getBytes(StandardCharsets.ISO_8859_1));
+        try (FileHandleCache.Handle handle = cache.open(shortPath)) {
+            assertEquals(StandardCharsets.ISO_8859_1, handle.charset().charset());
+        }
+    }
+
+    @Test
+    public void keepsReadingWhenAnotherReaderIsInterrupted(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("app.log");
+        Files.writeString(logPath, "first\nsecond\n".repeat(1000));
+        long size = Files.size(logPath);
+        FileHandleCache cache = new FileHandleCache(4);
+        FileHandleCache.Handle interrupted = cache.open(logPath);
+        List<FileHandleCache.Handle> readers = List.of(cache.open(logPath), cache.open(logPath), cache.open(logPath));
+        assertSame(interrupted.channel(), readers.get(0).channel());
+
+        // Readers keep going over the file while one of the others sharing its channel is interrupted
+        AtomicBoolean reading = new AtomicBoolean(true);
+        List<CompletableFuture<Long>> reads = new ArrayList<>();
+        for (FileHandleCache.Handle reader : readers) {
+            reads.add(CompletableFuture.supplyAsync(() -> {
+                long bytes = 0;
+                ByteBuffer buffer = ByteBuffer.allocate(512);
+                try {
+                    while (reading.get()) {
+                        for (long position = 0; position < size; position += 512) {
+                            bytes += reader.read(buffer.clear(), position);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return bytes;
+            }));
+        }
+        Thread.sleep(50);
+        Thread.currentThread().interrupt();
+        assertThrows(ClosedByInterruptException.class, () -> interrupted.read(ByteBuffer.allocate(16), 0));
+        assertTrue(Thread.interrupted());
+        Thread.sleep(50);
+        reading.set(false);
+
+        for (CompletableFuture<Long> read : reads) {
+            assertTrue(read.get(5, TimeUnit.SECONDS) > 0);
+        }
+        // The readers moved on to a new channel, which is cached for the next request
+        assertTrue(readers.get(0).channel().isOpen());
+        assertEquals("first\n", read(readers.get(0).channel()).substring(0, 6));
+        interrupted.close();
+        for (FileHandleCache.Handle reader : readers) {
+            reader.close();
+        }
+        try (FileHandleCache.Handle next = cache.open(logPath)) {
+            assertSame(readers.get(0).channel(), next.channel());
+            assertEquals(size, next.size());
+        }
+    }
+
+    @Test
+    public void failsReadOfRotatedFileOnceClosed(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("app.log");
+        Files.writeString(logPath, "old\n");
+        FileHandleCache cache = new FileHandleCache(4);
+        try (FileHandleCache.Handle reader = cache.open(logPath)) {
+            FileHandleCache.Handle interrupted = cache.open(logPath);
+            Files.move(logPath, tempDir.resolve("app.log.1"));
+            Files.writeString(logPath, "new\n");
+            Thread.currentThread().interrupt();
+            assertThrows(ClosedByInterruptException.class, () -> interrupted.read(ByteBuffer.allocate(16), 0));
+            Thread.interrupted();
+            interrupted.close();
+
+            // The path is a different file now, so what's left of the old one can't be read
+            assertThrows(ClosedChannelException.class, () -> reader.read(ByteBuffer.allocate(16), 0));
+        }
+    }
+
+    @Test
+    public void reopensRotatedFile(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("app.log");
+        Files.writeString(logPath, "old\n");
+        FileHandleCache cache = new FileHandleCache(4);
+        FileHandleCache.Handle old = cache.open(logPath);
+
+        Files.move(logPath, tempDir.resolve("app.log.1"));
+        Files.writeString(logPath, "new\n");
+        try (FileHandleCache.Handle current = cache.open(logPath)) {
+            assertNotSame(old.channel(), current.channel());
+            assertEquals("new\n", read(current.channel()));
+            // The old file is still being read, so it stays open until that's done
+            assertEquals("old\n", read(old.channel()));
+            old.close();
+            assertFalse(old.channel().isOpen());
+        }
+    }
+
+    @Test
+    public void reopensTruncatedFile(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("app.log");
+        Files.writeString(logPath, "a long first line\n");
+        FileHandleCache cache = new FileHandleCache(4);
+        FileHandleCache.Handle before = cache.open(logPath);
+        before.close();
+
+        Files.writeString(logPath, "short\n");
+        try (FileHandleCache.Handle after = cache.open(logPath)) {
+            assertNotSame(before.channel(), after.channel());
+            assertFalse(before.channel().isOpen());
+            assertEquals("short\n", read(after.channel()));
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed(@TempDir Path tempDir) throws Exception {
+        Files.writeString(tempDir.resolve("a.log"), "a\n");
+        Files.writeString(tempDir.resolve("b.log"), "b\n");
+        FileHandleCache cache = new FileHandleCache(1);
+
+        FileHandleCache.Handle a = cache.open(tempDir.resolve("a.log"));
+        FileHandleCache.Handle b = cache.open(tempDir.resolve("b.log"));
+        assertEquals(1, cache.size());
+        // a was evicted while in use, so it's only closed once released
+        assertTrue(a.channel().isOpen());
+        a.close();
+        assertFalse(a.channel().isOpen());
+
+        b.close();
+        assertTrue(b.channel().isOpen());
+        cache.close();
+        assertFalse(b.channel().isOpen());
+    }
+
+    @Test
+    public void opensEveryTimeWhenDisabled(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("app.log");
+        Files.writeString(logPath, "line\n");
+        FileHandleCache cache = new FileHandleCache(0);
+
+        FileHandleCache.Handle handle = cache.open(logPath);
+        handle.close();
+        assertFalse(handle.channel().isOpen());
+        assertEquals(0, cache.size());
+    }
+
+    private static String read(FileChannel channel) throws Exception {
+        ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+        channel.read(data, 0);
+        return new String(data.array(), StandardCharsets.UTF_8);
+    }
+}
@@ -3,9 +3,19 @@ package org.ncanfield.cribl.interview.logreader.utils;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+import org.ncanfield.cribl.interview.logreader.models.LogReadParams;
 import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
 
+import com.sun.net.httpserver.HttpServer;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -14,26 +24,42 @@ public class HttpUtilsTest {
     public void urlBuildsCorrectly() {
         String baseUrl = "test";
 
-        String testUrl = HttpUtils.makeUrl(baseUrl, null, null, null);
+        String testUrl = HttpUtils.makeUrl(baseUrl, "/logs", LogReadParams.of(null, null, null));
         assertEquals("test/logs?", testUrl);
 
-        testUrl = HttpUtils.makeUrl(baseUrl, "somefile", null, null);
+        testUrl = HttpUtils.makeUrl(baseUrl, "/logs", LogReadParams.of("somefile", null, null));
         assertEquals("test/logs?fileName=somefile&", testUrl);
 
-        testUrl = HttpUtils.makeUrl(baseUrl, "somefile", 1, null);
+        testUrl = HttpUtils.makeUrl(baseUrl, "/logs", LogReadParams.of("somefile", 1, null));
         assertEquals("test/logs?fileName=somefile&logLines=1&", testUrl);
 
-        testUrl = HttpUtils.makeUrl(baseUrl, "somefile", 1, "blah");
+        testUrl = HttpUtils.makeUrl(baseUrl, "/logs", LogReadParams.of("somefile", 1, "blah"));
         assertEquals("test/logs?fileName=somefile&logLines=1&searchTerm=blah", testUrl);
 
-        testUrl = HttpUtils.makeUrl(baseUrl, null, 1, "blah");
+        testUrl = HttpUtils.makeUrl(baseUrl, "/logs", LogReadParams.of(null, 1, "blah"));
         assertEquals("test/logs?logLines=1&searchTerm=blah", testUrl);
 
-        testUrl = HttpUtils.makeUrl(baseUrl, null, 1, null);
+        testUrl = HttpUtils.makeUrl(baseUrl, "/logs", LogReadParams.of(null, 1, null));
         assertEquals("test/logs?logLines=1&", testUrl);
 
-        testUrl = HttpUtils.makeUrl(baseUrl, null, null, "blah");
+        testUrl = HttpUtils.makeUrl(baseUrl, "/logs", LogReadParams.of(null, null, "blah"));
         assertEquals("test/logs?searchTerm=blah", testUrl);
+
+        testUrl = HttpUtils.makeUrl(baseUrl, "/logs", LogReadParams.of(null, 1, "blah").withMode("patterns"));
+        assertEquals("test/logs?logLines=1&mode=patterns&searchTerm=blah", testUrl);
+
+        testUrl = HttpUtils.makeUrl(baseUrl, "/logs", LogReadParams.of(null, null, "blah").withFollowRotations(true)
+                .withFilter("level=ERROR AND status>=500"));
+        assertEquals("test/logs?followRotations=true&filter=level%3DERROR+AND+status%3E%3D500&searchTerm=blah", testUrl);
+    }
+
+    @Test
+    public void urlEncodesEveryValue() {
+        String testUrl = HttpUtils.makeUrl("test", "/logs", LogReadParams.of("dir/app 1.log", 5, "a&b=c #1+2")
+                .withMode("pat terns")
+                .withCursors(List.of("x&y")));
+        assertEquals("test/logs?fileName=dir%2Fapp+1.log&logLines=5&mode=pat+terns&cursor=x%26y&searchTerm=a%26b%3Dc+%231%2B2",
+                testUrl);
     }
 
     @Test
@@ -81,4 +107,62 @@ public class HttpUtilsTest {
         assertEquals("There was an error fetching the response from the server", response.errors().get(0));
         assertEquals("test/logs", response.serverName());
     }
+
+    @Test
+    public void handleCachedResponseReusesResponseWhenNotModified() {
+        PeerResponseCache cache = new PeerResponseCache(10, 1024 * 1024);
+        String body = "{\"serverName\":\"MyServer\",\"logFiles\":[],\"errors\":[]}";
+        HttpResponse<String> ok = mockResponse(200, body, "\"abc\"");
+        LogReadResponse first = HttpUtils.handleCachedResponse(ok, null, "test/logs", null, cache);
+        assertEquals("MyServer", first.serverName());
+        assertEquals("\"abc\"", cache.get("test/logs").etag());
+        assertEquals(body.length(), cache.getCachedBytes());
+
+        HttpResponse<String> notModified = mockResponse(304, "", "\"abc\"");
+        LogReadResponse second = HttpUtils.handleCachedResponse(notModified, null, "test/logs", cache.get("test/logs"), cache);
+        assertSame(first, second);
+
+        // Errors and untagged responses drop the cached copy
+        HttpResponse<String> untagged = mockResponse(200, body, null);
+        HttpUtils.handleCachedResponse(untagged, null, "test/logs", cache.get("test/logs"), cache);
+        assertNull(cache.get("test/logs"));
+    }
+
+    @Test
+    public void buildFutureSendsIfNoneMatch() throws Exception {
+        List<String> ifNoneMatch = new ArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/logs", exchange -> {
+            String tag = exchange.getRequestHeaders().getFirst("If-None-Match");
+            ifNoneMatch.add(tag);
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            if ("\"v1\"".equals(tag)) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] body = "{\"serverName\":\"Peer\",\"logFiles\":[],\"errors\":[]}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            String url = "http://localhost:" + server.getAddress().getPort() + "/logs?";
+            assertEquals("Peer", HttpUtils.buildFuture(url).join().serverName());
+            assertEquals("Peer", HttpUtils.buildFuture(url).join().serverName());
+            assertEquals(Arrays.asList(null, "\"v1\""), ifNoneMatch);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<String> mockResponse(int status, String body, String etag) {
+        HttpResponse<String> response = Mockito.mock(HttpResponse.class);
+        Mockito.when(response.statusCode()).thenReturn(status);
+        Mockito.when(response.body()).thenReturn(body);
+        Mockito.when(response.headers()).thenReturn(HttpHeaders.of(
+                etag != null ? Map.of("ETag", List.of(etag)) : Map.of(), (name, value) -> true));
+        return response;
+    }
 }
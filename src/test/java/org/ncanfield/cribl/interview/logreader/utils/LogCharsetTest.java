@@ -0,0 +1,69 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogCharsetTest {
+    @Test
+    public void detectsByteOrderMarks() {
+        assertEquals(new LogCharset(StandardCharsets.UTF_8, 3), detect(withBom(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF},
+                "line\n", StandardCharsets.UTF_8)));
+        assertEquals(new LogCharset(StandardCharsets.UTF_16LE, 2), detect(withBom(new byte[] {(byte) 0xFF, (byte) 0xFE},
+                "line\n", StandardCharsets.UTF_16LE)));
+        assertEquals(new LogCharset(StandardCharsets.UTF_16BE, 2), detect(withBom(new byte[] {(byte) 0xFE, (byte) 0xFF},
+                "line\n", StandardCharsets.UTF_16BE)));
+    }
+
+    @Test
+    public void detectsUtf16WithoutByteOrderMark() {
+        assertEquals(StandardCharsets.UTF_16LE, detect("first line\nsecond line\n".getBytes(StandardCharsets.UTF_16LE)).charset());
+        assertEquals(StandardCharsets.UTF_16BE, detect("first line\nsecond line\n".getBytes(StandardCharsets.UTF_16BE)).charset());
+    }
+
+    @Test
+    public void detectsUtf8AndFallsBackToLatin1() {
+        assertEquals(LogCharset.UTF_8, detect("plain ascii\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(LogCharset.UTF_8, detect("café €\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(LogCharset.UTF_8, detect(new byte[0]));
+        assertEquals(StandardCharsets.ISO_8859_1, detect("café\n".getBytes(StandardCharsets.ISO_8859_1)).charset());
+    }
+
+    @Test
+    public void allowsCharacterCutOffBySample() {
+        byte[] bytes = new byte[LogCharset.SAMPLE_SIZE];
+        Arrays.fill(bytes, (byte) 'a');
+        byte[] euro = "€".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(euro, 0, bytes, bytes.length - 2, 2);
+        assertEquals(LogCharset.UTF_8, LogCharset.detect(bytes, bytes.length));
+    }
+
+    @Test
+    public void alignsRangesToCharacters() {
+        LogCharset utf16 = new LogCharset(StandardCharsets.UTF_16LE, 2);
+        assertEquals(2, utf16.alignStart(0));
+        assertEquals(4, utf16.alignStart(3));
+        assertEquals(10, utf16.alignEnd(2, 11));
+        assertEquals(4, utf16.alignEnd(4, 1));
+
+        LogCharset utf8 = new LogCharset(StandardCharsets.UTF_8, 3);
+        assertEquals(3, utf8.alignStart(0));
+        assertEquals(11, utf8.alignEnd(3, 11));
+    }
+
+    private static LogCharset detect(byte[] bytes) {
+        return LogCharset.detect(bytes, bytes.length);
+    }
+
+    private static byte[] withBom(byte[] bom, String text, Charset charset) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(bom);
+        out.writeBytes(text.getBytes(charset));
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,95 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogFormatTest {
+    @Test
+    public void detectsFormats() {
+        assertEquals(LogFormat.JSON, detect("  {\"level\":\"INFO\"}"));
+        assertEquals(LogFormat.SYSLOG, detect("<34>1 2024-01-02T03:04:05Z host app - - - hi"));
+        assertEquals(LogFormat.SYSLOG, detect("Oct  9 10:00:00 host sshd[123]: Accepted"));
+        assertEquals(LogFormat.LOGFMT, detect("time=2024 level=info"));
+        assertEquals(LogFormat.LOGFMT, detect("just some text"));
+    }
+
+    @Test
+    public void findsJsonFields() {
+        String line = "{\"level\": \"ERROR\", \"status\":503, \"msg\":\"said \\\"level\\\":x\", \"ok\":true, \"nested\":{\"a\":1}}";
+        assertEquals("ERROR", find(LogFormat.JSON, line, "level"));
+        assertEquals("503", find(LogFormat.JSON, line, "status"));
+        assertEquals("said \\\"level\\\":x", find(LogFormat.JSON, line, "msg"));
+        assertEquals("true", find(LogFormat.JSON, line, "ok"));
+        assertEquals("1", find(LogFormat.JSON, line, "a"));
+        // Objects aren't scalar values, and keys only match whole keys
+        assertNull(find(LogFormat.JSON, line, "nested"));
+        assertNull(find(LogFormat.JSON, line, "leve"));
+        assertNull(find(LogFormat.JSON, line, "missing"));
+    }
+
+    @Test
+    public void findsLogfmtFields() {
+        String line = "ts=1 level=warn msg=\"disk \\\"sda\\\" full\" empty= flag status=507";
+        assertEquals("warn", find(LogFormat.LOGFMT, line, "level"));
+        assertEquals("disk \\\"sda\\\" full", find(LogFormat.LOGFMT, line, "msg"));
+        assertEquals("", find(LogFormat.LOGFMT, line, "empty"));
+        assertEquals("507", find(LogFormat.LOGFMT, line, "status"));
+        assertNull(find(LogFormat.LOGFMT, line, "flag"));
+        assertNull(find(LogFormat.LOGFMT, line, "full"));
+    }
+
+    @Test
+    public void findsRfc3164Fields() {
+        String line = "<38>Oct  9 10:00:00 myhost sshd[1234]: Accepted password user=bob";
+        assertEquals("38", find(LogFormat.SYSLOG, line, "pri"));
+        assertEquals("Oct  9 10:00:00", find(LogFormat.SYSLOG, line, "timestamp"));
+        assertEquals("myhost", find(LogFormat.SYSLOG, line, "host"));
+        assertEquals("sshd", find(LogFormat.SYSLOG, line, "app"));
+        assertEquals("1234", find(LogFormat.SYSLOG, line, "pid"));
+        assertEquals("Accepted password user=bob", find(LogFormat.SYSLOG, line, "message"));
+        assertEquals("bob", find(LogFormat.SYSLOG, line, "user"));
+        assertNull(find(LogFormat.SYSLOG, line, "msgid"));
+
+        line = "2024-01-02T03:04:05+00:00 myhost kernel: oops";
+        assertNull(find(LogFormat.SYSLOG, line, "pri"));
+        assertEquals("2024-01-02T03:04:05+00:00", find(LogFormat.SYSLOG, line, "timestamp"));
+        assertEquals("kernel", find(LogFormat.SYSLOG, line, "app"));
+        assertNull(find(LogFormat.SYSLOG, line, "pid"));
+        assertEquals("oops", find(LogFormat.SYSLOG, line, "message"));
+    }
+
+    @Test
+    public void findsRfc5424Fields() {
+        String line = "<165>1 2024-01-02T03:04:05Z myhost app 42 ID47 [ex@1 k=\"v]\"][b@2 x=\"y\"] msg status=500";
+        assertEquals("165", find(LogFormat.SYSLOG, line, "pri"));
+        assertEquals("2024-01-02T03:04:05Z", find(LogFormat.SYSLOG, line, "timestamp"));
+        assertEquals("myhost", find(LogFormat.SYSLOG, line, "host"));
+        assertEquals("app", find(LogFormat.SYSLOG, line, "app"));
+        assertEquals("42", find(LogFormat.SYSLOG, line, "pid"));
+        assertEquals("ID47", find(LogFormat.SYSLOG, line, "msgid"));
+        assertEquals("msg status=500", find(LogFormat.SYSLOG, line, "message"));
+        assertEquals("500", find(LogFormat.SYSLOG, line, "status"));
+
+        line = "<165>1 2024-01-02T03:04:05Z myhost app - - - hello";
+        assertEquals("-", find(LogFormat.SYSLOG, line, "pid"));
+        assertEquals("hello", find(LogFormat.SYSLOG, line, "message"));
+    }
+
+    private static LogFormat detect(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return LogFormat.detect(bytes, 0, bytes.length);
+    }
+
+    private static String find(LogFormat format, String line, String field) {
+        // Pad the line so the bounds aren't just the whole buffer
+        byte[] bytes = ("xx" + line + "yy").getBytes(StandardCharsets.UTF_8);
+        int[] value = new int[2];
+        if (!format.findField(bytes, 2, bytes.length - 2, field.getBytes(StandardCharsets.UTF_8), value)) {
+            return null;
+        }
+        return new String(bytes, value[0], value[1] - value[0], StandardCharsets.UTF_8);
+    }
+}
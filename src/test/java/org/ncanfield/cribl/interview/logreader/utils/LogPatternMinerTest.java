@@ -0,0 +1,80 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+import org.ncanfield.cribl.interview.logreader.models.LogPattern;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogPatternMinerTest {
+    @Test
+    public void clustersSimilarLines() {
+        LogPatternMiner miner = new LogPatternMiner();
+        miner.add("Connection from 10.0.0.1 closed");
+        miner.add("Connection from 10.0.0.2 closed");
+        miner.add("Connection from 10.0.0.3 closed");
+        miner.add("Disk usage at 91 percent");
+
+        List<LogPattern> patterns = miner.getPatterns();
+        assertEquals(2, patterns.size());
+        assertEquals("Connection from <*> closed", patterns.get(0).template());
+        assertEquals(3, patterns.get(0).count());
+        // The sample is the first line that created the cluster
+        assertEquals("Connection from 10.0.0.1 closed", patterns.get(0).sample());
+        assertEquals("Disk usage at <*> percent", patterns.get(1).template());
+        assertEquals(1, patterns.get(1).count());
+    }
+
+    @Test
+    public void keepsDissimilarLinesApart() {
+        LogPatternMiner miner = new LogPatternMiner();
+        miner.add("GET /index.html 200");
+        miner.add("Worker pool resized to 8");
+        miner.add("Worker pool drained");
+
+        assertEquals(3, miner.getPatterns().size());
+        assertTrue(miner.getPatterns().stream().anyMatch(pattern -> "GET /index.html <*>".equals(pattern.template())));
+    }
+
+    @Test
+    public void mergesWeightedTemplates() {
+        LogPatternMiner miner = new LogPatternMiner();
+        miner.add("Connection from <*> closed", 5, "Connection from 10.0.0.1 closed");
+        miner.add("Connection from 10.0.0.9 closed", 2, "Connection from 10.0.0.9 closed");
+
+        List<LogPattern> patterns = miner.getPatterns();
+        assertEquals(1, patterns.size());
+        assertEquals("Connection from <*> closed", patterns.get(0).template());
+        assertEquals(7, patterns.get(0).count());
+    }
+
+    @Test
+    public void boundsClusterCount() {
+        LogPatternMiner miner = new LogPatternMiner(4, 0.4, 100, 2);
+        miner.add("alpha beta");
+        miner.add("gamma delta epsilon");
+        miner.add("one two three four");
+        miner.add("five six seven eight nine");
+
+        List<LogPattern> patterns = miner.getPatterns();
+        // Two real clusters plus the catch-all
+        assertEquals(3, patterns.size());
+        assertTrue(patterns.stream().anyMatch(pattern -> LogPatternMiner.WILDCARD.equals(pattern.template()) && pattern.count() == 2));
+    }
+
+    @Test
+    public void keepsTemplatesOnceFull() {
+        LogPatternMiner miner = new LogPatternMiner(4, 0.4, 100, 1);
+        miner.add("job run started cleanly on host");
+        // Same length and leaf, but too different to merge into the only cluster
+        miner.add("job run aborted badly by operator");
+        // A leaf that doesn't exist yet isn't created once full
+        miner.add("task run started cleanly on host");
+
+        List<LogPattern> patterns = miner.getPatterns();
+        assertEquals(2, patterns.size());
+        assertTrue(patterns.stream().anyMatch(pattern -> "job run started cleanly on host".equals(pattern.template()) && pattern.count() == 1));
+        assertTrue(patterns.stream().anyMatch(pattern -> LogPatternMiner.WILDCARD.equals(pattern.template()) && pattern.count() == 2));
+    }
+}
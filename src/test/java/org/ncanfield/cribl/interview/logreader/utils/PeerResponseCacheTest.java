@@ -0,0 +1,56 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+import org.ncanfield.cribl.interview.logreader.models.LogReadResponse;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PeerResponseCacheTest {
+    private static final LogReadResponse RESPONSE = new LogReadResponse("Peer", List.of(), List.of());
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        PeerResponseCache cache = new PeerResponseCache(2, 1000);
+        cache.put("a", "\"1\"", RESPONSE, 10);
+        cache.put("b", "\"2\"", RESPONSE, 10);
+        // Touch a so b is the eldest
+        assertNotNull(cache.get("a"));
+        cache.put("c", "\"3\"", RESPONSE, 10);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(20, cache.getCachedBytes());
+    }
+
+    @Test
+    public void boundsTotalBytes() {
+        PeerResponseCache cache = new PeerResponseCache(10, 100);
+        cache.put("a", "\"1\"", RESPONSE, 60);
+        cache.put("b", "\"2\"", RESPONSE, 60);
+        assertNull(cache.get("a"));
+        assertEquals(60, cache.getCachedBytes());
+
+        // Too big to ever cache, and it replaces the older copy
+        cache.put("b", "\"3\"", RESPONSE, 101);
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.getCachedBytes());
+    }
+
+    @Test
+    public void replacesExistingResponse() {
+        PeerResponseCache cache = new PeerResponseCache(10, 100);
+        cache.put("a", "\"1\"", RESPONSE, 30);
+        cache.put("a", "\"2\"", RESPONSE, 40);
+        assertEquals("\"2\"", cache.get("a").etag());
+        assertEquals(1, cache.size());
+        assertEquals(40, cache.getCachedBytes());
+
+        cache.remove("a");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getCachedBytes());
+    }
+}
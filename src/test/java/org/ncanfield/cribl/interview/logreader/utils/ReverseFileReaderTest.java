@@ -1,11 +1,13 @@
 package org.ncanfield.cribl.interview.logreader.utils;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -90,6 +92,121 @@ public class ReverseFileReaderTest {
         assertEquals("Ten will work.", lines.get(0));
     }
 
+    @Test
+    public void readsAheadInPipelinedMode() throws Exception {
+        Path longFilePath = Paths.get(ReverseFileReaderTest.class.getResource("/longLineFile.txt").toURI());
+        ReverseFileReader rfr = new ReverseFileReader(StandardCharsets.UTF_8, longFilePath, 10, 2);
+
+        List<String> lines = readFile(rfr);
+        rfr.close();
+
+        assertEquals(4, lines.size());
+        assertEquals("This file has slightly longer lines than the others.", lines.get(3));
+        assertEquals("This is so we can test that the buffer will actually load some lines in.", lines.get(2));
+        assertEquals("To help with this, we'll also be setting the buffer size pretty low.", lines.get(1));
+        assertEquals("Ten will work.", lines.get(0));
+    }
+
+    @Test
+    public void pipelinedModeMatchesSynchronousMode(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("large.log");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append("Line number ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        Files.writeString(logPath, content.toString());
+
+        List<String> expected;
+        try (ReverseFileReader rfr = new ReverseFileReader(StandardCharsets.UTF_8, logPath, 4096)) {
+            expected = readFile(rfr);
+        }
+        try (ReverseFileReader rfr = new ReverseFileReader(StandardCharsets.UTF_8, logPath, 4096, 2)) {
+            assertEquals(expected, readFile(rfr));
+        }
+        assertEquals("Line number 19999", expected.get(1));
+    }
+
+    @Test
+    public void truncatesLongLines(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("long.log");
+        String longLine = "x".repeat(10000);
+        Files.writeString(logPath, longLine + "\nfirst\n" + "é".repeat(5000) + "\r\nlast\n" + longLine + "y");
+
+        List<String> expected = List.of(
+                "x".repeat(20) + String.format(ReverseFileReader.TRUNCATED_MARKER, 10001),
+                "last",
+                // 20 bytes is 10 whole characters
+                "é".repeat(10) + String.format(ReverseFileReader.TRUNCATED_MARKER, 10000),
+                "first",
+                "x".repeat(20) + String.format(ReverseFileReader.TRUNCATED_MARKER, 10000));
+        try (ReverseFileReader rfr = new ReverseFileReader(StandardCharsets.UTF_8, logPath, 16, 0, 20)) {
+            assertEquals(expected, readFile(rfr));
+        }
+        try (ReverseFileReader rfr = new ReverseFileReader(StandardCharsets.UTF_8, logPath, 16, 2, 20)) {
+            assertEquals(expected, readFile(rfr));
+        }
+        // A line in a single buffer is truncated too
+        try (ReverseFileReader rfr = new ReverseFileReader(StandardCharsets.UTF_8, logPath, 65536, 0, 20)) {
+            assertEquals(expected, readFile(rfr));
+        }
+    }
+
+    @Test
+    public void readsLongLinesWholeWithoutMax(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("long.log");
+        String longLine = "x".repeat(100000);
+        Files.writeString(logPath, "first\n" + longLine + "\nlast");
+
+        try (ReverseFileReader rfr = new ReverseFileReader(StandardCharsets.UTF_8, logPath, 16)) {
+            assertEquals(List.of("last", longLine, "first"), readFile(rfr));
+        }
+    }
+
+    @Test
+    public void pipelinedModeHandlesEmptyFile() throws Exception {
+        Path emptyFilePath = Paths.get(ReverseFileReaderTest.class.getResource("/emptyFile.txt").toURI());
+        try (ReverseFileReader rfr = new ReverseFileReader(StandardCharsets.UTF_8, emptyFilePath, 4096, 2)) {
+            assertEquals(0, readFile(rfr).size());
+        }
+    }
+
+    @Test
+    public void readersShareCachedFile(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("shared.log");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        Files.writeString(logPath, content);
+
+        FileHandleCache cache = new FileHandleCache(4);
+        try (ReverseFileReader first = new ReverseFileReader(StandardCharsets.UTF_8, cache.open(logPath), 512, 0, 0);
+             ReverseFileReader second = new ReverseFileReader(StandardCharsets.UTF_8, cache.open(logPath), 256, 2, 0)) {
+            // The trailing newline gives an empty last line
+            assertEquals("", first.readLine());
+            assertEquals("", second.readLine());
+            // Interleaved reads on the one channel don't disturb each other
+            for (int i = 4999; i >= 0; i--) {
+                assertEquals("line " + i, first.readLine());
+                assertEquals("line " + i, second.readLine());
+            }
+        }
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void readsRangeOfFile(@TempDir Path tempDir) throws Exception {
+        Path logPath = tempDir.resolve("range.log");
+        Files.writeString(logPath, "first\nsecond\r\nthird\nfourth\n");
+
+        // Just "second\r\nthird\n", read as if it was the whole file
+        try (ReverseFileReader rfr = new ReverseFileReader(
+                StandardCharsets.UTF_8, FileHandleCache.openUncached(logPath), 6, 20, 4, 2, 0)) {
+            assertEquals(List.of("", "third", "second"), readFile(rfr));
+            assertEquals(14, rfr.getBytesRead());
+        }
+    }
+
     private static List<String> readFile(ReverseFileReader rfr) throws IOException, LogReaderException {
         List<String> lines = new ArrayList<>();
 
@@ -0,0 +1,132 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RotationChainReaderTest {
+    private static final RotationChainReader.ReaderOpener OPENER =
+            path -> new ReverseFileReader(StandardCharsets.UTF_8, path, 8);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void readsMembersNewestFirst() throws Exception {
+        Path live = Files.writeString(tempDir.resolve("app.log"), "line5\nline6\n");
+        Path first = Files.writeString(tempDir.resolve("app.log.1"), "line3\nline4\n");
+        Path second = tempDir.resolve("app.log.2.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(second))) {
+            out.write("line1\nline2\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<String> lines = new ArrayList<>();
+        try (RotationChainReader reader = new RotationChainReader(List.of(live, first, second), OPENER, StandardCharsets.UTF_8)) {
+            while (reader.nextLine()) {
+                String line = new String(reader.getLineBuffer(), reader.getLineStart(), reader.getLineLength(), StandardCharsets.UTF_8);
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+            assertFalse(reader.hasMoreData());
+            assertEquals(36, reader.getBytesRead());
+        }
+        assertEquals(List.of("line6", "line5", "line4", "line3", "line2", "line1"), lines);
+
+        // The inflated copy is cleaned up once read
+        try (var files = Files.list(tempDir)) {
+            assertEquals(3, files.count());
+        }
+    }
+
+    @Test
+    public void opensOlderMembersLazily() throws Exception {
+        Path live = Files.writeString(tempDir.resolve("app.log"), "line3\nline4");
+        Path first = Files.writeString(tempDir.resolve("app.log.1"), "line1\nline2");
+
+        try (RotationChainReader reader = new RotationChainReader(List.of(live, first), OPENER, StandardCharsets.UTF_8)) {
+            assertEquals(0, reader.getOpenedCount());
+            assertTrue(reader.nextLine());
+            assertTrue(reader.nextLine());
+            assertEquals(1, reader.getOpenedCount());
+            assertTrue(reader.nextLine());
+            assertEquals("line2", new String(reader.getLineBuffer(), reader.getLineStart(), reader.getLineLength(), StandardCharsets.UTF_8));
+            assertEquals(2, reader.getOpenedCount());
+        }
+    }
+
+    @Test
+    public void skipsMissingLiveFile() throws Exception {
+        Path first = Files.writeString(tempDir.resolve("app.log.1"), "line1");
+
+        try (RotationChainReader reader = new RotationChainReader(List.of(first), OPENER, StandardCharsets.UTF_8)) {
+            assertTrue(reader.nextLine());
+            assertEquals("line1", new String(reader.getLineBuffer(), reader.getLineStart(), reader.getLineLength(), StandardCharsets.UTF_8));
+            assertFalse(reader.nextLine());
+        }
+    }
+
+    @Test
+    public void stopsInflatingOnceBudgetRunsOut() throws Exception {
+        Path live = Files.writeString(tempDir.resolve("app.log"), "line3");
+        Path first = tempDir.resolve("app.log.1.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(first))) {
+            out.write("line\n".repeat(100000).getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Only the first block inflated is allowed
+        AtomicLong charged = new AtomicLong();
+        try (RotationChainReader reader = new RotationChainReader(List.of(live, first), OPENER, StandardCharsets.UTF_8,
+                bytes -> charged.addAndGet(bytes) <= 64 * 1024, RotationChainReader.DEFAULT_MAX_INFLATED_BYTES)) {
+            assertTrue(reader.nextLine());
+            assertEquals("line3", new String(reader.getLineBuffer(), reader.getLineStart(), reader.getLineLength(), StandardCharsets.UTF_8));
+            assertFalse(reader.nextLine());
+            assertTrue(reader.isStoppedEarly());
+            assertTrue(reader.hasMoreData());
+        }
+        // Stopped well short of the 500KB the rotation inflates to
+        assertTrue(charged.get() < 200 * 1024);
+    }
+
+    @Test
+    public void skipsRotationsPastMaxInflatedSize() throws Exception {
+        Path live = Files.writeString(tempDir.resolve("app.log"), "line3");
+        Path first = tempDir.resolve("app.log.1.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(first))) {
+            out.write("line\n".repeat(1000).getBytes(StandardCharsets.UTF_8));
+        }
+        Path second = Files.writeString(tempDir.resolve("app.log.2"), "line1\n");
+
+        try (RotationChainReader reader = new RotationChainReader(List.of(live, first, second), OPENER, StandardCharsets.UTF_8,
+                bytes -> true, 1000)) {
+            assertTrue(reader.nextLine());
+            assertFalse(reader.nextLine());
+            assertTrue(reader.isStoppedEarly());
+            // The chain ends at the rotation that's too big, so nothing older is read past the gap
+            assertEquals(2, reader.getOpenedCount());
+        }
+    }
+
+    @Test
+    public void throwsForCorruptGzip() throws IOException {
+        Path broken = Files.writeString(tempDir.resolve("app.log.1.gz"), "not gzip");
+
+        try (RotationChainReader reader = new RotationChainReader(List.of(broken), OPENER, StandardCharsets.UTF_8)) {
+            assertThrows(IOException.class, reader::nextLine);
+        }
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+}
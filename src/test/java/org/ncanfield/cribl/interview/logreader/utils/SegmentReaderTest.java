@@ -0,0 +1,120 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentReaderTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void readsLinesInReverse() throws Exception {
+        Path source = Files.writeString(tempDir.resolve("app.log.1"), "first\r\nsecond\rthird\n\nfifth");
+        Path segment = tempDir.resolve("app.log.1.seg");
+        SegmentWriter.write(source, segment);
+
+        try (SegmentReader reader = new SegmentReader(segment, null)) {
+            assertEquals(List.of("fifth", "", "third", "second", "first"), readAll(reader));
+            assertFalse(reader.hasMoreData());
+            // Each line and its \\n
+            assertEquals(26, reader.getBytesRead());
+        }
+
+        SegmentFormat.Footer footer = SegmentFormat.readFooter(segment);
+        assertEquals(Files.size(source), footer.sourceSize());
+        assertEquals(Files.getLastModifiedTime(source).toMillis(), footer.sourceModified());
+        assertEquals(1, footer.blockCount());
+    }
+
+    @Test
+    public void truncatesLongLinesWhenWritten() throws Exception {
+        Path source = Files.writeString(tempDir.resolve("app.log.1"), "first\n" + "x".repeat(100000) + "\nlast");
+        Path segment = tempDir.resolve("app.log.1.seg");
+        SegmentWriter.write(source, segment, 10);
+
+        try (SegmentReader reader = new SegmentReader(segment, null)) {
+            assertEquals(
+                    List.of("last", "x".repeat(10) + String.format(ReverseFileReader.TRUNCATED_MARKER, 100000), "first"),
+                    readAll(reader));
+        }
+    }
+
+    @Test
+    public void readsManyBlocksAndGzip() throws Exception {
+        List<String> lines = new ArrayList<>();
+        Path source = tempDir.resolve("app.log.2.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(source))) {
+            for (int i = 0; i < 50000; i++) {
+                String line = "2024-01-02T03:04:05 line number " + i;
+                lines.add(0, line);
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        Path segment = tempDir.resolve("app.log.2.gz.seg");
+        SegmentWriter.write(source, segment);
+        assertTrue(SegmentFormat.readFooter(segment).blockCount() > 10);
+        // Compressed a fair bit even with the filters
+        assertTrue(Files.size(segment) < 50000L * 30);
+
+        try (SegmentReader reader = new SegmentReader(segment, null)) {
+            assertEquals(lines, readAll(reader));
+        }
+    }
+
+    @Test
+    public void skipsBlocksWithoutSearchTerm() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 30000; i++) {
+            content.append(i == 12345 ? "request failed with needle-in-haystack" : "request ok " + i % 10).append('\n');
+        }
+        Path source = Files.writeString(tempDir.resolve("app.log.1"), content);
+        Path segment = tempDir.resolve("app.log.1.seg");
+        SegmentWriter.write(source, segment);
+        int blocks = SegmentFormat.readFooter(segment).blockCount();
+        assertTrue(blocks > 3);
+
+        try (SegmentReader reader = new SegmentReader(segment, "needle-in-haystack".getBytes(StandardCharsets.UTF_8))) {
+            assertTrue(readAll(reader).contains("request failed with needle-in-haystack"));
+            assertEquals(1, reader.getBlocksRead());
+            assertEquals(blocks - 1, reader.getBlocksSkipped());
+        }
+    }
+
+    @Test
+    public void rejectsOtherVersions() throws IOException {
+        Path source = tempDir.resolve("app.1.log");
+        Files.writeString(source, "first\nsecond\n");
+        Path segment = tempDir.resolve("app.1.log.seg");
+        SegmentWriter.write(source, segment);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[7] = (byte) (SegmentFormat.VERSION + 1);
+        Files.write(segment, bytes);
+
+        assertThrows(IOException.class, () -> SegmentFormat.readFooter(segment));
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Path notSegment = Files.writeString(tempDir.resolve("app.log"), "this is plainly not a segment file at all");
+        assertThrows(IOException.class, () -> new SegmentReader(notSegment, null));
+    }
+
+    private static List<String> readAll(SegmentReader reader) throws Exception {
+        List<String> lines = new ArrayList<>();
+        while (reader.nextLine()) {
+            lines.add(new String(reader.getLineBuffer(), reader.getLineStart(), reader.getLineLength(), StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,100 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+    @Test
+    public void sharesResultBetweenConcurrentCalls() throws Exception {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Integer> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            started.countDown();
+            await(release);
+            return calls.incrementAndGet();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<Integer>> followers = List.of(
+                CompletableFuture.supplyAsync(() -> singleFlight.execute("key", calls::incrementAndGet)),
+                CompletableFuture.supplyAsync(() -> singleFlight.execute("key", calls::incrementAndGet)));
+        // Give the followers a moment to join the in-flight call
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals(1, leader.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Integer> follower : followers) {
+            assertEquals(1, follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    public void runsAgainOnceFinished() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals(1, singleFlight.execute("key", calls::incrementAndGet));
+        assertEquals(2, singleFlight.execute("key", calls::incrementAndGet));
+        assertEquals(3, singleFlight.execute("otherKey", calls::incrementAndGet));
+    }
+
+    @Test
+    public void onlyCancelsSharedWorkOnceEveryCallerIsCancelled() throws Exception {
+        SingleFlight<String, Boolean> singleFlight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CancellationToken leaderToken = new CancellationToken();
+        CancellationToken followerToken = new CancellationToken();
+
+        CompletableFuture<Boolean> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", leaderToken, shared -> {
+            started.countDown();
+            while (!shared.isCancelled()) {
+                Thread.onSpinWait();
+            }
+            return true;
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> follower = CompletableFuture.supplyAsync(
+                () -> singleFlight.execute("key", followerToken, shared -> false));
+        Thread.sleep(100);
+
+        leaderToken.cancel("Test");
+        Thread.sleep(100);
+        // The follower is still waiting, so the work carries on
+        assertFalse(leader.isDone());
+
+        followerToken.cancel("Test");
+        assertTrue(leader.get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    public void propagatesExceptions() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("key", () -> {
+            throw new IllegalStateException("Test exception");
+        }));
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
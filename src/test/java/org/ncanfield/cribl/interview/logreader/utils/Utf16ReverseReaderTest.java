@@ -0,0 +1,104 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ncanfield.cribl.interview.logreader.exception.LogReaderException;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Utf16ReverseReaderTest {
+    @Test
+    public void readsLinesInReverseAsUtf8(@TempDir Path tempDir) throws Exception {
+        for (Charset charset : List.of(StandardCharsets.UTF_16LE, StandardCharsets.UTF_16BE)) {
+            Path file = tempDir.resolve(charset.name() + ".log");
+            Files.write(file, "first\r\nsécond 😀\nthird\rfourth".getBytes(charset));
+            try (Utf16ReverseReader reader = open(charset, file, 0, -1, 4, 0)) {
+                assertEquals(List.of("fourth", "third", "sécond 😀", "first"), readAll(reader));
+                assertEquals(Files.size(file), reader.getBytesRead());
+                assertEquals(StandardCharsets.UTF_8, reader.getCharset());
+            }
+        }
+    }
+
+    @Test
+    public void keepsTrailingEmptyLineLikeReverseFileReader(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("app.log");
+        Files.write(file, "first\nsecond\n".getBytes(StandardCharsets.UTF_16LE));
+        try (Utf16ReverseReader reader = open(StandardCharsets.UTF_16LE, file, 0, -1, 4096, 0)) {
+            assertEquals(List.of("", "second", "first"), readAll(reader));
+        }
+    }
+
+    @Test
+    public void readsRangeAfterByteOrderMark(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("app.log");
+        byte[] text = "first\nsecond\nthird\n".getBytes(StandardCharsets.UTF_16LE);
+        byte[] bytes = new byte[text.length + 3];
+        bytes[0] = (byte) 0xFF;
+        bytes[1] = (byte) 0xFE;
+        System.arraycopy(text, 0, bytes, 2, text.length);
+        // Half a character still being written
+        bytes[bytes.length - 1] = 'x';
+        Files.write(file, bytes);
+
+        try (Utf16ReverseReader reader = open(StandardCharsets.UTF_16LE, file, 2, -1, 6, 0)) {
+            assertEquals(List.of("", "third", "second", "first"), readAll(reader));
+            assertEquals(text.length, reader.getBytesRead());
+        }
+        // Just the middle line
+        try (Utf16ReverseReader reader = open(StandardCharsets.UTF_16LE, file, 2 + 12, 2 + 26, 4096, 0)) {
+            assertEquals(List.of("", "second"), readAll(reader));
+        }
+    }
+
+    @Test
+    public void truncatesLongLines(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("app.log");
+        String longLine = "é".repeat(5000);
+        Files.write(file, ("first\n" + longLine + "\nlast").getBytes(StandardCharsets.UTF_16LE));
+        try (Utf16ReverseReader reader = open(StandardCharsets.UTF_16LE, file, 0, -1, 64, 101)) {
+            List<String> lines = readAll(reader);
+            // Cut back to a whole character
+            assertEquals("é".repeat(50) + String.format(ReverseFileReader.TRUNCATED_MARKER, 10000), lines.get(1));
+            assertEquals(List.of("last", "first"), List.of(lines.get(0), lines.get(2)));
+        }
+    }
+
+    @Test
+    public void handlesEmptyFile(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("app.log");
+        Files.write(file, new byte[0]);
+        try (Utf16ReverseReader reader = open(StandardCharsets.UTF_16LE, file, 0, -1, 4096, 0)) {
+            assertFalse(reader.hasMoreData());
+            assertFalse(reader.nextLine());
+        }
+    }
+
+    @Test
+    public void rejectsOtherCharsets(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("app.log");
+        Files.writeString(file, "line");
+        assertThrows(LogReaderException.class, () -> open(StandardCharsets.UTF_8, file, 0, -1, 4096, 0));
+    }
+
+    private static Utf16ReverseReader open(Charset charset, Path file, long start, long end, int bufferSize, int maxLineLength)
+            throws IOException, LogReaderException {
+        return new Utf16ReverseReader(charset, FileHandleCache.openUncached(file), start, end, bufferSize, maxLineLength);
+    }
+
+    private static List<String> readAll(Utf16ReverseReader reader) throws IOException, LogReaderException {
+        List<String> lines = new ArrayList<>();
+        while (reader.hasMoreData() && reader.nextLine()) {
+            lines.add(new String(reader.getLineBuffer(), reader.getLineStart(), reader.getLineLength(), reader.getCharset()));
+        }
+        return lines;
+    }
+}
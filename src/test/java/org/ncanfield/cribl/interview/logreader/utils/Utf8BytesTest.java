@@ -0,0 +1,73 @@
+package org.ncanfield.cribl.interview.logreader.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Utf8BytesTest {
+    @Test
+    public void findsBytes() {
+        byte[] line = "an error occurred".getBytes(StandardCharsets.UTF_8);
+        assertEquals(3, Utf8Bytes.indexOf(line, 0, line.length, "error".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(-1, Utf8Bytes.indexOf(line, 0, line.length, "Error".getBytes(StandardCharsets.UTF_8)));
+        // Doesn't look past the end it's given
+        assertEquals(-1, Utf8Bytes.indexOf(line, 0, 7, "error".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, Utf8Bytes.indexOf(line, 0, line.length, new byte[0]));
+    }
+
+    @Test
+    public void checksBlankLikeString() {
+        for (String line : new String[] {"", "   ", "\t \r", " ", " x ", "é"}) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            assertEquals(line.isBlank(), Utf8Bytes.isBlank(bytes, 0, bytes.length, StandardCharsets.UTF_8), line);
+        }
+    }
+
+    @Test
+    public void validatesUtf8() {
+        byte[] valid = "plain é € 😀".getBytes(StandardCharsets.UTF_8);
+        assertTrue(Utf8Bytes.isValid(valid, 0, valid.length));
+        // Truncated multi-byte character
+        assertFalse(Utf8Bytes.isValid(valid, 0, valid.length - 1));
+        // Overlong encoding of '/'
+        assertFalse(Utf8Bytes.isValid(new byte[] {(byte) 0xC0, (byte) 0xAF}, 0, 2));
+        // Encoded surrogate
+        assertFalse(Utf8Bytes.isValid(new byte[] {(byte) 0xED, (byte) 0xA0, (byte) 0x80}, 0, 3));
+        assertFalse(Utf8Bytes.isValid(new byte[] {(byte) 0xFF}, 0, 1));
+    }
+
+    @Test
+    public void checksAsciiWordAtATime() {
+        byte[] ascii = "a plain ascii line, long enough for a few words".getBytes(StandardCharsets.UTF_8);
+        assertTrue(Utf8Bytes.isAscii(ascii, 0, ascii.length));
+        assertTrue(Utf8Bytes.isAscii(ascii, 0, 0));
+        // A byte past ASCII in a whole word and in the bytes left over after the last word
+        for (int at : new int[] {3, ascii.length - 2}) {
+            byte[] bytes = ascii.clone();
+            bytes[at] = (byte) 0xE9;
+            assertFalse(Utf8Bytes.isAscii(bytes, 0, bytes.length), String.valueOf(at));
+            assertTrue(Utf8Bytes.isAscii(bytes, at + 1, bytes.length));
+            assertTrue(Utf8Bytes.isValid(bytes, 0, at));
+            assertFalse(Utf8Bytes.isValid(bytes, 0, bytes.length));
+        }
+        // Multi-byte characters after a run of ASCII are still checked
+        byte[] mixed = "0123456789abcdef é € 😀".getBytes(StandardCharsets.UTF_8);
+        assertFalse(Utf8Bytes.isAscii(mixed, 0, mixed.length));
+        assertTrue(Utf8Bytes.isValid(mixed, 0, mixed.length));
+        assertFalse(Utf8Bytes.isValid(mixed, 0, mixed.length - 1));
+    }
+
+    @Test
+    public void parsesNumbers() {
+        for (String number : new String[] {"500", "-3", "+7", "0.25", "12.5"}) {
+            byte[] bytes = number.getBytes(StandardCharsets.UTF_8);
+            assertEquals(Double.parseDouble(number), Utf8Bytes.parseNumber(bytes, 0, bytes.length));
+        }
+        for (String notNumber : new String[] {"", "-", "abc", "1.2.3", "5xx", "."}) {
+            byte[] bytes = notNumber.getBytes(StandardCharsets.UTF_8);
+            assertTrue(Double.isNaN(Utf8Bytes.parseNumber(bytes, 0, bytes.length)), notNumber);
+        }
+    }
+}